@@ -0,0 +1,138 @@
+package com.zlm.hp;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.zlm.hp.db.dao.AudioInfoDao;
+import com.zlm.hp.entity.AudioInfo;
+
+import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.database.StandardDatabase;
+import org.greenrobot.greendao.internal.DaoConfig;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: 歌曲表索引测试，对比2万首歌曲时添加索引前后的查询耗时
+ * @author: zhangliangming
+ * @date: 2019-05-05 20:40
+ **/
+@RunWith(AndroidJUnit4.class)
+public class AudioInfoIndexBenchmarkTest {
+
+    private static final String TAG = "AudioInfoIndexBenchmark";
+    /**
+     * 歌曲个数
+     */
+    private static final int AUDIO_NUM = 20000;
+    /**
+     * 查询次数
+     */
+    private static final int QUERY_NUM = 1000;
+
+    private static final String EXISTS_SQL = "select * from " + AudioInfoDao.TABLENAME + " where (" + AudioInfoDao.Properties.Type.columnName + "=? or "
+            + AudioInfoDao.Properties.Type.columnName + "=? ) and " + AudioInfoDao.Properties.Hash.columnName + "=?";
+
+    @Test
+    public void testIndexedQuery() {
+        Database db = new StandardDatabase(SQLiteDatabase.create(null));
+        AudioInfoDao.createTable(db, false);
+        //先删除索引，模拟升级前的表
+        dropIndexes(db);
+        insertAudios(db);
+
+        long noIndexTime = queryExists(db);
+        assertTrue(!getQueryPlan(db).contains("INDEX"));
+
+        //与升级数据库相同，表已存在时只创建索引
+        AudioInfoDao.createTable(db, true);
+        long indexTime = queryExists(db);
+        String queryPlan = getQueryPlan(db);
+        assertTrue(queryPlan, queryPlan.contains("IDX_AUDIO_INFO_HASH_TYPE"));
+
+        Log.d(TAG, AUDIO_NUM + "首歌曲，查询" + QUERY_NUM + "次，无索引：" + noIndexTime + "ms，有索引：" + indexTime + "ms");
+    }
+
+    /**
+     * @param db
+     */
+    private void dropIndexes(Database db) {
+        List<String> indexNames = new ArrayList<String>();
+        Cursor cursor = db.rawQuery("select name from sqlite_master where type='index' and tbl_name=?", new String[]{AudioInfoDao.TABLENAME});
+        while (cursor.moveToNext()) {
+            indexNames.add(cursor.getString(0));
+        }
+        cursor.close();
+        for (int i = 0; i < indexNames.size(); i++) {
+            db.execSQL("DROP INDEX \"" + indexNames.get(i) + "\"");
+        }
+    }
+
+    /**
+     * @param db
+     */
+    private void insertAudios(Database db) {
+        AudioInfoDao audioInfoDao = new AudioInfoDao(new DaoConfig(db, AudioInfoDao.class));
+        List<AudioInfo> audioInfos = new ArrayList<AudioInfo>();
+        for (int i = 0; i < AUDIO_NUM; i++) {
+            AudioInfo audioInfo = new AudioInfo();
+            audioInfo.setHash(getHash(i));
+            //一半本地歌曲，其余为喜欢和最近播放
+            audioInfo.setType(i % 2 == 0 ? AudioInfo.TYPE_LOCAL : (i % 4 == 1 ? AudioInfo.TYPE_LIKE_LOCAL : AudioInfo.TYPE_RECENT_LOCAL));
+            audioInfo.setStatus(AudioInfo.STATUS_FINISH);
+            audioInfo.setSongName("song" + i);
+            audioInfo.setSingerName("singer" + (i % 500));
+            audioInfo.setCategory(String.valueOf((char) ('A' + i % 26)));
+            audioInfo.setCreateTime("2019-05-05 20:40:" + (i % 60));
+            audioInfos.add(audioInfo);
+        }
+        audioInfoDao.insertInTx(audioInfos);
+    }
+
+    /**
+     * 与判断是否是喜欢歌曲相同的查询
+     *
+     * @param db
+     * @return 耗时
+     */
+    private long queryExists(Database db) {
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < QUERY_NUM; i++) {
+            String[] args = {AudioInfo.TYPE_LIKE_LOCAL + "", AudioInfo.TYPE_LIKE_NET + "", getHash(i * 17 % AUDIO_NUM)};
+            Cursor cursor = db.rawQuery(EXISTS_SQL, args);
+            cursor.moveToNext();
+            cursor.close();
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * @param db
+     * @return
+     */
+    private String getQueryPlan(Database db) {
+        StringBuilder queryPlan = new StringBuilder();
+        String[] args = {AudioInfo.TYPE_LIKE_LOCAL + "", AudioInfo.TYPE_LIKE_NET + "", getHash(0)};
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + EXISTS_SQL, args);
+        while (cursor.moveToNext()) {
+            queryPlan.append(cursor.getString(cursor.getColumnCount() - 1)).append("\n");
+        }
+        cursor.close();
+        return queryPlan.toString();
+    }
+
+    /**
+     * @param i
+     * @return
+     */
+    private String getHash(int i) {
+        return String.format("%032x", i * 2654435761L);
+    }
+}
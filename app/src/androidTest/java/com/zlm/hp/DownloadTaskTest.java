@@ -6,6 +6,7 @@ import android.support.test.runner.AndroidJUnit4;
 import android.util.Log;
 
 import com.zlm.down.entity.DownloadTask;
+import com.zlm.down.entity.DownloadThreadInfo;
 import com.zlm.down.interfaces.IDownloadTaskEvent;
 import com.zlm.down.manager.DownloadTaskManager;
 import com.zlm.hp.constants.ResourceConstants;
@@ -15,6 +16,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.Date;
+import java.util.List;
 
 /**
  * @Description: 测试下载类
@@ -42,13 +44,13 @@ public class DownloadTaskTest {
             }
 
             @Override
-            public void taskDownloading(DownloadTask task, int downloadedSize) {
+            public void taskDownloading(DownloadTask task, long downloadedSize) {
                 //更新当前任务的进度
                 Log.d("Test", "taskDownloading->" + task.getTaskName() + " " + ((float) downloadedSize / task.getTaskFileSize()) * 100);
             }
 
             @Override
-            public void taskPause(DownloadTask task, int downloadedSize) {
+            public void taskPause(DownloadTask task, long downloadedSize) {
                 //更新当前任务的状态
             }
 
@@ -58,7 +60,7 @@ public class DownloadTaskTest {
             }
 
             @Override
-            public void taskFinish(DownloadTask task, int downloadedSize) {
+            public void taskFinish(DownloadTask task, long downloadedSize) {
                 //更新当前任务的状态
                 Log.d("Test", "taskFinish->" + task.getTaskName());
             }
@@ -74,26 +76,26 @@ public class DownloadTaskTest {
             }
 
             @Override
-            public int getTaskThreadDownloadedSize(DownloadTask task, int threadId) {
-                //获取之前线程任务已下载完成的进度
-                return 0;
+            public List<DownloadThreadInfo> getTaskThreadInfos(DownloadTask task) {
+                //获取之前保存的分块进度
+                return null;
             }
 
             @Override
-            public void taskThreadDownloading(DownloadTask task, int threadId, int downloadedSize) {
-                //更新每个线程任务的下载进度
-                //Log.d("Test", "taskDownloading->" + threadId + ":" + ((float) downloadedSize / task.getFileSize()) * 100);
+            public void taskThreadDownloading(DownloadTask task, DownloadThreadInfo threadInfo) {
+                //更新每个分块的下载进度
+                //Log.d("Test", "taskDownloading->" + threadInfo.getThreadId() + ":" + ((float) threadInfo.getDownloadedSize() / task.getTaskFileSize()) * 100);
             }
 
             @Override
-            public void taskThreadPause(DownloadTask task, int threadId, int downloadedSize) {
-                //更新每个线程任务的状态
+            public void taskThreadPause(DownloadTask task, DownloadThreadInfo threadInfo) {
+                //更新每个分块的状态
             }
 
             @Override
-            public void taskThreadFinish(DownloadTask task, int threadId, int downloadedSize) {
-                //更新每个线程任务的状态
-                // Log.d("Test", "taskThreadFinish->" + threadId + ":" + ((float) downloadedSize / task.getFileSize()) * 100);
+            public void taskThreadFinish(DownloadTask task, DownloadThreadInfo threadInfo) {
+                //更新每个分块的状态
+                // Log.d("Test", "taskThreadFinish->" + threadInfo.getThreadId() + ":" + ((float) threadInfo.getDownloadedSize() / task.getTaskFileSize()) * 100);
 
             }
 
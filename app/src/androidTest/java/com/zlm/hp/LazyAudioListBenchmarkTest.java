@@ -0,0 +1,93 @@
+package com.zlm.hp;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.zlm.hp.db.dao.AudioInfoDao;
+import com.zlm.hp.db.util.LazyAudioList;
+import com.zlm.hp.entity.AudioInfo;
+
+import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.database.StandardDatabase;
+import org.greenrobot.greendao.internal.DaoConfig;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @Description: 按页加载列表测试，对比1.5万首本地歌曲时一次读取全部歌曲和按页加载打开列表的耗时
+ * @author: zhangliangming
+ * @date: 2019-05-08 21:40
+ **/
+@RunWith(AndroidJUnit4.class)
+public class LazyAudioListBenchmarkTest {
+
+    private static final String TAG = "LazyAudioListBenchmark";
+    /**
+     * 歌曲个数
+     */
+    private static final int AUDIO_NUM = 15000;
+
+    private static final String WHERE = AudioInfoDao.Properties.Type.columnName + "=?";
+    private static final String ORDER_BY = AudioInfoDao.Properties.Category.columnName + "," + AudioInfoDao.Properties.ChildCategory.columnName;
+
+    @Test
+    public void testOpenList() {
+        Database db = new StandardDatabase(SQLiteDatabase.create(null));
+        AudioInfoDao.createTable(db, false);
+        AudioInfoDao audioInfoDao = new AudioInfoDao(new DaoConfig(db, AudioInfoDao.class));
+        insertAudios(audioInfoDao);
+        String[] args = {AudioInfo.TYPE_LOCAL + ""};
+
+        long startTime = System.currentTimeMillis();
+        List<AudioInfo> allAudioInfos = audioInfoDao.queryRaw("WHERE " + WHERE + " ORDER BY " + ORDER_BY, args);
+        long allTime = System.currentTimeMillis() - startTime;
+        audioInfoDao.detachAll();
+
+        startTime = System.currentTimeMillis();
+        LazyAudioList lazyAudioInfos = new LazyAudioList(audioInfoDao, WHERE, ORDER_BY, args, AUDIO_NUM, -1);
+        lazyAudioInfos.addSection("A", 0);
+        //第一屏，还没加载的页get返回null
+        assertNull(lazyAudioInfos.get(0));
+        lazyAudioInfos.preload(0);
+        for (int i = 0; i < 20; i++) {
+            lazyAudioInfos.get(i);
+        }
+        long lazyTime = System.currentTimeMillis() - startTime;
+
+        //跨页读取的顺序与一次读取相同
+        for (int i = 0; i < AUDIO_NUM; i += 37) {
+            lazyAudioInfos.preload(i);
+            assertEquals(allAudioInfos.get(i).getHash(), lazyAudioInfos.get(i).getHash());
+        }
+        assertEquals("A", lazyAudioInfos.getSectionTitle(0));
+        assertNull(lazyAudioInfos.getSectionTitle(1));
+
+        Log.d(TAG, AUDIO_NUM + "首歌曲，读取全部：" + allTime + "ms，按页加载：" + lazyTime + "ms");
+    }
+
+    /**
+     * @param audioInfoDao
+     */
+    private void insertAudios(AudioInfoDao audioInfoDao) {
+        List<AudioInfo> audioInfos = new ArrayList<AudioInfo>();
+        for (int i = 0; i < AUDIO_NUM; i++) {
+            AudioInfo audioInfo = new AudioInfo();
+            audioInfo.setHash(String.format("%032x", i * 2654435761L));
+            audioInfo.setType(AudioInfo.TYPE_LOCAL);
+            audioInfo.setStatus(AudioInfo.STATUS_FINISH);
+            audioInfo.setSongName("song" + i);
+            audioInfo.setSingerName("singer" + (i % 500));
+            audioInfo.setCategory(String.valueOf((char) ('A' + i % 26)));
+            audioInfo.setChildCategory("SINGER" + i);
+            audioInfos.add(audioInfo);
+        }
+        audioInfoDao.insertInTx(audioInfos);
+    }
+}
@@ -0,0 +1,182 @@
+package com.zlm.hp;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.zlm.down.entity.DownloadThreadInfo;
+import com.zlm.hp.db.StatementRepository;
+import com.zlm.hp.db.dao.AudioInfoDao;
+import com.zlm.hp.db.dao.DownloadThreadInfoDao;
+import com.zlm.hp.entity.AudioInfo;
+
+import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.database.StandardDatabase;
+import org.greenrobot.greendao.internal.DaoConfig;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @Description: 预编译语句测试，对比每次拼接sql和使用缓存的预编译语句的耗时
+ * @author: zhangliangming
+ * @date: 2019-05-06 21:10
+ **/
+@RunWith(AndroidJUnit4.class)
+public class StatementRepositoryBenchmarkTest {
+
+    private static final String TAG = "StatementBenchmark";
+    /**
+     * 歌曲个数
+     */
+    private static final int AUDIO_NUM = 5000;
+    /**
+     * 下载线程个数
+     */
+    private static final int THREAD_NUM = 3;
+    /**
+     * 执行次数
+     */
+    private static final int RUN_NUM = 2000;
+
+    private static final String SQL_LIKE_EXISTS = StatementRepository.existsSql(AudioInfoDao.TABLENAME, AudioInfoDao.Properties.Hash.columnName + "=? and (" + AudioInfoDao.Properties.Type.columnName + "=? or "
+            + AudioInfoDao.Properties.Type.columnName + "=? )");
+    private static final String SQL_UPDATE_SIZE = "UPDATE " + DownloadThreadInfoDao.TABLENAME + " SET " + DownloadThreadInfoDao.Properties.DownloadedSize.columnName + " =? where "
+            + DownloadThreadInfoDao.Properties.TaskId.columnName + "=? and " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=?  and " + DownloadThreadInfoDao.Properties.ThreadId.columnName + "=?";
+
+    @Test
+    public void testLikeExists() {
+        Database db = createDatabase();
+        StatementRepository repository = new StatementRepository(db);
+
+        long startTime = System.currentTimeMillis();
+        int rawNum = 0;
+        for (int i = 0; i < RUN_NUM; i++) {
+            if (rawLikeExists(db, getHash(i))) {
+                rawNum++;
+            }
+        }
+        long rawTime = System.currentTimeMillis() - startTime;
+
+        startTime = System.currentTimeMillis();
+        int statementNum = 0;
+        for (int i = 0; i < RUN_NUM; i++) {
+            if (repository.exists(SQL_LIKE_EXISTS, getHash(i), AudioInfo.TYPE_LIKE_LOCAL, AudioInfo.TYPE_LIKE_NET)) {
+                statementNum++;
+            }
+        }
+        long statementTime = System.currentTimeMillis() - startTime;
+        repository.release();
+
+        assertEquals(rawNum, statementNum);
+        Log.d(TAG, "喜欢歌曲查询" + RUN_NUM + "次，拼接sql：" + rawTime + "ms，预编译：" + statementTime + "ms");
+    }
+
+    @Test
+    public void testUpdateDownloadedSize() {
+        Database db = createDatabase();
+        StatementRepository repository = new StatementRepository(db);
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < RUN_NUM; i++) {
+            rawUpdate(db, getHash(i % AUDIO_NUM), i % THREAD_NUM, i);
+        }
+        long rawTime = System.currentTimeMillis() - startTime;
+
+        startTime = System.currentTimeMillis();
+        for (int i = 0; i < RUN_NUM; i++) {
+            repository.execute(SQL_UPDATE_SIZE, i + RUN_NUM, getHash(i % AUDIO_NUM), THREAD_NUM, i % THREAD_NUM);
+        }
+        long statementTime = System.currentTimeMillis() - startTime;
+        repository.release();
+
+        Cursor cursor = db.rawQuery("select " + DownloadThreadInfoDao.Properties.DownloadedSize.columnName + " from " + DownloadThreadInfoDao.TABLENAME + " where "
+                + DownloadThreadInfoDao.Properties.TaskId.columnName + "=? and " + DownloadThreadInfoDao.Properties.ThreadId.columnName + "=?", new String[]{getHash(RUN_NUM - 1), ((RUN_NUM - 1) % THREAD_NUM) + ""});
+        cursor.moveToFirst();
+        assertEquals(RUN_NUM * 2 - 1, cursor.getLong(0));
+        cursor.close();
+        Log.d(TAG, "更新下载进度" + RUN_NUM + "次，拼接sql：" + rawTime + "ms，预编译：" + statementTime + "ms");
+    }
+
+    /**
+     * 与修改前的AudioInfoDB.isLikeAudioExists相同
+     *
+     * @param db
+     * @param hash
+     * @return
+     */
+    private boolean rawLikeExists(Database db, String hash) {
+        String args[] = {AudioInfo.TYPE_LIKE_LOCAL + "", AudioInfo.TYPE_LIKE_NET + "", hash};
+        String sql = "select * from " + AudioInfoDao.TABLENAME;
+        sql += " where (" + AudioInfoDao.Properties.Type.columnName + "=? or " + AudioInfoDao.Properties.Type.columnName + "=? ) and " + AudioInfoDao.Properties.Hash.columnName + "=?";
+        Cursor cursor = db.rawQuery(sql, args);
+        try {
+            return cursor.moveToNext();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 与修改前的DownloadThreadInfoDB.update相同
+     *
+     * @param db
+     * @param tid
+     * @param threadID
+     * @param downloadedSize
+     */
+    private void rawUpdate(Database db, String tid, int threadID, long downloadedSize) {
+        String sql = "UPDATE ";
+        sql += DownloadThreadInfoDao.TABLENAME;
+        sql += " SET " + DownloadThreadInfoDao.Properties.DownloadedSize.columnName + " =?";
+        sql += " where " + DownloadThreadInfoDao.Properties.TaskId.columnName + "=? and " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=?  and " + DownloadThreadInfoDao.Properties.ThreadId.columnName + "=?";
+
+        String args[] = {downloadedSize + "", tid, THREAD_NUM + "", threadID + ""};
+        db.execSQL(sql, args);
+    }
+
+    /**
+     * 创建内存数据库，一半歌曲是喜欢歌曲，每首歌曲有下载线程
+     *
+     * @return
+     */
+    private Database createDatabase() {
+        Database db = new StandardDatabase(SQLiteDatabase.create(null));
+        AudioInfoDao.createTable(db, false);
+        DownloadThreadInfoDao.createTable(db, false);
+
+        List<AudioInfo> audioInfos = new ArrayList<AudioInfo>();
+        List<DownloadThreadInfo> threadInfos = new ArrayList<DownloadThreadInfo>();
+        for (int i = 0; i < AUDIO_NUM; i++) {
+            AudioInfo audioInfo = new AudioInfo();
+            audioInfo.setHash(getHash(i));
+            audioInfo.setType(i % 2 == 0 ? AudioInfo.TYPE_LOCAL : AudioInfo.TYPE_LIKE_NET);
+            audioInfo.setStatus(AudioInfo.STATUS_FINISH);
+            audioInfo.setSongName("song" + i);
+            audioInfos.add(audioInfo);
+            for (int j = 0; j < THREAD_NUM; j++) {
+                DownloadThreadInfo threadInfo = new DownloadThreadInfo();
+                threadInfo.setTaskId(getHash(i));
+                threadInfo.setThreadNum(THREAD_NUM);
+                threadInfo.setThreadId(j);
+                threadInfos.add(threadInfo);
+            }
+        }
+        new AudioInfoDao(new DaoConfig(db, AudioInfoDao.class)).insertInTx(audioInfos);
+        new DownloadThreadInfoDao(new DaoConfig(db, DownloadThreadInfoDao.class)).insertInTx(threadInfos);
+        return db;
+    }
+
+    /**
+     * @param i
+     * @return
+     */
+    private String getHash(int i) {
+        return String.format("%032x", i * 2654435761L);
+    }
+}
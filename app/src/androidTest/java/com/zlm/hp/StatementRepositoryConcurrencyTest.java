@@ -0,0 +1,88 @@
+package com.zlm.hp;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.zlm.hp.db.StatementRepository;
+import com.zlm.hp.db.dao.DownloadThreadInfoDao;
+
+import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.database.StandardDatabase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: 预编译语句并发测试，一个线程在事务中使用语句时，另一个线程同时使用同一条语句不会死锁
+ * @author: zhangliangming
+ * @date: 2019-05-09 20:30
+ **/
+@RunWith(AndroidJUnit4.class)
+public class StatementRepositoryConcurrencyTest {
+
+    /**
+     * 等待结果的最长时间，超时视为死锁
+     */
+    private static final int TIMEOUT = 10;
+
+    private static final String WHERE_THREAD = DownloadThreadInfoDao.Properties.TaskId.columnName + "=? and " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=?  and "
+            + DownloadThreadInfoDao.Properties.ThreadId.columnName + "=?";
+    private static final String SQL_EXISTS = StatementRepository.existsSql(DownloadThreadInfoDao.TABLENAME, WHERE_THREAD);
+    private static final String SQL_INSERT = "INSERT INTO " + DownloadThreadInfoDao.TABLENAME + " (" + DownloadThreadInfoDao.Properties.TaskId.columnName + "," + DownloadThreadInfoDao.Properties.ThreadNum.columnName + ","
+            + DownloadThreadInfoDao.Properties.ThreadId.columnName + "," + DownloadThreadInfoDao.Properties.DownloadedSize.columnName + "," + DownloadThreadInfoDao.Properties.StartPos.columnName + ","
+            + DownloadThreadInfoDao.Properties.EndPos.columnName + ") VALUES (?,?,?,0,0,0)";
+
+    @Test
+    public void testTransactionAndOtherThread() throws Exception {
+        final Database db = new StandardDatabase(SQLiteDatabase.create(null));
+        DownloadThreadInfoDao.createTable(db, false);
+        final StatementRepository repository = new StatementRepository(db);
+        //先编译语句，两个线程使用同一条语句
+        assertFalse(repository.exists(SQL_EXISTS, "task", 1, 0));
+
+        final CountDownLatch inTransactionLatch = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> transactionFuture = executorService.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    db.beginTransaction();
+                    try {
+                        repository.exists(SQL_EXISTS, "task", 1, 0);
+                        inTransactionLatch.countDown();
+                        //等待另一个线程开始使用语句
+                        Thread.sleep(200);
+                        repository.executeInsert(SQL_INSERT, "task", 1, 0);
+                        boolean exists = repository.exists(SQL_EXISTS, "task", 1, 0);
+                        db.setTransactionSuccessful();
+                        return exists;
+                    } finally {
+                        db.endTransaction();
+                    }
+                }
+            });
+            assertTrue(inTransactionLatch.await(TIMEOUT, TimeUnit.SECONDS));
+            Future<Boolean> otherFuture = executorService.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return repository.exists(SQL_EXISTS, "task", 1, 0);
+                }
+            });
+
+            assertTrue(transactionFuture.get(TIMEOUT, TimeUnit.SECONDS));
+            //事务提交后才能读取，已能看到事务中添加的记录
+            assertTrue(otherFuture.get(TIMEOUT, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.zlm.down.entity;
+
+/**
+ * @Description: 下载分块，调度器分配给下载线程的文件区间[startPos, endPos)
+ * @author: zhangliangming
+ * @date: 2019-04-20 10:12
+ **/
+public class DownloadChunk {
+    /**
+     * 分块id，对应DownloadThreadInfo的threadId
+     */
+    private int chunkId;
+    /**
+     * 开始位置
+     */
+    private long startPos;
+    /**
+     * 结束位置，拆分分块时会被其它线程缩小
+     */
+    private volatile long endPos;
+    /**
+     * 已下载大小，只由持有该分块的下载线程修改
+     */
+    private volatile long downloadedSize;
+    /**
+     * 正在写入的数据的结束位置，写入完成前拆分分块不能小于该位置，由调度器加锁修改
+     */
+    private volatile long writingPos;
+    /**
+     * 上次回调的已下载大小，由调度器加锁访问
+     */
+    private long notifiedSize = -1;
+    /**
+     * 分块下载完成后的md5
+     */
+    private volatile String checksum;
+
+    public DownloadChunk(int chunkId, long startPos, long endPos, long downloadedSize) {
+        this.chunkId = chunkId;
+        this.startPos = startPos;
+        this.endPos = endPos;
+        this.downloadedSize = downloadedSize;
+    }
+
+    /**
+     * 当前下载位置
+     *
+     * @return
+     */
+    public long getCurPos() {
+        return startPos + downloadedSize;
+    }
+
+    /**
+     * 剩余未下载的大小
+     *
+     * @return
+     */
+    public long getRemainSize() {
+        return Math.max(0, endPos - getCurPos());
+    }
+
+    /**
+     * 可以拆分的开始位置，不小于正在写入的数据的结束位置
+     *
+     * @return
+     */
+    public long getSplitStartPos() {
+        return Math.max(getCurPos(), writingPos);
+    }
+
+    /**
+     * 分块是否已下载完成
+     *
+     * @return
+     */
+    public boolean isFinish() {
+        return getCurPos() >= endPos;
+    }
+
+    /**
+     * 添加已下载的大小
+     *
+     * @param length
+     */
+    public void addDownloadedSize(int length) {
+        downloadedSize += length;
+    }
+
+    /**
+     * 转换成线程任务，用于保存进度
+     *
+     * @param task
+     * @return
+     */
+    public DownloadThreadInfo toThreadInfo(DownloadTask task) {
+        DownloadThreadInfo downloadThreadInfo = new DownloadThreadInfo();
+        downloadThreadInfo.setTaskId(task.getTaskId());
+        downloadThreadInfo.setThreadNum(task.getThreadNum());
+        downloadThreadInfo.setThreadId(chunkId);
+        downloadThreadInfo.setStartPos(startPos);
+        downloadThreadInfo.setEndPos(endPos);
+        downloadThreadInfo.setDownloadedSize(getDownloadedSize());
+        downloadThreadInfo.setChecksum(checksum);
+        return downloadThreadInfo;
+    }
+
+    public int getChunkId() {
+        return chunkId;
+    }
+
+    public long getStartPos() {
+        return startPos;
+    }
+
+    public long getEndPos() {
+        return endPos;
+    }
+
+    public void setEndPos(long endPos) {
+        this.endPos = endPos;
+    }
+
+    /**
+     * 获取已下载大小，不超过分块的大小
+     *
+     * @return
+     */
+    public long getDownloadedSize() {
+        return Math.min(downloadedSize, endPos - startPos);
+    }
+
+    public void setDownloadedSize(long downloadedSize) {
+        this.downloadedSize = downloadedSize;
+    }
+
+    public void setWritingPos(long writingPos) {
+        this.writingPos = writingPos;
+    }
+
+    public long getNotifiedSize() {
+        return notifiedSize;
+    }
+
+    public void setNotifiedSize(long notifiedSize) {
+        this.notifiedSize = notifiedSize;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+}
@@ -7,6 +7,7 @@ import android.os.Parcelable;
 import com.zlm.down.thread.DownloadTaskThreadManager;
 
 import org.greenrobot.greendao.annotation.Entity;
+import org.greenrobot.greendao.annotation.Index;
 import org.greenrobot.greendao.annotation.Transient;
 
 import java.util.Date;
@@ -19,7 +20,10 @@ import org.greenrobot.greendao.annotation.Generated;
  **/
 @Entity(
         generateConstructors = false,
-        generateGettersSetters = false
+        generateGettersSetters = false,
+        indexes = {
+                @Index(value = "taskId, threadNum")
+        }
 )
 public class DownloadTask implements Parcelable {
 
@@ -52,6 +56,27 @@ public class DownloadTask implements Parcelable {
      * 完成
      */
     public static final int STATUS_FINISH = 6;
+
+    /**
+     * 优先级：使用下载管理器的默认优先级
+     */
+    public static final int PRIORITY_DEFAULT = -1;
+    /**
+     * 优先级：在线播放
+     */
+    public static final int PRIORITY_STREAM = 0;
+    /**
+     * 优先级：预加载
+     */
+    public static final int PRIORITY_PREFETCH = 1;
+    /**
+     * 优先级：用户下载
+     */
+    public static final int PRIORITY_DOWNLOAD = 2;
+    /**
+     * 优先级：视频缓存
+     */
+    public static final int PRIORITY_VIDEO = 3;
     /**
      * 任务id
      */
@@ -93,7 +118,7 @@ public class DownloadTask implements Parcelable {
     private int status = STATUS_INT;
 
     /**
-     * 线程总数
+     * 线程总数，同时作为保存下载进度的key，修改后无法断点续传
      */
 
     private int threadNum;
@@ -108,6 +133,42 @@ public class DownloadTask implements Parcelable {
     @Transient
     private DownloadTaskThreadManager downloadTaskThreadManager;
 
+    /**
+     * 调度优先级，数值越小越优先
+     */
+    @Transient
+    private int priority = PRIORITY_DEFAULT;
+
+    /**
+     * 下载完成后文件的md5
+     */
+    @Transient
+    private String taskFileMd5;
+
+    /**
+     * 最大连接数，下载时根据速度在1到该值之间调节，为0时使用线程总数
+     */
+    @Transient
+    private int maxThreadNum;
+
+    /**
+     * 播放位置对应的文件位置，边下边播时优先从该位置开始下载
+     */
+    @Transient
+    private long seekPos;
+
+    /**
+     * 预加载的大小，大于0时只下载文件头部该大小的数据
+     */
+    @Transient
+    private long prefetchSize;
+
+    /**
+     * 是否探测mp4文件结构，优先下载文件头部和moov
+     */
+    @Transient
+    private boolean probeMp4;
+
     public DownloadTask() {
     }
 
@@ -225,6 +286,54 @@ public class DownloadTask implements Parcelable {
         this.downloadTaskThreadManager = downloadTaskThreadManager;
     }
 
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public int getMaxThreadNum() {
+        return maxThreadNum > 0 ? maxThreadNum : threadNum;
+    }
+
+    public void setMaxThreadNum(int maxThreadNum) {
+        this.maxThreadNum = maxThreadNum;
+    }
+
+    public long getSeekPos() {
+        return seekPos;
+    }
+
+    public void setSeekPos(long seekPos) {
+        this.seekPos = seekPos;
+    }
+
+    public long getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    public void setPrefetchSize(long prefetchSize) {
+        this.prefetchSize = prefetchSize;
+    }
+
+    public boolean isProbeMp4() {
+        return probeMp4;
+    }
+
+    public void setProbeMp4(boolean probeMp4) {
+        this.probeMp4 = probeMp4;
+    }
+
+    public String getTaskFileMd5() {
+        return taskFileMd5;
+    }
+
+    public void setTaskFileMd5(String taskFileMd5) {
+        this.taskFileMd5 = taskFileMd5;
+    }
+
     public String getRootPath() {
         return rootPath;
     }
@@ -4,6 +4,7 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import org.greenrobot.greendao.annotation.Entity;
+import org.greenrobot.greendao.annotation.Index;
 import org.greenrobot.greendao.annotation.Generated;
 
 /**
@@ -13,7 +14,10 @@ import org.greenrobot.greendao.annotation.Generated;
  **/
 @Entity(
         generateConstructors = false,
-        generateGettersSetters = false
+        generateGettersSetters = false,
+        indexes = {
+                @Index(value = "taskId, threadNum, threadId", unique = true)
+        }
 )
 public class DownloadThreadInfo implements Parcelable {
 
@@ -22,7 +26,19 @@ public class DownloadThreadInfo implements Parcelable {
     private int threadNum;
 
     private int threadId;
-    private int downloadedSize;
+    private long downloadedSize;
+    /**
+     * 区间开始位置
+     */
+    private long startPos;
+    /**
+     * 区间结束位置，为0时表示旧版本按线程平均分配的区间
+     */
+    private long endPos;
+    /**
+     * 区间下载完成后的md5，用于断点续传时校验
+     */
+    private String checksum;
 
     public DownloadThreadInfo() {
 
@@ -32,7 +48,10 @@ public class DownloadThreadInfo implements Parcelable {
         taskId = in.readString();
         threadNum = in.readInt();
         threadId = in.readInt();
-        downloadedSize = in.readInt();
+        downloadedSize = in.readLong();
+        startPos = in.readLong();
+        endPos = in.readLong();
+        checksum = in.readString();
     }
 
     @Override
@@ -40,7 +59,10 @@ public class DownloadThreadInfo implements Parcelable {
         dest.writeString(taskId);
         dest.writeInt(threadNum);
         dest.writeInt(threadId);
-        dest.writeInt(downloadedSize);
+        dest.writeLong(downloadedSize);
+        dest.writeLong(startPos);
+        dest.writeLong(endPos);
+        dest.writeString(checksum);
     }
 
     @Override
@@ -84,11 +106,35 @@ public class DownloadThreadInfo implements Parcelable {
         this.threadId = threadId;
     }
 
-    public int getDownloadedSize() {
+    public long getDownloadedSize() {
         return downloadedSize;
     }
 
-    public void setDownloadedSize(int downloadedSize) {
+    public void setDownloadedSize(long downloadedSize) {
         this.downloadedSize = downloadedSize;
     }
+
+    public long getStartPos() {
+        return startPos;
+    }
+
+    public void setStartPos(long startPos) {
+        this.startPos = startPos;
+    }
+
+    public long getEndPos() {
+        return endPos;
+    }
+
+    public void setEndPos(long endPos) {
+        this.endPos = endPos;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
 }
@@ -28,7 +28,7 @@ public interface IDownloadTaskEvent extends IDownloadThreadEvent {
      * @author zhangliangming
      * @date 2017年7月8日
      */
-    void taskDownloading(DownloadTask task, int downloadedSize);
+    void taskDownloading(DownloadTask task, long downloadedSize);
 
     /**
      * 任务暂停
@@ -39,7 +39,7 @@ public interface IDownloadTaskEvent extends IDownloadThreadEvent {
      * @author zhangliangming
      * @date 2017年7月8日
      */
-    void taskPause(DownloadTask task, int downloadedSize);
+    void taskPause(DownloadTask task, long downloadedSize);
 
     /**
      * 取消任务
@@ -59,7 +59,7 @@ public interface IDownloadTaskEvent extends IDownloadThreadEvent {
      * @author zhangliangming
      * @date 2017年7月8日
      */
-    void taskFinish(DownloadTask task, int downloadedSize);
+    void taskFinish(DownloadTask task, long downloadedSize);
 
     /**
      * 任务错误
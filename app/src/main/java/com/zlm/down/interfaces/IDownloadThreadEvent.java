@@ -1,6 +1,9 @@
 package com.zlm.down.interfaces;
 
 import com.zlm.down.entity.DownloadTask;
+import com.zlm.down.entity.DownloadThreadInfo;
+
+import java.util.List;
 
 /**
  * 下载任务线程事件
@@ -11,38 +14,34 @@ public interface IDownloadThreadEvent {
 
 
     /**
-     * 获取已下载的进度
+     * 获取已保存的线程任务（下载区间及进度），用于断点续传
      *
      * @param task
-     * @param threadId
      * @return
      */
-    int getTaskThreadDownloadedSize(DownloadTask task, int threadId);
+    List<DownloadThreadInfo> getTaskThreadInfos(DownloadTask task);
 
     /**
      * 任务线程下载中
      *
-     * @param task           任务
-     * @param threadId       线程任务id
-     * @param downloadedSize 线程下载进度
+     * @param task       任务
+     * @param threadInfo 线程任务，包含区间和下载进度
      * @throws Exception
      * @author zhangliangming
      * @date 2017年7月8日
      */
-    void taskThreadDownloading(DownloadTask task, int threadId,
-                               int downloadedSize);
+    void taskThreadDownloading(DownloadTask task, DownloadThreadInfo threadInfo);
 
     /**
      * 任务线程暂停
      *
-     * @param task           任务
-     * @param threadId       线程任务id
-     * @param downloadedSize 线程下载进度
+     * @param task       任务
+     * @param threadInfo 线程任务，包含区间和下载进度
      * @throws Exception
      * @author zhangliangming
      * @date 2017年7月8日
      */
-    void taskThreadPause(DownloadTask task, int threadId, int downloadedSize);
+    void taskThreadPause(DownloadTask task, DownloadThreadInfo threadInfo);
 
     /***
      *
@@ -50,15 +49,13 @@ public interface IDownloadThreadEvent {
      *
      * @param task
      *            任务
-     * @param threadId
-     *            线程任务id
-     * @param downloadedSize
-     *            线程下载进度
+     * @param threadInfo
+     *            线程任务，包含区间和下载进度
      * @throws Exception
      * @author zhangliangming
      * @date 2017年7月8日
      */
-    void taskThreadFinish(DownloadTask task, int threadId, int downloadedSize);
+    void taskThreadFinish(DownloadTask task, DownloadThreadInfo threadInfo);
 
     /***
      *
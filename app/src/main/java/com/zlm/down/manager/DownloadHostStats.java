@@ -0,0 +1,68 @@
+package com.zlm.down.manager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @Description: 记录每个服务器合适的下载连接数，同一个服务器的新任务直接从该连接数开始
+ * @author: zhangliangming
+ * @date: 2019-04-26 21:40
+ **/
+public class DownloadHostStats {
+
+    /**
+     * 最多记录的服务器个数
+     */
+    private static final int MAX_HOST_NUM = 32;
+
+    private static DownloadHostStats _DownloadHostStats;
+
+    /**
+     * 服务器对应的连接数，按访问顺序淘汰
+     */
+    private Map<String, Integer> mConnectionNums = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_HOST_NUM;
+        }
+    };
+
+    private DownloadHostStats() {
+    }
+
+    public static DownloadHostStats getInstance() {
+        if (_DownloadHostStats == null) {
+            synchronized (DownloadHostStats.class) {
+                if (_DownloadHostStats == null) {
+                    _DownloadHostStats = new DownloadHostStats();
+                }
+            }
+        }
+        return _DownloadHostStats;
+    }
+
+    /**
+     * 获取服务器合适的连接数
+     *
+     * @param host
+     * @param defaultNum 没有记录时返回
+     * @return
+     */
+    public synchronized int getConnectionNum(String host, int defaultNum) {
+        Integer connectionNum = host == null ? null : mConnectionNums.get(host);
+        return connectionNum == null ? defaultNum : connectionNum;
+    }
+
+    /**
+     * 保存服务器合适的连接数
+     *
+     * @param host
+     * @param connectionNum
+     */
+    public synchronized void setConnectionNum(String host, int connectionNum) {
+        if (host == null) {
+            return;
+        }
+        mConnectionNums.put(host, connectionNum);
+    }
+}
@@ -0,0 +1,90 @@
+package com.zlm.down.manager;
+
+import com.zlm.down.entity.DownloadTask;
+
+/**
+ * @Description: 下载限速
+ * 每个优先级一个令牌桶，另有一个全局令牌桶；
+ * 在线播放的数据只扣除全局令牌不等待，其它任务需等待全局令牌补足，保证播放不卡顿
+ * @author: zhangliangming
+ * @date: 2019-04-23 21:30
+ **/
+public class DownloadSpeedLimiter {
+
+    private static DownloadSpeedLimiter _DownloadSpeedLimiter;
+
+    /**
+     * 全局令牌桶
+     */
+    private TokenBucket mTotalTokenBucket = new TokenBucket(0);
+
+    /**
+     * 各优先级的令牌桶
+     */
+    private TokenBucket[] mTokenBuckets = {
+            new TokenBucket(0),
+            new TokenBucket(0),
+            new TokenBucket(0),
+            new TokenBucket(0)
+    };
+
+    private DownloadSpeedLimiter() {
+    }
+
+    public static DownloadSpeedLimiter getInstance() {
+        if (_DownloadSpeedLimiter == null) {
+            synchronized (DownloadSpeedLimiter.class) {
+                if (_DownloadSpeedLimiter == null) {
+                    _DownloadSpeedLimiter = new DownloadSpeedLimiter();
+                }
+            }
+        }
+        return _DownloadSpeedLimiter;
+    }
+
+    /**
+     * 设置全局速度
+     *
+     * @param speed KB/秒，小于等于0时不限速
+     */
+    public void setTotalSpeed(int speed) {
+        mTotalTokenBucket.setRate(speed * 1024L);
+    }
+
+    /**
+     * 设置某个优先级的速度
+     *
+     * @param priority
+     * @param speed    KB/秒，小于等于0时不限速
+     */
+    public void setSpeed(int priority, int speed) {
+        getTokenBucket(priority).setRate(speed * 1024L);
+    }
+
+    /**
+     * 读取数据后获取令牌，超速时等待
+     *
+     * @param priority
+     * @param size     字节数
+     * @throws InterruptedException
+     */
+    public void acquire(int priority, int size) throws InterruptedException {
+        getTokenBucket(priority).acquire(size);
+        if (priority == DownloadTask.PRIORITY_STREAM) {
+            mTotalTokenBucket.consume(size);
+        } else {
+            mTotalTokenBucket.acquire(size);
+        }
+    }
+
+    /**
+     * @param priority
+     * @return
+     */
+    private TokenBucket getTokenBucket(int priority) {
+        if (priority < 0 || priority >= mTokenBuckets.length) {
+            return mTokenBuckets[DownloadTask.PRIORITY_DOWNLOAD];
+        }
+        return mTokenBuckets[priority];
+    }
+}
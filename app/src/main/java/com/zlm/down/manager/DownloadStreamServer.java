@@ -0,0 +1,355 @@
+package com.zlm.down.manager;
+
+import android.text.TextUtils;
+
+import com.zlm.down.entity.DownloadTask;
+import com.zlm.down.thread.DownloadTaskThreadManager;
+import com.zlm.hp.manager.PlaybackTracer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 边下边播本地服务
+ * 播放器通过http://127.0.0.1连接该服务，服务从下载中的临时文件读取数据，
+ * 数据还未下载时阻塞等待，读取位置同时作为下载分块的优先位置；支持Range请求
+ * @author: zhangliangming
+ * @date: 2019-04-27 20:10
+ **/
+public class DownloadStreamServer implements Runnable {
+
+    /**
+     * 每次等待数据的时间
+     */
+    private static final int WAIT_TIME = 500;
+    /**
+     * 没有任何数据时最长等待时间
+     */
+    private static final int READ_TIMEOUT = 30 * 1000;
+    /**
+     * 读取文件的缓存大小
+     */
+    private static final int BUFF_LENGTH = 1024 * 64;
+
+    private static DownloadStreamServer _DownloadStreamServer;
+
+    /**
+     * 正在边下边播的任务
+     */
+    private Map<String, DownloadTask> mDownloadTasks = new ConcurrentHashMap<String, DownloadTask>();
+
+    /**
+     * 每个任务最新的请求id，播放器跳转后会发起新的请求，只有最新的请求更新读取位置
+     */
+    private ConcurrentHashMap<String, Long> mLatestRequestIds = new ConcurrentHashMap<String, Long>();
+    private AtomicLong mNextRequestId = new AtomicLong();
+
+    private ServerSocket mServerSocket;
+
+    private DownloadStreamServer() {
+        try {
+            mServerSocket = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+            Thread thread = new Thread(this, "DownloadStreamServer");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (Exception e) {
+            e.printStackTrace();
+            mServerSocket = null;
+        }
+    }
+
+    public static DownloadStreamServer getInstance() {
+        if (_DownloadStreamServer == null) {
+            synchronized (DownloadStreamServer.class) {
+                if (_DownloadStreamServer == null) {
+                    _DownloadStreamServer = new DownloadStreamServer();
+                }
+            }
+        }
+        return _DownloadStreamServer;
+    }
+
+    /**
+     * 获取任务的播放地址
+     *
+     * @param taskId
+     * @return 服务启动失败时返回null
+     */
+    public String getUrl(String taskId) {
+        if (mServerSocket == null) {
+            return null;
+        }
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/" + taskId;
+    }
+
+    /**
+     * 添加边下边播的任务，同一个任务id重新添加时替换旧的任务
+     *
+     * @param task
+     */
+    public void register(DownloadTask task) {
+        mDownloadTasks.put(task.getTaskId(), task);
+    }
+
+    /**
+     * 移除边下边播的任务，正在读取的连接等待新的任务或者超时关闭
+     *
+     * @param taskId
+     */
+    public void unregister(String taskId) {
+        mDownloadTasks.remove(taskId);
+    }
+
+    /**
+     * 任务是否正在边下边播
+     *
+     * @param taskId
+     * @return
+     */
+    public boolean isRegistered(String taskId) {
+        return mDownloadTasks.containsKey(taskId);
+    }
+
+    /**
+     * 边下边播的任务是否还在下载，已完成的任务只读取完整的临时文件
+     *
+     * @param taskId
+     * @return
+     */
+    public boolean isDownloading(String taskId) {
+        DownloadTask task = mDownloadTasks.get(taskId);
+        return task != null && task.getStatus() != DownloadTask.STATUS_FINISH;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        handleSocket(socket);
+                    }
+                }, "DownloadStreamServerClient");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (Exception e) {
+                e.printStackTrace();
+                if (mServerSocket.isClosed()) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 处理播放器的请求
+     *
+     * @param socket
+     */
+    private void handleSocket(Socket socket) {
+        RandomAccessFile file = null;
+        StreamRequest request = null;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            String requestLine = reader.readLine();
+            if (requestLine == null) {
+                return;
+            }
+            String[] requestParts = requestLine.split(" ");
+            if (requestParts.length < 2) {
+                return;
+            }
+            String taskId = requestParts[1].substring(requestParts[1].lastIndexOf('/') + 1);
+            request = new StreamRequest(taskId, mNextRequestId.incrementAndGet());
+            mLatestRequestIds.put(taskId, request.requestId);
+            long rangeStart = -1;
+            long rangeEnd = -1;
+            String line;
+            while (!TextUtils.isEmpty(line = reader.readLine())) {
+                int index = line.indexOf(':');
+                if (index > 0 && line.substring(0, index).trim().equalsIgnoreCase("Range")) {
+                    //只支持单个区间：bytes=start-end
+                    String range = line.substring(index + 1).trim();
+                    if (range.startsWith("bytes=")) {
+                        String[] rangeParts = range.substring("bytes=".length()).split("-", -1);
+                        if (rangeParts.length == 2 && rangeParts[0].length() > 0) {
+                            rangeStart = Long.parseLong(rangeParts[0].trim());
+                            if (rangeParts[1].trim().length() > 0) {
+                                rangeEnd = Long.parseLong(rangeParts[1].trim());
+                            }
+                        }
+                    }
+                }
+            }
+
+            OutputStream os = socket.getOutputStream();
+            //等待任务获取到文件长度
+            DownloadTask task = waitForTask(taskId);
+            if (task == null) {
+                writeHeader(os, "HTTP/1.1 404 Not Found", 0, null);
+                return;
+            }
+            long fileLength = task.getTaskFileSize();
+            long startPos = Math.max(0, rangeStart);
+            long endPos = rangeEnd < 0 ? fileLength - 1 : Math.min(rangeEnd, fileLength - 1);
+            if (startPos >= fileLength || startPos > endPos) {
+                writeHeader(os, "HTTP/1.1 416 Range Not Satisfiable", 0, "Content-Range: bytes */" + fileLength);
+                return;
+            }
+            if (rangeStart < 0) {
+                writeHeader(os, "HTTP/1.1 200 OK", fileLength, null);
+            } else {
+                writeHeader(os, "HTTP/1.1 206 Partial Content", endPos - startPos + 1,
+                        "Content-Range: bytes " + startPos + "-" + endPos + "/" + fileLength);
+            }
+
+            file = new RandomAccessFile(task.getTaskTempPath(), "r");
+            byte[] buff = new byte[BUFF_LENGTH];
+            long pos = startPos;
+            long lastReadTime = System.currentTimeMillis();
+            while (pos <= endPos) {
+                long availableSize = waitForData(request, pos);
+                if (availableSize <= 0) {
+                    if (System.currentTimeMillis() - lastReadTime > READ_TIMEOUT) {
+                        //任务已暂停或者出错
+                        break;
+                    }
+                    continue;
+                }
+                file.seek(pos);
+                int length = file.read(buff, 0, (int) Math.min(buff.length, Math.min(availableSize, endPos - pos + 1)));
+                if (length <= 0) {
+                    break;
+                }
+                os.write(buff, 0, length);
+                if (pos == startPos) {
+                    //边下边播的歌曲第一次返回数据
+                    PlaybackTracer.getInstance().mark(taskId, PlaybackTracer.STAGE_FIRST_DATA);
+                }
+                pos += length;
+                lastReadTime = System.currentTimeMillis();
+            }
+            os.flush();
+        } catch (Exception e) {
+            //播放器关闭连接
+            e.printStackTrace();
+        } finally {
+            if (request != null) {
+                //连接关闭后不再作为读取位置
+                mLatestRequestIds.remove(request.taskId, request.requestId);
+            }
+            if (file != null)
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 等待任务添加并获取到文件长度
+     *
+     * @param taskId
+     * @return 超时返回null
+     * @throws InterruptedException
+     */
+    private DownloadTask waitForTask(String taskId) throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        while (System.currentTimeMillis() - startTime < READ_TIMEOUT) {
+            DownloadTask task = mDownloadTasks.get(taskId);
+            if (task != null && task.getTaskFileSize() > 0 && task.getDownloadTaskThreadManager() != null) {
+                return task;
+            }
+            if (task != null && task.getStatus() == DownloadTask.STATUS_ERROR) {
+                return null;
+            }
+            Thread.sleep(WAIT_TIME / 5);
+        }
+        return null;
+    }
+
+    /**
+     * 等待pos开始的数据，任务被替换时读取新任务的进度。
+     * 每个请求只对同一个下载任务跳转一次，已有更新的请求时不再影响下载位置
+     *
+     * @param request
+     * @param pos
+     * @return pos开始可读取的大小
+     * @throws InterruptedException
+     */
+    private long waitForData(StreamRequest request, long pos) throws InterruptedException {
+        DownloadTask task = mDownloadTasks.get(request.taskId);
+        DownloadTaskThreadManager downloadTaskThreadManager = task == null ? null : task.getDownloadTaskThreadManager();
+        if (downloadTaskThreadManager == null) {
+            Thread.sleep(WAIT_TIME);
+            return 0;
+        }
+        Long latestRequestId = mLatestRequestIds.get(request.taskId);
+        boolean isLatest = latestRequestId != null && latestRequestId == request.requestId;
+        if (isLatest && request.seekManager != downloadTaskThreadManager && downloadTaskThreadManager.seekTo(pos)) {
+            request.seekManager = downloadTaskThreadManager;
+        }
+        long availableSize = downloadTaskThreadManager.waitForData(pos, WAIT_TIME, isLatest);
+        if (availableSize < 0) {
+            //任务还未开始下载
+            Thread.sleep(WAIT_TIME / 5);
+            return 0;
+        }
+        return availableSize;
+    }
+
+    /**
+     * 播放器的一次请求
+     */
+    private static class StreamRequest {
+        private String taskId;
+        private long requestId;
+        /**
+         * 已经跳转过的下载任务，任务被替换后需要对新任务重新跳转
+         */
+        private DownloadTaskThreadManager seekManager;
+
+        private StreamRequest(String taskId, long requestId) {
+            this.taskId = taskId;
+            this.requestId = requestId;
+        }
+    }
+
+    /**
+     * @param os
+     * @param statusLine
+     * @param contentLength
+     * @param extraHeader
+     * @throws IOException
+     */
+    private void writeHeader(OutputStream os, String statusLine, long contentLength, String extraHeader) throws IOException {
+        StringBuilder header = new StringBuilder();
+        header.append(statusLine).append("\r\n");
+        header.append("Content-Type: application/octet-stream\r\n");
+        header.append("Accept-Ranges: bytes\r\n");
+        header.append("Content-Length: ").append(contentLength).append("\r\n");
+        if (extraHeader != null) {
+            header.append(extraHeader).append("\r\n");
+        }
+        header.append("Connection: close\r\n\r\n");
+        os.write(header.toString().getBytes("UTF-8"));
+        os.flush();
+    }
+}
@@ -6,11 +6,12 @@ import android.os.HandlerThread;
 import android.os.Process;
 
 import com.zlm.down.entity.DownloadTask;
+import com.zlm.down.entity.DownloadThreadInfo;
 import com.zlm.down.interfaces.IDownloadTaskEvent;
 import com.zlm.down.thread.DownloadTaskThreadManager;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @Description: 任务下载管理类
@@ -28,15 +29,20 @@ public class DownloadTaskManager {
 
     private Context mContext;
     /**
-     * 任务队列
+     * 任务队列，调用线程添加和暂停任务，下载线程的回调移除任务
      */
-    private List<DownloadTask> mDownloadTasks = new ArrayList<DownloadTask>();
+    private List<DownloadTask> mDownloadTasks = new CopyOnWriteArrayList<DownloadTask>();
 
     /**
      * 对外下载回调
      */
     private IDownloadTaskEvent mIDownloadTaskEvent;
 
+    /**
+     * 任务默认优先级
+     */
+    private int mPriority;
+
     /**
      * 对内下载回调
      */
@@ -50,7 +56,7 @@ public class DownloadTaskManager {
         }
 
         @Override
-        public void taskDownloading(DownloadTask task, int downloadedSize) {
+        public void taskDownloading(DownloadTask task, long downloadedSize) {
             if (task.getTaskFileSize() <= downloadedSize) {
                 return;
             }
@@ -61,7 +67,7 @@ public class DownloadTaskManager {
         }
 
         @Override
-        public void taskPause(DownloadTask task, int downloadedSize) {
+        public void taskPause(DownloadTask task, long downloadedSize) {
 
             removeTask(task);
 
@@ -87,7 +93,7 @@ public class DownloadTaskManager {
         }
 
         @Override
-        public void taskFinish(DownloadTask task, int downloadedSize) {
+        public void taskFinish(DownloadTask task, long downloadedSize) {
 
             removeTask(task);
 
@@ -122,32 +128,32 @@ public class DownloadTaskManager {
         }
 
         @Override
-        public int getTaskThreadDownloadedSize(DownloadTask task, int threadId) {
+        public List<DownloadThreadInfo> getTaskThreadInfos(DownloadTask task) {
             if (mIDownloadTaskEvent != null) {
-                return mIDownloadTaskEvent.getTaskThreadDownloadedSize(task, threadId);
+                return mIDownloadTaskEvent.getTaskThreadInfos(task);
             }
-            return 0;
+            return null;
         }
 
         @Override
-        public void taskThreadDownloading(DownloadTask task, int threadId, int downloadedSize) {
+        public void taskThreadDownloading(DownloadTask task, DownloadThreadInfo threadInfo) {
             if (mIDownloadTaskEvent != null) {
-                mIDownloadTaskEvent.taskThreadDownloading(task, threadId, downloadedSize);
+                mIDownloadTaskEvent.taskThreadDownloading(task, threadInfo);
             }
         }
 
         @Override
-        public void taskThreadPause(DownloadTask task, int threadId, int downloadedSize) {
+        public void taskThreadPause(DownloadTask task, DownloadThreadInfo threadInfo) {
             if (mIDownloadTaskEvent != null) {
-                mIDownloadTaskEvent.taskThreadPause(task, threadId, downloadedSize);
+                mIDownloadTaskEvent.taskThreadPause(task, threadInfo);
             }
         }
 
 
         @Override
-        public void taskThreadFinish(DownloadTask task, int threadId, int downloadedSize) {
+        public void taskThreadFinish(DownloadTask task, DownloadThreadInfo threadInfo) {
             if (mIDownloadTaskEvent != null) {
-                mIDownloadTaskEvent.taskThreadFinish(task, threadId, downloadedSize);
+                mIDownloadTaskEvent.taskThreadFinish(task, threadInfo);
             }
         }
 
@@ -160,7 +166,18 @@ public class DownloadTaskManager {
     };
 
     public DownloadTaskManager(Context context, String threadName, IDownloadTaskEvent downloadTaskEvent) {
+        this(context, threadName, DownloadTask.PRIORITY_DOWNLOAD, downloadTaskEvent);
+    }
+
+    /**
+     * @param context
+     * @param threadName
+     * @param priority          任务默认优先级
+     * @param downloadTaskEvent
+     */
+    public DownloadTaskManager(Context context, String threadName, int priority, IDownloadTaskEvent downloadTaskEvent) {
         this.mContext = context;
+        this.mPriority = priority;
         this.mIDownloadTaskEvent = downloadTaskEvent;
 
         //创建异步HandlerThread
@@ -176,6 +193,10 @@ public class DownloadTaskManager {
      * 释放
      */
     public void release() {
+        //移除全局调度中等待的任务
+        for (DownloadTask task : mDownloadTasks) {
+            DownloadTaskScheduler.getInstance().remove(task.getDownloadTaskThreadManager());
+        }
         //移除队列任务
         if (mWorkerHandler != null) {
             mWorkerHandler.removeCallbacksAndMessages(null);
@@ -194,6 +215,9 @@ public class DownloadTaskManager {
     public void addDownloadTask(DownloadTask downloadTask) {
         DownloadTaskThreadManager downloadTaskThreadManager = new DownloadTaskThreadManager(mContext, mWorkerHandler, downloadTask, mInnerIDownloadTaskEvent);
         downloadTask.setDownloadTaskThreadManager(downloadTaskThreadManager);
+        if (downloadTask.getPriority() == DownloadTask.PRIORITY_DEFAULT) {
+            downloadTask.setPriority(mPriority);
+        }
         if (mDownloadTasks.size() == 0 || mDownloadTasks.size() > 0) {
             downloadTask.setStatus(DownloadTask.STATUS_WAIT);
             if (mIDownloadTaskEvent != null) {
@@ -201,7 +225,8 @@ public class DownloadTaskManager {
             }
         }
         mDownloadTasks.add(downloadTask);
-        mWorkerHandler.post(downloadTask.getDownloadTaskThreadManager());
+        //由全局调度按优先级和连接数启动
+        DownloadTaskScheduler.getInstance().submit(downloadTaskThreadManager);
     }
 
     /**
@@ -210,21 +235,17 @@ public class DownloadTaskManager {
      * @param downloadTaskId
      */
     public void pauseDownloadTask(String downloadTaskId) {
-        for (int i = 0; i < mDownloadTasks.size(); i++) {
-            DownloadTask task = mDownloadTasks.get(i);
+        for (DownloadTask task : mDownloadTasks) {
             if (task.getTaskId().equals(downloadTaskId)) {
-                if (i == 0) {
-
-                    DownloadTaskThreadManager downloadTaskThreadManager = task.getDownloadTaskThreadManager();
-                    downloadTaskThreadManager.pauseTaskThread();
-
-                } else {
+                DownloadTaskThreadManager downloadTaskThreadManager = task.getDownloadTaskThreadManager();
+                if (DownloadTaskScheduler.getInstance().remove(downloadTaskThreadManager)) {
+                    //任务还在等待
+                    removeTask(task);
                     if (mIDownloadTaskEvent != null) {
                         mIDownloadTaskEvent.taskPause(task, 0);
                     }
-                }
-                if (mDownloadTasks.size() > 0) {
-                    mDownloadTasks.remove(i);
+                } else {
+                    downloadTaskThreadManager.pauseTaskThread();
                 }
                 break;
             }
@@ -237,19 +258,17 @@ public class DownloadTaskManager {
      * @param downloadTaskId
      */
     public void cancelDownloadTask(String downloadTaskId) {
-        for (int i = 0; i < mDownloadTasks.size(); i++) {
-            DownloadTask task = mDownloadTasks.get(i);
+        for (DownloadTask task : mDownloadTasks) {
             if (task.getTaskId().equals(downloadTaskId)) {
-                if (i == 0) {
-
-                    DownloadTaskThreadManager downloadTaskThreadManager = task.getDownloadTaskThreadManager();
-                    downloadTaskThreadManager.cancelTaskThread();
-
-                } else {
-
+                DownloadTaskThreadManager downloadTaskThreadManager = task.getDownloadTaskThreadManager();
+                if (DownloadTaskScheduler.getInstance().remove(downloadTaskThreadManager)) {
+                    //任务还在等待
+                    removeTask(task);
                     if (mIDownloadTaskEvent != null) {
                         mIDownloadTaskEvent.taskCancel(task);
                     }
+                } else {
+                    downloadTaskThreadManager.cancelTaskThread();
                 }
                 break;
             }
@@ -262,11 +281,10 @@ public class DownloadTaskManager {
      * @param task
      */
     private void removeTask(DownloadTask task) {
-        for (int i = 0; i < mDownloadTasks.size(); i++) {
-            DownloadTask temp = mDownloadTasks.get(i);
+        for (DownloadTask temp : mDownloadTasks) {
             if (temp.getTaskId().equals(task.getTaskId())) {
-                if (mDownloadTasks.size() > 0) {
-                    mDownloadTasks.remove(i);
+                if (mDownloadTasks.remove(temp)) {
+                    DownloadTaskScheduler.getInstance().remove(temp.getDownloadTaskThreadManager());
                     mWorkerHandler.removeCallbacks(temp.getDownloadTaskThreadManager());
                 }
                 break;
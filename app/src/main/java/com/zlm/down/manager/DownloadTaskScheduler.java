@@ -0,0 +1,233 @@
+package com.zlm.down.manager;
+
+import com.zlm.down.thread.DownloadTaskThreadManager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description: 全局下载任务调度
+ * 所有下载管理器的任务统一排队，按优先级（在线播放 > 预加载 > 下载 > 视频缓存）和全局连接数启动；
+ * 连接数不足时，暂停优先级更低的任务，被暂停的任务重新排队，稍后断点续传
+ * @author: zhangliangming
+ * @date: 2019-04-22 20:30
+ **/
+public class DownloadTaskScheduler {
+
+    /**
+     * 全局最大连接数
+     */
+    public static final int MAX_CONNECTION_NUM = 12;
+
+    private static DownloadTaskScheduler _DownloadTaskScheduler;
+
+    /**
+     * 等待的任务，按优先级和添加顺序排序
+     */
+    private List<DownloadTaskThreadManager> mWaitTasks = new ArrayList<DownloadTaskThreadManager>();
+    /**
+     * 正在下载的任务
+     */
+    private List<DownloadTaskThreadManager> mRunningTasks = new ArrayList<DownloadTaskThreadManager>();
+    /**
+     * 被抢占、下载线程还未退出的任务及其占用的连接数，线程退出前仍计入连接数
+     */
+    private Map<DownloadTaskThreadManager, Integer> mReleasingTasks = new LinkedHashMap<DownloadTaskThreadManager, Integer>();
+
+    /**
+     * 添加顺序
+     */
+    private long mSubmitIndex = 0;
+
+    private DownloadTaskScheduler() {
+    }
+
+    public static DownloadTaskScheduler getInstance() {
+        if (_DownloadTaskScheduler == null) {
+            synchronized (DownloadTaskScheduler.class) {
+                if (_DownloadTaskScheduler == null) {
+                    _DownloadTaskScheduler = new DownloadTaskScheduler();
+                }
+            }
+        }
+        return _DownloadTaskScheduler;
+    }
+
+    /**
+     * 添加任务
+     *
+     * @param downloadTaskThreadManager
+     */
+    public void submit(DownloadTaskThreadManager downloadTaskThreadManager) {
+        synchronized (this) {
+            downloadTaskThreadManager.setSubmitIndex(mSubmitIndex++);
+            addWaitTask(downloadTaskThreadManager);
+        }
+        schedule();
+    }
+
+    /**
+     * 被抢占的任务下载线程已退出，释放连接数，新的任务线程管理重新排队，保留原来的添加顺序
+     *
+     * @param preemptedTask             被抢占的任务线程管理
+     * @param downloadTaskThreadManager 新的任务线程管理，为null时只释放连接数
+     */
+    public void requeue(DownloadTaskThreadManager preemptedTask, DownloadTaskThreadManager downloadTaskThreadManager) {
+        synchronized (this) {
+            mReleasingTasks.remove(preemptedTask);
+            if (downloadTaskThreadManager != null) {
+                addWaitTask(downloadTaskThreadManager);
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * 移除等待的任务
+     *
+     * @param downloadTaskThreadManager
+     * @return 任务还在等待时返回true
+     */
+    public synchronized boolean remove(DownloadTaskThreadManager downloadTaskThreadManager) {
+        return mWaitTasks.remove(downloadTaskThreadManager);
+    }
+
+    /**
+     * 任务结束（完成、暂停、取消或者出错），释放连接数
+     *
+     * @param downloadTaskThreadManager
+     */
+    public void onTaskEnd(DownloadTaskThreadManager downloadTaskThreadManager) {
+        boolean isRunning;
+        synchronized (this) {
+            isRunning = mRunningTasks.remove(downloadTaskThreadManager);
+        }
+        if (isRunning) {
+            schedule();
+        }
+    }
+
+    /**
+     * 是否还有空闲的连接，正在下载的任务增加连接前调用；
+     * 只有优先级更低的任务在等待时，不影响该任务增加连接
+     *
+     * @param priority 正在下载的任务的优先级
+     * @return
+     */
+    public synchronized boolean hasFreeConnection(int priority) {
+        if (!mWaitTasks.isEmpty() && mWaitTasks.get(0).getPriority() <= priority) {
+            return false;
+        }
+        return getUsedConnectionNum() + getReleasingConnectionNum() < MAX_CONNECTION_NUM;
+    }
+
+    /**
+     * 启动等待的任务，连接数不足时抢占优先级更低的任务
+     */
+    private void schedule() {
+        List<DownloadTaskThreadManager> startTasks = new ArrayList<DownloadTaskThreadManager>();
+        List<DownloadTaskThreadManager> preemptTasks = new ArrayList<DownloadTaskThreadManager>();
+        synchronized (this) {
+            while (mWaitTasks.size() > 0) {
+                DownloadTaskThreadManager waitTask = mWaitTasks.get(0);
+                int usedConnectionNum = getUsedConnectionNum();
+                int releasingConnectionNum = getReleasingConnectionNum();
+                int connectionNum = waitTask.getConnectionNum();
+                if ((mRunningTasks.isEmpty() && mReleasingTasks.isEmpty())
+                        || usedConnectionNum + releasingConnectionNum + connectionNum <= MAX_CONNECTION_NUM) {
+                    mWaitTasks.remove(0);
+                    mRunningTasks.add(waitTask);
+                    startTasks.add(waitTask);
+                    continue;
+                }
+                if (mRunningTasks.isEmpty() || usedConnectionNum + connectionNum <= MAX_CONNECTION_NUM) {
+                    //已抢占足够的连接，等被抢占任务的线程退出
+                    break;
+                }
+                DownloadTaskThreadManager lowestTask = getLowestRunningTask();
+                if (lowestTask == null || lowestTask.getPriority() <= waitTask.getPriority()) {
+                    //没有可以抢占的任务
+                    break;
+                }
+                mRunningTasks.remove(lowestTask);
+                mReleasingTasks.put(lowestTask, lowestTask.getConnectionNum());
+                preemptTasks.add(lowestTask);
+            }
+        }
+        for (int i = 0; i < preemptTasks.size(); i++) {
+            //被抢占的任务在下载线程退出后释放连接数并重新排队
+            if (!preemptTasks.get(i).preemptTaskThread()) {
+                //任务已结束
+                requeue(preemptTasks.get(i), null);
+            }
+        }
+        for (int i = 0; i < startTasks.size(); i++) {
+            startTasks.get(i).start();
+        }
+    }
+
+    /**
+     * 按优先级和添加顺序插入等待队列
+     *
+     * @param downloadTaskThreadManager
+     */
+    private void addWaitTask(DownloadTaskThreadManager downloadTaskThreadManager) {
+        int index = 0;
+        while (index < mWaitTasks.size()) {
+            DownloadTaskThreadManager temp = mWaitTasks.get(index);
+            if (temp.getPriority() > downloadTaskThreadManager.getPriority()
+                    || (temp.getPriority() == downloadTaskThreadManager.getPriority() && temp.getSubmitIndex() > downloadTaskThreadManager.getSubmitIndex())) {
+                break;
+            }
+            index++;
+        }
+        mWaitTasks.add(index, downloadTaskThreadManager);
+    }
+
+    /**
+     * 正在使用的连接数
+     *
+     * @return
+     */
+    private int getUsedConnectionNum() {
+        int connectionNum = 0;
+        for (int i = 0; i < mRunningTasks.size(); i++) {
+            connectionNum += mRunningTasks.get(i).getConnectionNum();
+        }
+        return connectionNum;
+    }
+
+    /**
+     * 被抢占、下载线程还未退出的任务占用的连接数
+     *
+     * @return
+     */
+    private int getReleasingConnectionNum() {
+        int connectionNum = 0;
+        Iterator<Integer> iterator = mReleasingTasks.values().iterator();
+        while (iterator.hasNext()) {
+            connectionNum += iterator.next();
+        }
+        return connectionNum;
+    }
+
+    /**
+     * 获取优先级最低、最晚添加的正在下载的任务
+     *
+     * @return
+     */
+    private DownloadTaskThreadManager getLowestRunningTask() {
+        DownloadTaskThreadManager lowestTask = null;
+        for (int i = 0; i < mRunningTasks.size(); i++) {
+            DownloadTaskThreadManager temp = mRunningTasks.get(i);
+            if (lowestTask == null || temp.getPriority() > lowestTask.getPriority()
+                    || (temp.getPriority() == lowestTask.getPriority() && temp.getSubmitIndex() > lowestTask.getSubmitIndex())) {
+                lowestTask = temp;
+            }
+        }
+        return lowestTask;
+    }
+}
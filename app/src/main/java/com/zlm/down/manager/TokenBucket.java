@@ -0,0 +1,96 @@
+package com.zlm.down.manager;
+
+/**
+ * @Description: 令牌桶，用于限制下载速度
+ * 令牌按速度持续生成，最多积累1秒的令牌；速度小于等于0时不限速
+ * @author: zhangliangming
+ * @date: 2019-04-23 21:10
+ **/
+public class TokenBucket {
+
+    /**
+     * 速度（字节/秒）
+     */
+    private long mRate;
+
+    /**
+     * 当前令牌数，小于0时表示已预支的令牌
+     */
+    private double mTokens;
+
+    /**
+     * 上次生成令牌的时间
+     */
+    private long mLastTime = System.nanoTime();
+
+    public TokenBucket(long rate) {
+        setRate(rate);
+    }
+
+    /**
+     * 设置速度，下载过程中可随时修改
+     *
+     * @param rate 字节/秒，小于等于0时不限速
+     */
+    public synchronized void setRate(long rate) {
+        refill();
+        this.mRate = rate;
+        if (rate > 0) {
+            mTokens = Math.min(mTokens, rate);
+        } else {
+            mTokens = 0;
+        }
+    }
+
+    public synchronized long getRate() {
+        return mRate;
+    }
+
+    /**
+     * 获取令牌，令牌不足时等待
+     *
+     * @param size 字节数
+     * @throws InterruptedException
+     */
+    public void acquire(int size) throws InterruptedException {
+        long waitTime;
+        synchronized (this) {
+            if (mRate <= 0) {
+                return;
+            }
+            refill();
+            mTokens -= size;
+            if (mTokens >= 0) {
+                return;
+            }
+            waitTime = (long) (-mTokens * 1000 / mRate);
+        }
+        if (waitTime > 0) {
+            Thread.sleep(waitTime);
+        }
+    }
+
+    /**
+     * 直接扣除令牌，不等待，其它获取令牌的线程需等待补足
+     *
+     * @param size 字节数
+     */
+    public synchronized void consume(int size) {
+        if (mRate <= 0) {
+            return;
+        }
+        refill();
+        mTokens -= size;
+    }
+
+    /**
+     * 按时间生成令牌
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        if (mRate > 0) {
+            mTokens = Math.min(mRate, mTokens + (now - mLastTime) * mRate / 1000000000.0);
+        }
+        mLastTime = now;
+    }
+}
@@ -0,0 +1,690 @@
+package com.zlm.down.thread;
+
+import com.zlm.down.entity.DownloadChunk;
+import com.zlm.down.entity.DownloadTask;
+import com.zlm.down.entity.DownloadThreadInfo;
+import com.zlm.down.interfaces.IDownloadThreadEvent;
+import com.zlm.hp.util.MD5Util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @Description: 下载分块调度器
+ * 文件被分成多个小分块放到共享队列中，下载线程依次领取；
+ * 队列为空时，空闲线程拆分剩余最多的分块，接管其后半部分，避免慢连接拖慢整个任务
+ * @author: zhangliangming
+ * @date: 2019-04-20 10:30
+ **/
+public class DownloadChunkScheduler {
+    /**
+     * 每个线程平均分配的分块数
+     */
+    private static final int CHUNK_NUM_PER_THREAD = 4;
+    /**
+     * 最小分块大小
+     */
+    private static final int MIN_CHUNK_SIZE = 512 * 1024;
+    /**
+     * 拆分后每个分块的最小剩余大小
+     */
+    private static final int MIN_SPLIT_SIZE = 256 * 1024;
+    /**
+     * 读取位置距离下载位置超过该大小时，直接从读取位置开始下载
+     */
+    private static final int MIN_SEEK_DISTANCE = 256 * 1024;
+
+    /**
+     * 任务
+     */
+    private DownloadTask mDownloadTask;
+    /**
+     * 线程下载任务回调，用于保存拆分后的区间
+     */
+    private IDownloadThreadEvent mIDownloadThreadEvent;
+    /**
+     * 所有分块，进度线程不加锁读取
+     */
+    private List<DownloadChunk> mDownloadChunks = new CopyOnWriteArrayList<DownloadChunk>();
+    /**
+     * 等待下载的分块
+     */
+    private LinkedList<DownloadChunk> mWaitChunks = new LinkedList<DownloadChunk>();
+    /**
+     * 正在下载的分块
+     */
+    private List<DownloadChunk> mRunningChunks = new ArrayList<DownloadChunk>();
+    /**
+     * 下一个分块id
+     */
+    private int mNextChunkId = 1;
+    /**
+     * 文件md5
+     */
+    private DownloadFileDigest mDownloadFileDigest;
+    /**
+     * 边下边播的读取位置，优先下载该位置之后的分块
+     */
+    private volatile long mReadPos = 0;
+    /**
+     * 边下边播等待数据的锁
+     */
+    private final Object mWaitLock = new Object();
+    /**
+     * 正在等待数据的读取个数
+     */
+    private volatile int mWaitingNum = 0;
+    /**
+     * 已下载区间的位图，为null时不记录
+     */
+    private DownloadRangeMap mDownloadRangeMap;
+    /**
+     * 优先下载的分块，例如mp4文件的moov
+     */
+    private LinkedList<DownloadChunk> mPriorityChunks = new LinkedList<DownloadChunk>();
+    /**
+     * 播放前需要下载完成的区间
+     */
+    private List<long[]> mHeaderRanges = new ArrayList<long[]>();
+
+    public DownloadChunkScheduler(DownloadTask downloadTask, long fileLength, List<DownloadThreadInfo> threadInfos, IDownloadThreadEvent downloadThreadEvent) {
+        this(downloadTask, fileLength, threadInfos, null, downloadThreadEvent);
+    }
+
+    public DownloadChunkScheduler(DownloadTask downloadTask, long fileLength, List<DownloadThreadInfo> threadInfos, DownloadRangeMap rangeMap, IDownloadThreadEvent downloadThreadEvent) {
+        this.mDownloadTask = downloadTask;
+        this.mIDownloadThreadEvent = downloadThreadEvent;
+        this.mDownloadFileDigest = new DownloadFileDigest(fileLength);
+        this.mDownloadRangeMap = rangeMap;
+        List<DownloadChunk> chunks = new ArrayList<DownloadChunk>();
+        if (threadInfos == null || threadInfos.size() == 0) {
+            initChunks(chunks, fileLength);
+        } else {
+            restoreChunks(chunks, fileLength, threadInfos);
+        }
+        if (rangeMap != null && !rangeMap.isEmpty()) {
+            //位图中已下载的部分不再下载
+            applyRangeMap(chunks);
+        }
+        //预加载只下载文件头部的分块，其它分块由边下边播继续下载
+        long prefetchSize = downloadTask.getPrefetchSize() > 0 ? downloadTask.getPrefetchSize() : fileLength;
+        for (int i = 0; i < chunks.size(); i++) {
+            DownloadChunk chunk = chunks.get(i);
+            if (!chunk.isFinish() && chunk.getStartPos() < prefetchSize) {
+                mWaitChunks.add(chunk);
+            }
+        }
+        mDownloadChunks.addAll(chunks);
+    }
+
+    /**
+     * 新任务，按线程数分成多个小分块
+     *
+     * @param chunks
+     * @param fileLength
+     */
+    private void initChunks(List<DownloadChunk> chunks, long fileLength) {
+        int threadNum = Math.max(1, mDownloadTask.getThreadNum());
+        //单线程时不需要拆分，顺序下载即可
+        int chunkNum = threadNum == 1 ? 1 : threadNum * CHUNK_NUM_PER_THREAD;
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, (fileLength + chunkNum - 1) / chunkNum);
+        for (long startPos = 0; startPos < fileLength; startPos += chunkSize) {
+            long endPos = Math.min(startPos + chunkSize, fileLength);
+            chunks.add(new DownloadChunk(mNextChunkId++, startPos, endPos, 0));
+        }
+    }
+
+    /**
+     * 断点续传，根据保存的区间恢复分块
+     *
+     * @param chunks
+     * @param fileLength
+     * @param threadInfos
+     */
+    private void restoreChunks(List<DownloadChunk> chunks, long fileLength, List<DownloadThreadInfo> threadInfos) {
+        int threadNum = Math.max(1, mDownloadTask.getThreadNum());
+        long avg = fileLength / threadNum;
+        for (int i = 0; i < threadInfos.size(); i++) {
+            DownloadThreadInfo threadInfo = threadInfos.get(i);
+            int threadId = threadInfo.getThreadId();
+            long startPos = threadInfo.getStartPos();
+            long endPos = threadInfo.getEndPos();
+            if (endPos <= 0) {
+                //旧版本按线程平均分配的区间
+                startPos = (threadId - 1) * avg;
+                endPos = threadId >= threadNum ? fileLength : startPos + avg;
+            }
+            DownloadChunk chunk = new DownloadChunk(threadId, startPos, endPos, threadInfo.getDownloadedSize());
+            if (chunk.isFinish()) {
+                chunk.setChecksum(threadInfo.getChecksum());
+            }
+            chunks.add(chunk);
+            mNextChunkId = Math.max(mNextChunkId, threadId + 1);
+        }
+        sortChunks(chunks);
+
+        //补充没有保存的区间，例如拆分分块时程序退出
+        List<DownloadChunk> gapChunks = new ArrayList<DownloadChunk>();
+        long coveredPos = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            DownloadChunk chunk = chunks.get(i);
+            if (chunk.getStartPos() > coveredPos) {
+                gapChunks.add(new DownloadChunk(mNextChunkId++, coveredPos, chunk.getStartPos(), 0));
+            }
+            coveredPos = Math.max(coveredPos, chunk.getEndPos());
+        }
+        if (coveredPos < fileLength) {
+            gapChunks.add(new DownloadChunk(mNextChunkId++, coveredPos, fileLength, 0));
+        }
+        if (gapChunks.size() > 0) {
+            chunks.addAll(gapChunks);
+            sortChunks(chunks);
+        }
+    }
+
+    /**
+     * 按位图调整未完成的分块：已下载的部分计入分块进度，
+     * 分块中间已下载的部分拆分成新分块，每个分块只下载缺少的部分
+     *
+     * @param chunks
+     */
+    private void applyRangeMap(List<DownloadChunk> chunks) {
+        List<DownloadChunk> newChunks = new ArrayList<DownloadChunk>();
+        for (int i = 0; i < chunks.size(); i++) {
+            DownloadChunk chunk = chunks.get(i);
+            if (chunk.isFinish()) {
+                continue;
+            }
+            long endPos = chunk.getEndPos();
+            long presentPos = Math.min(endPos, mDownloadRangeMap.getContiguousEnd(chunk.getCurPos()));
+            long holeEndPos = Math.min(endPos, mDownloadRangeMap.getNextPresent(presentPos));
+            if (presentPos == chunk.getCurPos() && holeEndPos == endPos) {
+                continue;
+            }
+            chunk.setDownloadedSize(presentPos - chunk.getStartPos());
+            chunk.setEndPos(holeEndPos);
+            if (mIDownloadThreadEvent != null) {
+                mIDownloadThreadEvent.taskThreadDownloading(mDownloadTask, chunk.toThreadInfo(mDownloadTask));
+            }
+            //剩余部分按“已下载+未下载”拆分
+            long pos = holeEndPos;
+            while (pos < endPos) {
+                presentPos = Math.min(endPos, mDownloadRangeMap.getContiguousEnd(pos));
+                holeEndPos = Math.min(endPos, mDownloadRangeMap.getNextPresent(presentPos));
+                DownloadChunk newChunk = new DownloadChunk(mNextChunkId++, pos, holeEndPos, presentPos - pos);
+                newChunks.add(newChunk);
+                if (mIDownloadThreadEvent != null) {
+                    mIDownloadThreadEvent.taskThreadDownloading(mDownloadTask, newChunk.toThreadInfo(mDownloadTask));
+                }
+                pos = holeEndPos;
+            }
+        }
+        if (newChunks.size() > 0) {
+            chunks.addAll(newChunks);
+            sortChunks(chunks);
+        }
+    }
+
+    /**
+     * 按开始位置排序，保证文件头部优先下载
+     *
+     * @param chunks
+     */
+    private void sortChunks(List<DownloadChunk> chunks) {
+        Collections.sort(chunks, new Comparator<DownloadChunk>() {
+            @Override
+            public int compare(DownloadChunk o1, DownloadChunk o2) {
+                return o1.getStartPos() < o2.getStartPos() ? -1 : (o1.getStartPos() == o2.getStartPos() ? 0 : 1);
+            }
+        });
+    }
+
+    /**
+     * 领取下一个分块，队列为空时拆分剩余最多的分块
+     *
+     * @return 没有可下载的分块时返回null
+     */
+    public synchronized DownloadChunk nextChunk() {
+        DownloadChunk chunk = pollWaitChunk();
+        if (chunk != null) {
+            mRunningChunks.add(chunk);
+            return chunk;
+        }
+
+        //找出剩余最多的分块，正在写入的数据不能被拆分
+        DownloadChunk slowChunk = null;
+        long slowRemainSize = 0;
+        for (int i = 0; i < mRunningChunks.size(); i++) {
+            DownloadChunk temp = mRunningChunks.get(i);
+            long remainSize = temp.getEndPos() - temp.getSplitStartPos();
+            if (slowChunk == null || remainSize > slowRemainSize) {
+                slowChunk = temp;
+                slowRemainSize = remainSize;
+            }
+        }
+        if (slowChunk == null || slowRemainSize < MIN_SPLIT_SIZE * 2) {
+            return null;
+        }
+
+        chunk = splitChunk(slowChunk, slowChunk.getSplitStartPos() + slowRemainSize / 2);
+        mRunningChunks.add(chunk);
+        return chunk;
+    }
+
+    /**
+     * 从等待队列中领取分块，优先领取读取位置所在及之后的分块
+     *
+     * @return
+     */
+    private DownloadChunk pollWaitChunk() {
+        if (!mPriorityChunks.isEmpty()) {
+            return mPriorityChunks.poll();
+        }
+        long readPos = mReadPos;
+        Iterator<DownloadChunk> iterator = mWaitChunks.iterator();
+        while (iterator.hasNext()) {
+            DownloadChunk chunk = iterator.next();
+            if (chunk.getEndPos() > readPos) {
+                iterator.remove();
+                return chunk;
+            }
+        }
+        return mWaitChunks.poll();
+    }
+
+    /**
+     * 领取本次写入的长度：加锁读取分块当前的结束位置，并记录写入的结束位置，
+     * 写入和计算md5期间拆分分块不会小于该位置，写入的数据不会超出分块
+     *
+     * @param chunk
+     * @param length 读取到的数据长度
+     * @return 可以写入的长度
+     */
+    public synchronized int reserveWrite(DownloadChunk chunk, int length) {
+        int writeLength = (int) Math.min(length, chunk.getRemainSize());
+        chunk.setWritingPos(chunk.getCurPos() + writeLength);
+        return writeLength;
+    }
+
+    /**
+     * 分块下载完成
+     *
+     * @param chunk
+     */
+    public synchronized void finishChunk(DownloadChunk chunk) {
+        chunk.setDownloadedSize(chunk.getEndPos() - chunk.getStartPos());
+        mRunningChunks.remove(chunk);
+        if (mDownloadRangeMap != null) {
+            mDownloadRangeMap.addRange(chunk.getStartPos(), chunk.getEndPos());
+        }
+    }
+
+    /**
+     * 下载线程减少时放回未下载完成的分块，由其它线程继续下载
+     *
+     * @param chunk
+     */
+    public synchronized void releaseChunk(DownloadChunk chunk) {
+        if (!mRunningChunks.remove(chunk) || chunk.isFinish()) {
+            return;
+        }
+        mWaitChunks.add(chunk);
+        sortChunks(mWaitChunks);
+        if (mIDownloadThreadEvent != null) {
+            mIDownloadThreadEvent.taskThreadDownloading(mDownloadTask, chunk.toThreadInfo(mDownloadTask));
+        }
+    }
+
+    /**
+     * 是否还有可以分给新线程的分块
+     *
+     * @return
+     */
+    public synchronized boolean hasMoreChunk() {
+        if (!mWaitChunks.isEmpty() || !mPriorityChunks.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < mRunningChunks.size(); i++) {
+            if (mRunningChunks.get(i).getRemainSize() >= MIN_SPLIT_SIZE * 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 回调正在下载的分块进度，只回调有变化的分块；
+     * 与拆分、完成分块互斥，保证保存的区间和进度不会被旧数据覆盖
+     */
+    public synchronized void notifyRunningChunks() {
+        for (int i = 0; i < mRunningChunks.size(); i++) {
+            DownloadChunk chunk = mRunningChunks.get(i);
+            long downloadedSize = chunk.getDownloadedSize();
+            if (downloadedSize != chunk.getNotifiedSize()) {
+                chunk.setNotifiedSize(downloadedSize);
+                if (mDownloadRangeMap != null) {
+                    mDownloadRangeMap.addRange(chunk.getStartPos(), chunk.getStartPos() + downloadedSize);
+                }
+                if (mIDownloadThreadEvent != null) {
+                    mIDownloadThreadEvent.taskThreadDownloading(mDownloadTask, chunk.toThreadInfo(mDownloadTask));
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录正在下载的分块进度并保存位图，由进度定时器和暂停任务时调用
+     */
+    public void saveRangeMap() {
+        DownloadRangeMap rangeMap = mDownloadRangeMap;
+        if (rangeMap == null) {
+            return;
+        }
+        synchronized (this) {
+            for (int i = 0; i < mRunningChunks.size(); i++) {
+                DownloadChunk chunk = mRunningChunks.get(i);
+                rangeMap.addRange(chunk.getStartPos(), chunk.getCurPos());
+            }
+        }
+        rangeMap.save(mDownloadTask.getTaskTempPath());
+    }
+
+    public DownloadRangeMap getDownloadRangeMap() {
+        return mDownloadRangeMap;
+    }
+
+    /**
+     * 获取任务的总下载进度，不加锁，只读取各分块的进度
+     *
+     * @return
+     */
+    public long getDownloadedSize() {
+        long downloadedSize = 0;
+        for (DownloadChunk chunk : mDownloadChunks) {
+            downloadedSize += chunk.getDownloadedSize();
+        }
+        return downloadedSize;
+    }
+
+    /**
+     * 断点续传时校验已下载完成的分块，md5不一致的分块重新下载
+     *
+     * @param filePath
+     * @return 需要重新下载的分块个数
+     */
+    public int verifyChunks(String filePath) {
+        List<DownloadChunk> finishChunks = new ArrayList<DownloadChunk>();
+        for (DownloadChunk chunk : mDownloadChunks) {
+            if (chunk.isFinish() && chunk.getChecksum() != null) {
+                finishChunks.add(chunk);
+            }
+        }
+        if (finishChunks.isEmpty()) {
+            return 0;
+        }
+        List<DownloadChunk> corruptChunks = new ArrayList<DownloadChunk>();
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(filePath, "r");
+            for (int i = 0; i < finishChunks.size(); i++) {
+                DownloadChunk chunk = finishChunks.get(i);
+                MessageDigest digest = DownloadFileDigest.createDigest();
+                if (digest == null) {
+                    return 0;
+                }
+                DownloadFileDigest.update(digest, file, chunk.getStartPos(), chunk.getEndPos());
+                if (!chunk.getChecksum().equals(MD5Util.toMd5String(digest.digest()))) {
+                    corruptChunks.add(chunk);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            //文件读取失败，全部重新下载
+            corruptChunks = finishChunks;
+        } finally {
+            if (file != null)
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+        }
+        synchronized (this) {
+            for (int i = 0; i < corruptChunks.size(); i++) {
+                DownloadChunk chunk = corruptChunks.get(i);
+                chunk.setDownloadedSize(0);
+                chunk.setChecksum(null);
+                if (mDownloadRangeMap != null) {
+                    mDownloadRangeMap.removeRange(chunk.getStartPos(), chunk.getEndPos());
+                }
+                mWaitChunks.add(chunk);
+                if (mIDownloadThreadEvent != null) {
+                    mIDownloadThreadEvent.taskThreadDownloading(mDownloadTask, chunk.toThreadInfo(mDownloadTask));
+                }
+            }
+            sortChunks(mWaitChunks);
+        }
+        return corruptChunks.size();
+    }
+
+    /**
+     * 文件md5补充计算到已连续下载的位置，分块下载完成后调用
+     */
+    public void updateFileDigest() {
+        long writtenPos = getContiguousPos(mDownloadFileDigest.getPosition());
+        mDownloadFileDigest.catchUp(mDownloadTask.getTaskTempPath(), writtenPos);
+    }
+
+    /**
+     * 播放位置跳转：读取位置离下载位置较远时，从读取位置拆分出新分块优先下载，
+     * 原分块继续下载中间的部分
+     *
+     * @param pos
+     * @return 是否拆分出新分块，需要新的连接下载
+     */
+    public synchronized boolean seekTo(long pos) {
+        mReadPos = pos;
+        for (int i = 0; i < mDownloadChunks.size(); i++) {
+            DownloadChunk chunk = mDownloadChunks.get(i);
+            if (chunk.getStartPos() <= pos && pos < chunk.getEndPos()) {
+                if (chunk.isFinish() || pos < chunk.getSplitStartPos() + MIN_SEEK_DISTANCE) {
+                    //已下载或者很快就会下载到
+                    return false;
+                }
+                mWaitChunks.add(splitChunk(chunk, pos));
+                sortChunks(mWaitChunks);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 区间优先下载，并作为开始播放前需要下载完成的区间：
+     * 在区间的开始和结束位置拆分等待中的分块，区间内的分块放到优先队列
+     *
+     * @param startPos
+     * @param endPos   不包含
+     */
+    public synchronized void prioritize(long startPos, long endPos) {
+        mHeaderRanges.add(new long[]{startPos, endPos});
+        splitWaitChunk(startPos);
+        splitWaitChunk(endPos);
+        Iterator<DownloadChunk> iterator = mWaitChunks.iterator();
+        while (iterator.hasNext()) {
+            DownloadChunk chunk = iterator.next();
+            if (chunk.getStartPos() >= startPos && chunk.getEndPos() <= endPos) {
+                iterator.remove();
+                mPriorityChunks.add(chunk);
+            }
+        }
+    }
+
+    /**
+     * 在pos处拆分分块，pos之后的部分成为新分块；
+     * 先保存缩小后的区间，再保存新区间，保证断点续传时区间不重叠
+     *
+     * @param chunk
+     * @param pos
+     * @return 新分块，还未加入等待或者下载中的队列
+     */
+    private DownloadChunk splitChunk(DownloadChunk chunk, long pos) {
+        DownloadChunk newChunk = new DownloadChunk(mNextChunkId++, pos, chunk.getEndPos(), 0);
+        chunk.setEndPos(pos);
+        mDownloadChunks.add(newChunk);
+        if (mIDownloadThreadEvent != null) {
+            mIDownloadThreadEvent.taskThreadDownloading(mDownloadTask, chunk.toThreadInfo(mDownloadTask));
+            mIDownloadThreadEvent.taskThreadDownloading(mDownloadTask, newChunk.toThreadInfo(mDownloadTask));
+        }
+        return newChunk;
+    }
+
+    /**
+     * 在pos处拆分等待中的分块，已下载到pos之后的分块不需要拆分
+     *
+     * @param pos
+     */
+    private void splitWaitChunk(long pos) {
+        for (int i = 0; i < mWaitChunks.size(); i++) {
+            DownloadChunk chunk = mWaitChunks.get(i);
+            if (chunk.getCurPos() < pos && pos < chunk.getEndPos()) {
+                mWaitChunks.add(i + 1, splitChunk(chunk, pos));
+                return;
+            }
+        }
+    }
+
+    /**
+     * 优先下载的区间是否都已下载完成
+     *
+     * @return 没有优先下载的区间时返回false
+     */
+    public synchronized boolean isHeaderReady() {
+        if (mHeaderRanges.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < mHeaderRanges.size(); i++) {
+            long[] range = mHeaderRanges.get(i);
+            if (getContiguousPos(range[0]) < range[1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 等待pos开始的数据下载完成，供边下边播读取
+     *
+     * @param pos
+     * @param timeout 最长等待时间
+     * @return pos开始已连续下载的大小，超时返回0
+     * @throws InterruptedException
+     */
+    public long waitForData(long pos, long timeout) throws InterruptedException {
+        return waitForData(pos, timeout, true);
+    }
+
+    /**
+     * 等待pos开始的数据下载完成，供边下边播读取
+     *
+     * @param pos
+     * @param timeout          最长等待时间
+     * @param isUpdateReadPos 是否将pos作为分块的优先位置，播放器已发起新的请求时旧连接不再更新
+     * @return pos开始已连续下载的大小，超时返回0
+     * @throws InterruptedException
+     */
+    public long waitForData(long pos, long timeout, boolean isUpdateReadPos) throws InterruptedException {
+        if (isUpdateReadPos) {
+            mReadPos = pos;
+        }
+        long availableSize = getContiguousPos(pos) - pos;
+        if (availableSize > 0 || timeout <= 0) {
+            return availableSize;
+        }
+        synchronized (mWaitLock) {
+            mWaitingNum++;
+            try {
+                //加锁后再判断一次，避免错过写入后的通知
+                if (getContiguousPos(pos) - pos <= 0) {
+                    mWaitLock.wait(timeout);
+                }
+            } finally {
+                mWaitingNum--;
+            }
+        }
+        return getContiguousPos(pos) - pos;
+    }
+
+    /**
+     * 数据写入文件后通知等待的读取，没有等待时不加锁
+     */
+    public void notifyDataWritten() {
+        if (mWaitingNum == 0) {
+            return;
+        }
+        synchronized (mWaitLock) {
+            mWaitLock.notifyAll();
+        }
+    }
+
+    /**
+     * 获取从pos开始已连续下载的位置
+     *
+     * @param pos
+     * @return
+     */
+    private synchronized long getContiguousPos(long pos) {
+        boolean isFound = true;
+        while (isFound) {
+            isFound = false;
+            for (int i = 0; i < mDownloadChunks.size(); i++) {
+                DownloadChunk chunk = mDownloadChunks.get(i);
+                if (chunk.getStartPos() <= pos && pos < chunk.getEndPos()) {
+                    if (!chunk.isFinish()) {
+                        return Math.max(pos, chunk.getCurPos());
+                    }
+                    pos = chunk.getEndPos();
+                    isFound = true;
+                    break;
+                }
+            }
+        }
+        return pos;
+    }
+
+    public DownloadFileDigest getDownloadFileDigest() {
+        return mDownloadFileDigest;
+    }
+
+    /**
+     * 预加载的文件头部是否下载完成
+     *
+     * @return
+     */
+    public synchronized boolean isPrefetchFinish() {
+        return mDownloadTask.getPrefetchSize() > 0 && mWaitChunks.isEmpty() && mPriorityChunks.isEmpty() && mRunningChunks.isEmpty();
+    }
+
+    /**
+     * 所有分块是否下载完成
+     *
+     * @return
+     */
+    public synchronized boolean isFinish() {
+        for (int i = 0; i < mDownloadChunks.size(); i++) {
+            if (!mDownloadChunks.get(i).isFinish()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
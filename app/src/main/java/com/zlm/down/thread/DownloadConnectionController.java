@@ -0,0 +1,145 @@
+package com.zlm.down.thread;
+
+/**
+ * @Description: 下载连接数调节
+ * 从较少的连接开始，定时测量下载速度：增加连接后速度明显提升则继续增加，否则回退一个连接并保持；
+ * 保持期间速度明显下降时减少连接，一段时间后重新尝试增加
+ * @author: zhangliangming
+ * @date: 2019-04-26 21:05
+ **/
+public class DownloadConnectionController {
+
+    /**
+     * 测量间隔
+     */
+    public static final int ADJUST_INTERVAL = 3 * 1000;
+    /**
+     * 增加连接后速度至少提升的比例
+     */
+    private static final float GROW_RATIO = 1.1f;
+    /**
+     * 速度下降到该比例以下时减少连接
+     */
+    private static final float SHRINK_RATIO = 0.5f;
+    /**
+     * 保持多少个测量间隔后重新尝试增加连接
+     */
+    private static final int REPROBE_COUNT = 10;
+
+    /**
+     * 最大连接数
+     */
+    private int mMaxNum;
+    /**
+     * 当前连接数
+     */
+    private int mConnectionNum;
+
+    /**
+     * 上次测量的时间和已下载大小
+     */
+    private long mLastTime = -1;
+    private long mLastSize;
+    /**
+     * 上次测量的速度
+     */
+    private float mLastSpeed;
+
+    /**
+     * 是否正在尝试增加连接
+     */
+    private boolean isGrowing = true;
+    /**
+     * 保持的测量次数
+     */
+    private int mStableCount;
+
+    public DownloadConnectionController(int initNum, int maxNum) {
+        this.mMaxNum = Math.max(1, maxNum);
+        this.mConnectionNum = Math.max(1, Math.min(initNum, mMaxNum));
+    }
+
+    /**
+     * 测量下载速度，由进度定时器调用
+     *
+     * @param time           当前时间
+     * @param downloadedSize 任务已下载大小
+     * @return 连接数的变化，1为增加一个连接，-1为减少一个连接，0为不变
+     */
+    public int update(long time, long downloadedSize) {
+        if (mLastTime < 0) {
+            mLastTime = time;
+            mLastSize = downloadedSize;
+            return 0;
+        }
+        if (time - mLastTime < ADJUST_INTERVAL) {
+            return 0;
+        }
+        float speed = (downloadedSize - mLastSize) * 1000f / (time - mLastTime);
+        mLastTime = time;
+        mLastSize = downloadedSize;
+
+        if (isGrowing) {
+            if (mLastSpeed > 0 && speed < mLastSpeed * GROW_RATIO) {
+                //增加的连接没有明显提速，已达到饱和，回退一个连接
+                isGrowing = false;
+                mStableCount = 0;
+                mLastSpeed = speed;
+                if (mConnectionNum > 1) {
+                    mConnectionNum--;
+                    return -1;
+                }
+                return 0;
+            }
+            mLastSpeed = speed;
+            if (mConnectionNum < mMaxNum) {
+                mConnectionNum++;
+                return 1;
+            }
+            isGrowing = false;
+            mStableCount = 0;
+            return 0;
+        }
+
+        if (speed < mLastSpeed * SHRINK_RATIO && mConnectionNum > 1) {
+            //网络变差，减少连接
+            mConnectionNum--;
+            mLastSpeed = speed;
+            mStableCount = 0;
+            return -1;
+        }
+        if (++mStableCount >= REPROBE_COUNT && mConnectionNum < mMaxNum) {
+            //重新尝试增加连接
+            isGrowing = true;
+            mStableCount = 0;
+            mLastSpeed = speed;
+            mConnectionNum++;
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * 无法增加连接，例如全局连接数已用完
+     */
+    public void rejectGrow() {
+        if (mConnectionNum > 1) {
+            mConnectionNum--;
+        }
+        isGrowing = false;
+        mStableCount = 0;
+    }
+
+    public int getConnectionNum() {
+        return mConnectionNum;
+    }
+
+    /**
+     * 是否已找到合适的连接数
+     *
+     * @return
+     */
+    public boolean isStable() {
+        return !isGrowing;
+    }
+}
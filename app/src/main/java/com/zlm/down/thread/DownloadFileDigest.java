@@ -0,0 +1,138 @@
+package com.zlm.down.thread;
+
+import com.zlm.hp.util.MD5Util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+
+/**
+ * @Description: 下载文件md5
+ * md5只能按顺序计算：下载线程写入的数据正好在已计算位置时直接计算；
+ * 其它线程先下载的数据，等前面的数据下载完成后从文件中补充计算。
+ * 任务完成时即可得到整个文件的md5，不需要再读取一遍文件
+ * @author: zhangliangming
+ * @date: 2019-04-24 21:15
+ **/
+public class DownloadFileDigest {
+
+    /**
+     * 读取文件的缓存大小
+     */
+    private static final int BUFF_LENGTH = 1024 * 64;
+
+    private MessageDigest mDigest;
+    /**
+     * 已计算的位置
+     */
+    private long mPosition = 0;
+    /**
+     * 文件大小
+     */
+    private long mFileLength;
+    /**
+     * 文件md5
+     */
+    private String mMd5;
+
+    public DownloadFileDigest(long fileLength) {
+        this.mFileLength = fileLength;
+        mDigest = createDigest();
+    }
+
+    /**
+     * 下载线程写入数据后调用
+     *
+     * @param pos  数据在文件中的位置
+     * @param buff
+     * @param off
+     * @param len
+     */
+    public synchronized void update(long pos, byte[] buff, int off, int len) {
+        if (mDigest == null || pos != mPosition) {
+            return;
+        }
+        mDigest.update(buff, off, len);
+        mPosition += len;
+    }
+
+    public synchronized long getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * 从文件中补充计算到已连续下载的位置
+     *
+     * @param filePath
+     * @param writtenPos 已连续下载的位置
+     */
+    public synchronized void catchUp(String filePath, long writtenPos) {
+        if (mDigest == null || writtenPos <= mPosition) {
+            return;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(filePath, "r");
+            update(mDigest, file, mPosition, writtenPos);
+            mPosition = writtenPos;
+        } catch (Exception e) {
+            e.printStackTrace();
+            //读取失败，无法得到文件md5
+            mDigest = null;
+        } finally {
+            if (file != null)
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+        }
+    }
+
+    /**
+     * 获取文件md5
+     *
+     * @return 文件未下载完成时返回null
+     */
+    public synchronized String getMd5() {
+        if (mMd5 == null && mDigest != null && mPosition >= mFileLength) {
+            mMd5 = MD5Util.toMd5String(mDigest.digest());
+        }
+        return mMd5;
+    }
+
+    /**
+     * @return
+     */
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 计算文件区间[startPos, endPos)
+     *
+     * @param digest
+     * @param file
+     * @param startPos
+     * @param endPos
+     * @throws IOException
+     */
+    public static void update(MessageDigest digest, RandomAccessFile file, long startPos, long endPos) throws IOException {
+        byte[] buff = new byte[BUFF_LENGTH];
+        file.seek(startPos);
+        long pos = startPos;
+        while (pos < endPos) {
+            int length = file.read(buff, 0, (int) Math.min(buff.length, endPos - pos));
+            if (length <= 0) {
+                throw new IOException("unexpected end of file");
+            }
+            digest.update(buff, 0, length);
+            pos += length;
+        }
+    }
+}
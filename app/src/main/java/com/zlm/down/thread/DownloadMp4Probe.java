@@ -0,0 +1,220 @@
+package com.zlm.down.thread;
+
+import com.zlm.hp.http.HttpConnectionManager;
+import com.zlm.hp.util.HttpUtil;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @Description: mp4文件结构探测
+ * 依次读取顶层box的头部，找出文件类型（ftyp）和索引（moov）所在的区间；
+ * moov在文件末尾时，播放器需要先读取moov才能开始播放，这些区间需要优先下载
+ * @author: zhangliangming
+ * @date: 2019-05-03 20:10
+ **/
+public class DownloadMp4Probe {
+
+    /**
+     * 每次读取的大小，相邻的小box只需读取一次
+     */
+    private static final int READ_SIZE = 4 * 1024;
+    /**
+     * box头部大小，包括64位的长度
+     */
+    private static final int HEADER_SIZE = 16;
+    /**
+     * 最多读取的box个数，避免异常文件一直读取
+     */
+    private static final int MAX_BOX_NUM = 32;
+    private static final int CONNECTTIME = 10 * 1000;
+    private static final int READTIME = 10 * 1000;
+
+    private static final String TYPE_FTYP = "ftyp";
+    private static final String TYPE_MOOV = "moov";
+
+    /**
+     * 读取数据
+     */
+    private RangeReader mRangeReader;
+
+    /**
+     * 已读取的数据
+     */
+    private byte[] mBuff = new byte[READ_SIZE];
+    /**
+     * 已读取数据的开始位置
+     */
+    private long mBuffPos = -1;
+    /**
+     * 已读取数据的长度
+     */
+    private int mBuffLength = 0;
+
+    public DownloadMp4Probe(RangeReader rangeReader) {
+        this.mRangeReader = rangeReader;
+    }
+
+    /**
+     * 探测需要优先下载的区间
+     *
+     * @param fileLength
+     * @return ftyp和moov的区间{开始位置, 结束位置（不包含）}，不是mp4文件或者没有找到moov时返回null
+     */
+    public List<long[]> probe(long fileLength) {
+        List<long[]> ranges = new ArrayList<long[]>();
+        long pos = 0;
+        try {
+            for (int i = 0; i < MAX_BOX_NUM && pos + 8 <= fileLength; i++) {
+                if (!fill(pos, fileLength)) {
+                    return null;
+                }
+                int offset = (int) (pos - mBuffPos);
+                long size = readUInt32(offset);
+                String type = readType(offset + 4);
+                if (type == null) {
+                    return null;
+                }
+                if (size == 1) {
+                    //64位长度
+                    if (mBuffLength - offset < HEADER_SIZE) {
+                        return null;
+                    }
+                    size = (readUInt32(offset + 8) << 32) | readUInt32(offset + 12);
+                } else if (size == 0) {
+                    //一直到文件结尾
+                    size = fileLength - pos;
+                }
+                if (size < 8 || pos + size > fileLength) {
+                    return null;
+                }
+                if (i == 0 && !TYPE_FTYP.equals(type)) {
+                    //mp4文件以ftyp开头
+                    return null;
+                }
+                if (TYPE_FTYP.equals(type) || TYPE_MOOV.equals(type)) {
+                    ranges.add(new long[]{pos, pos + size});
+                }
+                if (TYPE_MOOV.equals(type)) {
+                    return ranges;
+                }
+                pos += size;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 保证pos开始的box头部已读取
+     *
+     * @param pos
+     * @param fileLength
+     * @return
+     * @throws Exception
+     */
+    private boolean fill(long pos, long fileLength) throws Exception {
+        long headerEnd = Math.min(pos + HEADER_SIZE, fileLength);
+        if (mBuffPos >= 0 && pos >= mBuffPos && headerEnd <= mBuffPos + mBuffLength) {
+            return true;
+        }
+        int length = (int) Math.min(mBuff.length, fileLength - pos);
+        int readLength = 0;
+        while (readLength < length) {
+            int temp = mRangeReader.read(pos + readLength, mBuff, readLength, length - readLength);
+            if (temp <= 0) {
+                break;
+            }
+            readLength += temp;
+        }
+        mBuffPos = pos;
+        mBuffLength = readLength;
+        return readLength >= 8;
+    }
+
+    /**
+     * @param offset
+     * @return
+     */
+    private long readUInt32(int offset) {
+        return ((mBuff[offset] & 0xffL) << 24) | ((mBuff[offset + 1] & 0xffL) << 16)
+                | ((mBuff[offset + 2] & 0xffL) << 8) | (mBuff[offset + 3] & 0xffL);
+    }
+
+    /**
+     * @param offset
+     * @return 不是可见字符时返回null
+     */
+    private String readType(int offset) {
+        char[] chars = new char[4];
+        for (int i = 0; i < chars.length; i++) {
+            int c = mBuff[offset + i] & 0xff;
+            if (c < 0x20 || c > 0x7e) {
+                return null;
+            }
+            chars[i] = (char) c;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 读取数据
+     */
+    public interface RangeReader {
+        /**
+         * 从pos开始读取数据
+         *
+         * @param pos
+         * @param buff
+         * @param offset
+         * @param length
+         * @return 读取的长度，没有数据时返回-1
+         * @throws Exception
+         */
+        int read(long pos, byte[] buff, int offset, int length) throws Exception;
+    }
+
+    /**
+     * 通过Range请求读取网络文件
+     */
+    public static class HttpRangeReader implements RangeReader {
+
+        private String mUrl;
+
+        public HttpRangeReader(String url) {
+            this.mUrl = url;
+        }
+
+        @Override
+        public int read(long pos, byte[] buff, int offset, int length) throws Exception {
+            HttpURLConnection conn = HttpConnectionManager.openConnection(mUrl);
+            conn.setConnectTimeout(CONNECTTIME);
+            conn.setReadTimeout(READTIME);
+            HttpUtil.seURLConnectiontHeader(conn);
+            conn.setRequestProperty("Range", "bytes=" + pos + "-" + (pos + length - 1));
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                //不支持Range请求
+                conn.disconnect();
+                return -1;
+            }
+            InputStream inputStream = conn.getInputStream();
+            int readLength = 0;
+            try {
+                while (readLength < length) {
+                    int temp = inputStream.read(buff, offset + readLength, length - readLength);
+                    if (temp <= 0) {
+                        break;
+                    }
+                    readLength += temp;
+                }
+            } finally {
+                //连接回到连接池，下载线程继续复用
+                HttpConnectionManager.release(conn, inputStream);
+            }
+            return readLength > 0 ? readLength : -1;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.zlm.down.thread;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @Description: 下载进度定时器
+ * 所有下载任务共用一个线程，按固定间隔读取各分块的进度并回调，
+ * 代替每个下载线程和每个任务各自的进度线程
+ * @author: zhangliangming
+ * @date: 2019-04-21 15:40
+ **/
+public class DownloadProgressTicker {
+
+    /**
+     * 默认回调间隔
+     */
+    public static final int DEFAULT_INTERVAL = 1000;
+
+    private static DownloadProgressTicker _DownloadProgressTicker;
+
+    /**
+     * 子线程用于定时回调进度
+     */
+    private Handler mWorkerHandler;
+    //创建异步HandlerThread
+    private HandlerThread mHandlerThread;
+
+    /**
+     * 回调间隔
+     */
+    private volatile int mInterval = DEFAULT_INTERVAL;
+
+    /**
+     * 正在下载的任务
+     */
+    private List<DownloadTaskThreadManager> mDownloadTaskThreadManagers = new CopyOnWriteArrayList<DownloadTaskThreadManager>();
+
+    /**
+     * 是否正在定时
+     */
+    private boolean isTicking = false;
+
+    private DownloadProgressTicker() {
+        //创建异步HandlerThread
+        mHandlerThread = new HandlerThread("downloadProgressTickerThread", Process.THREAD_PRIORITY_BACKGROUND);
+        //必须先开启线程
+        mHandlerThread.start();
+        //子线程Handler
+        mWorkerHandler = new Handler(mHandlerThread.getLooper());
+    }
+
+    public static DownloadProgressTicker getInstance() {
+        if (_DownloadProgressTicker == null) {
+            synchronized (DownloadProgressTicker.class) {
+                if (_DownloadProgressTicker == null) {
+                    _DownloadProgressTicker = new DownloadProgressTicker();
+                }
+            }
+        }
+        return _DownloadProgressTicker;
+    }
+
+    /**
+     * 定时回调所有任务的进度
+     */
+    private Runnable mTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            for (DownloadTaskThreadManager downloadTaskThreadManager : mDownloadTaskThreadManagers) {
+                downloadTaskThreadManager.notifyProgress();
+            }
+            synchronized (DownloadProgressTicker.this) {
+                if (mDownloadTaskThreadManagers.isEmpty()) {
+                    //没有下载任务时停止定时
+                    isTicking = false;
+                    return;
+                }
+            }
+            mWorkerHandler.postDelayed(this, mInterval);
+        }
+    };
+
+    /**
+     * 添加任务
+     *
+     * @param downloadTaskThreadManager
+     */
+    public void register(DownloadTaskThreadManager downloadTaskThreadManager) {
+        synchronized (this) {
+            mDownloadTaskThreadManagers.add(downloadTaskThreadManager);
+            if (isTicking) {
+                return;
+            }
+            isTicking = true;
+        }
+        mWorkerHandler.postDelayed(mTickRunnable, mInterval);
+    }
+
+    /**
+     * 移除任务
+     *
+     * @param downloadTaskThreadManager
+     */
+    public synchronized void unregister(DownloadTaskThreadManager downloadTaskThreadManager) {
+        mDownloadTaskThreadManagers.remove(downloadTaskThreadManager);
+    }
+
+    /**
+     * 设置回调间隔
+     *
+     * @param interval 毫秒
+     */
+    public void setInterval(int interval) {
+        this.mInterval = Math.max(100, interval);
+    }
+
+    public int getInterval() {
+        return mInterval;
+    }
+}
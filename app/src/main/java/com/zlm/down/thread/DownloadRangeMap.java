@@ -0,0 +1,287 @@
+package com.zlm.down.thread;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * @Description: 文件已下载区间的位图
+ * 文件按固定大小分成多个块，块完整下载后置位；位图保存在文件旁边的.map文件中，
+ * 数据库中的区间丢失或者分块被拆分后，断点续传时仍然只下载缺少的部分
+ * @author: zhangliangming
+ * @date: 2019-05-02 20:40
+ **/
+public class DownloadRangeMap {
+
+    /**
+     * 位图文件后缀
+     */
+    public static final String MAP_EXT = ".map";
+    /**
+     * 默认块大小
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    /**
+     * 文件标识
+     */
+    private static final int MAGIC = 0x48505247;
+    private static final int VERSION = 1;
+
+    /**
+     * 文件长度
+     */
+    private long mFileLength;
+    /**
+     * 块大小
+     */
+    private int mBlockSize;
+    /**
+     * 块个数
+     */
+    private int mBlockNum;
+    /**
+     * 已下载的块
+     */
+    private BitSet mBlocks;
+    /**
+     * 是否有未保存的修改
+     */
+    private boolean isDirty = false;
+
+    public DownloadRangeMap(long fileLength, int blockSize) {
+        this.mFileLength = Math.max(0, fileLength);
+        this.mBlockSize = blockSize;
+        this.mBlockNum = (int) ((mFileLength + blockSize - 1) / blockSize);
+        this.mBlocks = new BitSet(mBlockNum);
+    }
+
+    /**
+     * 获取位图文件路径
+     *
+     * @param filePath 下载的文件路径
+     * @return
+     */
+    public static String getMapPath(String filePath) {
+        return filePath + MAP_EXT;
+    }
+
+    /**
+     * 读取位图文件
+     *
+     * @param filePath   下载的文件路径
+     * @param fileLength 文件长度，不一致时返回空的位图；小于等于0时使用位图文件中的长度
+     * @return 位图文件不存在或者已损坏时返回空的位图，文件长度未知时返回null
+     */
+    public static DownloadRangeMap load(String filePath, long fileLength) {
+        File file = new File(getMapPath(filePath));
+        if (file.exists()) {
+            DataInputStream dis = null;
+            try {
+                dis = new DataInputStream(new FileInputStream(file));
+                if (dis.readInt() == MAGIC && dis.readInt() == VERSION) {
+                    long mapFileLength = dis.readLong();
+                    int blockSize = dis.readInt();
+                    if (blockSize > 0 && (fileLength <= 0 || mapFileLength == fileLength)) {
+                        DownloadRangeMap rangeMap = new DownloadRangeMap(mapFileLength, blockSize);
+                        long[] words = new long[dis.readInt()];
+                        for (int i = 0; i < words.length; i++) {
+                            words[i] = dis.readLong();
+                        }
+                        BitSet blocks = BitSet.valueOf(words);
+                        if (blocks.length() <= rangeMap.mBlockNum) {
+                            rangeMap.mBlocks = blocks;
+                            return rangeMap;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                if (dis != null)
+                    try {
+                        dis.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+            }
+        }
+        if (fileLength <= 0) {
+            return null;
+        }
+        return new DownloadRangeMap(fileLength, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * 删除位图文件
+     *
+     * @param filePath 下载的文件路径
+     */
+    public static void delete(String filePath) {
+        File file = new File(getMapPath(filePath));
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+
+    /**
+     * 保存位图文件，没有修改时不保存；先写入临时文件再替换，避免写入一半时程序退出
+     *
+     * @param filePath 下载的文件路径
+     */
+    public void save(String filePath) {
+        long[] words;
+        synchronized (this) {
+            if (!isDirty) {
+                return;
+            }
+            isDirty = false;
+            words = mBlocks.toLongArray();
+        }
+        File file = new File(getMapPath(filePath));
+        File tempFile = new File(file.getPath() + ".temp");
+        DataOutputStream dos = null;
+        try {
+            dos = new DataOutputStream(new FileOutputStream(tempFile));
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(mFileLength);
+            dos.writeInt(mBlockSize);
+            dos.writeInt(words.length);
+            for (int i = 0; i < words.length; i++) {
+                dos.writeLong(words[i]);
+            }
+            dos.close();
+            dos = null;
+            if (!tempFile.renameTo(file)) {
+                file.delete();
+                tempFile.renameTo(file);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            synchronized (this) {
+                isDirty = true;
+            }
+        } finally {
+            if (dos != null)
+                try {
+                    dos.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+        }
+    }
+
+    /**
+     * 标记区间已下载，只标记完整包含在区间内的块，文件最后一块不足块大小时按文件结尾计算
+     *
+     * @param startPos
+     * @param endPos   不包含
+     */
+    public synchronized void addRange(long startPos, long endPos) {
+        endPos = Math.min(endPos, mFileLength);
+        int fromBlock = (int) ((startPos + mBlockSize - 1) / mBlockSize);
+        int toBlock = endPos == mFileLength ? mBlockNum : (int) (endPos / mBlockSize);
+        if (fromBlock < toBlock && mBlocks.nextClearBit(fromBlock) < toBlock) {
+            mBlocks.set(fromBlock, toBlock);
+            isDirty = true;
+        }
+    }
+
+    /**
+     * 标记区间需要重新下载，与区间有重叠的块都会被清除
+     *
+     * @param startPos
+     * @param endPos   不包含
+     */
+    public synchronized void removeRange(long startPos, long endPos) {
+        endPos = Math.min(endPos, mFileLength);
+        if (startPos >= endPos) {
+            return;
+        }
+        int fromBlock = (int) (startPos / mBlockSize);
+        int toBlock = (int) ((endPos + mBlockSize - 1) / mBlockSize);
+        if (mBlocks.nextSetBit(fromBlock) >= 0 && mBlocks.nextSetBit(fromBlock) < toBlock) {
+            mBlocks.clear(fromBlock, toBlock);
+            isDirty = true;
+        }
+    }
+
+    /**
+     * 获取从pos开始已连续下载的位置
+     *
+     * @param pos
+     * @return pos所在的块没有下载时返回pos
+     */
+    public synchronized long getContiguousEnd(long pos) {
+        if (pos >= mFileLength) {
+            return mFileLength;
+        }
+        int block = (int) (pos / mBlockSize);
+        if (!mBlocks.get(block)) {
+            return pos;
+        }
+        return Math.min(mFileLength, (long) mBlocks.nextClearBit(block) * mBlockSize);
+    }
+
+    /**
+     * 获取pos及之后第一个已下载的位置
+     *
+     * @param pos
+     * @return 之后都没有下载时返回文件长度
+     */
+    public synchronized long getNextPresent(long pos) {
+        if (pos >= mFileLength) {
+            return mFileLength;
+        }
+        int block = (int) (pos / mBlockSize);
+        if (mBlocks.get(block)) {
+            return pos;
+        }
+        int nextBlock = mBlocks.nextSetBit(block + 1);
+        return nextBlock < 0 ? mFileLength : Math.min(mFileLength, (long) nextBlock * mBlockSize);
+    }
+
+    /**
+     * 获取已下载的大小
+     *
+     * @return
+     */
+    public synchronized long getPresentSize() {
+        int cardinality = mBlocks.cardinality();
+        if (cardinality == 0) {
+            return 0;
+        }
+        long size = (long) cardinality * mBlockSize;
+        if (mBlocks.get(mBlockNum - 1)) {
+            //最后一块不足块大小
+            size -= (long) mBlockNum * mBlockSize - mFileLength;
+        }
+        return size;
+    }
+
+    /**
+     * 是否已全部下载
+     *
+     * @return
+     */
+    public synchronized boolean isComplete() {
+        return mBlocks.nextClearBit(0) >= mBlockNum;
+    }
+
+    /**
+     * 是否没有已下载的块
+     *
+     * @return
+     */
+    public synchronized boolean isEmpty() {
+        return mBlocks.isEmpty();
+    }
+
+    public long getFileLength() {
+        return mFileLength;
+    }
+}
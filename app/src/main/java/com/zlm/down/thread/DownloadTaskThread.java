@@ -2,26 +2,22 @@ package com.zlm.down.thread;
 
 import android.content.Context;
 
+import com.zlm.down.entity.DownloadChunk;
 import com.zlm.down.entity.DownloadTask;
 import com.zlm.down.interfaces.IDownloadThreadEvent;
-import com.zlm.hp.http.HttpClient;
+import com.zlm.down.manager.DownloadSpeedLimiter;
+import com.zlm.hp.http.HttpConnectionManager;
 import com.zlm.hp.http.HttpReturnResult;
+import com.zlm.hp.manager.NetworkStateManager;
 import com.zlm.hp.util.HttpUtil;
-import com.zlm.hp.util.NetUtil;
+import com.zlm.hp.util.MD5Util;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.security.SecureRandom;
-
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSession;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
+import java.security.MessageDigest;
 
 /**
  * @Description: 下载任务线程
@@ -47,11 +43,6 @@ public class DownloadTaskThread extends Thread {
      * 是否是wifi条件
      */
     private boolean isAskWifi;
-    /**
-     * 是否完成任务
-     */
-    private boolean isFinish = false;
-
     /**
      * 任务
      */
@@ -61,32 +52,59 @@ public class DownloadTaskThread extends Thread {
      */
     private int mThreadId = -1;
     /**
-     * 旧的开始位置
-     */
-    private int mStartPos = 0;
-    /**
-     * 新的开始位置
+     * 分块调度器
      */
-    private int mNewStartPos = 0;
+    private DownloadChunkScheduler mDownloadChunkScheduler;
     /**
-     * 结束位置
+     * 当前下载的分块
      */
-    private int mEndPos = 0;
-    /**
-     * 下载大小
-     */
-    private int mDownloadedSize = 0;
+    private volatile DownloadChunk mDownloadChunk;
 
     /**
      * 是否能继续下载
      */
     private volatile boolean isCanDownload = true;
 
+    /**
+     * 是否因连接数减少而退出
+     */
+    private volatile boolean isRetire = false;
+
     /**
      * 临时文件
      */
     private RandomAccessFile mItemFile;
 
+    /**
+     * 当前分块的输入流，网络断开时关闭，中断阻塞的读取
+     */
+    private volatile InputStream mInputStream;
+
+    /**
+     * 网络变化导致的错误信息
+     */
+    private volatile String mNetErrorMsg;
+
+    /**
+     * 网络变化回调
+     */
+    private NetworkStateManager.OnNetworkChangeListener mOnNetworkChangeListener = new NetworkStateManager.OnNetworkChangeListener() {
+        @Override
+        public void onNetworkChange(NetworkStateManager.NetworkState networkState) {
+            String netErrorMsg = getNetErrorMsg(networkState);
+            InputStream is = mInputStream;
+            if (netErrorMsg == null || is == null) {
+                return;
+            }
+            mNetErrorMsg = netErrorMsg;
+            try {
+                is.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    };
+
     /**
      * 线程下载任务回调
      */
@@ -97,215 +115,210 @@ public class DownloadTaskThread extends Thread {
      */
     private Context mContext;
 
-    public DownloadTaskThread(Context context, int threadId, int startPos, int endPos,
+    public DownloadTaskThread(Context context, int threadId, DownloadChunkScheduler downloadChunkScheduler,
                               DownloadTask downloadTask, IDownloadThreadEvent downloadThreadEvent, boolean askWifi) {
         this.mContext = context;
         this.mThreadId = threadId;
-        this.mStartPos = startPos;
-        this.mEndPos = endPos;
+        this.mDownloadChunkScheduler = downloadChunkScheduler;
         this.mDownloadTask = downloadTask;
         this.mIDownloadThreadEvent = downloadThreadEvent;
         this.isAskWifi = askWifi;
-        mDownloadedSize = mIDownloadThreadEvent.getTaskThreadDownloadedSize(mDownloadTask, mThreadId);
-        // 设置新的开始位置
-        mNewStartPos = mStartPos + mDownloadedSize;
     }
 
-    /**
-     * 更新下载进程
-     */
-    private Thread mUpdateDownloadThread = new Thread() {
-        @Override
-        public void run() {
-            while (isCanDownload && !isFinish) {
-                synchronized (this) {
-                    int taskThreadDownloadedSize = getDownloadedSize();
-                    //更新任务线程
-                    if (mIDownloadThreadEvent != null && !isFinish) {
-                            mIDownloadThreadEvent.taskThreadDownloading(mDownloadTask, mThreadId, taskThreadDownloadedSize);
-                    }
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+    @Override
+    public void run() {
+        DownloadChunk downloadChunk = null;
+        //不断领取分块，直到没有可下载的分块
+        while (isCanDownload && (downloadChunk = mDownloadChunkScheduler.nextChunk()) != null) {
+            mDownloadChunk = downloadChunk;
+            if (!downloadChunk(downloadChunk) && !(isRetire && downloadChunk.isFinish())) {
+                if (isRetire) {
+                    //分块交给其它线程继续下载
+                    mDownloadChunkScheduler.releaseChunk(downloadChunk);
                 }
+                break;
             }
+            mDownloadChunkScheduler.finishChunk(downloadChunk);
+            //文件md5补充计算到已连续下载的位置
+            mDownloadChunkScheduler.updateFileDigest();
+            if (mIDownloadThreadEvent != null)
+                mIDownloadThreadEvent.taskThreadFinish(mDownloadTask, downloadChunk.toThreadInfo(mDownloadTask));
         }
-    };
-
-    @Override
-    public void run() {
-        mUpdateDownloadThread.start();
-        if (mEndPos > mNewStartPos) {
-
-            try {
-
-                URL url = new URL(mDownloadTask.getTaskUrl());
-                // 获取文件输入流，读取文件内容
-                InputStream is = getUrlInputStream(mDownloadTask.getTaskUrl(), url);
-
-                //
-                mItemFile = new RandomAccessFile(mDownloadTask.getTaskTempPath(), "rw");
-                mItemFile.seek(mNewStartPos);
-
-                byte[] buff = new byte[BUFF_LENGTH];
-                int length = -1;
-                while ((length = is.read(buff)) > 0
-                        && (mStartPos + mDownloadedSize) < mEndPos && isCanDownload) {
-
-                    if (!NetUtil.isNetworkAvailable(mContext)) {
-
-
-                        if (mIDownloadThreadEvent != null) {
-                            //无网络
-                            mIDownloadThreadEvent.taskThreadError(mDownloadTask, mThreadId,
-                                    HttpReturnResult.ERROR_MSG_NONET);
-                        }
-
-                        break;
-                    }
+    }
 
-                    if (isAskWifi && !NetUtil.isWifiConnected(mContext)) {
-                        // 不是wifi
-                        if (mIDownloadThreadEvent != null) {
-                            mIDownloadThreadEvent.taskThreadError(mDownloadTask, mThreadId,
-                                    HttpReturnResult.ERROR_MSG_NOWIFI);
-                        }
-                        break;
+    /**
+     * 下载分块
+     *
+     * @param downloadChunk
+     * @return 分块是否下载完成
+     */
+    private boolean downloadChunk(DownloadChunk downloadChunk) {
+        if (downloadChunk.isFinish()) {
+            return true;
+        }
+        InputStream is = null;
+        NetworkStateManager networkStateManager = NetworkStateManager.getInstance(mContext);
+        networkStateManager.addOnNetworkChangeListener(mOnNetworkChangeListener);
+        try {
+
+            //
+            mItemFile = new RandomAccessFile(mDownloadTask.getTaskTempPath(), "rw");
+            //分块的md5，断点续传时先计算已下载的部分
+            MessageDigest digest = DownloadFileDigest.createDigest();
+            if (digest != null && downloadChunk.getCurPos() > downloadChunk.getStartPos()) {
+                DownloadFileDigest.update(digest, mItemFile, downloadChunk.getStartPos(), downloadChunk.getCurPos());
+            }
+            DownloadFileDigest downloadFileDigest = mDownloadChunkScheduler.getDownloadFileDigest();
+            mItemFile.seek(downloadChunk.getCurPos());
+
+            URL url = new URL(mDownloadTask.getTaskUrl());
+            // 获取文件输入流，读取文件内容
+            is = getUrlInputStream(url, downloadChunk);
+            mInputStream = is;
+
+            byte[] buff = new byte[BUFF_LENGTH];
+            int length = -1;
+            while (isCanDownload && !downloadChunk.isFinish()
+                    && (length = is.read(buff)) > 0) {
+
+                //无网络或者不是wifi
+                String netErrorMsg = getNetErrorMsg(networkStateManager.getNetworkState());
+                if (netErrorMsg != null) {
+                    if (mIDownloadThreadEvent != null) {
+                        mIDownloadThreadEvent.taskThreadError(mDownloadTask, mThreadId,
+                                netErrorMsg);
                     }
-
-
-                    mItemFile.write(buff, 0, length);
-                    mDownloadedSize += length;
+                    return false;
                 }
 
-                is.close();
+                //限速
+                DownloadSpeedLimiter.getInstance().acquire(mDownloadTask.getPriority(), length);
+
+                //分块可能已被其它线程拆分，加锁领取当前区间内可以写入的长度
+                int writeLength = mDownloadChunkScheduler.reserveWrite(downloadChunk, length);
+                long pos = downloadChunk.getCurPos();
+                mItemFile.write(buff, 0, writeLength);
+                downloadChunk.addDownloadedSize(writeLength);
+                //写入文件后再计算md5
+                if (digest != null) {
+                    digest.update(buff, 0, writeLength);
+                }
+                downloadFileDigest.update(pos, buff, 0, writeLength);
+                //通知边下边播的读取
+                mDownloadChunkScheduler.notifyDataWritten();
+            }
+            if (digest != null && downloadChunk.isFinish()) {
+                downloadChunk.setChecksum(MD5Util.toMd5String(digest.digest()));
+            }
 
-            } catch (Exception e) {
-                e.printStackTrace();
+        } catch (Exception e) {
+            e.printStackTrace();
 
-                if (mIDownloadThreadEvent != null) {
-                    mIDownloadThreadEvent.taskThreadError(mDownloadTask, mThreadId,
-                            HttpReturnResult.ERROR_MSG_NET);
+            if (isCanDownload && mIDownloadThreadEvent != null) {
+                String netErrorMsg = mNetErrorMsg;
+                mIDownloadThreadEvent.taskThreadError(mDownloadTask, mThreadId,
+                        netErrorMsg != null ? netErrorMsg : HttpReturnResult.ERROR_MSG_NET);
+            }
+            return false;
+
+        } finally {
+            networkStateManager.removeOnNetworkChangeListener(mOnNetworkChangeListener);
+            mInputStream = null;
+            if (mItemFile != null)
+                try {
+                    mItemFile.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            if (is != null)
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
+        }
 
-            } finally {
-                if (mItemFile != null)
-                    try {
-                        mItemFile.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+        if (isCanDownload && !downloadChunk.isFinish()) {
+            //数据流提前结束
+            if (mIDownloadThreadEvent != null) {
+                String netErrorMsg = mNetErrorMsg;
+                mIDownloadThreadEvent.taskThreadError(mDownloadTask, mThreadId,
+                        netErrorMsg != null ? netErrorMsg : HttpReturnResult.ERROR_MSG_NET);
             }
-
-        }
-        //在允许下载的状态下，说明下载完成
-        if (isCanDownload) {
-            isFinish = true;
-            mUpdateDownloadThread.interrupt();
-            mDownloadedSize = mEndPos - mStartPos;
-            if (mIDownloadThreadEvent != null)
-                mIDownloadThreadEvent.taskThreadFinish(mDownloadTask, mThreadId,
-                        getDownloadedSize());
+            return false;
         }
+        return isCanDownload;
     }
 
     /**
-     * @param taskUrl
-     * @param url
-     * @return
+     * 获取网络错误信息
+     *
+     * @param networkState
+     * @return 可以继续下载时返回null
      */
-    private InputStream getUrlInputStream(String taskUrl, URL url) throws Exception {
-        if (taskUrl.startsWith("https://")) {
-            HttpsURLConnection conn = getHttpsConnection(url);
-            // 设置连接超时时间
-            conn.setConnectTimeout(CONNECTTIME);
-            // 设置读取数据超时时间
-            conn.setReadTimeout(READTIME);
-            HttpUtil.seURLConnectiontHeader(conn);
-            conn.setRequestProperty("Range", "bytes=" + mNewStartPos + "-"
-                    + mEndPos);
-            return conn.getInputStream();
-
-        } else {
-            HttpURLConnection conn = getHttpConnection(url);
-            // 设置连接超时时间
-            conn.setConnectTimeout(CONNECTTIME);
-            // 设置读取数据超时时间
-            conn.setReadTimeout(READTIME);
-            HttpUtil.seURLConnectiontHeader(conn);
-            conn.setRequestProperty("Range", "bytes=" + mNewStartPos + "-"
-                    + mEndPos);
-            return conn.getInputStream();
+    private String getNetErrorMsg(NetworkStateManager.NetworkState networkState) {
+        if (!networkState.isAvailable()) {
+            return HttpReturnResult.ERROR_MSG_NONET;
+        }
+        if (isAskWifi && !networkState.isWifi()) {
+            return HttpReturnResult.ERROR_MSG_NOWIFI;
         }
+        return null;
     }
 
     /**
      * @param url
+     * @param downloadChunk
      * @return
      */
-    private HttpsURLConnection getHttpsConnection(URL url) throws Exception {
-
-        // 创建SSLContext
-        SSLContext sslContext = SSLContext.getInstance("SSL");
-        TrustManager[] tm = {new HttpClient.IgnoreSSLTrustManager()};
-        // 初始化
-        sslContext.init(null, tm, new SecureRandom());
-        // 获取SSLSocketFactory对象
-        SSLSocketFactory ssf = sslContext.getSocketFactory();
-        HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
+    private InputStream getUrlInputStream(URL url, DownloadChunk downloadChunk) throws Exception {
+        String range = "bytes=" + downloadChunk.getCurPos() + "-" + (downloadChunk.getEndPos() - 1);
+        //共享连接池，同一线程依次下载的分块复用同一个连接
+        HttpURLConnection conn = HttpConnectionManager.openConnection(url);
+        // 设置连接超时时间
+        conn.setConnectTimeout(CONNECTTIME);
+        // 设置读取数据超时时间
+        conn.setReadTimeout(READTIME);
         HttpUtil.seURLConnectiontHeader(conn);
-        // https忽略证书
-        conn.setHostnameVerifier(new HostnameVerifier() {
-            @Override
-            public boolean verify(String hostname, SSLSession session) {
-                // 强行返回true 即验证成功
-                return true;
-            }
-        });
-        conn.setSSLSocketFactory(ssf);
-
-        return conn;
-
+        conn.setRequestProperty("Range", range);
+        int responseCode = conn.getResponseCode();
+        if (responseCode == HttpURLConnection.HTTP_FORBIDDEN || responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+            //下载地址已失效，由任务重新获取地址
+            conn.disconnect();
+            mNetErrorMsg = HttpReturnResult.ERROR_MSG_URL_INVALID;
+            throw new IOException("response code " + responseCode);
+        }
+        return conn.getInputStream();
     }
 
     /**
-     * @param url
-     * @return
-     * @throws Exception
+     * 暂停
      */
-    private HttpURLConnection getHttpConnection(URL url) throws Exception {
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        return conn;
+    public void pause() {
+        isCanDownload = false;
+        //更新当前分块的进度
+        DownloadChunk downloadChunk = mDownloadChunk;
+        if (mIDownloadThreadEvent != null && downloadChunk != null) {
+            if (downloadChunk.getDownloadedSize() != 0)
+                mIDownloadThreadEvent.taskThreadPause(mDownloadTask, downloadChunk.toThreadInfo(mDownloadTask));
+        }
     }
 
-    /***
-     *
-     * 获取总下载进度
-     *
-     * @return
-     * @author zhangliangming
-     * @date 2017年7月8日
+    /**
+     * 连接数减少，当前分块下载到一半时交给其它线程
      */
-    public int getDownloadedSize() {
-        int tempDownloadedSize = Math.min(mDownloadedSize,
-                (mEndPos - mStartPos));
-        return tempDownloadedSize;
+    public void retire() {
+        isRetire = true;
+        isCanDownload = false;
     }
 
     /**
-     * 暂停
+     * 是否正在下载
+     *
+     * @return
      */
-    public void pause() {
-        isCanDownload = false;
-        mUpdateDownloadThread.interrupt();
-        //更新任务线程
-        if (mIDownloadThreadEvent != null) {
-            int taskThreadDownloadedSize = getDownloadedSize();
-            if (taskThreadDownloadedSize != 0)
-                mIDownloadThreadEvent.taskThreadPause(mDownloadTask, mThreadId, taskThreadDownloadedSize);
-        }
+    public boolean isDownloading() {
+        return isAlive() && isCanDownload;
     }
 
     /**
@@ -313,6 +326,5 @@ public class DownloadTaskThread extends Thread {
      */
     public void cancel() {
         isCanDownload = false;
-        mUpdateDownloadThread.interrupt();
     }
 }
@@ -5,9 +5,12 @@ import android.os.Handler;
 import android.text.TextUtils;
 
 import com.zlm.down.entity.DownloadTask;
+import com.zlm.down.entity.DownloadThreadInfo;
 import com.zlm.down.interfaces.IDownloadTaskEvent;
 import com.zlm.down.interfaces.IDownloadThreadEvent;
-import com.zlm.hp.http.HttpClient;
+import com.zlm.down.manager.DownloadHostStats;
+import com.zlm.down.manager.DownloadTaskScheduler;
+import com.zlm.hp.http.HttpConnectionManager;
 import com.zlm.hp.http.HttpReturnResult;
 import com.zlm.hp.util.FileUtil;
 import com.zlm.hp.util.HttpUtil;
@@ -15,21 +18,14 @@ import com.zlm.hp.util.HttpUtil;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStream;
+import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.security.SecureRandom;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSession;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-
 /**
  * @Description: 下载任务线程管理
  * @author: zhangliangming
@@ -38,6 +34,11 @@ import javax.net.ssl.TrustManager;
 
 public class DownloadTaskThreadManager implements Runnable {
 
+    /**
+     * 初始连接数
+     */
+    private static final int INIT_CONNECTION_NUM = 2;
+
     private Context mContext;
     /**
      * 任务线程
@@ -58,67 +59,81 @@ public class DownloadTaskThreadManager implements Runnable {
      */
     private IDownloadTaskEvent mIDownloadTaskEvent;
 
+    /**
+     * 分块调度器
+     */
+    private volatile DownloadChunkScheduler mDownloadChunkScheduler;
+
+    /**
+     * 添加到全局调度的顺序
+     */
+    private long mSubmitIndex;
+
+    /**
+     * 连接数调节
+     */
+    private DownloadConnectionController mDownloadConnectionController;
+
+    /**
+     * 是否是wifi条件
+     */
+    private boolean isAskWifi;
+
     /**
      * 下载线程任务回调
      */
     private IDownloadThreadEvent mIDownloadThreadEvent = new IDownloadThreadEvent() {
         @Override
-        public int getTaskThreadDownloadedSize(DownloadTask task, int threadId) {
+        public List<DownloadThreadInfo> getTaskThreadInfos(DownloadTask task) {
             if (mIDownloadTaskEvent != null) {
-                return mIDownloadTaskEvent.getTaskThreadDownloadedSize(task, threadId);
+                return mIDownloadTaskEvent.getTaskThreadInfos(task);
             }
-            return 0;
+            return null;
         }
 
         @Override
-        public void taskThreadDownloading(DownloadTask task, int threadId, int downloadedSize) {
+        public void taskThreadDownloading(DownloadTask task, DownloadThreadInfo threadInfo) {
             if (mIDownloadTaskEvent != null) {
-                mIDownloadTaskEvent.taskThreadDownloading(task, threadId, downloadedSize);
+                mIDownloadTaskEvent.taskThreadDownloading(task, threadInfo);
             }
         }
 
         @Override
-        public void taskThreadPause(DownloadTask task, int threadId, int downloadedSize) {
+        public void taskThreadPause(DownloadTask task, DownloadThreadInfo threadInfo) {
             if (mIDownloadTaskEvent != null) {
-                mIDownloadTaskEvent.taskThreadPause(task, threadId, downloadedSize);
+                mIDownloadTaskEvent.taskThreadPause(task, threadInfo);
             }
         }
 
         @Override
-        public void taskThreadFinish(DownloadTask task, int threadId, int downloadedSize) {
-            synchronized (this) {
-                if (mIDownloadTaskEvent != null) {
-                    mIDownloadTaskEvent.taskThreadFinish(task, threadId, downloadedSize);
-                }
-                int taskDownloadedSize = getTaskDownloadedSize();
-                if (taskDownloadedSize >= mDownloadTask.getTaskFileSize() && !isCanDownload) {
-                    isCanDownload = true;
-                    mUpdateDownloadThread.interrupt();
-                    if (mIDownloadTaskEvent != null) {
-                        mIDownloadTaskEvent.taskFinish(task, taskDownloadedSize);
-                    }
-
-                    if (task.getTaskPath() != null) {
-                        // 临时文件复制到真正的路径
-                        copyFile(task.getTaskTempPath(), task.getTaskPath());
-                    }
-                    synchronized (mWorkerHandler) {
-                        mWorkerHandler.notifyAll();
-                    }
-                }
+        public void taskThreadFinish(DownloadTask task, DownloadThreadInfo threadInfo) {
+            if (mIDownloadTaskEvent != null) {
+                mIDownloadTaskEvent.taskThreadFinish(task, threadInfo);
             }
+            finishTask();
+            finishPrefetch();
         }
 
         @Override
         public void taskThreadError(DownloadTask task, int threadId, String msg) {
+            synchronized (DownloadTaskThreadManager.this) {
+                if (isCanDownload) {
+                    //任务已结束或者其它线程已出错
+                    return;
+                }
+                isCanDownload = true;
+            }
+            DownloadProgressTicker.getInstance().unregister(DownloadTaskThreadManager.this);
+            //停止其它线程
+            for (int i = 0; i < mDownloadTaskThreads.size(); i++) {
+                mDownloadTaskThreads.get(i).cancel();
+            }
 
             if (mIDownloadTaskEvent != null) {
                 mIDownloadTaskEvent.taskThreadError(task, threadId, msg);
                 mIDownloadTaskEvent.taskError(task, msg);
             }
-            synchronized (mWorkerHandler) {
-                mWorkerHandler.notifyAll();
-            }
+            DownloadTaskScheduler.getInstance().onTaskEnd(DownloadTaskThreadManager.this);
         }
     };
 
@@ -129,24 +144,33 @@ public class DownloadTaskThreadManager implements Runnable {
         this.mIDownloadTaskEvent = downloadTaskEvent;
     }
 
+    /**
+     * 由全局调度启动任务
+     */
+    public void start() {
+        mWorkerHandler.post(this);
+    }
+
     @Override
     public void run() {
+        if (isCanDownload) {
+            //启动前已暂停或者取消
+            DownloadTaskScheduler.getInstance().onTaskEnd(this);
+            return;
+        }
         boolean askWifi = false;
         if (mIDownloadTaskEvent != null) {
             askWifi = mIDownloadTaskEvent.getAskWifi();
         }
         boolean resultFlag = startDownloadTask(mContext, askWifi);
         if (!resultFlag) {
+            isCanDownload = true;
+            DownloadTaskScheduler.getInstance().onTaskEnd(this);
             return;
         }
-        mUpdateDownloadThread.start();
-        try {
-            synchronized (mWorkerHandler) {
-                mWorkerHandler.wait();
-            }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        //分块可能在断点续传前已全部下载完成
+        finishTask();
+        finishPrefetch();
     }
 
     /**
@@ -169,9 +193,16 @@ public class DownloadTaskThreadManager implements Runnable {
             }
 
             // 1获取文件的长度
-            int fileLength = (int) mDownloadTask.getTaskFileSize();
+            long fileLength = mDownloadTask.getTaskFileSize();
             if (fileLength == 0)
                 fileLength = getFileLength(taskUrl);
+            if (fileLength < 0) {
+                // 下载地址已失效
+                if (mIDownloadTaskEvent != null) {
+                    mIDownloadTaskEvent.taskError(mDownloadTask, HttpReturnResult.ERROR_MSG_URL_INVALID);
+                }
+                return false;
+            }
             if (fileLength <= 0) {
                 // 获取文件的长度失败
 
@@ -204,6 +235,8 @@ public class DownloadTaskThreadManager implements Runnable {
             }
             //目标文件不存在
             if (!destFile.exists()) {
+                //旧文件的位图已失效
+                DownloadRangeMap.delete(mDownloadTask.getTaskTempPath());
 
                 // 临时文件
                 RandomAccessFile tempFile = new RandomAccessFile(
@@ -211,30 +244,47 @@ public class DownloadTaskThreadManager implements Runnable {
                 tempFile.setLength(fileLength);
                 tempFile.close();
             }
+            //已下载区间的位图，文件长度不一致时重新记录
+            DownloadRangeMap rangeMap = DownloadRangeMap.load(mDownloadTask.getTaskTempPath(), fileLength);
 
 
-            // 2对文件进行多线程下载
-            int threadNum = mDownloadTask.getThreadNum();
-            int avg = fileLength / threadNum;
-            for (int i = 0; i < threadNum; i++) {
-                int threadId = (i + 1);
-                int startPos = i * avg;
-                int endPos = 0;
-                if (i == (threadNum - 1)) {
-                    endPos = fileLength;
-                } else {
-                    endPos = startPos + avg;
+            // 2对文件进行多线程下载，线程从调度器中领取分块
+            List<DownloadThreadInfo> threadInfos = null;
+            if (mIDownloadTaskEvent != null) {
+                threadInfos = mIDownloadTaskEvent.getTaskThreadInfos(mDownloadTask);
+            }
+            mDownloadChunkScheduler = new DownloadChunkScheduler(mDownloadTask, fileLength, threadInfos, rangeMap, mIDownloadThreadEvent);
+            if (threadInfos != null && threadInfos.size() > 0) {
+                //断点续传，md5不一致的分块重新下载
+                mDownloadChunkScheduler.verifyChunks(mDownloadTask.getTaskTempPath());
+            }
+            if (mDownloadTask.isProbeMp4() && !isCanDownload && !mDownloadChunkScheduler.isFinish()) {
+                //mp4文件先下载文件头部和moov，moov在文件末尾时也能尽快开始播放
+                probeMp4(taskUrl, fileLength);
+            }
+            //边下边播从播放位置开始下载
+            boolean isSeek = mDownloadTask.getSeekPos() > 0 && mDownloadChunkScheduler.seekTo(mDownloadTask.getSeekPos());
+            synchronized (this) {
+                if (isCanDownload) {
+                    //获取文件长度期间已暂停、取消或者被抢占
+                    return false;
                 }
-
-                //
-                DownloadTaskThread taskThread = new DownloadTaskThread(context, threadId, startPos,
-                        endPos, mDownloadTask, mIDownloadThreadEvent, askWifi);
-                mDownloadTaskThreads.add(taskThread);
-                taskThread.start();
-
+                //共用的进度定时器回调进度，需在下载线程启动前注册
+                DownloadProgressTicker.getInstance().register(this);
+                //从较少的连接开始，下载过程中根据速度调节
+                isAskWifi = askWifi;
+                mDownloadConnectionController = new DownloadConnectionController(getInitConnectionNum(), mDownloadTask.getMaxThreadNum());
+                int threadNum = mDownloadConnectionController.getConnectionNum();
+                for (int i = 0; i < threadNum; i++) {
+                    addTaskThread();
+                }
+            }
+            if (isSeek) {
+                addSeekTaskThread();
             }
         } catch (Exception e) {
             e.printStackTrace();
+            DownloadProgressTicker.getInstance().unregister(this);
             // 下载出错
             if (mIDownloadTaskEvent != null) {
                 mIDownloadTaskEvent.taskError(mDownloadTask, HttpReturnResult.ERROR_MSG_NET);
@@ -245,97 +295,183 @@ public class DownloadTaskThreadManager implements Runnable {
     }
 
     /**
-     * 更新下载进程
+     * 探测mp4文件结构，ftyp和moov所在的区间优先下载
+     *
+     * @param taskUrl
+     * @param fileLength
+     */
+    private void probeMp4(String taskUrl, long fileLength) {
+        List<long[]> ranges = new DownloadMp4Probe(new DownloadMp4Probe.HttpRangeReader(taskUrl)).probe(fileLength);
+        if (ranges == null) {
+            //不是mp4文件或者不支持Range请求，按原来的顺序下载
+            return;
+        }
+        for (int i = 0; i < ranges.size(); i++) {
+            mDownloadChunkScheduler.prioritize(ranges.get(i)[0], ranges.get(i)[1]);
+        }
+    }
+
+    /**
+     * 任务完成，所有分块下载完成后复制临时文件
      */
-    private Thread mUpdateDownloadThread = new Thread() {
-        @Override
-        public void run() {
-            while (!isCanDownload) {
+    private void finishTask() {
+        synchronized (this) {
+            if (isCanDownload || mDownloadChunkScheduler == null || !mDownloadChunkScheduler.isFinish()) {
+                return;
+            }
+            isCanDownload = true;
+        }
+        DownloadProgressTicker.getInstance().unregister(this);
+        //下载过程中已计算好文件md5，只需补充计算剩余部分
+        mDownloadChunkScheduler.updateFileDigest();
+        mDownloadTask.setTaskFileMd5(mDownloadChunkScheduler.getDownloadFileDigest().getMd5());
+        // 临时文件移动到真正的路径，回调完成前文件已就绪
+        if (mDownloadTask.getTaskPath() != null && !moveFile(mDownloadTask.getTaskTempPath(), mDownloadTask.getTaskPath())) {
+            //保留临时文件、位图和下载进度，重新添加任务时再次移动
+            if (mIDownloadTaskEvent != null) {
+                mIDownloadTaskEvent.taskError(mDownloadTask, HttpReturnResult.ERROR_FILE_SAVE);
+            }
+            DownloadTaskScheduler.getInstance().onTaskEnd(this);
+            return;
+        }
+        //文件已完整，不再需要位图
+        DownloadRangeMap.delete(mDownloadTask.getTaskTempPath());
+        long taskDownloadedSize = getTaskDownloadedSize();
+        if (mIDownloadTaskEvent != null) {
+            mIDownloadTaskEvent.taskFinish(mDownloadTask, taskDownloadedSize);
+        }
+        DownloadTaskScheduler.getInstance().onTaskEnd(this);
+    }
+
+    /**
+     * 预加载的文件头部下载完成后暂停任务，释放连接，剩余部分由边下边播继续下载
+     */
+    private void finishPrefetch() {
+        DownloadChunkScheduler downloadChunkScheduler = mDownloadChunkScheduler;
+        if (downloadChunkScheduler != null && downloadChunkScheduler.isPrefetchFinish()) {
+            pauseTaskThread();
+        }
+    }
+
+    /**
+     * 回调下载进度，由进度定时器调用
+     */
+    void notifyProgress() {
+        DownloadChunkScheduler downloadChunkScheduler = mDownloadChunkScheduler;
+        if (isCanDownload || downloadChunkScheduler == null) {
+            //任务已结束
+            DownloadProgressTicker.getInstance().unregister(this);
+            return;
+        }
+        //更新任务线程
+        downloadChunkScheduler.notifyRunningChunks();
+        downloadChunkScheduler.saveRangeMap();
+        long taskDownloadedSize = downloadChunkScheduler.getDownloadedSize();
+        if (mIDownloadTaskEvent != null && !isCanDownload) {
+            if (taskDownloadedSize != 0)
+                mIDownloadTaskEvent.taskDownloading(mDownloadTask, taskDownloadedSize);
+        }
+        adjustConnection(taskDownloadedSize);
+    }
+
+    /**
+     * 根据下载速度增加或者减少连接
+     *
+     * @param taskDownloadedSize
+     */
+    private void adjustConnection(long taskDownloadedSize) {
+        DownloadConnectionController downloadConnectionController = mDownloadConnectionController;
+        if (downloadConnectionController == null) {
+            return;
+        }
+        int change = downloadConnectionController.update(System.currentTimeMillis(), taskDownloadedSize);
+        if (change > 0) {
+            if (!mDownloadChunkScheduler.hasMoreChunk() || !DownloadTaskScheduler.getInstance().hasFreeConnection(getPriority())) {
+                downloadConnectionController.rejectGrow();
+            } else {
                 synchronized (this) {
-                    int taskDownloadedSize = 0;
-                    try {
-                        taskDownloadedSize = getTaskDownloadedSize();
-                        Thread.sleep(1000);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
+                    if (isCanDownload) {
+                        return;
                     }
-                    //更新任务线程
-                    if (mIDownloadTaskEvent != null && !isCanDownload) {
-                        if (taskDownloadedSize != 0)
-                            mIDownloadTaskEvent.taskDownloading(mDownloadTask, taskDownloadedSize);
+                    addTaskThread();
+                }
+            }
+        } else if (change < 0) {
+            synchronized (this) {
+                //减少最后添加的线程
+                for (int i = mDownloadTaskThreads.size() - 1; i >= 0; i--) {
+                    DownloadTaskThread taskThread = mDownloadTaskThreads.get(i);
+                    if (taskThread.isDownloading()) {
+                        taskThread.retire();
+                        break;
                     }
                 }
             }
         }
-    };
+        if (change != 0 && downloadConnectionController.isStable()) {
+            //记录服务器合适的连接数
+            DownloadHostStats.getInstance().setConnectionNum(getHost(), downloadConnectionController.getConnectionNum());
+        }
+    }
 
     /**
-     * 获取下载文件的长度
+     * 添加下载线程，需加锁调用
+     */
+    private void addTaskThread() {
+        //线程id只用于区分线程，分块id才是保存进度的key
+        int threadId = mDownloadTaskThreads.size() + 1;
+        DownloadTaskThread taskThread = new DownloadTaskThread(mContext, threadId, mDownloadChunkScheduler,
+                mDownloadTask, mIDownloadThreadEvent, isAskWifi);
+        mDownloadTaskThreads.add(taskThread);
+        taskThread.start();
+    }
+
+    /**
+     * 获取初始连接数，同一个服务器使用上次调节后的连接数
      *
-     * @param downloadUrl
      * @return
-     * @throws Exception
-     * @author zhangliangming
-     * @date 2017年7月8日
      */
-    private int getFileLength(String downloadUrl) {
-        if (downloadUrl.startsWith("https://")) {
-            return getHttpsFileLength(downloadUrl);
-        }
-        return getHttpFileLength(downloadUrl);
+    private int getInitConnectionNum() {
+        int maxThreadNum = Math.max(1, mDownloadTask.getMaxThreadNum());
+        return Math.min(maxThreadNum, DownloadHostStats.getInstance().getConnectionNum(getHost(), INIT_CONNECTION_NUM));
     }
 
     /**
-     * 获取https文件长度
-     *
-     * @param downloadUrl
      * @return
      */
-    private int getHttpsFileLength(String downloadUrl) {
-        int length = 0;
+    private String getHost() {
         try {
-            URL url = new URL(downloadUrl);
-            // 创建SSLContext
-            SSLContext sslContext = SSLContext.getInstance("SSL");
-            TrustManager[] tm = {new HttpClient.IgnoreSSLTrustManager()};
-            // 初始化
-            sslContext.init(null, tm, new SecureRandom());
-            // 获取SSLSocketFactory对象
-            SSLSocketFactory ssf = sslContext.getSocketFactory();
-            HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
-            HttpUtil.seURLConnectiontHeader(conn);
-            // https忽略证书
-            conn.setHostnameVerifier(new HostnameVerifier() {
-                @Override
-                public boolean verify(String hostname, SSLSession session) {
-                    // 强行返回true 即验证成功
-                    return true;
-                }
-            });
-            conn.setSSLSocketFactory(ssf);
-
-            length = conn.getContentLength();
-            conn.disconnect();
+            return new URL(mDownloadTask.getTaskUrl()).getHost();
         } catch (Exception e) {
-            e.printStackTrace();
+            return null;
         }
-
-        return length;
     }
 
     /**
-     * 获取http文件长度
+     * 获取下载文件的长度
      *
      * @param downloadUrl
-     * @return
+     * @return 下载地址已失效时返回-1
+     * @throws Exception
+     * @author zhangliangming
+     * @date 2017年7月8日
      */
-    private int getHttpFileLength(String downloadUrl) {
-        int length = 0;
+    private long getFileLength(String downloadUrl) {
+        long length = 0;
         try {
-            URL url = new URL(downloadUrl);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            HttpURLConnection conn = HttpConnectionManager.openConnection(downloadUrl);
             HttpUtil.seURLConnectiontHeader(conn);
-            length = conn.getContentLength();
+            int responseCode = conn.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_FORBIDDEN || responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                conn.disconnect();
+                return -1;
+            }
+            //getContentLength超过2G时返回-1，直接解析头信息
+            String contentLength = conn.getHeaderField("Content-Length");
+            if (!TextUtils.isEmpty(contentLength)) {
+                length = Long.parseLong(contentLength.trim());
+            }
+            //只需要文件长度，不读取内容，直接断开
             conn.disconnect();
         } catch (Exception e) {
             e.printStackTrace();
@@ -345,22 +481,115 @@ public class DownloadTaskThreadManager implements Runnable {
     }
 
     /**
-     * 暂停任务
+     * 暂停任务：等下载线程退出并记录最后的进度后才回调暂停，
+     * 其它任务在暂停回调后继续下载同一个临时文件时，不会与旧的线程同时写入
      */
     public void pauseTaskThread() {
-        isCanDownload = true;
-        mUpdateDownloadThread.interrupt();
+        if (!stopTaskThread(false)) {
+            return;
+        }
+        waitTaskThreads(new Runnable() {
+            @Override
+            public void run() {
+                if (mIDownloadTaskEvent != null) {
+                    mIDownloadTaskEvent.taskPause(mDownloadTask, getTaskDownloadedSize());
+                }
+                DownloadTaskScheduler.getInstance().onTaskEnd(DownloadTaskThreadManager.this);
+            }
+        }, "pauseTaskThread");
+    }
 
-        for (int i = 0; i < mDownloadTaskThreads.size(); i++) {
-            DownloadTaskThread taskThread = mDownloadTaskThreads.get(i);
-            taskThread.pause();
+    /**
+     * 被优先级更高的任务抢占：暂停下载线程，任务重新等待；
+     * 等旧的下载线程退出并记录最后的进度后才重新排队，避免新旧线程同时写入临时文件，
+     * 新的任务线程管理恢复的区间也不会比实际写入的旧
+     *
+     * @return 任务已结束时返回false
+     */
+    public boolean preemptTaskThread() {
+        if (!stopTaskThread(false)) {
+            return false;
         }
+        final DownloadTaskThreadManager downloadTaskThreadManager = new DownloadTaskThreadManager(mContext, mWorkerHandler, mDownloadTask, mIDownloadTaskEvent);
+        downloadTaskThreadManager.setSubmitIndex(mSubmitIndex);
+        mDownloadTask.setDownloadTaskThreadManager(downloadTaskThreadManager);
         if (mIDownloadTaskEvent != null) {
-            mIDownloadTaskEvent.taskPause(mDownloadTask, getTaskDownloadedSize());
+            mIDownloadTaskEvent.taskWaiting(mDownloadTask);
+        }
+        waitTaskThreads(new Runnable() {
+            @Override
+            public void run() {
+                DownloadTaskScheduler.getInstance().requeue(DownloadTaskThreadManager.this, downloadTaskThreadManager);
+            }
+        }, "preemptTaskThread");
+        return true;
+    }
+
+    /**
+     * 在新的线程中等待下载线程退出，记录线程退出前最后写入的进度和区间后执行
+     *
+     * @param runnable
+     * @param threadName
+     */
+    private void waitTaskThreads(final Runnable runnable, String threadName) {
+        final List<DownloadTaskThread> downloadTaskThreads;
+        synchronized (this) {
+            downloadTaskThreads = new ArrayList<DownloadTaskThread>(mDownloadTaskThreads);
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    //下载线程在当前读取返回后退出
+                    for (int i = 0; i < downloadTaskThreads.size(); i++) {
+                        downloadTaskThreads.get(i).join();
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                DownloadChunkScheduler downloadChunkScheduler = mDownloadChunkScheduler;
+                if (downloadChunkScheduler != null) {
+                    downloadChunkScheduler.notifyRunningChunks();
+                    downloadChunkScheduler.saveRangeMap();
+                }
+                runnable.run();
+            }
+        }, threadName);
+        thread.start();
+    }
+
+    /**
+     * 停止下载线程
+     *
+     * @param isCancel 是否取消
+     * @return 任务已结束时返回false
+     */
+    private boolean stopTaskThread(boolean isCancel) {
+        List<DownloadTaskThread> downloadTaskThreads;
+        synchronized (this) {
+            if (isCanDownload) {
+                return false;
+            }
+            isCanDownload = true;
+            downloadTaskThreads = new ArrayList<DownloadTaskThread>(mDownloadTaskThreads);
         }
-        synchronized (mWorkerHandler) {
-            mWorkerHandler.notifyAll();
+        DownloadProgressTicker.getInstance().unregister(this);
+        //还未启动时从队列中移除
+        mWorkerHandler.removeCallbacks(this);
+        for (int i = 0; i < downloadTaskThreads.size(); i++) {
+            DownloadTaskThread taskThread = downloadTaskThreads.get(i);
+            if (isCancel) {
+                taskThread.cancel();
+            } else {
+                taskThread.pause();
+            }
+        }
+        //保存已下载的区间
+        DownloadChunkScheduler downloadChunkScheduler = mDownloadChunkScheduler;
+        if (downloadChunkScheduler != null) {
+            downloadChunkScheduler.saveRangeMap();
         }
+        return true;
     }
 
     /**
@@ -370,72 +599,177 @@ public class DownloadTaskThreadManager implements Runnable {
      * @author zhangliangming
      * @date 2017年7月8日
      */
-    public int getTaskDownloadedSize() {
-        int downloadedSize = 0;
+    public long getTaskDownloadedSize() {
+        if (mDownloadChunkScheduler == null) {
+            return 0;
+        }
+        return mDownloadChunkScheduler.getDownloadedSize();
+    }
 
-        for (int i = 0; i < mDownloadTaskThreads.size(); i++) {
-            DownloadTaskThread taskThread = mDownloadTaskThreads.get(i);
-            downloadedSize += taskThread.getDownloadedSize();
+
+    /**
+     * 播放位置跳转，读取位置离下载位置较远时拆分出新分块并增加连接下载
+     *
+     * @param pos
+     * @return 任务还未获取到文件长度时返回false
+     */
+    public boolean seekTo(long pos) {
+        DownloadChunkScheduler downloadChunkScheduler = mDownloadChunkScheduler;
+        if (downloadChunkScheduler == null) {
+            return false;
+        }
+        if (downloadChunkScheduler.seekTo(pos)) {
+            addSeekTaskThread();
+        }
+        return true;
+    }
+
+    /**
+     * 等待pos开始的数据下载完成，供边下边播读取
+     *
+     * @param pos
+     * @param timeout          最长等待时间
+     * @param isUpdateReadPos 是否将pos作为分块的优先位置
+     * @return pos开始已连续下载的大小，任务还未获取到文件长度时返回-1
+     * @throws InterruptedException
+     */
+    public long waitForData(long pos, long timeout, boolean isUpdateReadPos) throws InterruptedException {
+        DownloadChunkScheduler downloadChunkScheduler = mDownloadChunkScheduler;
+        if (downloadChunkScheduler == null) {
+            return -1;
         }
-        return downloadedSize;
+        return downloadChunkScheduler.waitForData(pos, timeout, isUpdateReadPos);
+    }
+
+    /**
+     * mp4文件的ftyp和moov是否已下载完成，可以开始播放
+     *
+     * @return 还未探测或者不是mp4文件时返回false
+     */
+    public boolean isHeaderReady() {
+        DownloadChunkScheduler downloadChunkScheduler = mDownloadChunkScheduler;
+        return downloadChunkScheduler != null && downloadChunkScheduler.isHeaderReady();
     }
 
+    /**
+     * 播放位置跳转后拆分出新分块，增加一个连接立即下载，原连接在后台继续下载中间的部分
+     */
+    private void addSeekTaskThread() {
+        if (!DownloadTaskScheduler.getInstance().hasFreeConnection(getPriority())) {
+            //没有空闲连接，新分块由下一个空闲的线程优先下载
+            return;
+        }
+        synchronized (this) {
+            if (isCanDownload) {
+                return;
+            }
+            addTaskThread();
+        }
+    }
 
     /**
      * 取消任务
      */
     public void cancelTaskThread() {
-        isCanDownload = true;
-        mUpdateDownloadThread.interrupt();
-
-        for (int i = 0; i < mDownloadTaskThreads.size(); i++) {
-            DownloadTaskThread taskThread = mDownloadTaskThreads.get(i);
-            taskThread.cancel();
+        if (!stopTaskThread(true)) {
+            return;
         }
         if (mIDownloadTaskEvent != null) {
             mIDownloadTaskEvent.taskCancel(mDownloadTask);
         }
-        synchronized (mWorkerHandler) {
-            mWorkerHandler.notifyAll();
+        DownloadTaskScheduler.getInstance().onTaskEnd(this);
+    }
+
+    /**
+     * 获取任务优先级
+     *
+     * @return
+     */
+    public int getPriority() {
+        return mDownloadTask.getPriority();
+    }
+
+    /**
+     * 获取任务占用的连接数
+     *
+     * @return
+     */
+    public synchronized int getConnectionNum() {
+        if (mDownloadConnectionController == null) {
+            //还未启动
+            return getInitConnectionNum();
+        }
+        int connectionNum = 0;
+        for (int i = 0; i < mDownloadTaskThreads.size(); i++) {
+            if (mDownloadTaskThreads.get(i).isDownloading()) {
+                connectionNum++;
+            }
         }
+        return Math.max(1, connectionNum);
+    }
+
+    public long getSubmitIndex() {
+        return mSubmitIndex;
+    }
+
+    public void setSubmitIndex(long submitIndex) {
+        this.mSubmitIndex = submitIndex;
     }
 
     /**
-     * 复制文件
+     * 移动文件：同一分区直接重命名，跨分区时通过通道复制，避免逐块读写
      *
      * @param oldPath 旧文件路径
      * @param newPath 新文件路径
-     * @author zhangliangming
-     * @date 2017年7月8日
+     * @return
      */
-    private void copyFile(String oldPath, String newPath) {
-        File oldfile = null;
-        try {
-            int bytesum = 0;
-            int byteread = 0;
-            oldfile = new File(oldPath);
-            if (oldfile.exists()) { // 文件存在时
-                InputStream inStream = new FileInputStream(oldPath); // 读入原文件
-                FileOutputStream fs = new FileOutputStream(newPath);
-                byte[] buffer = new byte[1444];
-                while ((byteread = inStream.read(buffer)) != -1) {
-                    bytesum += byteread; // 字节数 文件大小
-                    fs.write(buffer, 0, byteread);
-                }
-                inStream.close();
-                fs.close();
+    private boolean moveFile(String oldPath, String newPath) {
+        File oldFile = new File(oldPath);
+        if (!oldFile.exists()) {
+            return false;
+        }
+        File newFile = new File(newPath);
+        if (!newFile.getParentFile().exists()) {
+            newFile.getParentFile().mkdirs();
+        }
+        if (oldFile.renameTo(newFile)) {
+            return true;
+        }
 
+        boolean isSuccess = false;
+        FileChannel inChannel = null;
+        FileChannel outChannel = null;
+        try {
+            inChannel = new FileInputStream(oldFile).getChannel();
+            outChannel = new FileOutputStream(newFile).getChannel();
+            long size = inChannel.size();
+            long position = 0;
+            while (position < size) {
+                position += inChannel.transferTo(position, size - position, outChannel);
             }
-
+            isSuccess = true;
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (oldfile != null) {
-                System.gc();
-                oldfile.delete();
-            }
-
+            if (inChannel != null)
+                try {
+                    inChannel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            if (outChannel != null)
+                try {
+                    outChannel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+        }
+        if (isSuccess) {
+            oldFile.delete();
+        } else {
+            newFile.delete();
         }
+        return isSuccess;
     }
 
 }
@@ -12,20 +12,20 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import com.zlm.hp.constants.ConfigInfo;
+import com.zlm.hp.db.DBWriteQueue;
 import com.zlm.hp.db.util.AudioInfoDB;
-import com.zlm.hp.db.util.DownloadThreadInfoDB;
+import com.zlm.hp.db.util.LazyAudioList;
 import com.zlm.hp.entity.AudioInfo;
 import com.zlm.hp.fragment.SongFragment;
 import com.zlm.hp.manager.AudioPlayerManager;
 import com.zlm.hp.manager.DownloadAudioManager;
-import com.zlm.hp.manager.OnLineAudioManager;
+import com.zlm.hp.manager.PlaybackTracer;
 import com.zlm.hp.receiver.AudioBroadcastReceiver;
 import com.zlm.hp.ui.R;
 import com.zlm.hp.util.ToastUtil;
 import com.zlm.hp.widget.IconfontImageButtonTextView;
 import com.zlm.hp.widget.ListItemRelativeLayout;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -37,7 +37,7 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
 
 
     private Context mContext;
-    private ArrayList<AudioInfo> mDatas;
+    private List<AudioInfo> mDatas;
     private int mSongType;
     private String mOldPlayHash = "";
     private ConfigInfo mConfigInfo;
@@ -47,7 +47,20 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
      */
     private int mMenuOpenIndex = -1;
 
-    public AudioAdapter(Context context, ArrayList<AudioInfo> datas, int songType) {
+    /**
+     * 喜欢/不喜欢写入失败时提示，并按数据库中的状态刷新
+     */
+    private DBWriteQueue.OnWriteResultListener mLikeResultListener = new DBWriteQueue.OnWriteResultListener() {
+        @Override
+        public void onResult(boolean result) {
+            if (!result) {
+                ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.like_error_text));
+                notifyDataSetChanged();
+            }
+        }
+    };
+
+    public AudioAdapter(Context context, List<AudioInfo> datas, int songType) {
         this.mContext = context;
         this.mDatas = datas;
         this.mSongType = songType;
@@ -66,11 +79,41 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
     @Override
     public void onBindViewHolder(RecyclerView.ViewHolder viewHolder, int position) {
         if (viewHolder instanceof AudioViewHolder && position < mDatas.size()) {
+            AudioViewHolder audioViewHolder = (AudioViewHolder) viewHolder;
             AudioInfo audioInfo = mDatas.get(position);
-            reshViewHolder(position, (AudioViewHolder) viewHolder, audioInfo);
+            if (audioInfo == null) {
+                audioViewHolder.getCategoryTv().setVisibility(View.GONE);
+                audioViewHolder.getMenuLinearLayout().setVisibility(View.GONE);
+                if (mDatas instanceof LazyAudioList && !((LazyAudioList) mDatas).isLoaded(position)) {
+                    //按页加载的歌曲还没加载，先显示空白的行，加载完成后刷新
+                    audioViewHolder.getListItemRelativeLayout().setVisibility(View.VISIBLE);
+                    audioViewHolder.getListItemRelativeLayout().setOnClickListener(null);
+                    audioViewHolder.getItemMoreImg().setOnClickListener(null);
+                    audioViewHolder.getStatusView().setVisibility(View.INVISIBLE);
+                    audioViewHolder.getIslocalImg().setVisibility(View.GONE);
+                    audioViewHolder.getSongIndexTv().setText(((position + 1) < 10 ? "0" + (position + 1) : (position + 1) + ""));
+                    audioViewHolder.getSongNameTv().setText("");
+                    audioViewHolder.getSingerNameTv().setText("");
+                    return;
+                }
+                //按页加载的歌曲读取失败或者已被删除，隐藏该位置，等待列表刷新
+                audioViewHolder.getListItemRelativeLayout().setVisibility(View.GONE);
+                return;
+            }
+            audioViewHolder.getListItemRelativeLayout().setVisibility(View.VISIBLE);
+            reshViewHolder(position, audioViewHolder, audioInfo);
         }
     }
 
+    /**
+     * 替换列表数据，例如按页加载的本地歌曲列表
+     *
+     * @param datas
+     */
+    public void setDatas(List<AudioInfo> datas) {
+        this.mDatas = datas;
+    }
+
     /**
      *
      */
@@ -87,6 +130,7 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
      * @param audioInfo
      */
     private void reshViewHolder(final int position, final AudioViewHolder viewHolder, final AudioInfo audioInfo) {
+        int state = getAudioState(position, audioInfo);
         //1更多按钮点击事件
         viewHolder.getItemMoreImg().setOnClickListener(new View.OnClickListener() {
             @Override
@@ -110,7 +154,7 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
             if (mSongType == SongFragment.SONG_TYPE_LOCAL) {
                 //本地歌曲
                 //喜欢/不喜欢
-                if (AudioInfoDB.isLikeAudioExists(mContext, audioInfo.getHash())) {
+                if ((state & AudioInfoDB.STATE_LIKE) != 0) {
                     viewHolder.getUnLikeImgBtn().setVisibility(View.GONE);
                     viewHolder.getLikedImgBtn().setVisibility(View.VISIBLE);
                 } else {
@@ -138,7 +182,7 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
                         viewHolder.getDeleteImgBtn().setVisibility(View.GONE);
                     }
                     //喜欢/不喜欢
-                    if (AudioInfoDB.isLikeAudioExists(mContext, audioInfo.getHash())) {
+                    if ((state & AudioInfoDB.STATE_LIKE) != 0) {
                         viewHolder.getUnLikeImgBtn().setVisibility(View.GONE);
                         viewHolder.getLikedImgBtn().setVisibility(View.VISIBLE);
                     } else {
@@ -148,15 +192,14 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
                 }
 
                 //下载完成
-                if (audioInfo.getType() == AudioInfo.TYPE_LOCAL || AudioInfoDB.isDownloadedAudioExists(mContext, audioInfo.getHash())) {
+                if ((state & AudioInfoDB.STATE_DOWNLOADED) != 0) {
                     viewHolder.getDownloadImg().setVisibility(View.INVISIBLE);
                     viewHolder.getDownloadedImg().setVisibility(View.VISIBLE);
                     viewHolder.getIslocalImg().setVisibility(View.VISIBLE);
                 } else {
                     viewHolder.getDownloadImg().setVisibility(View.VISIBLE);
                     viewHolder.getDownloadedImg().setVisibility(View.INVISIBLE);
-                    int downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, audioInfo.getHash(), OnLineAudioManager.mThreadNum);
-                    if (downloadedSize >= audioInfo.getFileSize()) {
+                    if ((state & AudioInfoDB.STATE_CACHED) != 0) {
                         viewHolder.getIslocalImg().setVisibility(View.VISIBLE);
                     } else {
                         viewHolder.getIslocalImg().setVisibility(View.GONE);
@@ -178,17 +221,28 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
 
         }
 
+        //分类
+        String sectionTitle = null;
+        if (mDatas instanceof LazyAudioList) {
+            sectionTitle = ((LazyAudioList) mDatas).getSectionTitle(position);
+        }
+        if (sectionTitle != null) {
+            viewHolder.getCategoryTv().setText(sectionTitle);
+            viewHolder.getCategoryTv().setVisibility(View.VISIBLE);
+        } else {
+            viewHolder.getCategoryTv().setVisibility(View.GONE);
+        }
+
         viewHolder.getSongIndexTv().setText(((position + 1) < 10 ? "0" + (position + 1) : (position + 1) + ""));
         viewHolder.getSongIndexTv().setVisibility(View.VISIBLE);
         viewHolder.getSongNameTv().setText(audioInfo.getSongName());
         viewHolder.getSingerNameTv().setText(audioInfo.getSingerName());
 
         //下载完成
-        if (audioInfo.getType() == AudioInfo.TYPE_LOCAL || AudioInfoDB.isDownloadedAudioExists(mContext, audioInfo.getHash())) {
+        if ((state & AudioInfoDB.STATE_DOWNLOADED) != 0) {
             viewHolder.getIslocalImg().setVisibility(View.VISIBLE);
         } else {
-            int downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, audioInfo.getHash(), OnLineAudioManager.mThreadNum);
-            if (downloadedSize >= audioInfo.getFileSize()) {
+            if ((state & AudioInfoDB.STATE_CACHED) != 0) {
                 viewHolder.getIslocalImg().setVisibility(View.VISIBLE);
             } else {
                 viewHolder.getIslocalImg().setVisibility(View.GONE);
@@ -213,9 +267,11 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
                 }
 
                 mOldPlayHash = audioInfo.getHash();
+                //从点击开始记录播放耗时
+                PlaybackTracer.getInstance().begin(audioInfo.getHash());
                 if (mSongType == SongFragment.SONG_TYPE_LOCAL) {
                     //如果是本地歌曲列表，点击列表时，需要替换当前的播放列表为本地歌曲列表
-                    AudioPlayerManager.getInstance(mContext).playSong(AudioInfoDB.getLocalAudios(mContext), audioInfo);
+                    AudioPlayerManager.getInstance(mContext).playLocalSong(audioInfo);
                 } else {
                     AudioPlayerManager.getInstance(mContext).playSongAndAdd(audioInfo);
                 }
@@ -236,14 +292,11 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
             @Override
             public void onClick(View v) {
                 if (audioInfo != null) {
-                    if (!AudioInfoDB.isLikeAudioExists(mContext, audioInfo.getHash())) {
-                        boolean result = AudioInfoDB.addLikeAudio(mContext, audioInfo, true);
-                        if (result) {
-                            viewHolder.getUnLikeImgBtn().setVisibility(View.GONE);
-                            viewHolder.getLikedImgBtn().setVisibility(View.VISIBLE);
-                            ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.like_tip_text));
-                        }
-                    }
+                    //在写入队列中修改，界面直接更新，失败时恢复
+                    AudioInfoDB.addLikeAudioAsync(mContext, audioInfo, true, mLikeResultListener);
+                    viewHolder.getUnLikeImgBtn().setVisibility(View.GONE);
+                    viewHolder.getLikedImgBtn().setVisibility(View.VISIBLE);
+                    ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.like_tip_text));
                 }
             }
         });
@@ -251,15 +304,12 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
             @Override
             public void onClick(View v) {
                 if (audioInfo != null) {
-                    if (AudioInfoDB.isLikeAudioExists(mContext, audioInfo.getHash())) {
-                        boolean result = AudioInfoDB.deleteLikeAudio(mContext, audioInfo.getHash(), true);
-                        if (result) {
-                            viewHolder.getUnLikeImgBtn().setVisibility(View.VISIBLE);
-                            viewHolder.getLikedImgBtn().setVisibility(View.GONE);
+                    //在写入队列中修改，界面直接更新，失败时恢复
+                    AudioInfoDB.deleteLikeAudioAsync(mContext, audioInfo.getHash(), true, mLikeResultListener);
+                    viewHolder.getUnLikeImgBtn().setVisibility(View.VISIBLE);
+                    viewHolder.getLikedImgBtn().setVisibility(View.GONE);
 
-                            ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.unlike_tip_text));
-                        }
-                    }
+                    ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.unlike_tip_text));
                 }
             }
         });
@@ -275,15 +325,12 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
                 if (mSongType == SongFragment.SONG_TYPE_LIKE) {
                     //移除喜欢
                     if (audioInfo != null) {
-                        if (AudioInfoDB.isLikeAudioExists(mContext, audioInfo.getHash())) {
-                            boolean result = AudioInfoDB.deleteLikeAudio(mContext, audioInfo.getHash(), true);
-                            if (result) {
-                                viewHolder.getUnLikeImgBtn().setVisibility(View.VISIBLE);
-                                viewHolder.getLikedImgBtn().setVisibility(View.GONE);
+                        //在写入队列中修改，界面直接更新，失败时恢复
+                        AudioInfoDB.deleteLikeAudioAsync(mContext, audioInfo.getHash(), true, mLikeResultListener);
+                        viewHolder.getUnLikeImgBtn().setVisibility(View.VISIBLE);
+                        viewHolder.getLikedImgBtn().setVisibility(View.GONE);
 
-                                ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.unlike_tip_text));
-                            }
-                        }
+                        ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.unlike_tip_text));
                     }
                 } else if (mSongType == SongFragment.SONG_TYPE_RECENT) {
                     //最近移除
@@ -369,10 +416,28 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
 
     }
 
+    /**
+     * 获取歌曲状态，按页加载的列表使用加载页时读取的状态
+     *
+     * @param position
+     * @param audioInfo
+     * @return
+     */
+    private int getAudioState(int position, AudioInfo audioInfo) {
+        if (mDatas instanceof LazyAudioList) {
+            return ((LazyAudioList) mDatas).getState(position);
+        }
+        return AudioInfoDB.getAudioState(mContext, audioInfo);
+    }
+
     /***
      * 刷新
      */
     public void reshViewHolder(String playHash) {
+        if (mDatas instanceof LazyAudioList && !TextUtils.isEmpty(playHash)) {
+            //喜欢或者下载状态可能已改变，重新读取后刷新
+            ((LazyAudioList) mDatas).reloadState(playHash);
+        }
         int oldIndex = getAudioIndex(mOldPlayHash);
         if (oldIndex != -1) {
             mOldPlayHash = "";
@@ -391,6 +456,10 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
      */
     private int getAudioIndex(String playHash) {
         if (TextUtils.isEmpty(playHash)) return -1;
+        if (mDatas instanceof LazyAudioList) {
+            //没有加载的歌曲不在界面上，不需要刷新
+            return ((LazyAudioList) mDatas).getLoadedIndex(playHash);
+        }
         if (mDatas != null && mDatas.size() > 0) {
             for (int i = 0; i < mDatas.size(); i++) {
                 AudioInfo temp = mDatas.get(i);
@@ -426,6 +495,10 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
          * 歌曲索引
          */
         private TextView songIndexTv;
+        /**
+         * 分类
+         */
+        private TextView categoryTv;
 
         /**
          * 歌曲名称
@@ -527,6 +600,13 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
             return islocalImg;
         }
 
+        public TextView getCategoryTv() {
+            if (categoryTv == null) {
+                categoryTv = view.findViewById(R.id.category);
+            }
+            return categoryTv;
+        }
+
         public TextView getSongIndexTv() {
 
             if (songIndexTv == null) {
@@ -13,6 +13,7 @@ import android.widget.TextView;
 
 import com.zlm.down.entity.DownloadTask;
 import com.zlm.hp.constants.ConfigInfo;
+import com.zlm.hp.db.DBWriteQueue;
 import com.zlm.hp.db.util.AudioInfoDB;
 import com.zlm.hp.db.util.DownloadTaskDB;
 import com.zlm.hp.db.util.DownloadThreadInfoDB;
@@ -58,6 +59,19 @@ public class DownloadMusicAdapter extends RecyclerView.Adapter<RecyclerView.View
      */
     private int mMenuOpenIndex = -1;
 
+    /**
+     * 喜欢写入失败，重新按数据库显示
+     */
+    private DBWriteQueue.OnWriteResultListener mLikeResultListener = new DBWriteQueue.OnWriteResultListener() {
+        @Override
+        public void onResult(boolean result) {
+            if (!result) {
+                ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.like_error_text));
+                notifyDataSetChanged();
+            }
+        }
+    };
+
 
     public DownloadMusicAdapter(Context context, ArrayList<Category> datas) {
         this.mContext = context;
@@ -137,7 +151,7 @@ public class DownloadMusicAdapter extends RecyclerView.Adapter<RecyclerView.View
     private void reshViewHolder(final int position, final DownloadingMusicViewHolder viewHolder, final AudioInfo audioInfo) {
         viewHolder.getTitleTv().setText(audioInfo.getTitle());
         String fileSizeText = FileUtil.getFileSize(audioInfo.getFileSize());
-        int downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, audioInfo.getHash(), DownloadAudioManager.mThreadNum);
+        long downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, audioInfo.getHash(), DownloadAudioManager.mThreadNum);
         String downloadSizeText = FileUtil.getFileSize(downloadedSize);
         viewHolder.getDlTipTv().setText(downloadSizeText + "/" + fileSizeText);
 
@@ -274,14 +288,11 @@ public class DownloadMusicAdapter extends RecyclerView.Adapter<RecyclerView.View
             @Override
             public void onClick(View v) {
                 if (audioInfo != null) {
-                    if (!AudioInfoDB.isLikeAudioExists(mContext, audioInfo.getHash())) {
-                        boolean result = AudioInfoDB.addLikeAudio(mContext, audioInfo, true);
-                        if (result) {
-                            viewHolder.getUnLikeImgBtn().setVisibility(View.GONE);
-                            viewHolder.getLikedImgBtn().setVisibility(View.VISIBLE);
-                            ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.like_tip_text));
-                        }
-                    }
+                    //在写入队列中修改，界面直接更新，失败时恢复
+                    AudioInfoDB.addLikeAudioAsync(mContext, audioInfo, true, mLikeResultListener);
+                    viewHolder.getUnLikeImgBtn().setVisibility(View.GONE);
+                    viewHolder.getLikedImgBtn().setVisibility(View.VISIBLE);
+                    ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.like_tip_text));
                 }
             }
         });
@@ -289,15 +300,12 @@ public class DownloadMusicAdapter extends RecyclerView.Adapter<RecyclerView.View
             @Override
             public void onClick(View v) {
                 if (audioInfo != null) {
-                    if (AudioInfoDB.isLikeAudioExists(mContext, audioInfo.getHash())) {
-                        boolean result = AudioInfoDB.deleteLikeAudio(mContext, audioInfo.getHash(), true);
-                        if (result) {
-                            viewHolder.getUnLikeImgBtn().setVisibility(View.VISIBLE);
-                            viewHolder.getLikedImgBtn().setVisibility(View.GONE);
-
-                            ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.unlike_tip_text));
-                        }
-                    }
+                    //在写入队列中修改，界面直接更新，失败时恢复
+                    AudioInfoDB.deleteLikeAudioAsync(mContext, audioInfo.getHash(), true, mLikeResultListener);
+                    viewHolder.getUnLikeImgBtn().setVisibility(View.VISIBLE);
+                    viewHolder.getLikedImgBtn().setVisibility(View.GONE);
+
+                    ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.unlike_tip_text));
                 }
             }
         });
@@ -14,6 +14,7 @@ import android.widget.TextView;
 
 import com.zlm.hp.async.AsyncHandlerTask;
 import com.zlm.hp.constants.ConfigInfo;
+import com.zlm.hp.db.DBWriteQueue;
 import com.zlm.hp.db.util.AudioInfoDB;
 import com.zlm.hp.db.util.DownloadThreadInfoDB;
 import com.zlm.hp.entity.AudioInfo;
@@ -42,6 +43,19 @@ public class PopPlayListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
     private String mOldPlayHash = "";
     private ConfigInfo mConfigInfo;
 
+    /**
+     * 写入失败时恢复列表中的喜欢状态
+     */
+    private DBWriteQueue.OnWriteResultListener mLikeResultListener = new DBWriteQueue.OnWriteResultListener() {
+        @Override
+        public void onResult(boolean result) {
+            if (!result) {
+                ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.like_error_text));
+                notifyDataSetChanged();
+            }
+        }
+    };
+
 
     public PopPlayListAdapter(Context context, List<AudioInfo> datas, WeakRefHandler uiHandler, WeakRefHandler workerHandler) {
         this.mContext = context;
@@ -103,7 +117,7 @@ public class PopPlayListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
         } else {
             viewHolder.getDownloadImg().setVisibility(View.VISIBLE);
             viewHolder.getDownloadedImg().setVisibility(View.INVISIBLE);
-            int downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, audioInfo.getHash(), OnLineAudioManager.mThreadNum);
+            long downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, audioInfo.getHash(), OnLineAudioManager.mThreadNum);
             if (downloadedSize >= audioInfo.getFileSize()) {
                 viewHolder.getIslocalImg().setVisibility(View.VISIBLE);
             } else {
@@ -138,14 +152,11 @@ public class PopPlayListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
             @Override
             public void onClick(View v) {
                 if (audioInfo != null) {
-                    if (!AudioInfoDB.isLikeAudioExists(mContext, audioInfo.getHash())) {
-                        boolean result = AudioInfoDB.addLikeAudio(mContext, audioInfo, true);
-                        if (result) {
-                            viewHolder.getUnLikeTv().setVisibility(View.INVISIBLE);
-                            viewHolder.getLikedImg().setVisibility(View.VISIBLE);
-                            ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.like_tip_text));
-                        }
-                    }
+                    //在写入队列中修改，界面直接更新，失败时恢复
+                    AudioInfoDB.addLikeAudioAsync(mContext, audioInfo, true, mLikeResultListener);
+                    viewHolder.getUnLikeTv().setVisibility(View.INVISIBLE);
+                    viewHolder.getLikedImg().setVisibility(View.VISIBLE);
+                    ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.like_tip_text));
                 }
             }
         });
@@ -155,15 +166,12 @@ public class PopPlayListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
             @Override
             public void onClick(View v) {
                 if (audioInfo != null) {
-                    if (AudioInfoDB.isLikeAudioExists(mContext, audioInfo.getHash())) {
-                        boolean result = AudioInfoDB.deleteLikeAudio(mContext, audioInfo.getHash(), true);
-                        if (result) {
-                            viewHolder.getUnLikeTv().setVisibility(View.VISIBLE);
-                            viewHolder.getLikedImg().setVisibility(View.INVISIBLE);
-
-                            ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.unlike_tip_text));
-                        }
-                    }
+                    //在写入队列中修改，界面直接更新，失败时恢复
+                    AudioInfoDB.deleteLikeAudioAsync(mContext, audioInfo.getHash(), true, mLikeResultListener);
+                    viewHolder.getUnLikeTv().setVisibility(View.VISIBLE);
+                    viewHolder.getLikedImg().setVisibility(View.INVISIBLE);
+
+                    ToastUtil.showTextToast(mContext, mContext.getResources().getString(R.string.unlike_tip_text));
                 }
             }
         });
@@ -17,6 +17,7 @@ import com.zlm.hp.constants.ConfigInfo;
 import com.zlm.hp.constants.Constants;
 import com.zlm.hp.constants.ResourceConstants;
 import com.zlm.hp.db.DBHelper;
+import com.zlm.hp.http.HttpConnectionManager;
 import com.zlm.hp.manager.ActivityManager;
 import com.zlm.hp.service.FloatService;
 import com.zlm.hp.ui.R;
@@ -86,6 +87,8 @@ public class HPApplication extends MultiDexApplication {
         super.onCreate();
         //封装全局context
         ContextUtil.init(getApplicationContext());
+        //初始化http连接池，需要在第一次请求前设置
+        HttpConnectionManager.init();
         mHandler = new Handler(Looper.getMainLooper());
 
         //全局收集
@@ -199,10 +202,10 @@ public class HPApplication extends MultiDexApplication {
     }
 
     /**
-     * 初始化数据库
+     * 初始化数据库，在子线程中打开，不阻塞启动
      */
     private void initDB() {
-        DBHelper.getInstance(getApplicationContext());
+        DBHelper.getInstance(getApplicationContext()).openAsync();
     }
 
     /**
@@ -4,6 +4,8 @@ package com.zlm.hp.constants;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.zlm.down.entity.DownloadTask;
+import com.zlm.down.manager.DownloadSpeedLimiter;
 import com.zlm.hp.entity.AudioInfo;
 import com.zlm.hp.entity.TimerInfo;
 import com.zlm.hp.util.CodeLineUtil;
@@ -196,6 +198,42 @@ public class ConfigInfo implements Parcelable {
      */
     private int subtitleFontSize = MIN_LRC_FONT_SIZE;
 
+    //下载限速，单位KB/秒，0为不限速
+    /**
+     * 全局限速
+     */
+    private int totalSpeedLimit;
+    /**
+     * 在线播放限速
+     */
+    private int streamSpeedLimit;
+    /**
+     * 预加载限速
+     */
+    private int prefetchSpeedLimit;
+    /**
+     * 下载限速
+     */
+    private int downloadSpeedLimit;
+    /**
+     * 视频缓存限速
+     */
+    private int videoSpeedLimit;
+
+    /**
+     * 预加载接下来播放的歌曲个数，0为不预加载
+     */
+    private int prefetchNum = 2;
+    /**
+     * 预加载的总大小，单位KB，平均分配给每首歌曲的文件头部
+     */
+    private int prefetchSize = 2048;
+
+    /**
+     * 在线歌曲缓存上限，单位MB，0为不限制
+     */
+    private int audioCacheSize = 500;
+
     public ConfigInfo(){
 
     }
@@ -218,6 +256,21 @@ public class ConfigInfo implements Parcelable {
 
             isShowSubtitle = in.readByte() != 0;
             subtitleFontSize = in.readInt();/**/
+
+            totalSpeedLimit = in.readInt();
+            streamSpeedLimit = in.readInt();
+            prefetchSpeedLimit = in.readInt();
+            downloadSpeedLimit = in.readInt();
+            videoSpeedLimit = in.readInt();
+            if (in.dataAvail() > 0) {
+                //旧版本没有保存预加载配置
+                prefetchNum = in.readInt();
+                prefetchSize = in.readInt();
+            }
+            if (in.dataAvail() > 0) {
+                //旧版本没有保存缓存上限
+                audioCacheSize = in.readInt();
+            }
 //            audioInfos = in.createTypedArrayList(AudioInfo.CREATOR);
         }
     }
@@ -240,6 +293,15 @@ public class ConfigInfo implements Parcelable {
 
         dest.writeByte((byte) (isShowSubtitle ? 1 : 0));
         dest.writeInt(subtitleFontSize);
+
+        dest.writeInt(totalSpeedLimit);
+        dest.writeInt(streamSpeedLimit);
+        dest.writeInt(prefetchSpeedLimit);
+        dest.writeInt(downloadSpeedLimit);
+        dest.writeInt(videoSpeedLimit);
+        dest.writeInt(prefetchNum);
+        dest.writeInt(prefetchSize);
+        dest.writeInt(audioCacheSize);
 //        dest.writeTypedList(audioInfos);
     }
 
@@ -289,6 +351,7 @@ public class ConfigInfo implements Parcelable {
         }else{
             _ConfigInfo = CREATOR.createFromParcel(parcel);
         }
+        _ConfigInfo.applySpeedLimit();
         return _ConfigInfo;
     }
 
@@ -326,9 +389,22 @@ public class ConfigInfo implements Parcelable {
         }
         //
         _ConfigInfo = this;
+        applySpeedLimit();
         return _ConfigInfo;
     }
 
+    /**
+     * 下载限速立即生效，包括正在下载的任务
+     */
+    private void applySpeedLimit() {
+        DownloadSpeedLimiter downloadSpeedLimiter = DownloadSpeedLimiter.getInstance();
+        downloadSpeedLimiter.setTotalSpeed(totalSpeedLimit);
+        downloadSpeedLimiter.setSpeed(DownloadTask.PRIORITY_STREAM, streamSpeedLimit);
+        downloadSpeedLimiter.setSpeed(DownloadTask.PRIORITY_PREFETCH, prefetchSpeedLimit);
+        downloadSpeedLimiter.setSpeed(DownloadTask.PRIORITY_DOWNLOAD, downloadSpeedLimit);
+        downloadSpeedLimiter.setSpeed(DownloadTask.PRIORITY_VIDEO, videoSpeedLimit);
+    }
+
     public boolean isWifi() {
         return isWifi;
     }
@@ -455,6 +531,78 @@ public class ConfigInfo implements Parcelable {
         return this;
     }
 
+    public int getTotalSpeedLimit() {
+        return totalSpeedLimit;
+    }
+
+    public ConfigInfo setTotalSpeedLimit(int totalSpeedLimit) {
+        this.totalSpeedLimit = totalSpeedLimit;
+        return this;
+    }
+
+    public int getStreamSpeedLimit() {
+        return streamSpeedLimit;
+    }
+
+    public ConfigInfo setStreamSpeedLimit(int streamSpeedLimit) {
+        this.streamSpeedLimit = streamSpeedLimit;
+        return this;
+    }
+
+    public int getPrefetchSpeedLimit() {
+        return prefetchSpeedLimit;
+    }
+
+    public ConfigInfo setPrefetchSpeedLimit(int prefetchSpeedLimit) {
+        this.prefetchSpeedLimit = prefetchSpeedLimit;
+        return this;
+    }
+
+    public int getDownloadSpeedLimit() {
+        return downloadSpeedLimit;
+    }
+
+    public ConfigInfo setDownloadSpeedLimit(int downloadSpeedLimit) {
+        this.downloadSpeedLimit = downloadSpeedLimit;
+        return this;
+    }
+
+    public int getVideoSpeedLimit() {
+        return videoSpeedLimit;
+    }
+
+    public ConfigInfo setVideoSpeedLimit(int videoSpeedLimit) {
+        this.videoSpeedLimit = videoSpeedLimit;
+        return this;
+    }
+
+    public int getPrefetchNum() {
+        return prefetchNum;
+    }
+
+    public ConfigInfo setPrefetchNum(int prefetchNum) {
+        this.prefetchNum = prefetchNum;
+        return this;
+    }
+
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    public ConfigInfo setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = prefetchSize;
+        return this;
+    }
+
+    public int getAudioCacheSize() {
+        return audioCacheSize;
+    }
+
+    public ConfigInfo setAudioCacheSize(int audioCacheSize) {
+        this.audioCacheSize = audioCacheSize;
+        return this;
+    }
+
     public TimerInfo getTimerInfo() {
         return timerInfo;
     }
@@ -1,15 +1,25 @@
 package com.zlm.hp.db;
 
 import android.content.Context;
+import android.database.Cursor;
 
 import com.zlm.hp.db.dao.DaoMaster;
 import com.zlm.hp.db.dao.DaoSession;
 import com.zlm.hp.util.ApkUtil;
+import com.zlm.hp.util.CodeLineUtil;
+import com.zlm.hp.util.ZLog;
 
 import org.greenrobot.greendao.database.Database;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
 /**
  * 数据库辅助类
+ * 加密数据库只打开一次并缓存，打开时需要生成密钥和建立连接，比较耗时，程序启动时在子线程中打开；
+ * 打开完成前获取数据库会等待打开完成
  * Created by zhangliangming on 2018-08-18.
  */
 
@@ -21,6 +31,21 @@ public class DBHelper {
     private static DaoSession mDaoSession;
     private static String mPassword;
 
+    /**
+     * 已打开的数据库
+     */
+    private static volatile Database mDatabase;
+
+    /**
+     * 打开数据库的任务，只执行一次
+     */
+    private final FutureTask<Database> mOpenTask = new FutureTask<Database>(new Callable<Database>() {
+        @Override
+        public Database call() throws Exception {
+            return openDatabase();
+        }
+    });
+
     private DBHelper(Context context) {
         init(context);
     }
@@ -29,8 +54,6 @@ public class DBHelper {
         mPassword = ApkUtil.getUniquePsuedoID(context);
         // 初始化数据库信息
         mDevOpenHelper = new UpdateOpenHelper(context, DB_NAME, null);
-        getDaoMaster();
-        getDaoSession();
     }
 
     public static DBHelper getInstance(Context context) {
@@ -45,43 +68,109 @@ public class DBHelper {
     }
 
     /**
-     * 获取可写数据库
+     * 在子线程中打开数据库，程序启动时调用
+     */
+    public void openAsync() {
+        Thread thread = new Thread(mOpenTask, "openDBThread");
+        thread.start();
+    }
+
+    /**
+     * 获取数据库打开完成的future，可以等待打开完成
      *
      * @return
      */
-    public Database getWritableDatabase() {
-        return mDevOpenHelper.getEncryptedWritableDb(mPassword);
-//        return mDevOpenHelper.getWritableDb();
+    public Future<Database> getReadyFuture() {
+        return mOpenTask;
     }
 
     /**
-     * 获取DaoMaster
+     * 数据库是否已打开
      *
      * @return
      */
-    private DaoMaster getDaoMaster() {
-        if (null == mDaoMaster) {
-            synchronized (DBHelper.class) {
-                if (null == mDaoMaster) {
-                    mDaoMaster = new DaoMaster(getWritableDatabase());
-                }
+    public boolean isReady() {
+        return mDatabase != null;
+    }
+
+    /**
+     * 获取可写数据库，还没有打开时在当前线程打开，正在其它线程打开时等待打开完成
+     *
+     * @return
+     */
+    public Database getWritableDatabase() {
+        Database database = mDatabase;
+        if (database != null) {
+            return database;
+        }
+        //还没有开始打开时在当前线程打开，已经开始或者完成时直接返回，再等待结果
+        mOpenTask.run();
+        try {
+            return mOpenTask.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
         }
-        return mDaoMaster;
     }
 
     /**
-     * 获取DaoSession
+     * 打开加密数据库，并开启预写日志
      *
      * @return
      */
-    public DaoSession getDaoSession() {
-        if (null == mDaoSession) {
-            synchronized (DBHelper.class) {
-                mDaoSession = getDaoMaster().newSession();
+    private Database openDatabase() {
+        long startTime = System.currentTimeMillis();
+        Database database = mDevOpenHelper.getEncryptedWritableDb(mPassword);
+//        Database database = mDevOpenHelper.getWritableDb();
+        enableWriteAheadLogging(database);
+        mDaoMaster = new DaoMaster(database);
+        mDaoSession = mDaoMaster.newSession();
+        mDatabase = database;
+        ZLog.d(new CodeLineUtil().getCodeLineInfo(), "open db ->" + (System.currentTimeMillis() - startTime) + "ms");
+        return database;
+    }
+
+    /**
+     * 开启预写日志，失败时使用默认的日志模式；
+     * 加密数据库只有一个连接，读取和写入仍然在这个连接上排队，预写日志不会让读取绕过写入；
+     * 预写日志下提交只追加到日志文件，配合synchronous=NORMAL不需要每次提交都同步到磁盘，频繁的小事务写入更快
+     *
+     * @param database
+     */
+    private void enableWriteAheadLogging(Database database) {
+        Cursor cursor = null;
+        try {
+            //journal_mode会返回修改后的模式，需要读取结果
+            cursor = database.rawQuery("PRAGMA journal_mode=WAL", null);
+            if (cursor.moveToFirst()) {
+                ZLog.d(new CodeLineUtil().getCodeLineInfo(), "db journal_mode ->" + cursor.getString(0));
+            }
+            cursor.close();
+            cursor = null;
+            //预写日志模式下NORMAL也不会损坏数据库
+            database.execSQL("PRAGMA synchronous=NORMAL");
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
             }
         }
+    }
 
+    /**
+     * 获取DaoSession
+     *
+     * @return
+     */
+    public DaoSession getDaoSession() {
+        getWritableDatabase();
         return mDaoSession;
     }
 }
@@ -0,0 +1,413 @@
+package com.zlm.hp.db;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import org.greenrobot.greendao.database.Database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * @Description: 数据库写入队列
+ * 所有修改由同一个线程执行，一个写入间隔内提交的修改合并到同一个事务中，事务提交后再通知结果；
+ * 合并的事务中有修改失败时整体回滚，再逐条重新执行，避免一条修改失败导致其它修改丢失；
+ * 事务中执行预编译语句时使用写入线程专用的语句，不和其它线程竞争同一条语句
+ * @author: zhangliangming
+ * @date: 2019-05-07 20:30
+ **/
+public class DBWriteQueue {
+
+    /**
+     * 写入间隔
+     */
+    private static final int FLUSH_INTERVAL = 50;
+    /**
+     * 每个事务最多合并的修改个数
+     */
+    private static final int MAX_BATCH_SIZE = 200;
+
+    private static DBWriteQueue _DBWriteQueue;
+
+    /**
+     * 子线程用于写入
+     */
+    private Handler mWorkerHandler;
+    //创建异步HandlerThread
+    private HandlerThread mHandlerThread;
+
+    /**
+     * 等待写入的修改
+     */
+    private List<WriteTask> mPendingTasks = new ArrayList<WriteTask>();
+
+    /**
+     * 是否已安排写入
+     */
+    private boolean isFlushScheduled = false;
+
+    /**
+     * 已完成的修改个数
+     */
+    private long mTaskCount = 0;
+    /**
+     * 已提交的事务个数
+     */
+    private long mBatchCount = 0;
+    /**
+     * 失败的修改个数
+     */
+    private long mFailCount = 0;
+    /**
+     * 最大的队列长度
+     */
+    private int mMaxQueueDepth = 0;
+    /**
+     * 从提交到完成的总耗时和最大耗时
+     */
+    private long mTotalLatency = 0;
+    private long mMaxLatency = 0;
+    /**
+     * 事务执行的总耗时
+     */
+    private long mTotalFlushTime = 0;
+
+    /**
+     * 写入线程专用的预编译语句
+     */
+    private StatementRepository mStatementRepository;
+
+    /**
+     * 主线程Handler，用于回调修改结果
+     */
+    private Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private Context mContext;
+
+    private DBWriteQueue(Context context) {
+        this.mContext = context.getApplicationContext();
+
+        //创建异步HandlerThread
+        mHandlerThread = new HandlerThread("dbWriteThread", Process.THREAD_PRIORITY_BACKGROUND);
+        //必须先开启线程
+        mHandlerThread.start();
+        //子线程Handler
+        mWorkerHandler = new Handler(mHandlerThread.getLooper());
+    }
+
+    public static DBWriteQueue getInstance(Context context) {
+        if (_DBWriteQueue == null) {
+            synchronized (DBWriteQueue.class) {
+                if (_DBWriteQueue == null) {
+                    _DBWriteQueue = new DBWriteQueue(context);
+                }
+            }
+        }
+        return _DBWriteQueue;
+    }
+
+    /**
+     * 定时写入
+     */
+    private Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * 提交修改
+     *
+     * @param mutation 在写入线程的事务中执行，返回是否修改成功
+     * @return 事务提交后完成
+     */
+    public Future<Boolean> submit(Callable<Boolean> mutation) {
+        return submit(mutation, null);
+    }
+
+    /**
+     * 提交修改
+     *
+     * @param mutation 在写入线程的事务中执行，返回是否修改成功
+     * @param onCommit 事务提交后在写入线程中执行，修改失败时不执行，例如用于发送数据更新的通知
+     * @return 事务提交后完成
+     */
+    public Future<Boolean> submit(Callable<Boolean> mutation, Runnable onCommit) {
+        return submit(mutation, onCommit, null);
+    }
+
+    /**
+     * 提交修改
+     *
+     * @param mutation              在写入线程的事务中执行，返回是否修改成功
+     * @param onCommit              事务提交后在写入线程中执行，修改失败时不执行
+     * @param onWriteResultListener 完成后在主线程中回调结果，例如修改失败时恢复界面
+     * @return 事务提交后完成
+     */
+    public Future<Boolean> submit(Callable<Boolean> mutation, Runnable onCommit, OnWriteResultListener onWriteResultListener) {
+        WriteTask task = new WriteTask(mutation, onCommit, onWriteResultListener == null ? null : mMainHandler, onWriteResultListener);
+        synchronized (this) {
+            mPendingTasks.add(task);
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, mPendingTasks.size());
+            if (isFlushScheduled) {
+                return task;
+            }
+            isFlushScheduled = true;
+        }
+        mWorkerHandler.postDelayed(mFlushRunnable, FLUSH_INTERVAL);
+        return task;
+    }
+
+    /**
+     * 提交修改并等待完成，在写入线程中调用时直接执行
+     *
+     * @param mutation
+     * @return
+     */
+    public boolean execute(Callable<Boolean> mutation) {
+        if (isWriteThread()) {
+            try {
+                return mutation.call();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return false;
+        }
+        try {
+            return submit(mutation).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * 当前是否是写入线程
+     *
+     * @return
+     */
+    public boolean isWriteThread() {
+        return Looper.myLooper() == mHandlerThread.getLooper();
+    }
+
+    /**
+     * 获取写入线程专用的预编译语句，只能在修改中使用
+     *
+     * @return
+     */
+    public StatementRepository getStatementRepository() {
+        if (!isWriteThread()) {
+            throw new IllegalStateException("not on db write thread");
+        }
+        if (mStatementRepository == null) {
+            mStatementRepository = new StatementRepository(DBHelper.getInstance(mContext).getWritableDatabase());
+        }
+        return mStatementRepository;
+    }
+
+    /**
+     * 写入等待中的修改
+     */
+    private void flush() {
+        List<WriteTask> tasks;
+        synchronized (this) {
+            int size = Math.min(mPendingTasks.size(), MAX_BATCH_SIZE);
+            tasks = new ArrayList<WriteTask>(mPendingTasks.subList(0, size));
+            mPendingTasks.subList(0, size).clear();
+            isFlushScheduled = !mPendingTasks.isEmpty();
+        }
+        if (isFlushScheduled) {
+            //超过最大个数，剩余的修改马上继续写入
+            mWorkerHandler.post(mFlushRunnable);
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        Database db = DBHelper.getInstance(mContext).getWritableDatabase();
+        if (!runInTransaction(db, tasks)) {
+            //逐条重新执行
+            for (int i = 0; i < tasks.size(); i++) {
+                List<WriteTask> singleTask = new ArrayList<WriteTask>();
+                singleTask.add(tasks.get(i));
+                if (!runInTransaction(db, singleTask)) {
+                    tasks.get(i).fail();
+                }
+            }
+        }
+        long endTime = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            mBatchCount++;
+            mTotalFlushTime += endTime - startTime;
+            for (int i = 0; i < tasks.size(); i++) {
+                WriteTask task = tasks.get(i);
+                long latency = endTime - task.submitTime;
+                mTaskCount++;
+                mTotalLatency += latency;
+                mMaxLatency = Math.max(mMaxLatency, latency);
+                if (!task.result) {
+                    mFailCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * 在同一个事务中执行修改，提交成功后通知结果
+     *
+     * @param db
+     * @param tasks
+     * @return 事务是否提交成功
+     */
+    private boolean runInTransaction(Database db, List<WriteTask> tasks) {
+        boolean committed = false;
+        db.beginTransaction();
+        try {
+            boolean success = true;
+            for (int i = 0; i < tasks.size(); i++) {
+                WriteTask task = tasks.get(i);
+                task.execute();
+                success = success && task.result;
+            }
+            //修改内部的事务失败时，外层事务会在结束时回滚，有修改失败时合并的事务整体回滚后逐条执行
+            if (success || tasks.size() == 1) {
+                db.setTransactionSuccessful();
+                committed = true;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                db.endTransaction();
+            } catch (Exception e) {
+                e.printStackTrace();
+                committed = false;
+            }
+        }
+        if (committed) {
+            for (int i = 0; i < tasks.size(); i++) {
+                tasks.get(i).commit();
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * 获取等待写入的修改个数
+     *
+     * @return
+     */
+    public synchronized int getQueueDepth() {
+        return mPendingTasks.size();
+    }
+
+    /**
+     * 获取统计报告：队列长度、事务个数和耗时
+     *
+     * @return
+     */
+    public synchronized String getReport() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("数据库写入队列（毫秒）\n");
+        builder.append("queue=").append(mPendingTasks.size()).append(" maxQueue=").append(mMaxQueueDepth).append("\n");
+        builder.append("writes=").append(mTaskCount).append(" batches=").append(mBatchCount).append(" fails=").append(mFailCount).append("\n");
+        if (mTaskCount > 0) {
+            builder.append("avgBatch=").append(mTaskCount / mBatchCount)
+                    .append(" avgFlush=").append(mTotalFlushTime / mBatchCount)
+                    .append(" avgLatency=").append(mTotalLatency / mTaskCount)
+                    .append(" maxLatency=").append(mMaxLatency).append("\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 修改结果回调
+     */
+    public interface OnWriteResultListener {
+        void onResult(boolean result);
+    }
+
+    /**
+     * 修改任务，事务提交后才完成
+     */
+    private static class WriteTask extends FutureTask<Boolean> {
+
+        private Callable<Boolean> mutation;
+        private Runnable onCommit;
+        private Handler resultHandler;
+        private OnWriteResultListener onWriteResultListener;
+        /**
+         * 提交时间
+         */
+        private long submitTime = SystemClock.elapsedRealtime();
+        /**
+         * 修改结果，事务提交后通知
+         */
+        private boolean result = false;
+
+        private WriteTask(Callable<Boolean> mutation, Runnable onCommit, Handler resultHandler, OnWriteResultListener onWriteResultListener) {
+            super(mutation);
+            this.mutation = mutation;
+            this.onCommit = onCommit;
+            this.resultHandler = resultHandler;
+            this.onWriteResultListener = onWriteResultListener;
+        }
+
+        @Override
+        protected void done() {
+            if (onWriteResultListener == null) {
+                return;
+            }
+            final boolean value = result;
+            resultHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onWriteResultListener.onResult(value);
+                }
+            });
+        }
+
+        /**
+         * 在事务中执行修改
+         *
+         * @throws Exception
+         */
+        private void execute() throws Exception {
+            Boolean value = mutation.call();
+            result = value != null && value;
+        }
+
+        /**
+         * 事务已提交
+         */
+        private void commit() {
+            if (result && onCommit != null) {
+                try {
+                    onCommit.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            set(result);
+        }
+
+        /**
+         * 单独执行也失败
+         */
+        private void fail() {
+            result = false;
+            set(false);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.zlm.hp.db;
+
+import android.content.Context;
+
+import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.database.DatabaseStatement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description: 预编译语句仓库
+ * 每条sql只编译一次并缓存，之后每次调用只需重新绑定参数；
+ * 判断是否存在使用EXISTS，统计个数使用count，只返回一个数值，不需要读取整行数据；
+ * 读取时从空闲的语句中取出一条独占使用，用完放回，不需要锁住语句，也不开启事务，
+ * SQLCipher的事务是EXCLUSIVE的，读取开启事务会与写入互相排队；
+ * 修改的语句被多个线程共用，和greenDAO一样先获取数据库锁再锁住语句，
+ * 避免一个线程在事务中等待语句，另一个线程持有语句等待数据库锁
+ * @author: zhangliangming
+ * @date: 2019-05-06 20:30
+ **/
+public class StatementRepository {
+
+    private static StatementRepository _StatementRepository;
+
+    /**
+     * 已编译的语句，key为sql
+     */
+    private Map<String, DatabaseStatement> mStatements = new HashMap<String, DatabaseStatement>();
+
+    /**
+     * 空闲的读取语句，key为sql，个数不超过同时读取的线程数
+     */
+    private Map<String, List<DatabaseStatement>> mIdleReadStatements = new HashMap<String, List<DatabaseStatement>>();
+
+    private Database mDatabase;
+
+    /**
+     * @param database 测试时可以直接传入数据库
+     */
+    public StatementRepository(Database database) {
+        this.mDatabase = database;
+    }
+
+    public static StatementRepository getInstance(Context context) {
+        if (_StatementRepository == null) {
+            synchronized (StatementRepository.class) {
+                if (_StatementRepository == null) {
+                    _StatementRepository = new StatementRepository(DBHelper.getInstance(context).getWritableDatabase());
+                }
+            }
+        }
+        return _StatementRepository;
+    }
+
+    /**
+     * 生成判断是否存在的sql
+     *
+     * @param tableName
+     * @param where     条件，不包含where
+     * @return
+     */
+    public static String existsSql(String tableName, String where) {
+        return "SELECT EXISTS(SELECT 1 FROM " + tableName + " WHERE " + where + " LIMIT 1)";
+    }
+
+    /**
+     * 生成统计个数的sql
+     *
+     * @param tableName
+     * @param where     条件，不包含where
+     * @return
+     */
+    public static String countSql(String tableName, String where) {
+        return "SELECT count(*) FROM " + tableName + " WHERE " + where;
+    }
+
+    /**
+     * 是否存在，sql需要返回0或者1，例如通过existsSql生成
+     *
+     * @param sql
+     * @param args
+     * @return
+     */
+    public boolean exists(String sql, Object... args) {
+        return queryForLong(sql, args) > 0;
+    }
+
+    /**
+     * 查询一个数值，例如个数
+     *
+     * @param sql
+     * @param args
+     * @return
+     */
+    public long queryForLong(String sql, Object... args) {
+        DatabaseStatement statement = obtainReadStatement(sql);
+        try {
+            bind(statement, args);
+            return statement.simpleQueryForLong();
+        } finally {
+            recycleReadStatement(sql, statement);
+        }
+    }
+
+    /**
+     * 执行更新或者删除
+     *
+     * @param sql
+     * @param args
+     */
+    public void execute(String sql, Object... args) {
+        if (mDatabase.isDbLockedByCurrentThread()) {
+            execute(getStatement(sql), args);
+            return;
+        }
+        mDatabase.beginTransaction();
+        try {
+            execute(getStatement(sql), args);
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    /**
+     * 执行插入
+     *
+     * @param sql
+     * @param args
+     * @return 新记录的rowid
+     */
+    public long executeInsert(String sql, Object... args) {
+        if (mDatabase.isDbLockedByCurrentThread()) {
+            return executeInsert(getStatement(sql), args);
+        }
+        mDatabase.beginTransaction();
+        try {
+            long rowId = executeInsert(getStatement(sql), args);
+            mDatabase.setTransactionSuccessful();
+            return rowId;
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    /**
+     * 已持有数据库锁时调用
+     *
+     * @param statement
+     * @param args
+     */
+    private void execute(DatabaseStatement statement, Object[] args) {
+        synchronized (statement) {
+            bind(statement, args);
+            statement.execute();
+        }
+    }
+
+    /**
+     * 已持有数据库锁时调用
+     *
+     * @param statement
+     * @param args
+     * @return
+     */
+    private long executeInsert(DatabaseStatement statement, Object[] args) {
+        synchronized (statement) {
+            bind(statement, args);
+            return statement.executeInsert();
+        }
+    }
+
+    /**
+     * 获取已编译的语句，不存在时编译并缓存
+     *
+     * @param sql
+     * @return
+     */
+    private synchronized DatabaseStatement getStatement(String sql) {
+        DatabaseStatement statement = mStatements.get(sql);
+        if (statement == null) {
+            statement = mDatabase.compileStatement(sql);
+            mStatements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * 取出一条空闲的读取语句，没有时重新编译，当前线程独占使用
+     *
+     * @param sql
+     * @return
+     */
+    private DatabaseStatement obtainReadStatement(String sql) {
+        synchronized (this) {
+            List<DatabaseStatement> statements = mIdleReadStatements.get(sql);
+            if (statements != null && !statements.isEmpty()) {
+                return statements.remove(statements.size() - 1);
+            }
+        }
+        return mDatabase.compileStatement(sql);
+    }
+
+    /**
+     * 读取完成，放回空闲的语句
+     *
+     * @param sql
+     * @param statement
+     */
+    private synchronized void recycleReadStatement(String sql, DatabaseStatement statement) {
+        List<DatabaseStatement> statements = mIdleReadStatements.get(sql);
+        if (statements == null) {
+            statements = new ArrayList<DatabaseStatement>();
+            mIdleReadStatements.put(sql, statements);
+        }
+        statements.add(statement);
+    }
+
+    /**
+     * 按顺序绑定参数，整数类型按long绑定
+     *
+     * @param statement
+     * @param args
+     */
+    private void bind(DatabaseStatement statement, Object[] args) {
+        statement.clearBindings();
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            int index = i + 1;
+            if (arg == null) {
+                statement.bindNull(index);
+            } else if (arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte) {
+                statement.bindLong(index, ((Number) arg).longValue());
+            } else if (arg instanceof Boolean) {
+                statement.bindLong(index, (Boolean) arg ? 1 : 0);
+            } else if (arg instanceof Float || arg instanceof Double) {
+                statement.bindDouble(index, ((Number) arg).doubleValue());
+            } else if (arg instanceof byte[]) {
+                statement.bindBlob(index, (byte[]) arg);
+            } else {
+                statement.bindString(index, arg.toString());
+            }
+        }
+    }
+
+    /**
+     * 关闭所有已编译的语句
+     */
+    public synchronized void release() {
+        Iterator<DatabaseStatement> iterator = mStatements.values().iterator();
+        while (iterator.hasNext()) {
+            iterator.next().close();
+        }
+        mStatements.clear();
+        Iterator<List<DatabaseStatement>> readIterator = mIdleReadStatements.values().iterator();
+        while (readIterator.hasNext()) {
+            List<DatabaseStatement> statements = readIterator.next();
+            for (int i = 0; i < statements.size(); i++) {
+                statements.get(i).close();
+            }
+        }
+        mIdleReadStatements.clear();
+    }
+}
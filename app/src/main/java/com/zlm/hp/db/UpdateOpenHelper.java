@@ -3,8 +3,12 @@ package com.zlm.hp.db;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 
+import com.zlm.hp.db.dao.AudioInfoDao;
 import com.zlm.hp.db.dao.DaoMaster;
+import com.zlm.hp.db.dao.DownloadTaskDao;
+import com.zlm.hp.db.dao.DownloadThreadInfoDao;
 import com.zlm.hp.db.dao.SubtitleInfoDao;
+import com.zlm.hp.db.dao.VideoInfoDao;
 
 import org.greenrobot.greendao.database.Database;
 
@@ -30,5 +34,54 @@ public class UpdateOpenHelper extends DaoMaster.OpenHelper {
             //操作数据库的更新 有几个表升级都可以传入到下面
             SubtitleInfoDao.createTable(db, true);
         }
+        if (oldVersion < 5) {
+            //下载线程任务添加区间，旧数据的区间为0，按线程平均分配的区间处理
+            addColumn(db, DownloadThreadInfoDao.TABLENAME, DownloadThreadInfoDao.Properties.StartPos.columnName);
+            addColumn(db, DownloadThreadInfoDao.TABLENAME, DownloadThreadInfoDao.Properties.EndPos.columnName);
+        }
+        if (oldVersion < 6) {
+            //下载线程任务添加区间的md5
+            db.execSQL("ALTER TABLE \"" + DownloadThreadInfoDao.TABLENAME + "\" ADD COLUMN \"" + DownloadThreadInfoDao.Properties.Checksum.columnName + "\" TEXT");
+        }
+        if (oldVersion < 7) {
+            //添加索引，唯一索引前先删除重复的数据，只保留最后添加的一条
+            deleteDuplicate(db, AudioInfoDao.TABLENAME, AudioInfoDao.Properties.Hash.columnName, AudioInfoDao.Properties.Type.columnName);
+            deleteDuplicate(db, DownloadThreadInfoDao.TABLENAME, DownloadThreadInfoDao.Properties.TaskId.columnName,
+                    DownloadThreadInfoDao.Properties.ThreadNum.columnName, DownloadThreadInfoDao.Properties.ThreadId.columnName);
+            //表已存在时只创建索引
+            AudioInfoDao.createTable(db, true);
+            DownloadThreadInfoDao.createTable(db, true);
+            DownloadTaskDao.createTable(db, true);
+            VideoInfoDao.createTable(db, true);
+        }
+    }
+
+    /**
+     * 删除重复的数据，只保留最后添加的一条
+     *
+     * @param db
+     * @param tableName
+     * @param columnNames 唯一索引的字段
+     */
+    private void deleteDuplicate(Database db, String tableName, String... columnNames) {
+        StringBuilder groupBy = new StringBuilder();
+        for (int i = 0; i < columnNames.length; i++) {
+            if (i > 0) {
+                groupBy.append(",");
+            }
+            groupBy.append("\"").append(columnNames[i]).append("\"");
+        }
+        db.execSQL("DELETE FROM \"" + tableName + "\" WHERE rowid NOT IN (SELECT MAX(rowid) FROM \"" + tableName + "\" GROUP BY " + groupBy + ")");
+    }
+
+    /**
+     * 添加整型字段
+     *
+     * @param db
+     * @param tableName
+     * @param columnName
+     */
+    private void addColumn(Database db, String tableName, String columnName) {
+        db.execSQL("ALTER TABLE \"" + tableName + "\" ADD COLUMN \"" + columnName + "\" INTEGER NOT NULL DEFAULT 0");
     }
-}
\ No newline at end of file
+}
@@ -81,6 +81,13 @@ public class AudioInfoDao extends AbstractDao<AudioInfo, Void> {
                 "\"CATEGORY\" TEXT," + // 18: category
                 "\"CHILD_CATEGORY\" TEXT," + // 19: childCategory
                 "\"DOWNLOAD_URL\" TEXT);"); // 20: downloadUrl
+        // Add Indexes
+        db.execSQL("CREATE UNIQUE INDEX " + constraint + "IDX_AUDIO_INFO_HASH_TYPE ON \"AUDIO_INFO\"" +
+                " (\"HASH\" ASC,\"TYPE\" ASC);");
+        db.execSQL("CREATE INDEX " + constraint + "IDX_AUDIO_INFO_TYPE_STATUS_CREATE_TIME ON \"AUDIO_INFO\"" +
+                " (\"TYPE\" ASC,\"STATUS\" ASC,\"CREATE_TIME\" ASC);");
+        db.execSQL("CREATE INDEX " + constraint + "IDX_AUDIO_INFO_CATEGORY_CHILD_CATEGORY ON \"AUDIO_INFO\"" +
+                " (\"CATEGORY\" ASC,\"CHILD_CATEGORY\" ASC);");
     }
 
     /** Drops the underlying database table. */
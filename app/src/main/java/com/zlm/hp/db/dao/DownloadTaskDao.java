@@ -61,6 +61,9 @@ public class DownloadTaskDao extends AbstractDao<DownloadTask, Void> {
                 "\"STATUS\" INTEGER NOT NULL ," + // 8: status
                 "\"THREAD_NUM\" INTEGER NOT NULL ," + // 9: threadNum
                 "\"TASK_FILE_SIZE\" INTEGER NOT NULL );"); // 10: taskFileSize
+        // Add Indexes
+        db.execSQL("CREATE INDEX " + constraint + "IDX_DOWNLOAD_TASK_TASK_ID_THREAD_NUM ON \"DOWNLOAD_TASK\"" +
+                " (\"TASK_ID\" ASC,\"THREAD_NUM\" ASC);");
     }
 
     /** Drops the underlying database table. */
@@ -27,7 +27,10 @@ public class DownloadThreadInfoDao extends AbstractDao<DownloadThreadInfo, Void>
         public final static Property TaskId = new Property(0, String.class, "taskId", false, "TASK_ID");
         public final static Property ThreadNum = new Property(1, int.class, "threadNum", false, "THREAD_NUM");
         public final static Property ThreadId = new Property(2, int.class, "threadId", false, "THREAD_ID");
-        public final static Property DownloadedSize = new Property(3, int.class, "downloadedSize", false, "DOWNLOADED_SIZE");
+        public final static Property DownloadedSize = new Property(3, long.class, "downloadedSize", false, "DOWNLOADED_SIZE");
+        public final static Property StartPos = new Property(4, long.class, "startPos", false, "START_POS");
+        public final static Property EndPos = new Property(5, long.class, "endPos", false, "END_POS");
+        public final static Property Checksum = new Property(6, String.class, "checksum", false, "CHECKSUM");
     }
 
 
@@ -46,7 +49,13 @@ public class DownloadThreadInfoDao extends AbstractDao<DownloadThreadInfo, Void>
                 "\"TASK_ID\" TEXT," + // 0: taskId
                 "\"THREAD_NUM\" INTEGER NOT NULL ," + // 1: threadNum
                 "\"THREAD_ID\" INTEGER NOT NULL ," + // 2: threadId
-                "\"DOWNLOADED_SIZE\" INTEGER NOT NULL );"); // 3: downloadedSize
+                "\"DOWNLOADED_SIZE\" INTEGER NOT NULL ," + // 3: downloadedSize
+                "\"START_POS\" INTEGER NOT NULL ," + // 4: startPos
+                "\"END_POS\" INTEGER NOT NULL ," + // 5: endPos
+                "\"CHECKSUM\" TEXT);"); // 6: checksum
+        // Add Indexes
+        db.execSQL("CREATE UNIQUE INDEX " + constraint + "IDX_DOWNLOAD_THREAD_INFO_TASK_ID_THREAD_NUM_THREAD_ID ON \"DOWNLOAD_THREAD_INFO\"" +
+                " (\"TASK_ID\" ASC,\"THREAD_NUM\" ASC,\"THREAD_ID\" ASC);");
     }
 
     /** Drops the underlying database table. */
@@ -66,6 +75,13 @@ public class DownloadThreadInfoDao extends AbstractDao<DownloadThreadInfo, Void>
         stmt.bindLong(2, entity.getThreadNum());
         stmt.bindLong(3, entity.getThreadId());
         stmt.bindLong(4, entity.getDownloadedSize());
+        stmt.bindLong(5, entity.getStartPos());
+        stmt.bindLong(6, entity.getEndPos());
+ 
+        String checksum = entity.getChecksum();
+        if (checksum != null) {
+            stmt.bindString(7, checksum);
+        }
     }
 
     @Override
@@ -79,6 +95,13 @@ public class DownloadThreadInfoDao extends AbstractDao<DownloadThreadInfo, Void>
         stmt.bindLong(2, entity.getThreadNum());
         stmt.bindLong(3, entity.getThreadId());
         stmt.bindLong(4, entity.getDownloadedSize());
+        stmt.bindLong(5, entity.getStartPos());
+        stmt.bindLong(6, entity.getEndPos());
+ 
+        String checksum = entity.getChecksum();
+        if (checksum != null) {
+            stmt.bindString(7, checksum);
+        }
     }
 
     @Override
@@ -98,7 +121,10 @@ public class DownloadThreadInfoDao extends AbstractDao<DownloadThreadInfo, Void>
         entity.setTaskId(cursor.isNull(offset + 0) ? null : cursor.getString(offset + 0));
         entity.setThreadNum(cursor.getInt(offset + 1));
         entity.setThreadId(cursor.getInt(offset + 2));
-        entity.setDownloadedSize(cursor.getInt(offset + 3));
+        entity.setDownloadedSize(cursor.getLong(offset + 3));
+        entity.setStartPos(cursor.getLong(offset + 4));
+        entity.setEndPos(cursor.getLong(offset + 5));
+        entity.setChecksum(cursor.isNull(offset + 6) ? null : cursor.getString(offset + 6));
      }
     
     @Override
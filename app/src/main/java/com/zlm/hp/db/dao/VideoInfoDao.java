@@ -63,6 +63,9 @@ public class VideoInfoDao extends AbstractDao<VideoInfo, Void> {
                 "\"IMAGE_URL\" TEXT," + // 9: imageUrl
                 "\"DOWNLOAD_URL\" TEXT," + // 10: downloadUrl
                 "\"STATUS\" INTEGER NOT NULL );"); // 11: status
+        // Add Indexes
+        db.execSQL("CREATE INDEX " + constraint + "IDX_VIDEO_INFO_HASH ON \"VIDEO_INFO\"" +
+                " (\"HASH\" ASC);");
     }
 
     /** Drops the underlying database table. */
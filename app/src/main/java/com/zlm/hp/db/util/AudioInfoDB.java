@@ -2,11 +2,15 @@ package com.zlm.hp.db.util;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.os.Parcel;
 
 import com.zlm.hp.db.DBHelper;
+import com.zlm.hp.db.DBWriteQueue;
+import com.zlm.hp.db.StatementRepository;
 import com.zlm.hp.db.dao.AudioInfoDao;
 import com.zlm.hp.entity.AudioInfo;
 import com.zlm.hp.manager.DownloadAudioManager;
+import com.zlm.hp.manager.OnLineAudioManager;
 import com.zlm.hp.receiver.AudioBroadcastReceiver;
 import com.zlm.hp.util.DateUtil;
 
@@ -15,6 +19,8 @@ import org.greenrobot.greendao.query.WhereCondition;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * 音频数据库表处理
@@ -23,6 +29,60 @@ import java.util.List;
 
 public class AudioInfoDB {
 
+    /**
+     * 歌曲状态：喜欢
+     */
+    public static final int STATE_LIKE = 1;
+    /**
+     * 歌曲状态：本地歌曲或者已下载完成
+     */
+    public static final int STATE_DOWNLOADED = 2;
+    /**
+     * 歌曲状态：在线缓存已完整
+     */
+    public static final int STATE_CACHED = 4;
+
+    private static final String TYPE = AudioInfoDao.Properties.Type.columnName;
+    private static final String STATUS = AudioInfoDao.Properties.Status.columnName;
+    private static final String HASH = AudioInfoDao.Properties.Hash.columnName;
+    private static final String CREATE_TIME = AudioInfoDao.Properties.CreateTime.columnName;
+    private static final String CATEGORY = AudioInfoDao.Properties.Category.columnName;
+    private static final String CHILD_CATEGORY = AudioInfoDao.Properties.ChildCategory.columnName;
+
+    /**
+     * 本地歌曲（包括下载完成的网络歌曲）条件
+     */
+    private static final String WHERE_LOCAL = "( " + TYPE + "=? or ( " + TYPE + "=? and " + STATUS + "=? ) )";
+    /**
+     * 两种类型的歌曲条件，例如喜欢和最近
+     */
+    private static final String WHERE_TYPE = "( " + TYPE + "=? or " + TYPE + "=? )";
+    /**
+     * 本地歌曲每个分类的个数，与本地歌曲列表的排序相同
+     */
+    private static final String SQL_LOCAL_SECTIONS = "SELECT " + CATEGORY + ", count(*) FROM " + AudioInfoDao.TABLENAME + " WHERE " + WHERE_LOCAL + " GROUP BY " + CATEGORY + " ORDER BY " + CATEGORY;
+
+    /**
+     * 本地歌曲（包括下载完成的网络歌曲）个数
+     */
+    private static final String SQL_LOCAL_COUNT = StatementRepository.countSql(AudioInfoDao.TABLENAME, TYPE + "=? or ( " + TYPE + "=? and " + STATUS + "=? )");
+    /**
+     * 两种类型的歌曲个数，例如喜欢和最近
+     */
+    private static final String SQL_TYPE_COUNT = StatementRepository.countSql(AudioInfoDao.TABLENAME, TYPE + "=? or " + TYPE + "=?");
+    /**
+     * 两种类型中是否存在该歌曲
+     */
+    private static final String SQL_TYPE_EXISTS = StatementRepository.existsSql(AudioInfoDao.TABLENAME, HASH + "=? and (" + TYPE + "=? or " + TYPE + "=? )");
+    private static final String SQL_TYPE_DELETE = "DELETE FROM " + AudioInfoDao.TABLENAME + " where " + HASH + "=? and (" + TYPE + "=? or " + TYPE + "=? )";
+    private static final String SQL_HASH_DELETE = "DELETE FROM " + AudioInfoDao.TABLENAME + " where " + HASH + "=?";
+    private static final String SQL_RECENT_UPDATE = "UPDATE " + AudioInfoDao.TABLENAME + " SET " + CREATE_TIME + " =? where " + HASH + "=? and (" + TYPE + "=?  or " + TYPE + "=?)";
+    private static final String SQL_DOWNLOAD_COUNT = StatementRepository.countSql(AudioInfoDao.TABLENAME, TYPE + "=? and (" + STATUS + "=? or " + STATUS + " =?)");
+    private static final String SQL_DOWNLOAD_UPDATE = "UPDATE " + AudioInfoDao.TABLENAME + " SET " + CREATE_TIME + " =?," + STATUS + " =? where " + HASH + "=? and " + TYPE + "=?";
+    private static final String SQL_DOWNLOAD_DELETE = "DELETE FROM " + AudioInfoDao.TABLENAME + " where " + HASH + "=? and " + TYPE + "=? and (" + STATUS + " =? or " + STATUS + " =?)";
+    private static final String SQL_DOWNLOAD_EXISTS = StatementRepository.existsSql(AudioInfoDao.TABLENAME, HASH + "=? and " + TYPE + "=? and (" + STATUS + " =? or " + STATUS + " =?)");
+    private static final String SQL_DOWNLOADED_EXISTS = StatementRepository.existsSql(AudioInfoDao.TABLENAME, HASH + "=? and " + TYPE + "=? and " + STATUS + " =?");
+
     /**
      * 添加歌曲数据
      *
@@ -44,20 +104,21 @@ public class AudioInfoDB {
     }
 
     /**
-     * 批量添加歌曲数据
+     * 批量添加歌曲数据，hash和类型相同的歌曲（例如相同的文件）只保留一条
      *
      * @param context
      * @param audioInfos
      * @return
      */
-    public static boolean addAudioInfos(Context context, List<AudioInfo> audioInfos) {
-        try {
-            DBHelper.getInstance(context).getDaoSession().getAudioInfoDao().insertInTx(audioInfos);
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return false;
+    public static boolean addAudioInfos(final Context context, final List<AudioInfo> audioInfos) {
+        //在写入队列的事务中批量添加，不与其它修改同时写入
+        return DBWriteQueue.getInstance(context).execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                DBHelper.getInstance(context).getDaoSession().getAudioInfoDao().insertOrReplaceInTx(audioInfos);
+                return true;
+            }
+        });
     }
 
     /**
@@ -67,23 +128,12 @@ public class AudioInfoDB {
      * @return
      */
     public static int getLocalAudioCount(Context context) {
-        Cursor cursor = null;
-        int count = 0;
         try {
-            String args[] = {AudioInfo.TYPE_LOCAL + "", AudioInfo.TYPE_NET + "", AudioInfo.STATUS_FINISH + ""};
-            String sql = "select count(*) from " + AudioInfoDao.TABLENAME + " WHERE " + AudioInfoDao.Properties.Type.columnName + "=? or ( " + AudioInfoDao.Properties.Type.columnName + "=? and " + AudioInfoDao.Properties.Status.columnName +
-                    "=? )";
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            cursor.moveToFirst();
-            count = cursor.getInt(0);
+            return (int) StatementRepository.getInstance(context).queryForLong(SQL_LOCAL_COUNT, AudioInfo.TYPE_LOCAL, AudioInfo.TYPE_NET, AudioInfo.STATUS_FINISH);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
-        return count;
+        return 0;
     }
 
     /**
@@ -103,6 +153,70 @@ public class AudioInfoDB {
         return new ArrayList<AudioInfo>();
     }
 
+    /**
+     * 获取按页加载的本地音频列表，包含分类
+     *
+     * @param context
+     * @return
+     */
+    public static LazyAudioList getLocalAudioList(Context context) {
+        String[] args = {AudioInfo.TYPE_LOCAL + "", AudioInfo.TYPE_NET + "", AudioInfo.STATUS_FINISH + ""};
+        LazyAudioList audioInfos = new LazyAudioList(DBHelper.getInstance(context).getDaoSession().getAudioInfoDao(), WHERE_LOCAL, CATEGORY + "," + CHILD_CATEGORY + ",rowid", args, getLocalAudioCount(context), -1);
+        audioInfos.setStateLoader(getStateLoader(context));
+        Cursor cursor = null;
+        try {
+            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(SQL_LOCAL_SECTIONS, args);
+            int position = 0;
+            while (cursor.moveToNext()) {
+                String category = cursor.isNull(0) ? "#" : cursor.getString(0);
+                audioInfos.addSection(category, position);
+                position += cursor.getInt(1);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return audioInfos;
+    }
+
+    /**
+     * 按页加载的列表在子线程中读取歌曲状态
+     *
+     * @param context
+     * @return
+     */
+    private static LazyAudioList.StateLoader getStateLoader(final Context context) {
+        return new LazyAudioList.StateLoader() {
+            @Override
+            public int loadState(AudioInfo audioInfo) {
+                return getAudioState(context, audioInfo);
+            }
+        };
+    }
+
+    /**
+     * 获取歌曲状态：是否喜欢、是否已下载、在线缓存是否已完整
+     *
+     * @param context
+     * @param audioInfo
+     * @return
+     */
+    public static int getAudioState(Context context, AudioInfo audioInfo) {
+        int state = 0;
+        if (isLikeAudioExists(context, audioInfo.getHash())) {
+            state |= STATE_LIKE;
+        }
+        if (audioInfo.getType() == AudioInfo.TYPE_LOCAL || isDownloadedAudioExists(context, audioInfo.getHash())) {
+            state |= STATE_DOWNLOADED;
+        } else if (DownloadThreadInfoDB.getDownloadedSize(context, audioInfo.getHash(), OnLineAudioManager.mThreadNum) >= audioInfo.getFileSize()) {
+            state |= STATE_CACHED;
+        }
+        return state;
+    }
+
     /**
      * 添加喜欢歌曲
      *
@@ -138,24 +252,12 @@ public class AudioInfoDB {
      * @return
      */
     public static int getLikeAudioCount(Context context) {
-        Cursor cursor = null;
-        int count = 0;
         try {
-            String args[] = {AudioInfo.TYPE_LIKE_LOCAL + "", AudioInfo.TYPE_LIKE_NET + ""};
-            String sql = "select count(*) from " + AudioInfoDao.TABLENAME;
-            sql += " where " + AudioInfoDao.Properties.Type.columnName + "=? or " + AudioInfoDao.Properties.Type.columnName + "=?";
-
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            cursor.moveToFirst();
-            count = cursor.getInt(0);
+            return (int) StatementRepository.getInstance(context).queryForLong(SQL_TYPE_COUNT, AudioInfo.TYPE_LIKE_LOCAL, AudioInfo.TYPE_LIKE_NET);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
-        return count;
+        return 0;
     }
 
     /**
@@ -175,11 +277,7 @@ public class AudioInfoDB {
         deleteRecentAudio(context, hash, notifyData);
 
         try {
-            String sql = "DELETE FROM ";
-            sql += AudioInfoDao.TABLENAME;
-            sql += " where " + AudioInfoDao.Properties.Hash.columnName + "=?";
-            String args[] = {hash};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
+            StatementRepository.getInstance(context).execute(SQL_HASH_DELETE, hash);
             if (notifyData) {
                 AudioBroadcastReceiver.sendReceiver(context, AudioBroadcastReceiver.ACTION_CODE_UPDATE_LOCAL);
             }
@@ -197,12 +295,7 @@ public class AudioInfoDB {
      */
     public static boolean deleteLikeAudio(Context context, String hash, boolean notifyData) {
         try {
-            String sql = "DELETE FROM ";
-            sql += AudioInfoDao.TABLENAME;
-            sql += " where (" + AudioInfoDao.Properties.Type.columnName + "=? or " + AudioInfoDao.Properties.Type.columnName + "=? ) and " + AudioInfoDao.Properties.Hash.columnName + "=?";
-
-            String args[] = {AudioInfo.TYPE_LIKE_LOCAL + "", AudioInfo.TYPE_LIKE_NET + "", hash};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
+            StatementRepository.getInstance(context).execute(SQL_TYPE_DELETE, hash, AudioInfo.TYPE_LIKE_LOCAL, AudioInfo.TYPE_LIKE_NET);
             if (notifyData) {
                 AudioBroadcastReceiver.sendLikeReceiver(context, hash);
             }
@@ -213,6 +306,59 @@ public class AudioInfoDB {
         return false;
     }
 
+    /**
+     * 通过写入队列添加喜欢歌曲，不阻塞调用线程，已存在时直接返回成功，事务提交后发送通知
+     *
+     * @param context
+     * @param audioInfo
+     * @param notifyData
+     * @param onWriteResultListener 在主线程中回调结果，界面已提前更新时用于失败后恢复
+     * @return
+     */
+    public static Future<Boolean> addLikeAudioAsync(final Context context, AudioInfo audioInfo, final boolean notifyData, DBWriteQueue.OnWriteResultListener onWriteResultListener) {
+        //添加时会修改类型，写入线程使用副本，不影响界面中的歌曲
+        final AudioInfo likeAudioInfo = copy(audioInfo);
+        return DBWriteQueue.getInstance(context).submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                StatementRepository repository = DBWriteQueue.getInstance(context).getStatementRepository();
+                if (repository.exists(SQL_TYPE_EXISTS, likeAudioInfo.getHash(), AudioInfo.TYPE_LIKE_LOCAL, AudioInfo.TYPE_LIKE_NET)) {
+                    return true;
+                }
+                return addLikeAudio(context, likeAudioInfo, false);
+            }
+        }, !notifyData ? null : new Runnable() {
+            @Override
+            public void run() {
+                AudioBroadcastReceiver.sendLikeReceiver(context, likeAudioInfo.getHash());
+            }
+        }, onWriteResultListener);
+    }
+
+    /**
+     * 通过写入队列删除喜欢歌曲，不阻塞调用线程，事务提交后发送通知
+     *
+     * @param context
+     * @param hash
+     * @param notifyData
+     * @param onWriteResultListener 在主线程中回调结果，界面已提前更新时用于失败后恢复
+     * @return
+     */
+    public static Future<Boolean> deleteLikeAudioAsync(final Context context, final String hash, final boolean notifyData, DBWriteQueue.OnWriteResultListener onWriteResultListener) {
+        return DBWriteQueue.getInstance(context).submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                DBWriteQueue.getInstance(context).getStatementRepository().execute(SQL_TYPE_DELETE, hash, AudioInfo.TYPE_LIKE_LOCAL, AudioInfo.TYPE_LIKE_NET);
+                return true;
+            }
+        }, !notifyData ? null : new Runnable() {
+            @Override
+            public void run() {
+                AudioBroadcastReceiver.sendLikeReceiver(context, hash);
+            }
+        }, onWriteResultListener);
+    }
+
     /**
      * 判断当前歌曲是否是喜欢歌曲
      *
@@ -221,24 +367,12 @@ public class AudioInfoDB {
      * @return
      */
     public static boolean isLikeAudioExists(Context context, String hash) {
-        Cursor cursor = null;
         try {
-            String args[] = {AudioInfo.TYPE_LIKE_LOCAL + "", AudioInfo.TYPE_LIKE_NET + "", hash};
-            String sql = "select * from " + AudioInfoDao.TABLENAME;
-            sql += " where (" + AudioInfoDao.Properties.Type.columnName + "=? or " + AudioInfoDao.Properties.Type.columnName + "=? ) and " + AudioInfoDao.Properties.Hash.columnName + "=?";
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            if (cursor.moveToNext()) {
-                return true;
-            }
+            return StatementRepository.getInstance(context).exists(SQL_TYPE_EXISTS, hash, AudioInfo.TYPE_LIKE_LOCAL, AudioInfo.TYPE_LIKE_NET);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
         return false;
-
     }
 
     /**
@@ -271,6 +405,19 @@ public class AudioInfoDB {
         return new ArrayList<AudioInfo>();
     }
 
+    /**
+     * 获取按页加载的喜欢音频列表
+     *
+     * @param context
+     * @return
+     */
+    public static LazyAudioList getLikeAudioList(Context context) {
+        String[] args = {AudioInfo.TYPE_LIKE_LOCAL + "", AudioInfo.TYPE_LIKE_NET + ""};
+        LazyAudioList audioInfos = new LazyAudioList(DBHelper.getInstance(context).getDaoSession().getAudioInfoDao(), WHERE_TYPE, CREATE_TIME + " DESC,rowid DESC", args, getLikeAudioCount(context), AudioInfo.TYPE_LIKE_LOCAL);
+        audioInfos.setStateLoader(getStateLoader(context));
+        return audioInfos;
+    }
+
 
     /**
      * 添加最近歌曲
@@ -307,24 +454,12 @@ public class AudioInfoDB {
      * @return
      */
     public static int getRecentAudioCount(Context context) {
-        Cursor cursor = null;
-        int count = 0;
         try {
-            String args[] = {AudioInfo.TYPE_RECENT_LOCAL + "", AudioInfo.TYPE_RECENT_NET + ""};
-            String sql = "select count(*) from " + AudioInfoDao.TABLENAME;
-            sql += " where " + AudioInfoDao.Properties.Type.columnName + "=? or " + AudioInfoDao.Properties.Type.columnName + "=?";
-
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            cursor.moveToFirst();
-            count = cursor.getInt(0);
+            return (int) StatementRepository.getInstance(context).queryForLong(SQL_TYPE_COUNT, AudioInfo.TYPE_RECENT_LOCAL, AudioInfo.TYPE_RECENT_NET);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
-        return count;
+        return 0;
     }
 
     /**
@@ -334,12 +469,7 @@ public class AudioInfoDB {
      */
     public static boolean deleteRecentAudio(Context context, String hash, boolean notifyData) {
         try {
-            String sql = "DELETE FROM ";
-            sql += AudioInfoDao.TABLENAME;
-            sql += " where (" + AudioInfoDao.Properties.Type.columnName + "=? or " + AudioInfoDao.Properties.Type.columnName + "=? ) and " + AudioInfoDao.Properties.Hash.columnName + "=?";
-
-            String args[] = {AudioInfo.TYPE_RECENT_LOCAL + "", AudioInfo.TYPE_RECENT_NET + "", hash};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
+            StatementRepository.getInstance(context).execute(SQL_TYPE_DELETE, hash, AudioInfo.TYPE_RECENT_LOCAL, AudioInfo.TYPE_RECENT_NET);
             if (notifyData) {
                 AudioBroadcastReceiver.sendReceiver(context, AudioBroadcastReceiver.ACTION_CODE_UPDATE_RECENT);
             }
@@ -358,24 +488,12 @@ public class AudioInfoDB {
      * @return
      */
     public static boolean isRecentAudioExists(Context context, String hash) {
-        Cursor cursor = null;
         try {
-            String args[] = {AudioInfo.TYPE_RECENT_LOCAL + "", AudioInfo.TYPE_RECENT_NET + "", hash};
-            String sql = "select * from " + AudioInfoDao.TABLENAME;
-            sql += " where (" + AudioInfoDao.Properties.Type.columnName + "=? or " + AudioInfoDao.Properties.Type.columnName + "=? ) and " + AudioInfoDao.Properties.Hash.columnName + "=?";
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            if (cursor.moveToNext()) {
-                return true;
-            }
+            return StatementRepository.getInstance(context).exists(SQL_TYPE_EXISTS, hash, AudioInfo.TYPE_RECENT_LOCAL, AudioInfo.TYPE_RECENT_NET);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
         return false;
-
     }
 
     /**
@@ -408,19 +526,25 @@ public class AudioInfoDB {
         return new ArrayList<AudioInfo>();
     }
 
+    /**
+     * 获取按页加载的最近音频列表
+     *
+     * @param context
+     * @return
+     */
+    public static LazyAudioList getRecentAudioList(Context context) {
+        String[] args = {AudioInfo.TYPE_RECENT_LOCAL + "", AudioInfo.TYPE_RECENT_NET + ""};
+        LazyAudioList audioInfos = new LazyAudioList(DBHelper.getInstance(context).getDaoSession().getAudioInfoDao(), WHERE_TYPE, CREATE_TIME + " DESC,rowid DESC", args, getRecentAudioCount(context), AudioInfo.TYPE_RECENT_LOCAL);
+        audioInfos.setStateLoader(getStateLoader(context));
+        return audioInfos;
+    }
+
     /**
      * 更新最近歌曲时间
      */
     public static boolean updateRecentAudio(Context context, String hash, String createTime) {
         try {
-
-            String sql = "UPDATE ";
-            sql += AudioInfoDao.TABLENAME;
-            sql += " SET " + AudioInfoDao.Properties.CreateTime.columnName + " =?";
-            sql += " where " + AudioInfoDao.Properties.Hash.columnName + "=? and (" + AudioInfoDao.Properties.Type.columnName + "=?  or " + AudioInfoDao.Properties.Type.columnName + "=?)";
-
-            String args[] = {createTime, hash, AudioInfo.TYPE_RECENT_LOCAL + "", AudioInfo.TYPE_RECENT_NET + ""};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
+            StatementRepository.getInstance(context).execute(SQL_RECENT_UPDATE, createTime, hash, AudioInfo.TYPE_RECENT_LOCAL, AudioInfo.TYPE_RECENT_NET);
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -428,6 +552,56 @@ public class AudioInfoDB {
         return false;
     }
 
+    /**
+     * 通过写入队列保存最近歌曲，已存在时更新时间，不存在时添加并发送通知
+     *
+     * @param context
+     * @param audioInfo
+     * @param notifyData
+     * @return
+     */
+    public static Future<Boolean> saveRecentAudioAsync(final Context context, AudioInfo audioInfo, final boolean notifyData) {
+        //添加时会修改类型，写入线程使用副本，不影响正在播放的歌曲
+        final AudioInfo recentAudioInfo = copy(audioInfo);
+        final boolean[] isAdded = {false};
+        return DBWriteQueue.getInstance(context).submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                StatementRepository repository = DBWriteQueue.getInstance(context).getStatementRepository();
+                if (repository.exists(SQL_TYPE_EXISTS, recentAudioInfo.getHash(), AudioInfo.TYPE_RECENT_LOCAL, AudioInfo.TYPE_RECENT_NET)) {
+                    repository.execute(SQL_RECENT_UPDATE, DateUtil.parseDateToString(new Date()), recentAudioInfo.getHash(), AudioInfo.TYPE_RECENT_LOCAL, AudioInfo.TYPE_RECENT_NET);
+                    return true;
+                }
+                isAdded[0] = addRecentAudio(context, recentAudioInfo, false);
+                return isAdded[0];
+            }
+        }, !notifyData ? null : new Runnable() {
+            @Override
+            public void run() {
+                if (isAdded[0]) {
+                    AudioBroadcastReceiver.sendReceiver(context, AudioBroadcastReceiver.ACTION_CODE_UPDATE_RECENT);
+                }
+            }
+        });
+    }
+
+    /**
+     * 复制歌曲
+     *
+     * @param audioInfo
+     * @return
+     */
+    private static AudioInfo copy(AudioInfo audioInfo) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            audioInfo.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return AudioInfo.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
     /**
      * 获取下载歌曲个数
      *
@@ -435,23 +609,12 @@ public class AudioInfoDB {
      * @return
      */
     public static int getDownloadAudioCount(Context context) {
-        Cursor cursor = null;
-        int count = 0;
         try {
-            String args[] = {AudioInfo.TYPE_NET + "", AudioInfo.STATUS_DOWNLOADING + "", AudioInfo.STATUS_FINISH + ""};
-            String sql = "select count(*) from " + AudioInfoDao.TABLENAME + " WHERE " + AudioInfoDao.Properties.Type.columnName + "=? and (" + AudioInfoDao.Properties.Status.columnName +
-                    "=? or " + AudioInfoDao.Properties.Status.columnName + " =?)";
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            cursor.moveToFirst();
-            count = cursor.getInt(0);
+            return (int) StatementRepository.getInstance(context).queryForLong(SQL_DOWNLOAD_COUNT, AudioInfo.TYPE_NET, AudioInfo.STATUS_DOWNLOADING, AudioInfo.STATUS_FINISH);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
-        return count;
+        return 0;
     }
 
     /**
@@ -491,14 +654,7 @@ public class AudioInfoDB {
      */
     public static boolean updateDownloadAudio(Context context, String hash, String createTime, int status) {
         try {
-
-            String sql = "UPDATE ";
-            sql += AudioInfoDao.TABLENAME;
-            sql += " SET " + AudioInfoDao.Properties.CreateTime.columnName + " =?," + AudioInfoDao.Properties.Status.columnName + " =?";
-            sql += " where " + AudioInfoDao.Properties.Hash.columnName + "=? and " + AudioInfoDao.Properties.Type.columnName + "=?";
-
-            String args[] = {createTime, status + "", hash, AudioInfo.TYPE_NET + ""};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
+            StatementRepository.getInstance(context).execute(SQL_DOWNLOAD_UPDATE, createTime, status, hash, AudioInfo.TYPE_NET);
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -514,12 +670,7 @@ public class AudioInfoDB {
      */
     public static boolean deleteDownloadAudio(Context context, String hash, boolean notifyData) {
         try {
-            String sql = "DELETE FROM ";
-            sql += AudioInfoDao.TABLENAME;
-            sql += " where " + AudioInfoDao.Properties.Type.columnName + "=? and " + AudioInfoDao.Properties.Hash.columnName + "=? and (" + AudioInfoDao.Properties.Status.columnName + " =? or " + AudioInfoDao.Properties.Status.columnName + " =?)";
-
-            String args[] = {AudioInfo.TYPE_NET + "", hash, AudioInfo.STATUS_DOWNLOADING + "", AudioInfo.STATUS_FINISH + ""};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
+            StatementRepository.getInstance(context).execute(SQL_DOWNLOAD_DELETE, hash, AudioInfo.TYPE_NET, AudioInfo.STATUS_DOWNLOADING, AudioInfo.STATUS_FINISH);
             if (notifyData) {
                 AudioBroadcastReceiver.sendReceiver(context, AudioBroadcastReceiver.ACTION_CODE_UPDATE_DOWNLOAD);
             }
@@ -538,24 +689,12 @@ public class AudioInfoDB {
      * @return
      */
     public static boolean isDownloadAudioExists(Context context, String hash) {
-        Cursor cursor = null;
         try {
-            String args[] = {AudioInfo.TYPE_NET + "", hash, AudioInfo.STATUS_DOWNLOADING + "", AudioInfo.STATUS_FINISH + ""};
-            String sql = "select * from " + AudioInfoDao.TABLENAME;
-            sql += " where " + AudioInfoDao.Properties.Type.columnName + "=? and " + AudioInfoDao.Properties.Hash.columnName + "=? and (" + AudioInfoDao.Properties.Status.columnName + " =? or " + AudioInfoDao.Properties.Status.columnName + " =?)";
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            if (cursor.moveToNext()) {
-                return true;
-            }
+            return StatementRepository.getInstance(context).exists(SQL_DOWNLOAD_EXISTS, hash, AudioInfo.TYPE_NET, AudioInfo.STATUS_DOWNLOADING, AudioInfo.STATUS_FINISH);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
         return false;
-
     }
 
     /**
@@ -566,24 +705,12 @@ public class AudioInfoDB {
      * @return
      */
     public static boolean isDownloadedAudioExists(Context context, String hash) {
-        Cursor cursor = null;
         try {
-            String args[] = {AudioInfo.TYPE_NET + "", hash, AudioInfo.STATUS_FINISH + ""};
-            String sql = "select * from " + AudioInfoDao.TABLENAME;
-            sql += " where " + AudioInfoDao.Properties.Type.columnName + "=? and " + AudioInfoDao.Properties.Hash.columnName + "=? and " + AudioInfoDao.Properties.Status.columnName + " =?";
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            if (cursor.moveToNext()) {
-                return true;
-            }
+            return StatementRepository.getInstance(context).exists(SQL_DOWNLOADED_EXISTS, hash, AudioInfo.TYPE_NET, AudioInfo.STATUS_FINISH);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
         return false;
-
     }
 
     /**
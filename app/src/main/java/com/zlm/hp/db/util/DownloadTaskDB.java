@@ -1,16 +1,18 @@
 package com.zlm.hp.db.util;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.database.SQLException;
 
 import com.zlm.down.entity.DownloadTask;
 import com.zlm.hp.constants.ResourceConstants;
 import com.zlm.hp.db.DBHelper;
+import com.zlm.hp.db.DBWriteQueue;
+import com.zlm.hp.db.StatementRepository;
 import com.zlm.hp.db.dao.DownloadTaskDao;
 import com.zlm.hp.util.ResourceUtil;
 
 import java.io.File;
+import java.util.concurrent.Callable;
 
 /**
  * @Description: 下载任务db管理
@@ -19,19 +21,24 @@ import java.io.File;
  **/
 public class DownloadTaskDB {
 
+    private static final String WHERE_TASK = DownloadTaskDao.Properties.TaskId.columnName + "=? and " + DownloadTaskDao.Properties.ThreadNum.columnName + "=?";
+    private static final String SQL_EXISTS = StatementRepository.existsSql(DownloadTaskDao.TABLENAME, WHERE_TASK);
+    private static final String SQL_UPDATE = "UPDATE " + DownloadTaskDao.TABLENAME + " SET " + DownloadTaskDao.Properties.Status.columnName + " =? where " + WHERE_TASK;
+    private static final String SQL_DELETE = "DELETE FROM " + DownloadTaskDao.TABLENAME + " where " + WHERE_TASK;
+
     /**
      * 添加下载任务
      *
      * @param downloadTask
      */
-    public static boolean add(Context context, DownloadTask downloadTask) {
-        try {
-            DBHelper.getInstance(context).getDaoSession().getDownloadTaskDao().insert(downloadTask);
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return false;
+    public static boolean add(final Context context, final DownloadTask downloadTask) {
+        return DBWriteQueue.getInstance(context).execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                DBHelper.getInstance(context).getDaoSession().getDownloadTaskDao().insert(downloadTask);
+                return true;
+            }
+        });
     }
 
     /**
@@ -42,43 +49,25 @@ public class DownloadTaskDB {
      * @return
      */
     public static boolean isExists(Context context, String tid, int threadNum) {
-        Cursor cursor = null;
         try {
-            String args[] = {tid, threadNum + ""};
-            String sql = "select * from " + DownloadTaskDao.TABLENAME + " WHERE " + DownloadTaskDao.Properties.TaskId.columnName + "=? and  " + DownloadTaskDao.Properties.ThreadNum.columnName + "=?";
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            if (cursor.moveToNext()) {
-                return true;
-            }
+            return StatementRepository.getInstance(context).exists(SQL_EXISTS, tid, threadNum);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
         return false;
-
     }
 
     /**
      * 更新下载任务
      */
-    public static boolean update(Context context, String tid, int threadNum,int status) {
-        try {
-
-            String sql = "UPDATE ";
-            sql += DownloadTaskDao.TABLENAME;
-            sql += " SET " + DownloadTaskDao.Properties.Status.columnName + " =?";
-            sql += " where " + DownloadTaskDao.Properties.TaskId.columnName + "=? and " + DownloadTaskDao.Properties.ThreadNum.columnName + "=?";
-
-            String args[] = {status + "",tid, threadNum + ""};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return false;
+    public static boolean update(final Context context, final String tid, final int threadNum, final int status) {
+        return DBWriteQueue.getInstance(context).execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                DBWriteQueue.getInstance(context).getStatementRepository().execute(SQL_UPDATE, status, tid, threadNum);
+                return true;
+            }
+        });
     }
 
     /**
@@ -114,18 +103,13 @@ public class DownloadTaskDB {
     /**
      * 删除下载任务
      */
-    private static boolean deleteTask(Context context, String tid,int threadNum) {
-        try {
-            String sql = "DELETE FROM ";
-            sql += DownloadTaskDao.TABLENAME;
-            sql += " where " + DownloadTaskDao.Properties.TaskId.columnName + "=? and " + DownloadTaskDao.Properties.ThreadNum.columnName + "=?";
-
-            String args[] = {tid, threadNum + ""};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return false;
+    private static boolean deleteTask(final Context context, final String tid, final int threadNum) {
+        return DBWriteQueue.getInstance(context).execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                DBWriteQueue.getInstance(context).getStatementRepository().execute(SQL_DELETE, tid, threadNum);
+                return true;
+            }
+        });
     }
 }
@@ -1,15 +1,19 @@
 package com.zlm.hp.db.util;
 
 import android.content.Context;
-import android.database.Cursor;
 
 import com.zlm.down.entity.DownloadThreadInfo;
 import com.zlm.hp.db.DBHelper;
+import com.zlm.hp.db.DBWriteQueue;
+import com.zlm.hp.db.StatementRepository;
 import com.zlm.hp.db.dao.DownloadThreadInfoDao;
 
+import org.greenrobot.greendao.database.Database;
 import org.greenrobot.greendao.query.WhereCondition;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * @Description: 下载线程db处理
@@ -17,19 +21,30 @@ import java.util.List;
  * @date: 2018-10-07 20:24
  **/
 public class DownloadThreadInfoDB {
+
+    private static final String WHERE_THREAD = DownloadThreadInfoDao.Properties.TaskId.columnName + "=? and " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=?  and " + DownloadThreadInfoDao.Properties.ThreadId.columnName + "=?";
+    private static final String SQL_EXISTS = StatementRepository.existsSql(DownloadThreadInfoDao.TABLENAME, WHERE_THREAD);
+    private static final String SQL_UPDATE_SIZE = "UPDATE " + DownloadThreadInfoDao.TABLENAME + " SET " + DownloadThreadInfoDao.Properties.DownloadedSize.columnName + " =? where " + WHERE_THREAD;
+    private static final String SQL_UPDATE_RANGE = "UPDATE " + DownloadThreadInfoDao.TABLENAME + " SET " + DownloadThreadInfoDao.Properties.DownloadedSize.columnName + " =?, " + DownloadThreadInfoDao.Properties.StartPos.columnName + " =?, " + DownloadThreadInfoDao.Properties.EndPos.columnName + " =? where " + WHERE_THREAD;
+    /**
+     * 任务id、线程个数和线程id有唯一索引，已存在时整行替换
+     */
+    private static final String SQL_REPLACE = "INSERT OR REPLACE INTO " + DownloadThreadInfoDao.TABLENAME + " (" + DownloadThreadInfoDao.Properties.TaskId.columnName + "," + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "," + DownloadThreadInfoDao.Properties.ThreadId.columnName + "," + DownloadThreadInfoDao.Properties.DownloadedSize.columnName + "," + DownloadThreadInfoDao.Properties.StartPos.columnName + "," + DownloadThreadInfoDao.Properties.EndPos.columnName + "," + DownloadThreadInfoDao.Properties.Checksum.columnName + ") VALUES (?,?,?,?,?,?,?)";
+    private static final String SQL_DELETE = "DELETE FROM " + DownloadThreadInfoDao.TABLENAME + " where " + DownloadThreadInfoDao.Properties.TaskId.columnName + "=? and " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=?";
+    private static final String SQL_DELETE_ALL = "DELETE FROM " + DownloadThreadInfoDao.TABLENAME + " where " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=?";
     /**
      * 添加下载线程任务
      *
      * @param downloadThreadInfo
      */
-    public static boolean add(Context context, DownloadThreadInfo downloadThreadInfo) {
-        try {
-            DBHelper.getInstance(context).getDaoSession().getDownloadThreadInfoDao().insert(downloadThreadInfo);
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return false;
+    public static boolean add(final Context context, final DownloadThreadInfo downloadThreadInfo) {
+        return DBWriteQueue.getInstance(context).execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                DBHelper.getInstance(context).getDaoSession().getDownloadThreadInfoDao().insert(downloadThreadInfo);
+                return true;
+            }
+        });
     }
 
     /**
@@ -43,7 +58,7 @@ public class DownloadThreadInfoDB {
     public static DownloadThreadInfo getDownloadThreadInfo(Context context, String tid, int threadNum, int threadId) {
         try {
             List<DownloadThreadInfo> downloadThreadInfos = DBHelper.getInstance(context).getDaoSession().getDownloadThreadInfoDao().queryBuilder().where(new WhereCondition.StringCondition(DownloadThreadInfoDao.Properties.TaskId.columnName + "=? and  " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=? and " + DownloadThreadInfoDao.Properties.ThreadId.columnName +
-                    "=?", tid + "", threadNum + "", threadId + "")).list();
+                    "=?", tid + "", threadNum + "", threadId + "")).limit(1).list();
             if (downloadThreadInfos != null && downloadThreadInfos.size() > 0) {
                 return downloadThreadInfos.get(0);
             }
@@ -54,77 +69,89 @@ public class DownloadThreadInfoDB {
     }
 
     /**
-     * 线程任务是否存在
+     * 获取任务所有的线程任务（下载区间）
      *
+     * @param context
      * @param tid
      * @param threadNum
-     * @param threadID
      * @return
      */
-    public static boolean isExists(Context context, String tid, int threadNum, int threadID) {
-        Cursor cursor = null;
+    public static List<DownloadThreadInfo> getDownloadThreadInfos(Context context, String tid, int threadNum) {
         try {
-            String args[] = {tid, threadNum + "", threadID + ""};
-            String sql = "select * from " + DownloadThreadInfoDao.TABLENAME + " WHERE " + DownloadThreadInfoDao.Properties.TaskId.columnName + "=? and  " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=? and " + DownloadThreadInfoDao.Properties.ThreadId.columnName +
-                    "=?";
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            if (cursor.moveToNext()) {
-                return true;
-            }
+            List<DownloadThreadInfo> downloadThreadInfos = DBHelper.getInstance(context).getDaoSession().getDownloadThreadInfoDao().queryBuilder().where(new WhereCondition.StringCondition(DownloadThreadInfoDao.Properties.TaskId.columnName + "=? and  " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=?", tid + "", threadNum + "")).list();
+            //合并还没有写入数据库的进度
+            return DownloadThreadInfoJournal.getInstance(context).merge(tid, threadNum, downloadThreadInfos);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
-        return false;
+        return new ArrayList<DownloadThreadInfo>();
+    }
 
+    /**
+     * 保存下载线程任务，存在则更新，不存在则添加
+     *
+     * @param context
+     * @param downloadThreadInfo
+     * @return
+     */
+    public static boolean save(Context context, DownloadThreadInfo downloadThreadInfo) {
+        if (isExists(context, downloadThreadInfo.getTaskId(), downloadThreadInfo.getThreadNum(), downloadThreadInfo.getThreadId())) {
+            //任务存在
+            return update(context, downloadThreadInfo);
+        }
+        //任务不存在
+        return add(context, downloadThreadInfo);
     }
 
     /**
-     * 获取下载进度
+     * 批量保存下载线程任务，在同一个事务中存在则替换，不存在则添加
      *
-     * @param tid
+     * @param context
+     * @param downloadThreadInfos
      * @return
      */
-    public static int getDownloadedSize(Context context, String tid, int threadNum) {
-        Cursor cursor = null;
+    public static boolean saveAll(Context context, List<DownloadThreadInfo> downloadThreadInfos) {
+        Database db = DBHelper.getInstance(context).getWritableDatabase();
+        DBWriteQueue dbWriteQueue = DBWriteQueue.getInstance(context);
+        //在写入线程的事务中使用写入线程专用的语句
+        StatementRepository repository = dbWriteQueue.isWriteThread() ? dbWriteQueue.getStatementRepository() : StatementRepository.getInstance(context);
+        //在写入队列的事务中执行时不再开启嵌套事务
+        boolean inTransaction = db.inTransaction();
+        if (!inTransaction) {
+            db.beginTransaction();
+        }
         try {
-            String args[] = {tid, threadNum + ""};
-            String name = DownloadThreadInfoDao.Properties.DownloadedSize.columnName;
-            String sql = "SELECT sum(" + name + ") as " + name + " from " + DownloadThreadInfoDao.TABLENAME
-                    + " WHERE " + DownloadThreadInfoDao.Properties.TaskId.columnName + "=? and " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=?";
-
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            if (cursor.moveToNext()) {
-                return cursor.getInt(cursor.getColumnIndex(name));
+            for (int i = 0; i < downloadThreadInfos.size(); i++) {
+                DownloadThreadInfo downloadThreadInfo = downloadThreadInfos.get(i);
+                //区间未下载完成时checksum为null
+                repository.executeInsert(SQL_REPLACE, downloadThreadInfo.getTaskId(), downloadThreadInfo.getThreadNum(), downloadThreadInfo.getThreadId(),
+                        downloadThreadInfo.getDownloadedSize(), downloadThreadInfo.getStartPos(), downloadThreadInfo.getEndPos(), downloadThreadInfo.getChecksum());
             }
+            if (!inTransaction) {
+                db.setTransactionSuccessful();
+            }
+            return true;
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (cursor != null) {
-                cursor.close();
+            if (!inTransaction) {
+                db.endTransaction();
             }
         }
-        return 0;
+        return false;
     }
 
     /**
-     * 更新下载线程任务
+     * 线程任务是否存在
+     *
+     * @param tid
+     * @param threadNum
+     * @param threadID
+     * @return
      */
-    public static boolean update(Context context, String tid, int threadNum, int threadID,
-                                 int downloadedSize) {
+    public static boolean isExists(Context context, String tid, int threadNum, int threadID) {
         try {
-
-            String sql = "UPDATE ";
-            sql += DownloadThreadInfoDao.TABLENAME;
-            sql += " SET " + DownloadThreadInfoDao.Properties.DownloadedSize.columnName + " =?";
-            sql += " where " + DownloadThreadInfoDao.Properties.TaskId.columnName + "=? and " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=?  and " + DownloadThreadInfoDao.Properties.ThreadId.columnName + "=?";
-
-            String args[] = {downloadedSize + "", tid, threadNum + "", threadID + ""};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
-            return true;
+            return StatementRepository.getInstance(context).exists(SQL_EXISTS, tid, threadNum, threadID);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -132,38 +159,74 @@ public class DownloadThreadInfoDB {
     }
 
     /**
-     * 删除下载线程任务
+     * 获取下载进度
+     *
+     * @param tid
+     * @return
      */
-    public static boolean delete(Context context, String tid, int threadNum) {
-        try {
-            String sql = "DELETE FROM ";
-            sql += DownloadThreadInfoDao.TABLENAME;
-            sql += " where " + DownloadThreadInfoDao.Properties.TaskId.columnName + "=? and " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=?";
-
-            String args[] = {tid, threadNum + ""};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
+    public static long getDownloadedSize(Context context, String tid, int threadNum) {
+        //包含还没有写入数据库的进度
+        List<DownloadThreadInfo> downloadThreadInfos = getDownloadThreadInfos(context, tid, threadNum);
+        long downloadedSize = 0;
+        for (int i = 0; i < downloadThreadInfos.size(); i++) {
+            downloadedSize += downloadThreadInfos.get(i).getDownloadedSize();
         }
-        return false;
+        return downloadedSize;
     }
 
     /**
-     * 删除所有下载线程任务
+     * 更新下载线程任务
      */
-    public static boolean deleteAll(Context context, int threadNum) {
-        try {
-            String sql = "DELETE FROM ";
-            sql += DownloadThreadInfoDao.TABLENAME;
-            sql += " where " + DownloadThreadInfoDao.Properties.ThreadNum.columnName + "=?";
+    public static boolean update(final Context context, final String tid, final int threadNum, final int threadID,
+                                 final long downloadedSize) {
+        return DBWriteQueue.getInstance(context).execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                DBWriteQueue.getInstance(context).getStatementRepository().execute(SQL_UPDATE_SIZE, downloadedSize, tid, threadNum, threadID);
+                return true;
+            }
+        });
+    }
 
-            String args[] = {threadNum + ""};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return false;
+    /**
+     * 更新下载线程任务的区间和进度
+     */
+    public static boolean update(final Context context, final DownloadThreadInfo downloadThreadInfo) {
+        return DBWriteQueue.getInstance(context).execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                DBWriteQueue.getInstance(context).getStatementRepository().execute(SQL_UPDATE_RANGE, downloadThreadInfo.getDownloadedSize(), downloadThreadInfo.getStartPos(), downloadThreadInfo.getEndPos(),
+                        downloadThreadInfo.getTaskId(), downloadThreadInfo.getThreadNum(), downloadThreadInfo.getThreadId());
+                return true;
+            }
+        });
+    }
+
+    /**
+     * 删除下载线程任务，在写入队列中执行，排在已提交的进度之后，等待删除完成
+     */
+    public static boolean delete(final Context context, final String tid, final int threadNum) {
+        DownloadThreadInfoJournal.getInstance(context).remove(tid, threadNum);
+        return DBWriteQueue.getInstance(context).execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                DBWriteQueue.getInstance(context).getStatementRepository().execute(SQL_DELETE, tid, threadNum);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * 删除所有下载线程任务
+     */
+    public static boolean deleteAll(final Context context, final int threadNum) {
+        DownloadThreadInfoJournal.getInstance(context).remove(null, threadNum);
+        return DBWriteQueue.getInstance(context).execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                DBWriteQueue.getInstance(context).getStatementRepository().execute(SQL_DELETE_ALL, threadNum);
+                return true;
+            }
+        });
     }
 }
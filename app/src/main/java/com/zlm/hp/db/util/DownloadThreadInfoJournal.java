@@ -0,0 +1,252 @@
+package com.zlm.hp.db.util;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import com.zlm.down.entity.DownloadThreadInfo;
+import com.zlm.hp.db.DBWriteQueue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * @Description: 下载线程任务进度日志
+ * 下载进度先合并保存在内存中，定时批量写入数据库；暂停、取消、完成时立即提交到写入队列，不等待写入完成。
+ * 程序异常退出时，最多丢失一个写入间隔的进度
+ * @author: zhangliangming
+ * @date: 2019-04-21 10:05
+ **/
+public class DownloadThreadInfoJournal {
+
+    /**
+     * 写入间隔
+     */
+    private static final int FLUSH_INTERVAL = 3 * 1000;
+
+    private static DownloadThreadInfoJournal _DownloadThreadInfoJournal;
+
+    /**
+     * 子线程用于定时写入
+     */
+    private Handler mWorkerHandler;
+    //创建异步HandlerThread
+    private HandlerThread mHandlerThread;
+
+    /**
+     * 待写入的线程任务，同一个线程任务只保留最新的进度
+     */
+    private Map<String, DownloadThreadInfo> mPendingThreadInfos = new LinkedHashMap<String, DownloadThreadInfo>();
+    /**
+     * 已提交到写入队列还未写入完成的线程任务，按提交顺序排列，写入完成前读取进度时仍需使用。
+     * 写入队列按提交顺序执行，旧的进度不会覆盖新的进度
+     */
+    private Map<Future<Boolean>, List<DownloadThreadInfo>> mFlushingBatches = new LinkedHashMap<Future<Boolean>, List<DownloadThreadInfo>>();
+
+    /**
+     * 是否已安排定时写入
+     */
+    private boolean isFlushScheduled = false;
+
+    private Context mContext;
+
+    private DownloadThreadInfoJournal(Context context) {
+        this.mContext = context.getApplicationContext();
+
+        //创建异步HandlerThread
+        mHandlerThread = new HandlerThread("downloadThreadInfoJournalThread", Process.THREAD_PRIORITY_BACKGROUND);
+        //必须先开启线程
+        mHandlerThread.start();
+        //子线程Handler
+        mWorkerHandler = new Handler(mHandlerThread.getLooper());
+    }
+
+    public static DownloadThreadInfoJournal getInstance(Context context) {
+        if (_DownloadThreadInfoJournal == null) {
+            synchronized (DownloadThreadInfoJournal.class) {
+                if (_DownloadThreadInfoJournal == null) {
+                    _DownloadThreadInfoJournal = new DownloadThreadInfoJournal(context);
+                }
+            }
+        }
+        return _DownloadThreadInfoJournal;
+    }
+
+    /**
+     * 定时写入
+     */
+    private Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (DownloadThreadInfoJournal.this) {
+                isFlushScheduled = false;
+            }
+            flush(null);
+        }
+    };
+
+    /**
+     * 记录线程任务的最新进度
+     *
+     * @param downloadThreadInfo
+     */
+    public void put(DownloadThreadInfo downloadThreadInfo) {
+        synchronized (this) {
+            mPendingThreadInfos.put(getKey(downloadThreadInfo.getTaskId(), downloadThreadInfo.getThreadNum(), downloadThreadInfo.getThreadId()), downloadThreadInfo);
+            if (isFlushScheduled) {
+                return;
+            }
+            isFlushScheduled = true;
+        }
+        mWorkerHandler.postDelayed(mFlushRunnable, FLUSH_INTERVAL);
+    }
+
+    /**
+     * 立即提交任务的进度到写入队列，用于暂停、取消和完成，不等待写入完成
+     *
+     * @param tid 为null时写入所有任务
+     */
+    public synchronized void flush(String tid) {
+        removeFlushedBatches();
+        final List<DownloadThreadInfo> downloadThreadInfos = new ArrayList<DownloadThreadInfo>();
+        Iterator<DownloadThreadInfo> iterator = mPendingThreadInfos.values().iterator();
+        while (iterator.hasNext()) {
+            DownloadThreadInfo downloadThreadInfo = iterator.next();
+            if (tid == null || tid.equals(downloadThreadInfo.getTaskId())) {
+                downloadThreadInfos.add(downloadThreadInfo);
+                iterator.remove();
+            }
+        }
+        if (downloadThreadInfos.isEmpty()) {
+            return;
+        }
+        //与其它修改一起由写入队列执行，加锁提交保证写入顺序与提交顺序相同
+        Future<Boolean> future = DBWriteQueue.getInstance(mContext).submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return DownloadThreadInfoDB.saveAll(mContext, downloadThreadInfos);
+            }
+        });
+        mFlushingBatches.put(future, downloadThreadInfos);
+    }
+
+    /**
+     * 删除任务未写入的进度，删除数据库记录前调用；
+     * 任务有正在写入的进度时等待写入完成，避免删除后又被写入
+     *
+     * @param tid       为null时删除所有任务
+     * @param threadNum
+     */
+    public void remove(String tid, int threadNum) {
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        synchronized (this) {
+            Iterator<DownloadThreadInfo> iterator = mPendingThreadInfos.values().iterator();
+            while (iterator.hasNext()) {
+                DownloadThreadInfo downloadThreadInfo = iterator.next();
+                if (isMatch(downloadThreadInfo, tid, threadNum)) {
+                    iterator.remove();
+                }
+            }
+            removeFlushedBatches();
+            Iterator<Map.Entry<Future<Boolean>, List<DownloadThreadInfo>>> batchIterator = mFlushingBatches.entrySet().iterator();
+            while (batchIterator.hasNext()) {
+                Map.Entry<Future<Boolean>, List<DownloadThreadInfo>> entry = batchIterator.next();
+                List<DownloadThreadInfo> downloadThreadInfos = entry.getValue();
+                for (int i = 0; i < downloadThreadInfos.size(); i++) {
+                    if (isMatch(downloadThreadInfos.get(i), tid, threadNum)) {
+                        futures.add(entry.getKey());
+                        break;
+                    }
+                }
+            }
+        }
+        if (futures.isEmpty() || DBWriteQueue.getInstance(mContext).isWriteThread()) {
+            //在写入线程中等待会阻塞写入队列
+            return;
+        }
+        //不持有锁等待，其它线程仍可以记录和提交进度
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 用未写入的进度覆盖数据库中的进度
+     *
+     * @param tid
+     * @param threadNum
+     * @param downloadThreadInfos 数据库中的线程任务
+     * @return
+     */
+    public synchronized List<DownloadThreadInfo> merge(String tid, int threadNum, List<DownloadThreadInfo> downloadThreadInfos) {
+        removeFlushedBatches();
+        if (mPendingThreadInfos.isEmpty() && mFlushingBatches.isEmpty()) {
+            return downloadThreadInfos;
+        }
+        Map<String, DownloadThreadInfo> result = new LinkedHashMap<String, DownloadThreadInfo>();
+        for (int i = 0; i < downloadThreadInfos.size(); i++) {
+            DownloadThreadInfo downloadThreadInfo = downloadThreadInfos.get(i);
+            result.put(getKey(tid, threadNum, downloadThreadInfo.getThreadId()), downloadThreadInfo);
+        }
+        //先按提交顺序覆盖正在写入的，再覆盖待写入的
+        List<DownloadThreadInfo> overlayThreadInfos = new ArrayList<DownloadThreadInfo>();
+        Iterator<List<DownloadThreadInfo>> iterator = mFlushingBatches.values().iterator();
+        while (iterator.hasNext()) {
+            overlayThreadInfos.addAll(iterator.next());
+        }
+        overlayThreadInfos.addAll(mPendingThreadInfos.values());
+        for (int i = 0; i < overlayThreadInfos.size(); i++) {
+            DownloadThreadInfo downloadThreadInfo = overlayThreadInfos.get(i);
+            if (isMatch(downloadThreadInfo, tid, threadNum)) {
+                result.put(getKey(tid, threadNum, downloadThreadInfo.getThreadId()), downloadThreadInfo);
+            }
+        }
+        return new ArrayList<DownloadThreadInfo>(result.values());
+    }
+
+    /**
+     * 移除已写入完成的批次，写入失败的进度不再保留
+     */
+    private void removeFlushedBatches() {
+        Iterator<Future<Boolean>> iterator = mFlushingBatches.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @param downloadThreadInfo
+     * @param tid                为null时匹配所有任务
+     * @param threadNum
+     * @return
+     */
+    private boolean isMatch(DownloadThreadInfo downloadThreadInfo, String tid, int threadNum) {
+        return (tid == null || tid.equals(downloadThreadInfo.getTaskId())) && downloadThreadInfo.getThreadNum() == threadNum;
+    }
+
+    /**
+     * @param tid
+     * @param threadNum
+     * @param threadId
+     * @return
+     */
+    private String getKey(String tid, int threadNum, int threadId) {
+        return tid + "_" + threadNum + "_" + threadId;
+    }
+}
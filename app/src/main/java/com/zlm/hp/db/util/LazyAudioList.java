@@ -0,0 +1,486 @@
+package com.zlm.hp.db.util;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import com.zlm.hp.db.dao.AudioInfoDao;
+import com.zlm.hp.entity.AudioInfo;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @Description: 按页从数据库加载的歌曲列表
+ * 创建时只统计个数和分类，不读取歌曲；列表滑动到哪一页才查询哪一页，只缓存最近使用的几页，
+ * 歌曲再多打开列表的耗时和内存也基本不变；页和歌曲的状态都在子线程中加载，还没加载的位置返回null，
+ * 加载完成后在主线程中回调刷新；滑动到页的边缘时预加载相邻的页，
+ * 列表创建后歌曲被删除时，该位置返回null，并在主线程中缩小个数
+ * @author: zhangliangming
+ * @date: 2019-05-08 21:00
+ **/
+public class LazyAudioList extends AbstractList<AudioInfo> {
+
+    /**
+     * 每页歌曲个数
+     */
+    public static final int PAGE_SIZE = 50;
+    /**
+     * 最多缓存的页数
+     */
+    private static final int MAX_PAGE_NUM = 8;
+    /**
+     * 离页的边缘多少首歌曲时预加载相邻的页
+     */
+    private static final int PREFETCH_DISTANCE = 15;
+
+    /**
+     * 子线程用于预加载，所有列表共用
+     */
+    private static Handler mLoadHandler;
+    //创建异步HandlerThread
+    private static HandlerThread mLoadThread;
+
+    private AudioInfoDao mAudioInfoDao;
+    /**
+     * 查询条件和排序，不包含where和order by，排序需要唯一，否则按偏移分页时相同排序的歌曲可能重复或者遗漏
+     */
+    private String mWhere;
+    private String mOrderBy;
+    private String[] mArgs;
+    /**
+     * 只在主线程中修改
+     */
+    private volatile int mSize;
+    /**
+     * 添加时修改了类型的本地类型，例如喜欢的本地歌曲，读取后需要修改为原来的类型，-1表示不需要修改
+     */
+    private int mLocalType;
+
+    /**
+     * 已加载的页，按访问顺序排列，超过最大页数时移除最久没有使用的页
+     */
+    private Map<Integer, Page> mPages = new LinkedHashMap<Integer, Page>(MAX_PAGE_NUM, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > MAX_PAGE_NUM;
+        }
+    };
+
+    /**
+     * 正在预加载的页
+     */
+    private Set<Integer> mLoadingPages = new HashSet<Integer>();
+
+    /**
+     * 数据变化的次数，加载完成时数据已变化则丢弃该页
+     */
+    private int mGeneration;
+
+    private Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private OnSizeChangeListener mOnSizeChangeListener;
+
+    private OnPageLoadListener mOnPageLoadListener;
+
+    /**
+     * 加载页时读取歌曲的状态，例如是否喜欢、是否已下载
+     */
+    private StateLoader mStateLoader;
+
+    /**
+     * 分类的开始位置和名称，位置从小到大
+     */
+    private List<Integer> mSectionPositions = new ArrayList<Integer>();
+    private List<String> mSectionTitles = new ArrayList<String>();
+
+    /**
+     * @param audioInfoDao
+     * @param where
+     * @param orderBy
+     * @param args
+     * @param size         符合条件的歌曲个数
+     * @param localType
+     */
+    public LazyAudioList(AudioInfoDao audioInfoDao, String where, String orderBy, String[] args, int size, int localType) {
+        this.mAudioInfoDao = audioInfoDao;
+        this.mWhere = where;
+        this.mOrderBy = orderBy;
+        this.mArgs = args;
+        this.mSize = size;
+        this.mLocalType = localType;
+    }
+
+    /**
+     * @param onSizeChangeListener 在主线程中回调
+     */
+    public void setOnSizeChangeListener(OnSizeChangeListener onSizeChangeListener) {
+        this.mOnSizeChangeListener = onSizeChangeListener;
+    }
+
+    /**
+     * @param onPageLoadListener 在主线程中回调
+     */
+    public void setOnPageLoadListener(OnPageLoadListener onPageLoadListener) {
+        this.mOnPageLoadListener = onPageLoadListener;
+    }
+
+    /**
+     * 需要在读取歌曲前设置
+     *
+     * @param stateLoader 在子线程中调用
+     */
+    public void setStateLoader(StateLoader stateLoader) {
+        this.mStateLoader = stateLoader;
+    }
+
+    /**
+     * 添加分类，需要按位置顺序添加
+     *
+     * @param title
+     * @param position 分类第一首歌曲的位置
+     */
+    public void addSection(String title, int position) {
+        mSectionPositions.add(position);
+        mSectionTitles.add(title);
+    }
+
+    /**
+     * 获取分类名称
+     *
+     * @param position
+     * @return 该位置是分类的第一首歌曲时返回分类名称，否则返回null
+     */
+    public String getSectionTitle(int position) {
+        int low = 0;
+        int high = mSectionPositions.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midPosition = mSectionPositions.get(mid);
+            if (midPosition < position) {
+                low = mid + 1;
+            } else if (midPosition > position) {
+                high = mid - 1;
+            } else {
+                return mSectionTitles.get(mid);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 只读取已加载的页，不会查询数据库
+     *
+     * @param location
+     * @return 该位置的页还没加载、读取失败或者该位置的歌曲已被删除时返回null，页加载完成后回调OnPageLoadListener
+     */
+    @Override
+    public AudioInfo get(int location) {
+        if (location < 0 || location >= mSize) {
+            throw new IndexOutOfBoundsException("location=" + location + " size=" + mSize);
+        }
+        int pageIndex = location / PAGE_SIZE;
+        int index = location % PAGE_SIZE;
+        Page page;
+        synchronized (this) {
+            page = mPages.get(pageIndex);
+        }
+        if (page == null) {
+            prefetchPage(pageIndex);
+        }
+        if (index >= PAGE_SIZE - PREFETCH_DISTANCE) {
+            prefetchPage(pageIndex + 1);
+        } else if (index < PREFETCH_DISTANCE) {
+            prefetchPage(pageIndex - 1);
+        }
+        if (page == null || index >= page.audioInfos.size()) {
+            return null;
+        }
+        return page.audioInfos.get(index);
+    }
+
+    /**
+     * 获取歌曲的状态，只读取已加载的页
+     *
+     * @param location
+     * @return 该位置的页还没加载时返回0
+     */
+    public synchronized int getState(int location) {
+        Page page = mPages.get(location / PAGE_SIZE);
+        int index = location % PAGE_SIZE;
+        if (page == null || index >= page.states.length) {
+            return 0;
+        }
+        return page.states[index];
+    }
+
+    /**
+     * 该位置的页是否已加载，已加载时get返回null说明歌曲已被删除
+     *
+     * @param location
+     * @return
+     */
+    public synchronized boolean isLoaded(int location) {
+        return mPages.containsKey(location / PAGE_SIZE);
+    }
+
+    /**
+     * 在当前线程中加载该位置的页，用于在子线程中提前加载第一屏
+     *
+     * @param location
+     */
+    public void preload(int location) {
+        if (location < 0 || location >= mSize) {
+            return;
+        }
+        int pageIndex = location / PAGE_SIZE;
+        int generation;
+        synchronized (this) {
+            if (mPages.containsKey(pageIndex)) {
+                return;
+            }
+            generation = mGeneration;
+        }
+        Page page = loadPage(pageIndex);
+        if (page != null) {
+            putPage(pageIndex, page, generation);
+        }
+    }
+
+    /**
+     * 歌曲的状态已改变，在子线程中重新读取已加载的页中该歌曲的状态
+     *
+     * @param hash
+     */
+    public void reloadState(final String hash) {
+        if (mStateLoader == null) {
+            return;
+        }
+        getLoadHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                List<Integer> positions = new ArrayList<Integer>();
+                List<Page> pages = new ArrayList<Page>();
+                synchronized (LazyAudioList.this) {
+                    for (Map.Entry<Integer, Page> entry : mPages.entrySet()) {
+                        Page page = entry.getValue();
+                        for (int i = 0; i < page.audioInfos.size(); i++) {
+                            if (hash.equals(page.audioInfos.get(i).getHash())) {
+                                positions.add(entry.getKey() * PAGE_SIZE + i);
+                                pages.add(page);
+                            }
+                        }
+                    }
+                }
+                for (int i = 0; i < positions.size(); i++) {
+                    final int position = positions.get(i);
+                    Page page = pages.get(i);
+                    int index = position % PAGE_SIZE;
+                    int state = mStateLoader.loadState(page.audioInfos.get(index));
+                    synchronized (LazyAudioList.this) {
+                        page.states[index] = state;
+                    }
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (mOnPageLoadListener != null && position < mSize) {
+                                mOnPageLoadListener.onPageLoad(position, 1);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * 数据库中已添加或者删除歌曲，按偏移加载的页已错位，清空已加载的页，正在加载的页也丢弃
+     */
+    public synchronized void invalidate() {
+        mGeneration++;
+        mPages.clear();
+        mLoadingPages.clear();
+    }
+
+    /**
+     * 在已加载的页中查找歌曲位置，不会查询数据库
+     *
+     * @param hash
+     * @return
+     */
+    public synchronized int getLoadedIndex(String hash) {
+        Iterator<Map.Entry<Integer, Page>> iterator = mPages.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Page> entry = iterator.next();
+            List<AudioInfo> page = entry.getValue().audioInfos;
+            for (int i = 0; i < page.size(); i++) {
+                if (hash.equals(page.get(i).getHash())) {
+                    return entry.getKey() * PAGE_SIZE + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在子线程中预加载页，已缓存或者正在加载时不再加载
+     *
+     * @param pageIndex
+     */
+    private void prefetchPage(final int pageIndex) {
+        if (pageIndex < 0 || pageIndex * PAGE_SIZE >= mSize) {
+            return;
+        }
+        final int generation;
+        synchronized (this) {
+            if (mPages.containsKey(pageIndex) || mLoadingPages.contains(pageIndex)) {
+                return;
+            }
+            mLoadingPages.add(pageIndex);
+            generation = mGeneration;
+        }
+        getLoadHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                Page page = loadPage(pageIndex);
+                synchronized (LazyAudioList.this) {
+                    if (generation == mGeneration) {
+                        mLoadingPages.remove(pageIndex);
+                    }
+                }
+                if (page != null) {
+                    putPage(pageIndex, page, generation);
+                }
+            }
+        });
+    }
+
+    /**
+     * 缓存页，并在主线程中刷新该页的位置；页不满时说明后面的歌曲已被删除，在主线程中缩小个数
+     *
+     * @param pageIndex
+     * @param page
+     * @param generation 开始加载时的数据变化次数
+     */
+    private void putPage(int pageIndex, Page page, int generation) {
+        synchronized (this) {
+            if (generation != mGeneration) {
+                //加载期间数据已变化
+                return;
+            }
+            mPages.put(pageIndex, page);
+        }
+        final int position = pageIndex * PAGE_SIZE;
+        final int size = position + page.audioInfos.size();
+        final boolean isFull = page.audioInfos.size() == PAGE_SIZE;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!isFull && size < mSize) {
+                    mSize = size;
+                    if (mOnSizeChangeListener != null) {
+                        mOnSizeChangeListener.onSizeChange(size);
+                    }
+                    return;
+                }
+                if (mOnPageLoadListener != null && position < mSize) {
+                    mOnPageLoadListener.onPageLoad(position, Math.min(PAGE_SIZE, mSize - position));
+                }
+            }
+        });
+    }
+
+    /**
+     * @return
+     */
+    private static synchronized Handler getLoadHandler() {
+        if (mLoadHandler == null) {
+            //创建异步HandlerThread
+            mLoadThread = new HandlerThread("lazyAudioListThread", Process.THREAD_PRIORITY_BACKGROUND);
+            //必须先开启线程
+            mLoadThread.start();
+            //子线程Handler
+            mLoadHandler = new Handler(mLoadThread.getLooper());
+        }
+        return mLoadHandler;
+    }
+
+    /**
+     * @param pageIndex
+     * @return 读取失败时返回null，不缓存
+     */
+    private Page loadPage(int pageIndex) {
+        try {
+            //不使用QueryBuilder的排序，加密数据库无法去掉默认的COLLATE NOCASE，排序不能使用索引
+            String sql = "WHERE " + mWhere + " ORDER BY " + mOrderBy + " LIMIT " + PAGE_SIZE + " OFFSET " + pageIndex * PAGE_SIZE;
+            List<AudioInfo> audioInfos = mAudioInfoDao.queryRaw(sql, mArgs);
+            if (mLocalType != -1) {
+                for (int i = 0; i < audioInfos.size(); i++) {
+                    AudioInfo temp = audioInfos.get(i);
+                    //添加时修改了类型，从数据库中获取后，需要修改为原来的状态
+                    if (temp.getType() == mLocalType) {
+                        temp.setType(AudioInfo.TYPE_LOCAL);
+                    } else {
+                        temp.setType(AudioInfo.TYPE_NET);
+                    }
+                }
+            }
+            int[] states = new int[audioInfos.size()];
+            if (mStateLoader != null) {
+                for (int i = 0; i < audioInfos.size(); i++) {
+                    states[i] = mStateLoader.loadState(audioInfos.get(i));
+                }
+            }
+            return new Page(audioInfos, states);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 已加载的页，歌曲和状态一起缓存
+     */
+    private static class Page {
+        private List<AudioInfo> audioInfos;
+        private int[] states;
+
+        private Page(List<AudioInfo> audioInfos, int[] states) {
+            this.audioInfos = audioInfos;
+            this.states = states;
+        }
+    }
+
+    /**
+     * 歌曲个数变化回调
+     */
+    public interface OnSizeChangeListener {
+        void onSizeChange(int size);
+    }
+
+    /**
+     * 页或者歌曲状态加载完成回调，需要刷新这些位置
+     */
+    public interface OnPageLoadListener {
+        void onPageLoad(int position, int count);
+    }
+
+    /**
+     * 读取歌曲状态
+     */
+    public interface StateLoader {
+        int loadState(AudioInfo audioInfo);
+    }
+}
@@ -1,9 +1,9 @@
 package com.zlm.hp.db.util;
 
 import android.content.Context;
-import android.database.Cursor;
 
 import com.zlm.hp.db.DBHelper;
+import com.zlm.hp.db.StatementRepository;
 import com.zlm.hp.db.dao.SingerInfoDao;
 import com.zlm.hp.entity.SingerInfo;
 
@@ -18,6 +18,10 @@ import java.util.List;
  **/
 public class SingerInfoDB {
 
+    private static final String SQL_EXISTS = StatementRepository.existsSql(SingerInfoDao.TABLENAME, SingerInfoDao.Properties.ImageUrl.columnName + "=?");
+    private static final String SQL_DELETE_BY_SINGER_NAME = "DELETE FROM " + SingerInfoDao.TABLENAME + " where " + SingerInfoDao.Properties.SingerName.columnName + "=?";
+    private static final String SQL_DELETE = "DELETE FROM " + SingerInfoDao.TABLENAME + " where " + SingerInfoDao.Properties.ImageUrl.columnName + "=?";
+
     /**
      * 添加
      *
@@ -58,23 +62,12 @@ public class SingerInfoDB {
      * @return
      */
     public static boolean isExists(Context context, String imageUrl) {
-        Cursor cursor = null;
         try {
-            String args[] = {imageUrl};
-            String sql = "select * from " + SingerInfoDao.TABLENAME + " WHERE " + SingerInfoDao.Properties.ImageUrl.columnName + "=?";
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            if (cursor.moveToNext()) {
-                return true;
-            }
+            return StatementRepository.getInstance(context).exists(SQL_EXISTS, imageUrl);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
         return false;
-
     }
 
     /**
@@ -82,11 +75,7 @@ public class SingerInfoDB {
      */
     public static boolean deleteBySingerName(Context context, String singerName) {
         try {
-            String sql = "DELETE FROM ";
-            sql += SingerInfoDao.TABLENAME;
-            sql += " where " + SingerInfoDao.Properties.SingerName.columnName + "=?";
-            String args[] = {singerName};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
+            StatementRepository.getInstance(context).execute(SQL_DELETE_BY_SINGER_NAME, singerName);
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -99,11 +88,7 @@ public class SingerInfoDB {
      */
     public static boolean delete(Context context, String imageUrl) {
         try {
-            String sql = "DELETE FROM ";
-            sql += SingerInfoDao.TABLENAME;
-            sql += " where " + SingerInfoDao.Properties.ImageUrl.columnName + "=?";
-            String args[] = {imageUrl};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
+            StatementRepository.getInstance(context).execute(SQL_DELETE, imageUrl);
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -1,9 +1,9 @@
 package com.zlm.hp.db.util;
 
 import android.content.Context;
-import android.database.Cursor;
 
 import com.zlm.hp.db.DBHelper;
+import com.zlm.hp.db.StatementRepository;
 import com.zlm.hp.db.dao.SubtitleInfoDao;
 import com.zlm.hp.entity.SubtitleInfo;
 
@@ -18,6 +18,10 @@ import java.util.List;
  **/
 public class SubtitleInfoDB {
 
+    private static final String SQL_EXISTS = StatementRepository.existsSql(SubtitleInfoDao.TABLENAME, SubtitleInfoDao.Properties.VideoHash.columnName + "=?");
+    private static final String SQL_UPDATE = "UPDATE " + SubtitleInfoDao.TABLENAME + " SET " + SubtitleInfoDao.Properties.FilePath.columnName + " =?," + SubtitleInfoDao.Properties.DownloadUrl.columnName + " =?,"
+            + SubtitleInfoDao.Properties.FileName.columnName + " =? where " + SubtitleInfoDao.Properties.VideoHash.columnName + "=?";
+
     /**
      * 添加
      *
@@ -42,21 +46,10 @@ public class SubtitleInfoDB {
      * @return
      */
     public static boolean isSubtitleExists(Context context, String videoHash) {
-        Cursor cursor = null;
         try {
-            String args[] = {videoHash};
-            String sql = "select * from " + SubtitleInfoDao.TABLENAME;
-            sql += " where " + SubtitleInfoDao.Properties.VideoHash.columnName + "=?";
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            if (cursor.moveToNext()) {
-                return true;
-            }
+            return StatementRepository.getInstance(context).exists(SQL_EXISTS, videoHash);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
         return false;
     }
@@ -66,16 +59,7 @@ public class SubtitleInfoDB {
      */
     public static boolean updateSubtitleInfo(Context context, String videoHash, String fileName, String filePath, String downloadUrl) {
         try {
-
-            String sql = "UPDATE ";
-            sql += SubtitleInfoDao.TABLENAME;
-            sql += " SET " + SubtitleInfoDao.Properties.FilePath.columnName + " =?";
-            sql += "," + SubtitleInfoDao.Properties.DownloadUrl.columnName + " =?";
-            sql += "," + SubtitleInfoDao.Properties.FileName.columnName + " =?";
-            sql += " where " + SubtitleInfoDao.Properties.VideoHash.columnName + "=?";
-
-            String args[] = {filePath, downloadUrl, fileName, videoHash};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
+            StatementRepository.getInstance(context).execute(SQL_UPDATE, filePath, downloadUrl, fileName, videoHash);
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -91,7 +75,7 @@ public class SubtitleInfoDB {
      */
     public static SubtitleInfo getSubtitleInfo(Context context, String videoHash) {
         try {
-            List<SubtitleInfo> subtitleInfoList = DBHelper.getInstance(context).getDaoSession().getSubtitleInfoDao().queryBuilder().where(new WhereCondition.StringCondition(SubtitleInfoDao.Properties.VideoHash.columnName + "=?", videoHash)).list();
+            List<SubtitleInfo> subtitleInfoList = DBHelper.getInstance(context).getDaoSession().getSubtitleInfoDao().queryBuilder().where(new WhereCondition.StringCondition(SubtitleInfoDao.Properties.VideoHash.columnName + "=?", videoHash)).limit(1).list();
             if (subtitleInfoList != null && subtitleInfoList.size() > 0) {
                 return subtitleInfoList.get(0);
             }
@@ -1,18 +1,25 @@
 package com.zlm.hp.db.util;
 
 import android.content.Context;
-import android.database.Cursor;
 
 import com.zlm.hp.db.DBHelper;
+import com.zlm.hp.db.DBWriteQueue;
+import com.zlm.hp.db.StatementRepository;
 import com.zlm.hp.db.dao.VideoInfoDao;
 import com.zlm.hp.entity.VideoInfo;
 
+import java.util.concurrent.Callable;
+
 /**
  * @Description: Video数据库处理
  * @author: zhangliangming
  * @date: 2019-01-06 1:06
  **/
 public class VideoInfoDB {
+
+    private static final String SQL_EXISTS = StatementRepository.existsSql(VideoInfoDao.TABLENAME, VideoInfoDao.Properties.Hash.columnName + "=?");
+    private static final String SQL_UPDATE = "UPDATE " + VideoInfoDao.TABLENAME + " SET " + VideoInfoDao.Properties.Status.columnName + " =? where " + VideoInfoDao.Properties.Hash.columnName + "=?";
+
     /**
      * 添加
      *
@@ -20,14 +27,14 @@ public class VideoInfoDB {
      * @param videoInfo
      * @return
      */
-    public static boolean addVideoInfo(Context context, VideoInfo videoInfo) {
-        try {
-            DBHelper.getInstance(context).getDaoSession().getVideoInfoDao().save(videoInfo);
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return false;
+    public static boolean addVideoInfo(final Context context, final VideoInfo videoInfo) {
+        return DBWriteQueue.getInstance(context).execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                DBHelper.getInstance(context).getDaoSession().getVideoInfoDao().save(videoInfo);
+                return true;
+            }
+        });
     }
 
     /**
@@ -38,21 +45,10 @@ public class VideoInfoDB {
      * @return
      */
     public static boolean isVideoExists(Context context, String hash) {
-        Cursor cursor = null;
         try {
-            String args[] = {hash};
-            String sql = "select * from " + VideoInfoDao.TABLENAME;
-            sql += " where " + VideoInfoDao.Properties.Hash.columnName + "=?";
-            cursor = DBHelper.getInstance(context).getWritableDatabase().rawQuery(sql, args);
-            if (cursor.moveToNext()) {
-                return true;
-            }
+            return StatementRepository.getInstance(context).exists(SQL_EXISTS, hash);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
         }
         return false;
     }
@@ -65,20 +61,13 @@ public class VideoInfoDB {
      * @param status
      * @return
      */
-    public static boolean updateVideo(Context context, String hash, int status) {
-        try {
-
-            String sql = "UPDATE ";
-            sql += VideoInfoDao.TABLENAME;
-            sql += " SET " + VideoInfoDao.Properties.Status.columnName + " =?";
-            sql += " where " + VideoInfoDao.Properties.Hash.columnName + "=?";
-
-            String args[] = {status + "", hash};
-            DBHelper.getInstance(context).getWritableDatabase().execSQL(sql, args);
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return false;
+    public static boolean updateVideo(final Context context, final String hash, final int status) {
+        return DBWriteQueue.getInstance(context).execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                DBWriteQueue.getInstance(context).getStatementRepository().execute(SQL_UPDATE, status, hash);
+                return true;
+            }
+        });
     }
 }
@@ -4,6 +4,7 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import org.greenrobot.greendao.annotation.Entity;
+import org.greenrobot.greendao.annotation.Index;
 import org.greenrobot.greendao.annotation.Transient;
 import org.greenrobot.greendao.annotation.Generated;
 
@@ -14,7 +15,12 @@ import org.greenrobot.greendao.annotation.Generated;
  **/
 @Entity(
         generateConstructors = false,
-        generateGettersSetters = false
+        generateGettersSetters = false,
+        indexes = {
+                @Index(value = "hash, type", unique = true),
+                @Index(value = "type, status, createTime"),
+                @Index(value = "category, childCategory")
+        }
 )
 public class AudioInfo implements Parcelable {
 
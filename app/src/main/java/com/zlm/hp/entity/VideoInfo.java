@@ -4,6 +4,7 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import org.greenrobot.greendao.annotation.Entity;
+import org.greenrobot.greendao.annotation.Index;
 import org.greenrobot.greendao.annotation.Generated;
 
 /**
@@ -13,7 +14,10 @@ import org.greenrobot.greendao.annotation.Generated;
  **/
 @Entity(
         generateConstructors = false,
-        generateGettersSetters = false
+        generateGettersSetters = false,
+        indexes = {
+                @Index(value = "hash")
+        }
 )
 public class VideoInfo implements Parcelable {
 
@@ -17,6 +17,7 @@ import com.zlm.hp.lyrics.widget.AbstractLrcView;
 import com.zlm.hp.lyrics.widget.ManyLyricsView;
 import com.zlm.hp.manager.AudioPlayerManager;
 import com.zlm.hp.manager.LyricsManager;
+import com.zlm.hp.manager.PlaybackClock;
 import com.zlm.hp.receiver.AudioBroadcastReceiver;
 import com.zlm.hp.ui.R;
 import com.zlm.hp.util.ColorUtil;
@@ -201,7 +202,7 @@ public class LrcFragment extends BaseFragment {
                         if (audioInfo == null) {
                             refreshView((int) mAudioInfo.getDuration());
                         } else if (mAudioInfo.getHash().equals(audioInfo.getHash())) {
-                            refreshView((int) audioInfo.getPlayProgress());
+                            refreshView(PlaybackClock.getInstance().getPlayProgress(audioInfo));
                         }
                     }
                 }
@@ -20,6 +20,7 @@ import com.zlm.down.entity.DownloadTask;
 import com.zlm.hp.adapter.AudioAdapter;
 import com.zlm.hp.constants.ConfigInfo;
 import com.zlm.hp.db.util.AudioInfoDB;
+import com.zlm.hp.db.util.LazyAudioList;
 import com.zlm.hp.entity.AudioInfo;
 import com.zlm.hp.entity.RankInfo;
 import com.zlm.hp.entity.SpecialInfo;
@@ -61,6 +62,11 @@ public class SongFragment extends BaseFragment {
      */
     private ArrayList<AudioInfo> mDatas;
 
+    /**
+     * 数据库中按页加载的歌曲列表
+     */
+    private LazyAudioList mLazyAudioList;
+
     /**
      * 加载刷新数据
      */
@@ -269,6 +275,7 @@ public class SongFragment extends BaseFragment {
                     case AudioBroadcastReceiver.ACTION_CODE_UPDATE_LOCAL:
                         if (mSongType == SONG_TYPE_LOCAL) {
                             //歌曲更新
+                            invalidateDatas();
                             mWorkerHandler.sendEmptyMessage(LOADREFRESHDATA);
                         }
                         break;
@@ -276,6 +283,7 @@ public class SongFragment extends BaseFragment {
                     case AudioBroadcastReceiver.ACTION_CODE_UPDATE_LIKE:
                         if (mSongType == SONG_TYPE_LIKE) {
                             //歌曲更新
+                            invalidateDatas();
                             mWorkerHandler.sendEmptyMessage(LOADREFRESHDATA);
                         } else {
                             //喜欢/不喜欢
@@ -290,6 +298,7 @@ public class SongFragment extends BaseFragment {
                     case AudioBroadcastReceiver.ACTION_CODE_UPDATE_RECENT:
                         if (mSongType == SONG_TYPE_RECENT) {
                             //歌曲更新
+                            invalidateDatas();
                             mWorkerHandler.sendEmptyMessage(LOADREFRESHDATA);
                         }
                         break;
@@ -315,6 +324,15 @@ public class SongFragment extends BaseFragment {
         mAudioBroadcastReceiver.registerReceiver(mContext);
     }
 
+    /**
+     * 歌曲已添加或者删除，重新加载完成前，旧的列表不再使用已错位的页
+     */
+    private void invalidateDatas() {
+        if (mLazyAudioList != null) {
+            mLazyAudioList.invalidate();
+        }
+    }
+
     @Override
     protected void handleUIMessage(Message msg) {
         switch (msg.what) {
@@ -382,8 +400,30 @@ public class SongFragment extends BaseFragment {
             Map<String, Object> returnResult = (Map<String, Object>) httpReturnResult.getResult();
             List<AudioInfo> lists = (List<AudioInfo>) returnResult.get("rows");
             int pageSize = lists.size();
-            for (int i = 0; i < pageSize; i++) {
-                mDatas.add(lists.get(i));
+            if (lists instanceof LazyAudioList) {
+                //数据库中的歌曲按页加载，直接使用
+                ((LazyAudioList) lists).setOnSizeChangeListener(new LazyAudioList.OnSizeChangeListener() {
+                    @Override
+                    public void onSizeChange(int size) {
+                        //歌曲已被删除
+                        mAdapter.notifyDataSetChanged();
+                    }
+                });
+                ((LazyAudioList) lists).setOnPageLoadListener(new LazyAudioList.OnPageLoadListener() {
+                    @Override
+                    public void onPageLoad(int position, int count) {
+                        //歌曲或者状态已在子线程中加载
+                        mAdapter.getInnerAdapter().notifyItemRangeChanged(position, count);
+                    }
+                });
+                mLazyAudioList = (LazyAudioList) lists;
+                ((AudioAdapter) (mAdapter.getInnerAdapter())).setDatas(lists);
+            } else {
+                mLazyAudioList = null;
+                for (int i = 0; i < pageSize; i++) {
+                    mDatas.add(lists.get(i));
+                }
+                ((AudioAdapter) (mAdapter.getInnerAdapter())).setDatas(mDatas);
             }
 
             ((AudioAdapter) (mAdapter.getInnerAdapter())).resetMenuOpenIndex();
@@ -495,14 +535,17 @@ public class SongFragment extends BaseFragment {
                 httpReturnResult.setStatus(HttpClient.HTTP_OK);
                 List<AudioInfo> audioInfos = null;
                 if (mSongType == SONG_TYPE_LOCAL) {
-                    audioInfos = AudioInfoDB.getLocalAudios(mContext);
+                    audioInfos = AudioInfoDB.getLocalAudioList(mContext);
                 } else if (mSongType == SONG_TYPE_LIKE) {
-                    audioInfos = AudioInfoDB.getLikeAudios(mContext);
+                    audioInfos = AudioInfoDB.getLikeAudioList(mContext);
                 } else if (mSongType == SONG_TYPE_RECENT) {
-                    audioInfos = AudioInfoDB.getRecentAudios(mContext);
+                    audioInfos = AudioInfoDB.getRecentAudioList(mContext);
                 }
                 if (audioInfos == null) {
                     audioInfos = new ArrayList<AudioInfo>();
+                } else if (audioInfos instanceof LazyAudioList) {
+                    //在子线程中加载第一页，打开列表时直接显示
+                    ((LazyAudioList) audioInfos).preload(0);
                 }
                 Map<String, Object> returnResult = new HashMap<String, Object>();
                 returnResult.put("rows", audioInfos);
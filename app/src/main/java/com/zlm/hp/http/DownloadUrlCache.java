@@ -0,0 +1,292 @@
+package com.zlm.hp.http;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import com.zlm.hp.constants.ResourceConstants;
+import com.zlm.hp.entity.AudioInfo;
+import com.zlm.hp.entity.VideoInfo;
+import com.zlm.hp.util.FileUtil;
+import com.zlm.hp.util.HttpUtil;
+import com.zlm.hp.util.ResourceUtil;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @Description: 歌曲和mv下载地址缓存
+ * 按hash缓存解析后的下载地址、文件大小和后缀，内存和文件各保存一份，超过有效期后重新获取；
+ * 下载返回403或者404时移除缓存，重新获取地址
+ * @author: zhangliangming
+ * @date: 2019-04-29 20:15
+ **/
+public class DownloadUrlCache {
+
+    /**
+     * 地址有效期
+     */
+    public static final long TTL = 30 * 60 * 1000;
+    /**
+     * 最多缓存的地址个数
+     */
+    private static final int MAX_SIZE = 200;
+    /**
+     * 缓存文件名
+     */
+    private static final String CACHE_FILE_NAME = "download_url.json";
+
+    private static final String TYPE_AUDIO = "audio_";
+    private static final String TYPE_VIDEO = "video_";
+
+    private static DownloadUrlCache _DownloadUrlCache;
+
+    /**
+     * 下载地址，按访问顺序淘汰
+     */
+    private Map<String, Entry> mEntrys = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    /**
+     * 是否已读取缓存文件
+     */
+    private boolean isLoaded = false;
+
+    private Context mContext;
+
+    private DownloadUrlCache(Context context) {
+        this.mContext = context.getApplicationContext();
+    }
+
+    public static DownloadUrlCache getInstance(Context context) {
+        if (_DownloadUrlCache == null) {
+            synchronized (DownloadUrlCache.class) {
+                if (_DownloadUrlCache == null) {
+                    _DownloadUrlCache = new DownloadUrlCache(context);
+                }
+            }
+        }
+        return _DownloadUrlCache;
+    }
+
+    /**
+     * 获取歌曲下载地址，缓存有效时不再请求接口
+     *
+     * @param audioInfo
+     * @param askWifi
+     */
+    public void getSongInfo(AudioInfo audioInfo, boolean askWifi) {
+        String key = TYPE_AUDIO + audioInfo.getHash();
+        Entry entry = get(key);
+        if (entry != null) {
+            audioInfo.setDownloadUrl(entry.downloadUrl);
+            if (audioInfo.getFileSize() <= 0) {
+                audioInfo.setFileSize(entry.fileSize);
+                audioInfo.setFileSizeText(FileUtil.getFileSize(entry.fileSize));
+            }
+            if (TextUtils.isEmpty(audioInfo.getFileExt())) {
+                audioInfo.setFileExt(entry.fileExt);
+            }
+            return;
+        }
+        APIHttpClient apiHttpClient = HttpUtil.getHttpClient();
+        apiHttpClient.getSongInfo(mContext, audioInfo.getHash(), audioInfo, askWifi);
+        if (!TextUtils.isEmpty(audioInfo.getDownloadUrl())) {
+            put(key, new Entry(audioInfo.getDownloadUrl(), audioInfo.getFileSize(), audioInfo.getFileExt(), System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * 获取mv下载地址，缓存有效时不再请求接口
+     *
+     * @param videoInfo
+     * @param askWifi
+     */
+    public void getMVInfo(VideoInfo videoInfo, boolean askWifi) {
+        String key = TYPE_VIDEO + videoInfo.getHash();
+        Entry entry = get(key);
+        if (entry != null) {
+            videoInfo.setDownloadUrl(entry.downloadUrl);
+            videoInfo.setFileSize(entry.fileSize);
+            videoInfo.setFileSizeText(FileUtil.getFileSize(entry.fileSize));
+            videoInfo.setFileExt(entry.fileExt);
+            return;
+        }
+        APIHttpClient apiHttpClient = HttpUtil.getHttpClient();
+        apiHttpClient.getMVInfo(mContext, videoInfo.getHash(), videoInfo, askWifi);
+        if (!TextUtils.isEmpty(videoInfo.getDownloadUrl())) {
+            put(key, new Entry(videoInfo.getDownloadUrl(), videoInfo.getFileSize(), videoInfo.getFileExt(), System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * 歌曲下载地址已失效
+     *
+     * @param hash
+     */
+    public void removeSong(String hash) {
+        remove(TYPE_AUDIO + hash);
+    }
+
+    /**
+     * mv下载地址已失效
+     *
+     * @param hash
+     */
+    public void removeMV(String hash) {
+        remove(TYPE_VIDEO + hash);
+    }
+
+    /**
+     * @param key
+     * @return 不存在或者已过期时返回null
+     */
+    private synchronized Entry get(String key) {
+        load();
+        Entry entry = mEntrys.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.time > TTL) {
+            mEntrys.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * @param key
+     * @param entry
+     */
+    private synchronized void put(String key, Entry entry) {
+        load();
+        mEntrys.put(key, entry);
+        save();
+    }
+
+    /**
+     * @param key
+     */
+    private synchronized void remove(String key) {
+        load();
+        if (mEntrys.remove(key) != null) {
+            save();
+        }
+    }
+
+    /**
+     * 读取缓存文件，过期的地址不再读取
+     */
+    private void load() {
+        if (isLoaded) {
+            return;
+        }
+        isLoaded = true;
+        File file = new File(ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_CACHE, CACHE_FILE_NAME));
+        if (!file.exists()) {
+            return;
+        }
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buff = new byte[1024 * 4];
+            int length;
+            while ((length = fis.read(buff)) > 0) {
+                baos.write(buff, 0, length);
+            }
+            JSONArray jsonArray = new JSONArray(baos.toString("UTF-8"));
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < jsonArray.length(); i++) {
+                JSONObject jsonObject = jsonArray.getJSONObject(i);
+                Entry entry = new Entry(jsonObject.optString("url"), jsonObject.optLong("size"), jsonObject.optString("ext"), jsonObject.optLong("time"));
+                if (now - entry.time <= TTL) {
+                    mEntrys.put(jsonObject.optString("key"), entry);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (fis != null)
+                try {
+                    fis.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+        }
+    }
+
+    /**
+     * 写入缓存文件，先写入临时文件再替换，避免写入一半时程序退出
+     */
+    private void save() {
+        File file = new File(ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_CACHE, CACHE_FILE_NAME));
+        File tempFile = new File(file.getPath() + ".temp");
+        FileOutputStream fos = null;
+        try {
+            JSONArray jsonArray = new JSONArray();
+            Iterator<Map.Entry<String, Entry>> iterator = mEntrys.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> item = iterator.next();
+                JSONObject jsonObject = new JSONObject();
+                jsonObject.put("key", item.getKey());
+                jsonObject.put("url", item.getValue().downloadUrl);
+                jsonObject.put("size", item.getValue().fileSize);
+                jsonObject.put("ext", item.getValue().fileExt);
+                jsonObject.put("time", item.getValue().time);
+                jsonArray.put(jsonObject);
+            }
+            if (!file.getParentFile().exists()) {
+                file.getParentFile().mkdirs();
+            }
+            fos = new FileOutputStream(tempFile);
+            fos.write(jsonArray.toString().getBytes("UTF-8"));
+            fos.close();
+            fos = null;
+            if (!tempFile.renameTo(file)) {
+                file.delete();
+                tempFile.renameTo(file);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (fos != null)
+                try {
+                    fos.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+        }
+    }
+
+    /**
+     * 下载地址
+     */
+    private static class Entry {
+        private String downloadUrl;
+        private long fileSize;
+        private String fileExt;
+        /**
+         * 获取地址的时间
+         */
+        private long time;
+
+        private Entry(String downloadUrl, long fileSize, String fileExt, long time) {
+            this.downloadUrl = downloadUrl;
+            this.fileSize = fileSize;
+            this.fileExt = fileExt;
+            this.time = time;
+        }
+    }
+}
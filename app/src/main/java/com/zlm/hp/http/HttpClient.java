@@ -9,18 +9,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.net.URLEncoder;
-import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
 import java.util.Map;
 
-import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSession;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
 /**
@@ -374,14 +367,8 @@ public class HttpClient {
         try {
             for (; i < jump && !TextUtils.isEmpty(url); ++i) {
                 result = new Result();
-                // 创建SSLContext
-                SSLContext sslContext = SSLContext.getInstance("SSL");
-                TrustManager[] tm = {new IgnoreSSLTrustManager()};
-                // 初始化
-                sslContext.init(null, tm, new SecureRandom());
-                // 获取SSLSocketFactory对象
-                SSLSocketFactory ssf = sslContext.getSocketFactory();
-                conn = (HttpsURLConnection) (new URL(url)).openConnection();
+                // 使用共享的SSLSocketFactory，连接可被复用
+                conn = (HttpsURLConnection) HttpConnectionManager.openConnection(url);
                 ZLog.i("HttpsClient REQ => " + url);
                 conn.setConnectTimeout(CONN_TIMEOUT);
                 conn.setReadTimeout(READ_TIMEOUT);
@@ -394,16 +381,6 @@ public class HttpClient {
                 conn.setRequestProperty("Charset", "UTF-8");
                 conn.setRequestProperty("accept", "*/*");
 
-                // https忽略证书
-                conn.setHostnameVerifier(new HostnameVerifier() {
-                    @Override
-                    public boolean verify(String hostname, SSLSession session) {
-                        // 强行返回true 即验证成功
-                        return true;
-                    }
-                });
-                conn.setSSLSocketFactory(ssf);
-
                 // 添加头参数
                 if (headParams != null && !headParams.isEmpty()) {
                     for (String key : headParams.keySet()) {
@@ -456,6 +433,8 @@ public class HttpClient {
                         outStream.close();
                         inputStream.close();
                         result.data = outStream.toByteArray();
+                        // 数据已读完，连接回到连接池，不需要断开
+                        conn = null;
                     }
                     //
                     if (result.isFailCode()) {
@@ -498,7 +477,7 @@ public class HttpClient {
         try {
             for (; i < jump && !TextUtils.isEmpty(url); ++i) {
                 result = new Result();
-                conn = (HttpURLConnection) (new URL(url)).openConnection();
+                conn = HttpConnectionManager.openConnection(url);
                 ZLog.i("HttpClient REQ => " + url);
                 conn.setConnectTimeout(CONN_TIMEOUT);
                 conn.setReadTimeout(READ_TIMEOUT);
@@ -563,6 +542,8 @@ public class HttpClient {
                         outStream.close();
                         inputStream.close();
                         result.data = outStream.toByteArray();
+                        // 数据已读完，连接回到连接池，不需要断开
+                        conn = null;
                     }
                     //
                     if (result.isFailCode()) {
@@ -0,0 +1,145 @@
+package com.zlm.hp.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.SecureRandom;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+/**
+ * @Description: 共享的http连接管理，接口请求和下载任务都通过这里创建连接
+ * 缓存SSLSocketFactory，同一个factory的https连接才能被连接池复用，也能复用ssl会话；
+ * 连接池按host保持长连接，避免每次请求、每个下载分块都重新握手
+ * @author: zhangliangming
+ * @date: 2019-04-20 15:10
+ **/
+public class HttpConnectionManager {
+
+    /**
+     * 连接池最多保持的空闲连接数
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 10;
+    /**
+     * 空闲连接的保持时间
+     */
+    private static final long KEEP_ALIVE_DURATION = 5 * 60 * 1000;
+    /**
+     * 关闭连接前，最多读取的剩余数据，超过时直接断开连接
+     */
+    private static final int MAX_DRAIN_LENGTH = 16 * 1024;
+
+    /**
+     * 忽略主机名验证
+     */
+    private static final HostnameVerifier IGNORE_HOSTNAME_VERIFIER = new HostnameVerifier() {
+        @Override
+        public boolean verify(String hostname, SSLSession session) {
+            // 强行返回true 即验证成功
+            return true;
+        }
+    };
+
+    /**
+     *
+     */
+    private static volatile SSLSocketFactory sSSLSocketFactory;
+
+    /**
+     * 初始化连接池参数，需要在第一次请求前调用
+     */
+    public static void init() {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+        System.setProperty("http.keepAliveDuration", String.valueOf(KEEP_ALIVE_DURATION));
+    }
+
+    /**
+     * 获取忽略证书的SSLSocketFactory
+     *
+     * @return
+     * @throws Exception
+     */
+    public static SSLSocketFactory getSSLSocketFactory() throws Exception {
+        if (sSSLSocketFactory == null) {
+            synchronized (HttpConnectionManager.class) {
+                if (sSSLSocketFactory == null) {
+                    // 创建SSLContext
+                    SSLContext sslContext = SSLContext.getInstance("SSL");
+                    TrustManager[] tm = {new HttpClient.IgnoreSSLTrustManager()};
+                    // 初始化
+                    sslContext.init(null, tm, new SecureRandom());
+                    sSSLSocketFactory = sslContext.getSocketFactory();
+                }
+            }
+        }
+        return sSSLSocketFactory;
+    }
+
+    /**
+     * 打开连接，https连接使用共享的SSLSocketFactory
+     *
+     * @param url
+     * @return
+     * @throws Exception
+     */
+    public static HttpURLConnection openConnection(String url) throws Exception {
+        return openConnection(new URL(url));
+    }
+
+    /**
+     * 打开连接，https连接使用共享的SSLSocketFactory
+     *
+     * @param url
+     * @return
+     * @throws Exception
+     */
+    public static HttpURLConnection openConnection(URL url) throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        if (conn instanceof HttpsURLConnection) {
+            HttpsURLConnection httpsConn = (HttpsURLConnection) conn;
+            // https忽略证书
+            httpsConn.setHostnameVerifier(IGNORE_HOSTNAME_VERIFIER);
+            httpsConn.setSSLSocketFactory(getSSLSocketFactory());
+        }
+        conn.setRequestProperty("Connection", "Keep-Alive");
+        return conn;
+    }
+
+    /**
+     * 释放连接：读完剩余的少量数据后关闭输入流，连接回到连接池；
+     * 剩余数据较多时直接断开，避免为了复用连接而下载无用的数据
+     *
+     * @param conn
+     * @param inputStream 可为null
+     */
+    public static void release(HttpURLConnection conn, InputStream inputStream) {
+        if (inputStream == null) {
+            if (conn != null)
+                conn.disconnect();
+            return;
+        }
+        try {
+            byte[] buffer = new byte[1024];
+            int drainLength = 0;
+            int len;
+            while (drainLength <= MAX_DRAIN_LENGTH && (len = inputStream.read(buffer)) != -1) {
+                drainLength += len;
+            }
+            inputStream.close();
+            if (drainLength > MAX_DRAIN_LENGTH && conn != null) {
+                conn.disconnect();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (conn != null)
+                conn.disconnect();
+        }
+    }
+}
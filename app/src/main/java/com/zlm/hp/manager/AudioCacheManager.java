@@ -0,0 +1,390 @@
+package com.zlm.hp.manager;
+
+import android.content.Context;
+
+import com.zlm.down.manager.DownloadStreamServer;
+import com.zlm.down.thread.DownloadRangeMap;
+import com.zlm.hp.constants.ConfigInfo;
+import com.zlm.hp.constants.ResourceConstants;
+import com.zlm.hp.db.util.DownloadThreadInfoDB;
+import com.zlm.hp.db.util.DownloadThreadInfoJournal;
+import com.zlm.hp.util.ResourceUtil;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @Description: 在线歌曲缓存管理
+ * 记录每首歌曲缓存文件的大小、是否完整和最后访问时间，并保存到索引文件；
+ * 缓存总大小超过上限时按最近最少使用淘汰，正在播放和预加载的歌曲不会被淘汰
+ * @author: zhangliangming
+ * @date: 2019-05-01 20:30
+ **/
+public class AudioCacheManager {
+
+    /**
+     * 索引文件名
+     */
+    public static final String INDEX_FILE_NAME = "audio_cache.json";
+    /**
+     * 缓存文件后缀
+     */
+    private static final String TEMP_EXT = ".temp";
+
+    private static AudioCacheManager _AudioCacheManager;
+
+    /**
+     * 缓存记录，按访问顺序排列
+     */
+    private Map<String, Entry> mEntrys = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * 缓存总大小
+     */
+    private long mTotalSize = 0;
+
+    /**
+     * 不能淘汰的歌曲，例如正在预加载的歌曲
+     */
+    private Set<String> mPinnedHashs = new HashSet<String>();
+
+    /**
+     * 是否已读取索引文件
+     */
+    private boolean isLoaded = false;
+
+    private Context mContext;
+
+    private AudioCacheManager(Context context) {
+        this.mContext = context.getApplicationContext();
+    }
+
+    public static AudioCacheManager getInstance(Context context) {
+        if (_AudioCacheManager == null) {
+            synchronized (AudioCacheManager.class) {
+                if (_AudioCacheManager == null) {
+                    _AudioCacheManager = new AudioCacheManager(context);
+                }
+            }
+        }
+        return _AudioCacheManager;
+    }
+
+    /**
+     * 获取缓存文件路径
+     *
+     * @param hash
+     * @return
+     */
+    public String getFilePath(String hash) {
+        return ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_CACHE_AUDIO, hash + TEMP_EXT);
+    }
+
+    /**
+     * 开始播放或者预加载歌曲时调用，更新最后访问时间并保存，重启后淘汰顺序不变
+     *
+     * @param hash
+     */
+    public synchronized void touch(String hash) {
+        load();
+        Entry entry = mEntrys.get(hash);
+        if (entry != null) {
+            entry.lastAccess = System.currentTimeMillis();
+            save();
+        }
+    }
+
+    /**
+     * 缓存文件有变化时调用，例如下载暂停或者完成，按文件的实际大小更新记录并淘汰旧的缓存
+     *
+     * @param hash
+     * @param complete 是否已缓存完整
+     */
+    public synchronized void update(String hash, boolean complete) {
+        load();
+        File file = new File(getFilePath(hash));
+        Entry entry = mEntrys.remove(hash);
+        if (entry != null) {
+            mTotalSize -= entry.size;
+        }
+        if (file.exists()) {
+            if (entry == null) {
+                entry = new Entry(0, false, 0);
+            }
+            entry.size = file.length();
+            entry.complete = entry.complete || complete;
+            entry.lastAccess = System.currentTimeMillis();
+            mEntrys.put(hash, entry);
+            mTotalSize += entry.size;
+        }
+        trim();
+        save();
+    }
+
+    /**
+     * 歌曲是否已完整缓存
+     *
+     * @param hash
+     * @return
+     */
+    public synchronized boolean isComplete(String hash) {
+        load();
+        Entry entry = mEntrys.get(hash);
+        return entry != null && entry.complete;
+    }
+
+    /**
+     * 预加载时锁定歌曲，不会被淘汰
+     *
+     * @param hash
+     */
+    public synchronized void pin(String hash) {
+        mPinnedHashs.add(hash);
+    }
+
+    /**
+     * @param hash
+     */
+    public synchronized void unpin(String hash) {
+        mPinnedHashs.remove(hash);
+    }
+
+    /**
+     * 获取缓存总大小
+     *
+     * @return
+     */
+    public synchronized long getCacheSize() {
+        load();
+        return mTotalSize;
+    }
+
+    /**
+     * 清空缓存，正在播放和预加载的歌曲除外
+     */
+    public synchronized void clear() {
+        load();
+        List<String> hashs = new ArrayList<String>(mEntrys.keySet());
+        for (int i = 0; i < hashs.size(); i++) {
+            if (!isPinned(hashs.get(i))) {
+                evict(hashs.get(i));
+            }
+        }
+        save();
+    }
+
+    /**
+     * 超过缓存上限时，从最久没有访问的歌曲开始淘汰
+     */
+    private void trim() {
+        long maxSize = ConfigInfo.obtain().getAudioCacheSize() * 1024L * 1024L;
+        if (maxSize <= 0) {
+            return;
+        }
+        Iterator<String> iterator = new ArrayList<String>(mEntrys.keySet()).iterator();
+        while (mTotalSize > maxSize && iterator.hasNext()) {
+            String hash = iterator.next();
+            if (!isPinned(hash)) {
+                evict(hash);
+            }
+        }
+    }
+
+    /**
+     * @param hash
+     * @return
+     */
+    private boolean isPinned(String hash) {
+        return mPinnedHashs.contains(hash) || hash.equals(ConfigInfo.obtain().getPlayHash())
+                || DownloadStreamServer.getInstance().isDownloading(hash);
+    }
+
+    /**
+     * 删除缓存文件和下载进度
+     *
+     * @param hash
+     */
+    private void evict(String hash) {
+        Entry entry = mEntrys.remove(hash);
+        if (entry != null) {
+            mTotalSize -= entry.size;
+        }
+        File file = new File(getFilePath(hash));
+        if (file.exists()) {
+            file.delete();
+        }
+        DownloadRangeMap.delete(file.getPath());
+        DownloadThreadInfoJournal.getInstance(mContext).remove(hash, OnLineAudioManager.mThreadNum);
+        DownloadThreadInfoDB.delete(mContext, hash, OnLineAudioManager.mThreadNum);
+    }
+
+    /**
+     * 读取索引文件，索引文件不存在时扫描一次缓存目录
+     */
+    private void load() {
+        if (isLoaded) {
+            return;
+        }
+        isLoaded = true;
+        File file = new File(ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_CACHE, INDEX_FILE_NAME));
+        if (!file.exists()) {
+            scan();
+            save();
+            return;
+        }
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buff = new byte[1024 * 4];
+            int length;
+            while ((length = fis.read(buff)) > 0) {
+                baos.write(buff, 0, length);
+            }
+            JSONArray jsonArray = new JSONArray(baos.toString("UTF-8"));
+            final List<String> hashs = new ArrayList<String>();
+            final List<Entry> entrys = new ArrayList<Entry>();
+            for (int i = 0; i < jsonArray.length(); i++) {
+                JSONObject jsonObject = jsonArray.getJSONObject(i);
+                hashs.add(jsonObject.optString("hash"));
+                entrys.add(new Entry(jsonObject.optLong("size"), jsonObject.optBoolean("complete"), jsonObject.optLong("lastAccess")));
+            }
+            //按最后访问时间重建访问顺序，访问时间相同时保持索引文件中的顺序
+            List<Integer> indexs = new ArrayList<Integer>();
+            for (int i = 0; i < entrys.size(); i++) {
+                indexs.add(i);
+            }
+            Collections.sort(indexs, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Long.compare(entrys.get(o1).lastAccess, entrys.get(o2).lastAccess);
+                }
+            });
+            for (int i = 0; i < indexs.size(); i++) {
+                Entry entry = entrys.get(indexs.get(i));
+                mEntrys.put(hashs.get(indexs.get(i)), entry);
+                mTotalSize += entry.size;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            mEntrys.clear();
+            mTotalSize = 0;
+            scan();
+        } finally {
+            if (fis != null)
+                try {
+                    fis.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+        }
+    }
+
+    /**
+     * 扫描缓存目录，按文件修改时间排列
+     */
+    private void scan() {
+        File dir = new File(ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_CACHE_AUDIO, null));
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> fileList = new ArrayList<File>();
+        for (int i = 0; i < files.length; i++) {
+            //跳过已下载区间的位图文件
+            if (files[i].isFile() && files[i].getName().endsWith(TEMP_EXT) && !files[i].getName().contains(DownloadRangeMap.MAP_EXT)) {
+                fileList.add(files[i]);
+            }
+        }
+        Collections.sort(fileList, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        for (int i = 0; i < fileList.size(); i++) {
+            File file = fileList.get(i);
+            String hash = file.getName().substring(0, file.getName().length() - TEMP_EXT.length());
+            Entry entry = new Entry(file.length(), false, file.lastModified());
+            mEntrys.put(hash, entry);
+            mTotalSize += entry.size;
+        }
+    }
+
+    /**
+     * 写入索引文件，先写入临时文件再替换，避免写入一半时程序退出
+     */
+    private void save() {
+        File file = new File(ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_CACHE, INDEX_FILE_NAME));
+        File tempFile = new File(file.getPath() + ".temp");
+        FileOutputStream fos = null;
+        try {
+            JSONArray jsonArray = new JSONArray();
+            Iterator<Map.Entry<String, Entry>> iterator = mEntrys.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> item = iterator.next();
+                JSONObject jsonObject = new JSONObject();
+                jsonObject.put("hash", item.getKey());
+                jsonObject.put("size", item.getValue().size);
+                jsonObject.put("complete", item.getValue().complete);
+                jsonObject.put("lastAccess", item.getValue().lastAccess);
+                jsonArray.put(jsonObject);
+            }
+            if (!file.getParentFile().exists()) {
+                file.getParentFile().mkdirs();
+            }
+            fos = new FileOutputStream(tempFile);
+            fos.write(jsonArray.toString().getBytes("UTF-8"));
+            fos.close();
+            fos = null;
+            if (!tempFile.renameTo(file)) {
+                file.delete();
+                tempFile.renameTo(file);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (fos != null)
+                try {
+                    fos.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+        }
+    }
+
+    /**
+     * 缓存记录
+     */
+    private static class Entry {
+        private long size;
+        /**
+         * 是否已缓存完整
+         */
+        private boolean complete;
+        /**
+         * 最后访问时间
+         */
+        private long lastAccess;
+
+        private Entry(long size, boolean complete, long lastAccess) {
+            this.size = size;
+            this.complete = complete;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.zlm.hp.manager;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.text.TextUtils;
 
+import com.zlm.down.thread.DownloadRangeMap;
 import com.zlm.hp.constants.ConfigInfo;
 import com.zlm.hp.constants.ResourceConstants;
+import com.zlm.hp.db.util.AudioInfoDB;
 import com.zlm.hp.db.util.DownloadThreadInfoDB;
 import com.zlm.hp.entity.AudioInfo;
 import com.zlm.hp.receiver.AudioBroadcastReceiver;
@@ -12,6 +17,7 @@ import com.zlm.hp.util.RandomUtil;
 import com.zlm.hp.util.ResourceUtil;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -48,7 +54,7 @@ public class AudioPlayerManager {
     /**
      * 当前播放状态
      */
-    private int mPlayStatus = STOP;
+    private volatile int mPlayStatus = STOP;
 
     private static AudioPlayerManager _AudioPlayerManager;
 
@@ -57,6 +63,18 @@ public class AudioPlayerManager {
      */
     private OnLineAudioManager mOnLineAudioManager;
 
+    /**
+     * 预加载管理
+     */
+    private PrefetchAudioManager mPrefetchAudioManager;
+
+    /**
+     * 子线程用于加载播放列表
+     */
+    private Handler mWorkerHandler;
+    //创建异步HandlerThread
+    private HandlerThread mHandlerThread;
+
     /**
      *
      */
@@ -64,7 +82,14 @@ public class AudioPlayerManager {
 
     public AudioPlayerManager(Context context) {
         this.mContext = context;
+        //创建异步HandlerThread
+        mHandlerThread = new HandlerThread("audioPlayerManagerThread", Process.THREAD_PRIORITY_BACKGROUND);
+        //必须先开启线程
+        mHandlerThread.start();
+        //子线程Handler
+        mWorkerHandler = new Handler(mHandlerThread.getLooper());
         mOnLineAudioManager = new OnLineAudioManager(context);
+        mPrefetchAudioManager = new PrefetchAudioManager(context);
     }
 
     /**
@@ -123,6 +148,8 @@ public class AudioPlayerManager {
         } else {
             mPlayStatus = SEEKTO;
         }
+        //立即更新播放时钟，不等待播放器跳转完成
+        PlaybackClock.getInstance().seekTo(audioInfo.getHash(), audioInfo.getPlayProgress());
         AudioBroadcastReceiver.sendSeektoSongReceiver(mContext, audioInfo);
     }
 
@@ -180,6 +207,10 @@ public class AudioPlayerManager {
         if (isInit) {
             audioInfo.setPlayProgress(0);
         }
+        if (!isSeekTo) {
+            //记录播放耗时，列表点击时已开始记录
+            PlaybackTracer.getInstance().begin(audioInfo.getHash());
+        }
 
         //更新数据
         ConfigInfo configInfo = ConfigInfo.obtain();
@@ -198,6 +229,7 @@ public class AudioPlayerManager {
         switch (audioInfo.getType()) {
             case AudioInfo.TYPE_LOCAL:
                 mPlayStatus = PLAYING;
+                PlaybackTracer.getInstance().setSource(audioInfo.getHash(), PlaybackTracer.SOURCE_LOCAL);
                 AudioBroadcastReceiver.sendPlayLocalSongReceiver(mContext, audioInfo);
                 break;
             case AudioInfo.TYPE_NET:
@@ -207,6 +239,7 @@ public class AudioPlayerManager {
                 File audioFile = new File(filePath);
                 if (audioFile.exists()) {
                     mPlayStatus = PLAYING;
+                    PlaybackTracer.getInstance().setSource(audioInfo.getHash(), PlaybackTracer.SOURCE_CACHED);
                     //设置文件路径
                     audioInfo.setFilePath(filePath);
                     AudioBroadcastReceiver.sendPlayLocalSongReceiver(mContext, audioInfo);
@@ -214,37 +247,150 @@ public class AudioPlayerManager {
                     filePath = ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_CACHE_AUDIO, audioInfo.getHash() + ".temp");
                     audioFile = new File(filePath);
                     if (!audioFile.exists()) {
-                        //临时文件不存在，删除数据库中的数据
+                        //临时文件不存在，删除数据库中的数据和已下载区间的位图
                         DownloadThreadInfoDB.delete(mContext, audioInfo.getHash(), OnLineAudioManager.mThreadNum);
+                        DownloadRangeMap.delete(filePath);
                     }
                     mPlayStatus = PLAYINGNET;
-                    int downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, audioInfo.getHash(), OnLineAudioManager.mThreadNum);
-                    if (downloadedSize == audioInfo.getFileSize()) {
+                    if (isCacheComplete(audioInfo, filePath)) {
                         mPlayStatus = PLAYING;
+                        PlaybackTracer.getInstance().setSource(audioInfo.getHash(), PlaybackTracer.SOURCE_CACHED);
                         //设置文件路径
                         audioInfo.setFilePath(filePath);
                         AudioBroadcastReceiver.sendPlayLocalSongReceiver(mContext, audioInfo);
                     } else {
-                        if (downloadedSize > 1024 * 500) {
-                            AudioBroadcastReceiver.sendPlayNetSongReceiver(mContext, audioInfo);
-                        }
-                        mOnLineAudioManager.addDownloadTask(audioInfo);
+                        PlaybackTracer.getInstance().setSource(audioInfo.getHash(), PlaybackTracer.SOURCE_NETWORK);
+                        //预加载的任务线程退出并写入进度后，交给边下边播继续下载
+                        final AudioInfo netAudioInfo = audioInfo;
+                        mPrefetchAudioManager.pauseTask(audioInfo.getHash(), new Runnable() {
+                            @Override
+                            public void run() {
+                                //等待期间已暂停或者切换歌曲
+                                if (mPlayStatus != PLAYINGNET || !netAudioInfo.getHash().equals(ConfigInfo.obtain().getPlayHash())) {
+                                    return;
+                                }
+                                mOnLineAudioManager.addDownloadTask(netAudioInfo);
+                            }
+                        });
+                        //播放器通过本地服务边下边播，数据未下载时由服务等待
+                        AudioBroadcastReceiver.sendPlayNetSongReceiver(mContext, audioInfo);
                     }
                 }
                 break;
         }
 
+        //预加载接下来播放的歌曲
+        if (!isSeekTo) {
+            mPrefetchAudioManager.prefetch(getNextAudioInfos(configInfo, configInfo.getPrefetchNum()));
+        }
     }
 
     /**
-     * 播放正在下载中的网络歌曲
+     * 获取下一首播放的歌曲，用于提前准备播放器
+     *
+     * @return
+     */
+    public synchronized AudioInfo getNextSong() {
+        ConfigInfo configInfo = ConfigInfo.obtain();
+        if (configInfo.getPlayModel() == 3) {
+            // 单曲播放
+            return getCurSong(configInfo.getAudioInfos(), configInfo.getPlayHash());
+        }
+        List<AudioInfo> nextAudioInfos = getNextAudioInfos(configInfo, 1);
+        return nextAudioInfos.size() > 0 ? nextAudioInfos.get(0) : null;
+    }
+
+    /**
+     * 获取已完整保存在本地的歌曲文件路径
+     *
+     * @param audioInfo
+     * @return 歌曲还没下载完成时返回null
+     */
+    public String getCompleteFilePath(AudioInfo audioInfo) {
+        if (audioInfo.getType() == AudioInfo.TYPE_LOCAL) {
+            return audioInfo.getFilePath();
+        }
+        String filePath = ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_AUDIO, audioInfo.getTitle() + "." + audioInfo.getFileExt());
+        if (new File(filePath).exists()) {
+            return filePath;
+        }
+        filePath = ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_CACHE_AUDIO, audioInfo.getHash() + ".temp");
+        if (new File(filePath).exists() && isCacheComplete(audioInfo, filePath)) {
+            return filePath;
+        }
+        return null;
+    }
+
+    /**
+     * 在线缓存是否已完整：数据库中的进度等于文件大小，或者已下载区间的位图已全部下载
      *
      * @param audioInfo
+     * @param filePath  缓存文件路径
+     * @return
+     */
+    private boolean isCacheComplete(AudioInfo audioInfo, String filePath) {
+        if (audioInfo.getFileSize() <= 0) {
+            return false;
+        }
+        long downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, audioInfo.getHash(), OnLineAudioManager.mThreadNum);
+        if (downloadedSize == audioInfo.getFileSize()) {
+            return true;
+        }
+        DownloadRangeMap rangeMap = DownloadRangeMap.load(filePath, audioInfo.getFileSize());
+        return rangeMap != null && rangeMap.isComplete();
+    }
+
+    /**
+     * 根据播放模式获取接下来播放的歌曲
+     *
+     * @param configInfo
+     * @param num        个数
+     * @return
      */
-    public synchronized void playDownloadingNetSong(AudioInfo audioInfo) {
-        mPlayStatus = PLAYING;
-        audioInfo.setPlayProgress(0);
-        AudioBroadcastReceiver.sendPlayNetSongReceiver(mContext, audioInfo);
+    private List<AudioInfo> getNextAudioInfos(ConfigInfo configInfo, int num) {
+        List<AudioInfo> nextAudioInfos = new ArrayList<AudioInfo>();
+        List<AudioInfo> audioInfoList = configInfo.getAudioInfos();
+        int playIndex = getCurSongIndex(audioInfoList, configInfo.getPlayHash());
+        if (num <= 0 || playIndex == -1) {
+            return nextAudioInfos;
+        }
+        int size = audioInfoList.size();
+        switch (configInfo.getPlayModel()) {
+            case 0:
+                // 顺序播放
+                for (int i = playIndex + 1; i < size && nextAudioInfos.size() < num; i++) {
+                    nextAudioInfos.add(audioInfoList.get(i));
+                }
+                break;
+            case 1:
+                // 随机播放，预先生成的随机数在下一首时使用
+                int[] nums = RandomUtil.peekRandomNums(num);
+                for (int i = 0; i < nums.length; i++) {
+                    if (nums[i] < size && nums[i] != playIndex && !nextAudioInfos.contains(audioInfoList.get(nums[i]))) {
+                        nextAudioInfos.add(audioInfoList.get(nums[i]));
+                    }
+                }
+                break;
+            case 2:
+                // 循环播放
+                for (int i = 1; i < size && nextAudioInfos.size() < num; i++) {
+                    nextAudioInfos.add(audioInfoList.get((playIndex + i) % size));
+                }
+                break;
+            case 3:
+                // 单曲播放
+                break;
+        }
+        return nextAudioInfos;
+    }
+
+    /**
+     * 边下边播的网络歌曲已缓冲完成，开始播放
+     */
+    public synchronized void playingNetSong() {
+        if (mPlayStatus == PLAYINGNET) {
+            mPlayStatus = PLAYING;
+        }
     }
 
     /**
@@ -430,7 +576,10 @@ public class AudioPlayerManager {
      */
     public synchronized void release() {
         mPlayStatus = PAUSE;
+        //移除还没加载的播放列表
+        mWorkerHandler.removeCallbacksAndMessages(null);
         mOnLineAudioManager.release();
+        mPrefetchAudioManager.release();
     }
 
     /**
@@ -470,6 +619,22 @@ public class AudioPlayerManager {
         }
     }
 
+    /**
+     * 替换当前的播放列表为本地歌曲列表并播放，本地歌曲列表在子线程中加载
+     *
+     * @param audioInfo
+     */
+    public void playLocalSong(final AudioInfo audioInfo) {
+        //连续点击时只播放最后点击的歌曲
+        mWorkerHandler.removeCallbacksAndMessages(null);
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                playSong(AudioInfoDB.getLocalAudios(mContext), audioInfo);
+            }
+        });
+    }
+
     /**
      * 获取当前播放歌曲索引
      *
@@ -14,15 +14,18 @@ import com.zlm.hp.constants.ResourceConstants;
 import com.zlm.hp.db.util.AudioInfoDB;
 import com.zlm.hp.db.util.DownloadTaskDB;
 import com.zlm.hp.db.util.DownloadThreadInfoDB;
+import com.zlm.hp.db.util.DownloadThreadInfoJournal;
 import com.zlm.hp.entity.AudioInfo;
 import com.zlm.hp.http.APIHttpClient;
 import com.zlm.hp.receiver.AppSystemReceiver;
 import com.zlm.hp.receiver.AudioBroadcastReceiver;
 import com.zlm.hp.util.CodeLineUtil;
 import com.zlm.hp.util.HttpUtil;
+import com.zlm.hp.util.MD5Util;
 import com.zlm.hp.util.ResourceUtil;
 import com.zlm.hp.util.ZLog;
 
+import java.io.File;
 import java.util.Date;
 import java.util.List;
 
@@ -49,10 +52,15 @@ public class DownloadAudioManager {
     private static DownloadTaskManager mDownloadTaskManager;
 
     /**
-     * 线程个数
+     * 线程个数，保存下载进度的key
      */
     public static final int mThreadNum = 2;
 
+    /**
+     * 最大连接数，下载时根据速度调节
+     */
+    public static final int mMaxThreadNum = 4;
+
     /**
      *
      */
@@ -75,21 +83,24 @@ public class DownloadAudioManager {
             }
 
             @Override
-            public void taskDownloading(DownloadTask task, int downloadedSize) {
+            public void taskDownloading(DownloadTask task, long downloadedSize) {
 
                 ZLog.d(new CodeLineUtil().getCodeLineInfo(), "task taskDownloading ->" + task.getTaskName() + " " + downloadedSize);
                 AudioBroadcastReceiver.sendDownloadingSongReceiver(mContext, task);
             }
 
             @Override
-            public void taskPause(DownloadTask task, int downloadedSize) {
-
+            public void taskPause(DownloadTask task, long downloadedSize) {
+                //立即写入进度
+                DownloadThreadInfoJournal.getInstance(mContext).flush(task.getTaskId());
                 ZLog.d(new CodeLineUtil().getCodeLineInfo(), "task taskPause ->" + task.getTaskName() + " " + downloadedSize);
                 AudioBroadcastReceiver.sendDownloadPauseReceiver(mContext, task);
             }
 
             @Override
             public void taskCancel(DownloadTask task) {
+                //立即写入进度
+                DownloadThreadInfoJournal.getInstance(mContext).flush(task.getTaskId());
                 //删除任务
                 if (DownloadTaskDB.isExists(mContext, task.getTaskId(), mThreadNum)) {
                     DownloadTaskDB.delete(mContext, task.getTaskId(), mThreadNum);
@@ -99,7 +110,21 @@ public class DownloadAudioManager {
             }
 
             @Override
-            public void taskFinish(DownloadTask task, int downloadedSize) {
+            public void taskFinish(DownloadTask task, long downloadedSize) {
+                //立即写入进度
+                DownloadThreadInfoJournal.getInstance(mContext).flush(task.getTaskId());
+                //更新任务
+                if (DownloadTaskDB.isExists(mContext, task.getTaskId(), mThreadNum)) {
+                    //任务存在
+                    DownloadTaskDB.update(mContext, task.getTaskId(), mThreadNum, DownloadTask.STATUS_FINISH);
+                } else {
+                    //任务不存在
+                    task.setStatus(DownloadTask.STATUS_FINISH);
+                    DownloadTaskDB.add(mContext, task);
+                }
+
+                //保存下载时计算的md5，扫描本地歌曲时不需要重新计算
+                MD5Util.saveFileMd5(mContext, new File(task.getTaskPath()), task.getTaskFileMd5());
 
                 //添加本地歌曲
                 if (AudioInfoDB.isDownloadAudioExists(mContext, task.getTaskId())) {
@@ -111,6 +136,8 @@ public class DownloadAudioManager {
 
             @Override
             public void taskError(DownloadTask task, String msg) {
+                //立即写入进度
+                DownloadThreadInfoJournal.getInstance(mContext).flush(task.getTaskId());
                 ZLog.d(new CodeLineUtil().getCodeLineInfo(), "task taskError ->" + task.getTaskName());
                 AppSystemReceiver.sendToastErrorMsgReceiver(mContext, msg);
             }
@@ -122,66 +149,26 @@ public class DownloadAudioManager {
             }
 
             @Override
-            public int getTaskThreadDownloadedSize(DownloadTask task, int threadId) {
-                if (DownloadThreadInfoDB.isExists(mContext, task.getTaskId(), mThreadNum, threadId)) {
-                    //任务存在
-                    DownloadThreadInfo downloadThreadInfo = DownloadThreadInfoDB.getDownloadThreadInfo(mContext, task.getTaskId(), mThreadNum, threadId);
-                    if (downloadThreadInfo != null) {
-                        ZLog.d(new CodeLineUtil().getCodeLineInfo(), "task getTaskThreadDownloadedSize -> 下载任务名称：" + task.getTaskName() + " 子任务线程id: " + threadId + " 已下载大小：" + downloadThreadInfo.getDownloadedSize());
-                        return downloadThreadInfo.getDownloadedSize();
-                    }
-                }
-                return 0;
+            public List<DownloadThreadInfo> getTaskThreadInfos(DownloadTask task) {
+                List<DownloadThreadInfo> downloadThreadInfos = DownloadThreadInfoDB.getDownloadThreadInfos(mContext, task.getTaskId(), mThreadNum);
+                ZLog.d(new CodeLineUtil().getCodeLineInfo(), "task getTaskThreadInfos -> 下载任务名称：" + task.getTaskName() + " 已保存区间个数：" + downloadThreadInfos.size());
+                return downloadThreadInfos;
             }
 
             @Override
-            public void taskThreadDownloading(DownloadTask task, int threadId, int downloadedSize) {
-                DownloadThreadInfo downloadThreadInfo = new DownloadThreadInfo();
-                downloadThreadInfo.setDownloadedSize(downloadedSize);
-                downloadThreadInfo.setThreadId(threadId);
-                downloadThreadInfo.setTaskId(task.getTaskId());
-                downloadThreadInfo.setThreadNum(mThreadNum);
-
-                if (DownloadThreadInfoDB.isExists(mContext, task.getTaskId(), mThreadNum, threadId)) {
-                    //任务存在
-                    DownloadThreadInfoDB.update(mContext, task.getTaskId(), mThreadNum, threadId, downloadedSize);
-                } else {
-                    //任务不存在
-                    DownloadThreadInfoDB.add(mContext, downloadThreadInfo);
-                }
+            public void taskThreadDownloading(DownloadTask task, DownloadThreadInfo threadInfo) {
+                //进度先记录到日志，定时批量写入数据库
+                DownloadThreadInfoJournal.getInstance(mContext).put(threadInfo);
             }
 
             @Override
-            public void taskThreadPause(DownloadTask task, int threadId, int downloadedSize) {
-
+            public void taskThreadPause(DownloadTask task, DownloadThreadInfo threadInfo) {
+                DownloadThreadInfoJournal.getInstance(mContext).put(threadInfo);
             }
 
             @Override
-            public void taskThreadFinish(DownloadTask task, int threadId, int downloadedSize) {
-
-                DownloadThreadInfo downloadThreadInfo = new DownloadThreadInfo();
-                downloadThreadInfo.setDownloadedSize(downloadedSize);
-                downloadThreadInfo.setThreadId(threadId);
-                downloadThreadInfo.setTaskId(task.getTaskId());
-                downloadThreadInfo.setThreadNum(mThreadNum);
-                if (DownloadThreadInfoDB.isExists(mContext, task.getTaskId(), mThreadNum, threadId)) {
-                    //任务存在
-                    DownloadThreadInfoDB.update(mContext, task.getTaskId(), mThreadNum, threadId, downloadedSize);
-                } else {
-                    //任务不存在
-                    DownloadThreadInfoDB.add(mContext, downloadThreadInfo);
-                }
-
-                //更新任务
-                if (DownloadTaskDB.isExists(mContext, task.getTaskId(), mThreadNum)) {
-                    //任务存在
-                    DownloadTaskDB.update(mContext, task.getTaskId(), mThreadNum, DownloadTask.STATUS_FINISH);
-                } else {
-                    //任务不存在
-                    task.setStatus(DownloadTask.STATUS_FINISH);
-                    DownloadTaskDB.add(mContext, task);
-                }
-
+            public void taskThreadFinish(DownloadTask task, DownloadThreadInfo threadInfo) {
+                DownloadThreadInfoJournal.getInstance(mContext).put(threadInfo);
             }
 
             @Override
@@ -231,6 +218,7 @@ public class DownloadAudioManager {
         downloadTask.setTaskPath(taskPath);
         downloadTask.setTaskTempPath(taskTempPath);
         downloadTask.setThreadNum(mThreadNum);
+        downloadTask.setMaxThreadNum(mMaxThreadNum);
         downloadTask.setCreateTime(new Date());
 
         //添加音频
@@ -292,8 +280,7 @@ public class DownloadAudioManager {
         }
         List<DownloadTask> downloadTasks = mDownloadTaskManager.getDownloadTasks();
         if (downloadTasks != null) {
-            for (int i = 0; i < downloadTasks.size(); i++) {
-                DownloadTask downloadTask = downloadTasks.get(i);
+            for (DownloadTask downloadTask : downloadTasks) {
                 if (downloadTask.getTaskId().equals(taskId)) {
                     return true;
                 }
@@ -311,8 +298,7 @@ public class DownloadAudioManager {
     public DownloadTask getDownloadTask(String hash) {
         List<DownloadTask> downloadTasks = mDownloadTaskManager.getDownloadTasks();
         if (downloadTasks != null) {
-            for (int i = 0; i < downloadTasks.size(); i++) {
-                DownloadTask downloadTask = downloadTasks.get(i);
+            for (DownloadTask downloadTask : downloadTasks) {
                 if (downloadTask.getTaskId().equals(hash)) {
                     return downloadTask;
                 }
@@ -0,0 +1,140 @@
+package com.zlm.hp.manager;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+
+import com.zlm.hp.util.NetUtil;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @Description: 网络状态管理
+ * 监听网络变化，网络状态保存在内存中，下载时直接读取，不需要每次都查询ConnectivityManager
+ * @author: zhangliangming
+ * @date: 2019-04-25 20:40
+ **/
+public class NetworkStateManager {
+
+    private static NetworkStateManager _NetworkStateManager;
+
+    /**
+     * 当前网络状态，网络变化时整体替换
+     */
+    private volatile NetworkState mNetworkState;
+
+    /**
+     * 网络变化回调
+     */
+    private List<OnNetworkChangeListener> mOnNetworkChangeListeners = new CopyOnWriteArrayList<OnNetworkChangeListener>();
+
+    private Context mContext;
+
+    private NetworkStateManager(Context context) {
+        this.mContext = context.getApplicationContext();
+        mNetworkState = new NetworkState(NetUtil.isNetworkAvailable(mContext), NetUtil.isWifiConnected(mContext));
+
+        try {
+            ConnectivityManager connectivityManager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+            NetworkRequest networkRequest = new NetworkRequest.Builder().addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET).build();
+            connectivityManager.registerNetworkCallback(networkRequest, new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    updateNetworkState();
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    updateNetworkState();
+                }
+
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+                    updateNetworkState();
+                }
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static NetworkStateManager getInstance(Context context) {
+        if (_NetworkStateManager == null) {
+            synchronized (NetworkStateManager.class) {
+                if (_NetworkStateManager == null) {
+                    _NetworkStateManager = new NetworkStateManager(context);
+                }
+            }
+        }
+        return _NetworkStateManager;
+    }
+
+    /**
+     * 网络变化时重新获取网络状态
+     */
+    private void updateNetworkState() {
+        NetworkState networkState = new NetworkState(NetUtil.isNetworkAvailable(mContext), NetUtil.isWifiConnected(mContext));
+        NetworkState oldNetworkState = mNetworkState;
+        mNetworkState = networkState;
+        if (oldNetworkState.isAvailable() == networkState.isAvailable() && oldNetworkState.isWifi() == networkState.isWifi()) {
+            return;
+        }
+        for (OnNetworkChangeListener onNetworkChangeListener : mOnNetworkChangeListeners) {
+            onNetworkChangeListener.onNetworkChange(networkState);
+        }
+    }
+
+    /**
+     * 获取当前网络状态
+     *
+     * @return
+     */
+    public NetworkState getNetworkState() {
+        return mNetworkState;
+    }
+
+    public void addOnNetworkChangeListener(OnNetworkChangeListener onNetworkChangeListener) {
+        mOnNetworkChangeListeners.add(onNetworkChangeListener);
+    }
+
+    public void removeOnNetworkChangeListener(OnNetworkChangeListener onNetworkChangeListener) {
+        mOnNetworkChangeListeners.remove(onNetworkChangeListener);
+    }
+
+    /**
+     * 网络状态
+     */
+    public static class NetworkState {
+        /**
+         * 网络是否可用
+         */
+        private final boolean isAvailable;
+        /**
+         * wifi是否已连接
+         */
+        private final boolean isWifi;
+
+        public NetworkState(boolean isAvailable, boolean isWifi) {
+            this.isAvailable = isAvailable;
+            this.isWifi = isWifi;
+        }
+
+        public boolean isAvailable() {
+            return isAvailable;
+        }
+
+        public boolean isWifi() {
+            return isWifi;
+        }
+    }
+
+    /**
+     * 网络变化回调
+     */
+    public interface OnNetworkChangeListener {
+        void onNetworkChange(NetworkState networkState);
+    }
+}
@@ -0,0 +1,256 @@
+package com.zlm.hp.manager;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.zlm.hp.entity.AudioInfo;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @Description: 播放时钟
+ * 播放、暂停、跳转时由播放服务记录锚点（播放位置、记录时间、播放速率），
+ * 任何地方都可以根据锚点推算当前的播放进度，不需要播放服务定时发送进度广播
+ * @author: zhangliangming
+ * @date: 2019-04-30 21:00
+ **/
+public class PlaybackClock {
+
+    /**
+     * 进度回调间隔
+     */
+    private static final int PROGRESS_INTERVAL = 200;
+    /**
+     * 校准时误差超过该值才重新记录锚点
+     */
+    private static final int MAX_DRIFT = 100;
+
+    private static PlaybackClock _PlaybackClock;
+
+    /**
+     * 锚点，整体替换保证读取时的一致性
+     */
+    private volatile Anchor mAnchor = new Anchor(null, 0, 0, 0);
+
+    /**
+     * 回调，运行在主线程
+     */
+    private List<OnPlaybackClockListener> mOnPlaybackClockListeners = new CopyOnWriteArrayList<OnPlaybackClockListener>();
+
+    private Handler mUIHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 播放中定时回调进度
+     */
+    private Runnable mProgressRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Anchor anchor = mAnchor;
+            if (anchor.rate == 0 || mOnPlaybackClockListeners.isEmpty()) {
+                return;
+            }
+            long position = anchor.getPosition();
+            for (OnPlaybackClockListener listener : mOnPlaybackClockListeners) {
+                listener.onPlaybackProgress(anchor.hash, position);
+            }
+            mUIHandler.postDelayed(this, PROGRESS_INTERVAL);
+        }
+    };
+
+    private PlaybackClock() {
+    }
+
+    public static PlaybackClock getInstance() {
+        if (_PlaybackClock == null) {
+            synchronized (PlaybackClock.class) {
+                if (_PlaybackClock == null) {
+                    _PlaybackClock = new PlaybackClock();
+                }
+            }
+        }
+        return _PlaybackClock;
+    }
+
+    /**
+     * 开始播放
+     *
+     * @param hash
+     * @param position 开始播放的位置
+     */
+    public void play(String hash, long position) {
+        setAnchor(new Anchor(hash, position, SystemClock.elapsedRealtime(), 1));
+    }
+
+    /**
+     * 暂停
+     *
+     * @param position 暂停的位置
+     */
+    public void pause(long position) {
+        setAnchor(new Anchor(mAnchor.hash, position, SystemClock.elapsedRealtime(), 0));
+    }
+
+    /**
+     * 跳转，保持当前的播放状态
+     *
+     * @param hash
+     * @param position
+     */
+    public void seekTo(String hash, long position) {
+        setAnchor(new Anchor(hash, position, SystemClock.elapsedRealtime(), mAnchor.rate));
+    }
+
+    /**
+     * 用播放器的进度校准，例如网络歌曲缓冲时播放器停止前进
+     *
+     * @param hash
+     * @param position 播放器的进度
+     */
+    public void sync(String hash, long position) {
+        Anchor anchor = mAnchor;
+        if (anchor.rate != 0 && hash.equals(anchor.hash) && Math.abs(anchor.getPosition() - position) < MAX_DRIFT) {
+            return;
+        }
+        play(hash, position);
+    }
+
+    /**
+     * @param anchor
+     */
+    private void setAnchor(final Anchor anchor) {
+        mAnchor = anchor;
+        mUIHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mAnchor != anchor) {
+                    //已有更新的锚点
+                    return;
+                }
+                long position = anchor.getPosition();
+                for (OnPlaybackClockListener listener : mOnPlaybackClockListeners) {
+                    listener.onPlaybackStateChanged(anchor.hash, position, anchor.rate != 0);
+                }
+                mUIHandler.removeCallbacks(mProgressRunnable);
+                if (anchor.rate != 0) {
+                    mUIHandler.postDelayed(mProgressRunnable, PROGRESS_INTERVAL);
+                }
+            }
+        });
+    }
+
+    /**
+     * 获取当前的播放进度
+     *
+     * @return
+     */
+    public long getPosition() {
+        return mAnchor.getPosition();
+    }
+
+    /**
+     * 获取歌曲的播放进度，时钟不是该歌曲时返回歌曲保存的进度
+     *
+     * @param audioInfo
+     * @return
+     */
+    public int getPlayProgress(AudioInfo audioInfo) {
+        Anchor anchor = mAnchor;
+        if (audioInfo.getHash().equals(anchor.hash)) {
+            return (int) Math.min(anchor.getPosition(), Math.max(audioInfo.getDuration(), 0));
+        }
+        return audioInfo.getPlayProgress();
+    }
+
+    /**
+     * 当前时钟的歌曲
+     *
+     * @return
+     */
+    public String getHash() {
+        return mAnchor.hash;
+    }
+
+    public boolean isPlaying() {
+        return mAnchor.rate != 0;
+    }
+
+    public void addOnPlaybackClockListener(final OnPlaybackClockListener listener) {
+        mOnPlaybackClockListeners.add(listener);
+        //立即回调当前状态
+        mUIHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mOnPlaybackClockListeners.contains(listener)) {
+                    return;
+                }
+                Anchor anchor = mAnchor;
+                listener.onPlaybackStateChanged(anchor.hash, anchor.getPosition(), anchor.rate != 0);
+                if (anchor.rate != 0) {
+                    mUIHandler.removeCallbacks(mProgressRunnable);
+                    mUIHandler.postDelayed(mProgressRunnable, PROGRESS_INTERVAL);
+                }
+            }
+        });
+    }
+
+    public void removeOnPlaybackClockListener(OnPlaybackClockListener listener) {
+        mOnPlaybackClockListeners.remove(listener);
+    }
+
+    /**
+     * 锚点
+     */
+    private static class Anchor {
+        private String hash;
+        /**
+         * 记录时的播放位置
+         */
+        private long position;
+        /**
+         * 记录时间
+         */
+        private long time;
+        /**
+         * 播放速率，暂停时为0
+         */
+        private float rate;
+
+        private Anchor(String hash, long position, long time, float rate) {
+            this.hash = hash;
+            this.position = position;
+            this.time = time;
+            this.rate = rate;
+        }
+
+        private long getPosition() {
+            if (rate == 0) {
+                return position;
+            }
+            return position + (long) ((SystemClock.elapsedRealtime() - time) * rate);
+        }
+    }
+
+    /**
+     * 播放时钟回调，运行在主线程
+     */
+    public interface OnPlaybackClockListener {
+        /**
+         * 播放、暂停、跳转
+         *
+         * @param hash
+         * @param position
+         * @param isPlaying
+         */
+        void onPlaybackStateChanged(String hash, long position, boolean isPlaying);
+
+        /**
+         * 播放中定时回调
+         *
+         * @param hash
+         * @param position
+         */
+        void onPlaybackProgress(String hash, long position);
+    }
+}
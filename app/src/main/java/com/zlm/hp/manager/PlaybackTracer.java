@@ -0,0 +1,306 @@
+package com.zlm.hp.manager;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.zlm.hp.constants.ResourceConstants;
+import com.zlm.hp.util.CodeLineUtil;
+import com.zlm.hp.util.ResourceUtil;
+import com.zlm.hp.util.ZLog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * @Description: 播放耗时统计
+ * 每次发起播放分配一个请求id，点击歌曲、播放服务处理、获取下载地址、准备播放器、开始播放等阶段
+ * 记录距离发起播放的耗时；开始播放后按歌曲来源（本地、已缓存、网络）汇总各阶段的百分位耗时
+ * @author: zhangliangming
+ * @date: 2019-05-04 20:30
+ **/
+public class PlaybackTracer {
+
+    /**
+     * 发起播放，例如点击歌曲
+     */
+    public static final int STAGE_REQUEST = 0;
+    /**
+     * 播放服务开始处理
+     */
+    public static final int STAGE_SERVICE = 1;
+    /**
+     * 网络歌曲获取到下载地址
+     */
+    public static final int STAGE_SONG_INFO = 2;
+    /**
+     * 开始准备播放器
+     */
+    public static final int STAGE_PREPARE = 3;
+    /**
+     * 边下边播服务返回第一块数据
+     */
+    public static final int STAGE_FIRST_DATA = 4;
+    /**
+     * 播放器准备完成
+     */
+    public static final int STAGE_PREPARED = 5;
+    /**
+     * 开始播放
+     */
+    public static final int STAGE_START = 6;
+    private static final String[] STAGE_NAMES = {"request", "service", "songInfo", "prepare", "firstData", "prepared", "start"};
+
+    /**
+     * 本地歌曲
+     */
+    public static final int SOURCE_LOCAL = 0;
+    /**
+     * 已下载或者已完整缓存的网络歌曲
+     */
+    public static final int SOURCE_CACHED = 1;
+    /**
+     * 边下边播的网络歌曲
+     */
+    public static final int SOURCE_NETWORK = 2;
+    private static final String[] SOURCE_NAMES = {"local", "cached", "network"};
+
+    /**
+     * 导出的文件名
+     */
+    public static final String REPORT_FILE_NAME = "playback_trace.txt";
+    /**
+     * 每个阶段保留的耗时个数
+     */
+    private static final int MAX_SAMPLE_NUM = 200;
+    /**
+     * 保留的最近播放请求个数
+     */
+    private static final int MAX_RECENT_NUM = 20;
+
+    private static PlaybackTracer _PlaybackTracer;
+
+    /**
+     * 下一个请求id
+     */
+    private long mNextId = 1;
+
+    /**
+     * 当前的播放请求，新的请求会替换还未开始播放的请求
+     */
+    private Trace mTrace;
+
+    /**
+     * 各来源各阶段的耗时，循环覆盖
+     */
+    private long[][][] mSamples = new long[SOURCE_NAMES.length][STAGE_NAMES.length][MAX_SAMPLE_NUM];
+    /**
+     * 各来源各阶段记录过的耗时个数
+     */
+    private int[][] mSampleNums = new int[SOURCE_NAMES.length][STAGE_NAMES.length];
+
+    /**
+     * 最近的播放请求
+     */
+    private LinkedList<String> mRecentTraces = new LinkedList<String>();
+
+    private PlaybackTracer() {
+    }
+
+    public static PlaybackTracer getInstance() {
+        if (_PlaybackTracer == null) {
+            synchronized (PlaybackTracer.class) {
+                if (_PlaybackTracer == null) {
+                    _PlaybackTracer = new PlaybackTracer();
+                }
+            }
+        }
+        return _PlaybackTracer;
+    }
+
+    /**
+     * 发起播放，同一首歌曲还未开始播放时沿用当前的请求
+     *
+     * @param hash
+     * @return 请求id
+     */
+    public synchronized long begin(String hash) {
+        if (mTrace != null && !mTrace.isFinish && mTrace.hash.equals(hash)) {
+            return mTrace.id;
+        }
+        mTrace = new Trace(mNextId++, hash, SystemClock.elapsedRealtime());
+        return mTrace.id;
+    }
+
+    /**
+     * 设置歌曲来源
+     *
+     * @param hash
+     * @param source
+     */
+    public synchronized void setSource(String hash, int source) {
+        Trace trace = getTrace(hash);
+        if (trace != null) {
+            trace.source = source;
+        }
+    }
+
+    /**
+     * 记录阶段耗时，同一个请求的每个阶段只记录第一次
+     *
+     * @param hash
+     * @param stage
+     */
+    public synchronized void mark(String hash, int stage) {
+        Trace trace = getTrace(hash);
+        if (trace == null || trace.times[stage] >= 0) {
+            return;
+        }
+        trace.times[stage] = SystemClock.elapsedRealtime() - trace.startTime;
+        if (stage == STAGE_START) {
+            finish(trace);
+        }
+    }
+
+    /**
+     * @param hash
+     * @return 不是当前歌曲或者已开始播放时返回null
+     */
+    private Trace getTrace(String hash) {
+        if (mTrace == null || mTrace.isFinish || hash == null || !mTrace.hash.equals(hash)) {
+            return null;
+        }
+        return mTrace;
+    }
+
+    /**
+     * 开始播放，汇总各阶段耗时
+     *
+     * @param trace
+     */
+    private void finish(Trace trace) {
+        trace.isFinish = true;
+        StringBuilder builder = new StringBuilder();
+        builder.append("#").append(trace.id).append(" ").append(trace.hash).append(" ").append(SOURCE_NAMES[trace.source]);
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            long time = trace.times[i];
+            if (time < 0) {
+                continue;
+            }
+            int index = mSampleNums[trace.source][i] % MAX_SAMPLE_NUM;
+            mSamples[trace.source][i][index] = time;
+            mSampleNums[trace.source][i]++;
+            if (i != STAGE_REQUEST) {
+                builder.append(" ").append(STAGE_NAMES[i]).append("=").append(time);
+            }
+        }
+        String traceInfo = builder.toString();
+        mRecentTraces.addFirst(traceInfo);
+        if (mRecentTraces.size() > MAX_RECENT_NUM) {
+            mRecentTraces.removeLast();
+        }
+        ZLog.d(new CodeLineUtil().getCodeLineInfo(), "playback trace ->" + traceInfo);
+    }
+
+    /**
+     * 获取统计报告：各来源各阶段的耗时百分位和最近的播放请求
+     *
+     * @return
+     */
+    public synchronized String getReport() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("播放耗时（毫秒，从发起播放开始计算）\n");
+        for (int i = 0; i < SOURCE_NAMES.length; i++) {
+            if (mSampleNums[i][STAGE_START] == 0) {
+                continue;
+            }
+            builder.append("\n[").append(SOURCE_NAMES[i]).append("]\n");
+            for (int j = 1; j < STAGE_NAMES.length; j++) {
+                int num = Math.min(mSampleNums[i][j], MAX_SAMPLE_NUM);
+                if (num == 0) {
+                    continue;
+                }
+                long[] samples = Arrays.copyOf(mSamples[i][j], num);
+                Arrays.sort(samples);
+                builder.append(STAGE_NAMES[j]).append(" n=").append(mSampleNums[i][j])
+                        .append(" p50=").append(percentile(samples, 50))
+                        .append(" p90=").append(percentile(samples, 90))
+                        .append(" p99=").append(percentile(samples, 99))
+                        .append(" max=").append(samples[num - 1]).append("\n");
+            }
+        }
+        if (!mRecentTraces.isEmpty()) {
+            builder.append("\n最近的播放请求\n");
+            for (String traceInfo : mRecentTraces) {
+                builder.append(traceInfo).append("\n");
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param samples 已排序
+     * @param percent
+     * @return
+     */
+    private long percentile(long[] samples, int percent) {
+        int index = (int) Math.ceil(samples.length * percent / 100.0) - 1;
+        return samples[Math.max(0, Math.min(index, samples.length - 1))];
+    }
+
+    /**
+     * 导出统计报告到日志目录
+     *
+     * @param context
+     * @return 导出的文件路径，失败时返回null
+     */
+    public String export(Context context) {
+        File file = new File(ResourceUtil.getFilePath(context, ResourceConstants.PATH_LOGCAT, REPORT_FILE_NAME));
+        FileOutputStream fos = null;
+        try {
+            if (!file.getParentFile().exists()) {
+                file.getParentFile().mkdirs();
+            }
+            fos = new FileOutputStream(file);
+            fos.write(getReport().getBytes("UTF-8"));
+            return file.getPath();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (fos != null)
+                try {
+                    fos.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+        }
+        return null;
+    }
+
+    /**
+     * 播放请求
+     */
+    private static class Trace {
+        private long id;
+        private String hash;
+        /**
+         * 发起播放的时间
+         */
+        private long startTime;
+        private int source = SOURCE_LOCAL;
+        /**
+         * 各阶段距离发起播放的耗时，未记录时为-1
+         */
+        private long[] times = new long[STAGE_NAMES.length];
+        private boolean isFinish = false;
+
+        private Trace(long id, String hash, long startTime) {
+            this.id = id;
+            this.hash = hash;
+            this.startTime = startTime;
+            Arrays.fill(times, -1);
+            times[STAGE_REQUEST] = 0;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.zlm.hp.manager;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.text.TextUtils;
+
+import com.zlm.down.entity.DownloadTask;
+import com.zlm.down.entity.DownloadThreadInfo;
+import com.zlm.down.interfaces.IDownloadTaskEvent;
+import com.zlm.down.manager.DownloadTaskManager;
+import com.zlm.down.thread.DownloadRangeMap;
+import com.zlm.hp.constants.ConfigInfo;
+import com.zlm.hp.constants.ResourceConstants;
+import com.zlm.hp.db.util.DownloadThreadInfoDB;
+import com.zlm.hp.db.util.DownloadThreadInfoJournal;
+import com.zlm.hp.entity.AudioInfo;
+import com.zlm.hp.http.DownloadUrlCache;
+import com.zlm.hp.http.HttpReturnResult;
+import com.zlm.hp.util.CodeLineUtil;
+import com.zlm.hp.util.ResourceUtil;
+import com.zlm.hp.util.ZLog;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description: 预加载接下来播放的歌曲
+ * 以低优先级下载文件头部到在线缓存的临时文件，区间与边下边播共用，切歌时边下边播从已下载的位置继续
+ * @author: zhangliangming
+ * @date: 2019-04-28 21:30
+ **/
+public class PrefetchAudioManager {
+
+    /**
+     * 子线程用于执行耗时任务
+     */
+    private Handler mWorkerHandler;
+    //创建异步HandlerThread
+    private HandlerThread mHandlerThread;
+
+    /**
+     * 正在预加载的任务id
+     */
+    private List<String> mTaskIds = new ArrayList<String>();
+
+    /**
+     * 正在暂停的任务，任务结束后回调
+     */
+    private Map<String, Runnable> mPauseCallbacks = new HashMap<String, Runnable>();
+
+    /**
+     * 下载管理器
+     */
+    private DownloadTaskManager mDownloadTaskManager;
+
+    /**
+     *
+     */
+    private Context mContext;
+
+    public PrefetchAudioManager(Context context) {
+
+        this.mContext = context;
+        //创建异步HandlerThread
+        mHandlerThread = new HandlerThread("prefetchAudioTaskThread", Process.THREAD_PRIORITY_BACKGROUND);
+        //必须先开启线程
+        mHandlerThread.start();
+        //子线程Handler
+        mWorkerHandler = new Handler(mHandlerThread.getLooper());
+
+        mDownloadTaskManager = new DownloadTaskManager(context, "prefetchAudioTaskManager", DownloadTask.PRIORITY_PREFETCH, new IDownloadTaskEvent() {
+            @Override
+            public void taskWaiting(DownloadTask task) {
+
+            }
+
+            @Override
+            public void taskDownloading(DownloadTask task, long downloadedSize) {
+
+            }
+
+            @Override
+            public void taskPause(DownloadTask task, long downloadedSize) {
+                //立即写入进度，边下边播从该进度继续
+                DownloadThreadInfoJournal.getInstance(mContext).flush(task.getTaskId());
+                removeTaskId(task.getTaskId(), false);
+                ZLog.d(new CodeLineUtil().getCodeLineInfo(), "task prefetch taskPause ->" + task.getTaskName() + " " + downloadedSize);
+            }
+
+            @Override
+            public void taskCancel(DownloadTask task) {
+                DownloadThreadInfoJournal.getInstance(mContext).flush(task.getTaskId());
+                removeTaskId(task.getTaskId(), false);
+            }
+
+            @Override
+            public void taskFinish(DownloadTask task, long downloadedSize) {
+                //文件比预加载大小还小，已全部下载
+                DownloadThreadInfoJournal.getInstance(mContext).flush(task.getTaskId());
+                removeTaskId(task.getTaskId(), true);
+                ZLog.d(new CodeLineUtil().getCodeLineInfo(), "task prefetch taskFinish ->" + task.getTaskName() + " " + downloadedSize);
+            }
+
+            @Override
+            public void taskError(DownloadTask task, String msg) {
+                //预加载失败不提示，播放时重新下载
+                DownloadThreadInfoJournal.getInstance(mContext).flush(task.getTaskId());
+                if (HttpReturnResult.ERROR_MSG_URL_INVALID.equals(msg)) {
+                    DownloadUrlCache.getInstance(mContext).removeSong(task.getTaskId());
+                }
+                removeTaskId(task.getTaskId(), false);
+                ZLog.d(new CodeLineUtil().getCodeLineInfo(), "task prefetch taskError ->" + task.getTaskName() + " " + msg);
+            }
+
+            @Override
+            public boolean getAskWifi() {
+                ConfigInfo configInfo = ConfigInfo.obtain();
+                return configInfo.isWifi();
+            }
+
+            @Override
+            public List<DownloadThreadInfo> getTaskThreadInfos(DownloadTask task) {
+                return DownloadThreadInfoDB.getDownloadThreadInfos(mContext, task.getTaskId(), OnLineAudioManager.mThreadNum);
+            }
+
+            @Override
+            public void taskThreadDownloading(DownloadTask task, DownloadThreadInfo threadInfo) {
+                DownloadThreadInfoJournal.getInstance(mContext).put(threadInfo);
+            }
+
+            @Override
+            public void taskThreadPause(DownloadTask task, DownloadThreadInfo threadInfo) {
+                DownloadThreadInfoJournal.getInstance(mContext).put(threadInfo);
+            }
+
+            @Override
+            public void taskThreadFinish(DownloadTask task, DownloadThreadInfo threadInfo) {
+                DownloadThreadInfoJournal.getInstance(mContext).put(threadInfo);
+            }
+
+            @Override
+            public void taskThreadError(DownloadTask task, int threadId, String msg) {
+
+            }
+        });
+    }
+
+    /**
+     * 预加载歌曲，不在列表中的旧任务会被暂停
+     *
+     * @param audioInfos 接下来播放的歌曲
+     */
+    public void prefetch(final List<AudioInfo> audioInfos) {
+        //只保留最新的预加载请求
+        mWorkerHandler.removeCallbacksAndMessages(null);
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                prefetchTasks(audioInfos);
+            }
+        });
+    }
+
+    /**
+     * @param audioInfos
+     */
+    private void prefetchTasks(List<AudioInfo> audioInfos) {
+        List<String> hashs = new ArrayList<String>();
+        for (int i = 0; i < audioInfos.size(); i++) {
+            hashs.add(audioInfos.get(i).getHash());
+        }
+        //暂停不再需要的任务
+        List<String> taskIds;
+        synchronized (this) {
+            taskIds = new ArrayList<String>(mTaskIds);
+        }
+        for (int i = 0; i < taskIds.size(); i++) {
+            if (!hashs.contains(taskIds.get(i))) {
+                pauseTask(taskIds.get(i));
+            }
+        }
+
+        ConfigInfo configInfo = ConfigInfo.obtain();
+        if (audioInfos.size() == 0 || configInfo.getPrefetchSize() <= 0) {
+            return;
+        }
+        //只在允许的网络下预加载
+        NetworkStateManager.NetworkState networkState = NetworkStateManager.getInstance(mContext).getNetworkState();
+        if (!networkState.isAvailable() || (configInfo.isWifi() && !networkState.isWifi())) {
+            return;
+        }
+        long prefetchSize = configInfo.getPrefetchSize() * 1024L / audioInfos.size();
+        for (int i = 0; i < audioInfos.size(); i++) {
+            addTask(audioInfos.get(i), prefetchSize);
+        }
+    }
+
+    /**
+     * @param audioInfo
+     * @param prefetchSize
+     */
+    private void addTask(AudioInfo audioInfo, long prefetchSize) {
+        String hash = audioInfo.getHash();
+        if (audioInfo.getType() != AudioInfo.TYPE_NET || hash.equals(ConfigInfo.obtain().getPlayHash())) {
+            //本地歌曲或者已经开始播放
+            return;
+        }
+        synchronized (this) {
+            if (mTaskIds.contains(hash)) {
+                return;
+            }
+        }
+        String filePath = ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_AUDIO, audioInfo.getTitle() + "." + audioInfo.getFileExt());
+        if (new File(filePath).exists()) {
+            //已下载
+            return;
+        }
+        String taskTempPath = AudioCacheManager.getInstance(mContext).getFilePath(hash);
+        if (!new File(taskTempPath).exists()) {
+            //临时文件不存在，删除数据库中的数据
+            DownloadThreadInfoDB.delete(mContext, hash, OnLineAudioManager.mThreadNum);
+            DownloadRangeMap.delete(taskTempPath);
+        } else {
+            long downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, hash, OnLineAudioManager.mThreadNum);
+            //按位图判断文件头部是否已连续下载
+            DownloadRangeMap rangeMap = DownloadRangeMap.load(taskTempPath, audioInfo.getFileSize());
+            long headSize = rangeMap == null ? 0 : rangeMap.getContiguousEnd(0);
+            if (headSize >= prefetchSize || (audioInfo.getFileSize() > 0 && downloadedSize >= audioInfo.getFileSize())) {
+                //文件头部已缓存
+                return;
+            }
+        }
+
+        ConfigInfo configInfo = ConfigInfo.obtain();
+        DownloadUrlCache.getInstance(mContext).getSongInfo(audioInfo, configInfo.isWifi());
+        if (TextUtils.isEmpty(audioInfo.getDownloadUrl())) {
+            return;
+        }
+
+        DownloadTask downloadTask = new DownloadTask();
+        downloadTask.setTaskName(audioInfo.getTitle());
+        downloadTask.setTaskExt(audioInfo.getFileExt());
+        downloadTask.setTaskId(hash);
+        downloadTask.setTaskTempPath(taskTempPath);
+        downloadTask.setTaskUrl(audioInfo.getDownloadUrl());
+        downloadTask.setThreadNum(OnLineAudioManager.mThreadNum);
+        downloadTask.setCreateTime(new Date());
+        downloadTask.setPrefetchSize(prefetchSize);
+
+        synchronized (this) {
+            if (hash.equals(ConfigInfo.obtain().getPlayHash())) {
+                //获取歌曲信息期间已开始播放
+                return;
+            }
+            mTaskIds.add(hash);
+            //预加载期间不会被淘汰
+            AudioCacheManager.getInstance(mContext).pin(hash);
+            AudioCacheManager.getInstance(mContext).touch(hash);
+            mDownloadTaskManager.addDownloadTask(downloadTask);
+        }
+    }
+
+    /**
+     * 暂停预加载任务，歌曲开始边下边播前调用
+     *
+     * @param hash
+     */
+    public synchronized void pauseTask(String hash) {
+        if (mTaskIds.remove(hash)) {
+            mDownloadTaskManager.pauseDownloadTask(hash);
+        }
+    }
+
+    /**
+     * 暂停预加载任务，等下载线程退出并写入进度后回调，边下边播在回调中开始下载，
+     * 避免两个任务同时写入同一个临时文件和区间记录
+     *
+     * @param hash
+     * @param onPaused 没有预加载任务时直接回调
+     */
+    public void pauseTask(String hash, Runnable onPaused) {
+        boolean isPrefetching;
+        synchronized (this) {
+            isPrefetching = mTaskIds.remove(hash);
+            if (isPrefetching) {
+                mPauseCallbacks.put(hash, onPaused);
+            }
+        }
+        if (!isPrefetching) {
+            onPaused.run();
+            return;
+        }
+        mDownloadTaskManager.pauseDownloadTask(hash);
+    }
+
+    /**
+     * 任务结束，更新缓存记录
+     *
+     * @param taskId
+     * @param complete 是否已下载完整
+     */
+    private void removeTaskId(String taskId, boolean complete) {
+        Runnable onPaused;
+        synchronized (this) {
+            mTaskIds.remove(taskId);
+            onPaused = mPauseCallbacks.remove(taskId);
+        }
+        AudioCacheManager.getInstance(mContext).unpin(taskId);
+        AudioCacheManager.getInstance(mContext).update(taskId, complete);
+        if (onPaused != null) {
+            onPaused.run();
+        }
+    }
+
+    /**
+     * 释放
+     */
+    public void release() {
+
+        mDownloadTaskManager.release();
+
+        //移除队列任务
+        if (mWorkerHandler != null) {
+            mWorkerHandler.removeCallbacksAndMessages(null);
+        }
+
+        //关闭线程
+        if (mHandlerThread != null)
+            mHandlerThread.quit();
+    }
+}
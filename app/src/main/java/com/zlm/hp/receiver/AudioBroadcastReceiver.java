@@ -325,15 +325,6 @@ public class AudioBroadcastReceiver {
         sendReceiver(context, ACTION_CODE_STOP, null, null);
     }
 
-    /**
-     * 发播放中广播
-     */
-    public static void sendPlayingReceiver(Context context, AudioInfo audioInfo) {
-        Bundle bundle = new Bundle();
-        bundle.putParcelable(ACTION_DATA_KEY, audioInfo);
-        sendReceiver(context, ACTION_CODE_PLAYING, ACTION_BUNDLEKEY, bundle);
-    }
-
     /**
      * 发播放广播
      */
@@ -13,6 +13,7 @@ import android.view.KeyEvent;
 import com.zlm.hp.constants.ConfigInfo;
 import com.zlm.hp.entity.AudioInfo;
 import com.zlm.hp.manager.AudioPlayerManager;
+import com.zlm.hp.manager.PlaybackClock;
 
 /**
  * 耳机线控 5.0以下
@@ -138,7 +139,7 @@ public class PhoneV4Receiver extends BroadcastReceiver {
         ConfigInfo configInfo = ConfigInfo.obtain();
         AudioInfo audioInfo = AudioPlayerManager.getInstance(mContext).getCurSong(configInfo.getPlayHash());
         if (audioInfo != null) {
-            seekProgress += audioInfo.getPlayProgress();
+            seekProgress += PlaybackClock.getInstance().getPlayProgress(audioInfo);
             if (seekProgress <= audioInfo.getDuration()) {
                 audioInfo.setPlayProgress(seekProgress);
                 AudioPlayerManager.getInstance(mContext).seekto(audioInfo);
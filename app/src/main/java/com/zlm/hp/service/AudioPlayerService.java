@@ -21,6 +21,7 @@ import android.os.Process;
 import android.view.View;
 import android.widget.RemoteViews;
 
+import com.zlm.down.manager.DownloadStreamServer;
 import com.zlm.hp.async.AsyncHandlerTask;
 import com.zlm.hp.constants.ConfigInfo;
 import com.zlm.hp.constants.ResourceConstants;
@@ -28,17 +29,17 @@ import com.zlm.hp.db.util.AudioInfoDB;
 import com.zlm.hp.entity.AudioInfo;
 import com.zlm.hp.handler.WeakRefHandler;
 import com.zlm.hp.manager.AudioPlayerManager;
+import com.zlm.hp.manager.PlaybackClock;
+import com.zlm.hp.manager.PlaybackTracer;
 import com.zlm.hp.receiver.AudioBroadcastReceiver;
 import com.zlm.hp.ui.MainActivity;
 import com.zlm.hp.ui.R;
 import com.zlm.hp.util.AppOpsUtils;
-import com.zlm.hp.util.DateUtil;
 import com.zlm.hp.util.ImageUtil;
 import com.zlm.hp.util.ResourceUtil;
 import com.zlm.hp.util.ToastUtil;
 
 import java.io.File;
-import java.util.Date;
 
 import tv.danmaku.ijk.media.player.IMediaPlayer;
 import tv.danmaku.ijk.media.player.IjkMediaPlayer;
@@ -71,6 +72,19 @@ public class AudioPlayerService extends Service {
      */
     private IjkMediaPlayer mMediaPlayer;
 
+    /**
+     * 预先准备好的下一首歌曲播放器，播放完成时直接切换，不用重新创建和解析文件
+     */
+    private IjkMediaPlayer mNextMediaPlayer;
+    /**
+     * 下一首歌曲
+     */
+    private AudioInfo mNextAudioInfo;
+    /**
+     * 下一首歌曲播放器是否已准备好
+     */
+    private volatile boolean isNextPrepared = false;
+
     /**
      * 加载当前播放进度
      */
@@ -283,7 +297,8 @@ public class AudioPlayerService extends Service {
                 if (getCurAudioInfo() != null && mMediaPlayer != null && mMediaPlayer.isPlaying()) {
 
                     getCurAudioInfo().setPlayProgress((int) mMediaPlayer.getCurrentPosition());
-                    AudioBroadcastReceiver.sendPlayingReceiver(mContext, getCurAudioInfo());
+                    //只校准播放时钟，界面通过播放时钟获取进度
+                    PlaybackClock.getInstance().sync(getCurAudioInfo().getHash(), getCurAudioInfo().getPlayProgress());
                 }
                 //
                 mWorkerHandler.sendEmptyMessageDelayed(MESSAGE_WHAT_LOADPLAYPROGRESSDATA, 1000);
@@ -554,6 +569,7 @@ public class AudioPlayerService extends Service {
 
         releaseHandle();
         releasePlayer();
+        releaseNextPlayer();
         //关闭通知栏
         stopForeground(true);
         mAudioBroadcastReceiver.unregisterReceiver(mContext);
@@ -586,17 +602,19 @@ public class AudioPlayerService extends Service {
      * @param audioInfo
      */
     private void handleSong(final AudioInfo audioInfo) {
+        PlaybackTracer.getInstance().mark(audioInfo.getHash(), PlaybackTracer.STAGE_SERVICE);
 
         //在播放的时候为AudioManager添加获取焦点的监听
         mAudioManager.requestAudioFocus(mOfChangeListener,
                 AudioManager.STREAM_MUSIC,
                 AudioManager.AUDIOFOCUS_GAIN);
 
-        //添加到最近播放列表中去
-        if (AudioInfoDB.isRecentAudioExists(mContext, audioInfo.getHash())) {
-            AudioInfoDB.updateRecentAudio(mContext, audioInfo.getHash(), DateUtil.parseDateToString(new Date()));
-        } else {
-            AudioInfoDB.addRecentAudio(mContext, audioInfo, true);
+        //添加到最近播放列表中去，在写入队列中执行，不阻塞切歌
+        AudioInfoDB.saveRecentAudioAsync(mContext, audioInfo, true);
+
+        //下一首歌曲已准备好，直接切换
+        if (swapNextPlayer(audioInfo)) {
+            return;
         }
 
         try {
@@ -607,6 +625,13 @@ public class AudioPlayerService extends Service {
                 File audioFile = new File(filePath);
                 if (!audioFile.exists()) {
                     filePath = ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_CACHE_AUDIO, audioInfo.getHash() + ".temp");
+                    if (AudioPlayerManager.getInstance(mContext).getPlayStatus() == AudioPlayerManager.PLAYINGNET) {
+                        //下载中的歌曲通过本地服务读取，数据未下载时等待，不会提前读到文件结尾
+                        String streamUrl = DownloadStreamServer.getInstance().getUrl(audioInfo.getHash());
+                        if (streamUrl != null) {
+                            filePath = streamUrl;
+                        }
+                    }
                 }
             }
             if (mMediaPlayer != null) {
@@ -616,71 +641,90 @@ public class AudioPlayerService extends Service {
             mMediaPlayer = new IjkMediaPlayer();
             mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
             mMediaPlayer.setDataSource(filePath);
+            PlaybackTracer.getInstance().mark(audioInfo.getHash(), PlaybackTracer.STAGE_PREPARE);
             mMediaPlayer.prepareAsync();
 
-            mMediaPlayer.setOnSeekCompleteListener(new IMediaPlayer.OnSeekCompleteListener() {
-                @Override
-                public void onSeekComplete(IMediaPlayer mp) {
-
-                    //发送播放中广播
-                    AudioBroadcastReceiver.sendPlayReceiver(mContext, audioInfo);
-                    mWorkerHandler.removeMessages(MESSAGE_WHAT_LOADPLAYPROGRESSDATA);
-                    mWorkerHandler.sendEmptyMessage(MESSAGE_WHAT_LOADPLAYPROGRESSDATA);
-
-                    mMediaPlayer.start();
-                }
-            });
-
+            setPlayerListener(audioInfo);
+        } catch (Exception e) {
+            e.printStackTrace();
+            handleError();
+        }
+    }
 
-            mMediaPlayer.setOnCompletionListener(new IMediaPlayer.OnCompletionListener() {
-                @Override
-                public void onCompletion(IMediaPlayer mp) {
+    /**
+     * 设置播放器的回调
+     *
+     * @param audioInfo
+     */
+    private void setPlayerListener(final AudioInfo audioInfo) {
+        mMediaPlayer.setOnSeekCompleteListener(new IMediaPlayer.OnSeekCompleteListener() {
+            @Override
+            public void onSeekComplete(IMediaPlayer mp) {
+
+                //发送播放中广播
+                AudioBroadcastReceiver.sendPlayReceiver(mContext, audioInfo);
+                mWorkerHandler.removeMessages(MESSAGE_WHAT_LOADPLAYPROGRESSDATA);
+                mWorkerHandler.sendEmptyMessage(MESSAGE_WHAT_LOADPLAYPROGRESSDATA);
+
+                mMediaPlayer.start();
+                PlaybackClock.getInstance().play(audioInfo.getHash(), mMediaPlayer.getCurrentPosition());
+                PlaybackTracer.getInstance().mark(audioInfo.getHash(), PlaybackTracer.STAGE_START);
+                //准备下一首歌曲
+                prepareNextPlayer();
+            }
+        });
 
-                    if (audioInfo.getType() == AudioInfo.TYPE_NET && mMediaPlayer.getCurrentPosition() < (audioInfo.getDuration() - 2 * 1000)) {
-                        releasePlayer();
-                        //网络歌曲未播放全部，需要重新调用播放歌曲
-                        handleSong(audioInfo);
-                    } else {
-                        releasePlayer();
-                        //播放完成，执行下一首操作
-                        AudioPlayerManager.getInstance(mContext).next();
-                    }
 
+        mMediaPlayer.setOnCompletionListener(new IMediaPlayer.OnCompletionListener() {
+            @Override
+            public void onCompletion(IMediaPlayer mp) {
 
+                if (audioInfo.getType() == AudioInfo.TYPE_NET && mMediaPlayer.getCurrentPosition() < (audioInfo.getDuration() - 2 * 1000)) {
+                    releasePlayer();
+                    //网络歌曲未播放全部，需要重新调用播放歌曲
+                    handleSong(audioInfo);
+                } else {
+                    releasePlayer();
+                    //播放完成，执行下一首操作
+                    AudioPlayerManager.getInstance(mContext).next();
                 }
-            });
 
-            mMediaPlayer.setOnPreparedListener(new IMediaPlayer.OnPreparedListener() {
-                @Override
-                public void onPrepared(IMediaPlayer mp) {
-                    if (audioInfo.getPlayProgress() != 0) {
-                        mMediaPlayer.seekTo(audioInfo.getPlayProgress());
-                    } else {
 
-                        //发送播放中广播
-                        AudioBroadcastReceiver.sendPlayReceiver(mContext, audioInfo);
-                        mWorkerHandler.removeMessages(MESSAGE_WHAT_LOADPLAYPROGRESSDATA);
-                        mWorkerHandler.sendEmptyMessage(MESSAGE_WHAT_LOADPLAYPROGRESSDATA);
+            }
+        });
 
-                        mMediaPlayer.start();
+        mMediaPlayer.setOnPreparedListener(new IMediaPlayer.OnPreparedListener() {
+            @Override
+            public void onPrepared(IMediaPlayer mp) {
+                PlaybackTracer.getInstance().mark(audioInfo.getHash(), PlaybackTracer.STAGE_PREPARED);
+                AudioPlayerManager.getInstance(mContext).playingNetSong();
+                if (audioInfo.getPlayProgress() != 0) {
+                    mMediaPlayer.seekTo(audioInfo.getPlayProgress());
+                } else {
 
-                    }
+                    //发送播放中广播
+                    AudioBroadcastReceiver.sendPlayReceiver(mContext, audioInfo);
+                    mWorkerHandler.removeMessages(MESSAGE_WHAT_LOADPLAYPROGRESSDATA);
+                    mWorkerHandler.sendEmptyMessage(MESSAGE_WHAT_LOADPLAYPROGRESSDATA);
+
+                    mMediaPlayer.start();
+                    PlaybackClock.getInstance().play(audioInfo.getHash(), 0);
+                    PlaybackTracer.getInstance().mark(audioInfo.getHash(), PlaybackTracer.STAGE_START);
+                    //准备下一首歌曲
+                    prepareNextPlayer();
                 }
-            });
+            }
+        });
 
-            mMediaPlayer.setOnErrorListener(new IMediaPlayer.OnErrorListener() {
-                @Override
-                public boolean onError(IMediaPlayer mp, int what, int extra) {
+        mMediaPlayer.setOnErrorListener(new IMediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(IMediaPlayer mp, int what, int extra) {
 
-                    handleError();
+                handleError();
 
-                    return false;
-                }
-            });
-        } catch (Exception e) {
-            e.printStackTrace();
-            handleError();
-        }
+                return false;
+            }
+        });
     }
 
     /**
@@ -717,6 +761,9 @@ public class AudioPlayerService extends Service {
 
         if (mMediaPlayer != null) {
 
+            //播放时钟停在当前进度
+            PlaybackClock.getInstance().pause(mMediaPlayer.getCurrentPosition());
+
             if (mMediaPlayer.isPlaying()) {
                 mMediaPlayer.stop();
             }
@@ -729,6 +776,110 @@ public class AudioPlayerService extends Service {
 
     }
 
+    /**
+     * 切换到已准备好的下一首歌曲播放器
+     *
+     * @param audioInfo
+     * @return 下一首歌曲还没准备好时返回false，需要重新创建播放器
+     */
+    private boolean swapNextPlayer(AudioInfo audioInfo) {
+        if (mNextMediaPlayer == null || !isNextPrepared || audioInfo.getPlayProgress() != 0
+                || !mNextAudioInfo.getHash().equals(audioInfo.getHash())) {
+            return false;
+        }
+        if (mMediaPlayer != null) {
+            releasePlayer();
+        }
+        mMediaPlayer = mNextMediaPlayer;
+        mNextMediaPlayer = null;
+        mNextAudioInfo = null;
+        isNextPrepared = false;
+        setPlayerListener(audioInfo);
+
+        AudioPlayerManager.getInstance(mContext).playingNetSong();
+        //发送播放中广播
+        AudioBroadcastReceiver.sendPlayReceiver(mContext, audioInfo);
+        mWorkerHandler.removeMessages(MESSAGE_WHAT_LOADPLAYPROGRESSDATA);
+        mWorkerHandler.sendEmptyMessage(MESSAGE_WHAT_LOADPLAYPROGRESSDATA);
+
+        mMediaPlayer.start();
+        PlaybackClock.getInstance().play(audioInfo.getHash(), 0);
+        PlaybackTracer.getInstance().mark(audioInfo.getHash(), PlaybackTracer.STAGE_START);
+        //准备下一首歌曲
+        prepareNextPlayer();
+        return true;
+    }
+
+    /**
+     * 在后台准备下一首歌曲的播放器，下一首歌曲还没下载完成时不准备，切换时重新创建播放器
+     */
+    private void prepareNextPlayer() {
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                AudioPlayerManager audioPlayerManager = AudioPlayerManager.getInstance(mContext);
+                AudioInfo nextAudioInfo = audioPlayerManager.getNextSong();
+                if (nextAudioInfo != null && mNextMediaPlayer != null && mNextAudioInfo.getHash().equals(nextAudioInfo.getHash())) {
+                    //已准备好
+                    return;
+                }
+                releaseNextPlayer();
+                String filePath = nextAudioInfo == null ? null : audioPlayerManager.getCompleteFilePath(nextAudioInfo);
+                if (filePath == null) {
+                    return;
+                }
+                try {
+                    final IjkMediaPlayer mediaPlayer = new IjkMediaPlayer();
+                    //准备好后不自动播放，等待切换
+                    mediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 0);
+                    mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+                    mediaPlayer.setDataSource(filePath);
+                    mediaPlayer.setOnPreparedListener(new IMediaPlayer.OnPreparedListener() {
+                        @Override
+                        public void onPrepared(IMediaPlayer mp) {
+                            if (mNextMediaPlayer == mediaPlayer) {
+                                isNextPrepared = true;
+                            }
+                        }
+                    });
+                    mediaPlayer.setOnErrorListener(new IMediaPlayer.OnErrorListener() {
+                        @Override
+                        public boolean onError(IMediaPlayer mp, int what, int extra) {
+                            //下一首歌曲出错时不影响当前播放，切换时重新创建播放器
+                            mWorkerHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (mNextMediaPlayer == mediaPlayer) {
+                                        releaseNextPlayer();
+                                    }
+                                }
+                            });
+                            return true;
+                        }
+                    });
+                    mNextMediaPlayer = mediaPlayer;
+                    mNextAudioInfo = nextAudioInfo;
+                    mediaPlayer.prepareAsync();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    releaseNextPlayer();
+                }
+            }
+        });
+    }
+
+    /**
+     * 释放下一首歌曲的播放器
+     */
+    private void releaseNextPlayer() {
+        isNextPrepared = false;
+        mNextAudioInfo = null;
+        if (mNextMediaPlayer != null) {
+            mNextMediaPlayer.release();
+            mNextMediaPlayer = null;
+        }
+    }
+
     /**
      * 获取当前的播放歌曲
      *
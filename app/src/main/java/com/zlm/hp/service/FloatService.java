@@ -38,6 +38,7 @@ import com.zlm.hp.lyrics.widget.AbstractLrcView;
 import com.zlm.hp.lyrics.widget.FloatLyricsView;
 import com.zlm.hp.manager.AudioPlayerManager;
 import com.zlm.hp.manager.LyricsManager;
+import com.zlm.hp.manager.PlaybackClock;
 import com.zlm.hp.receiver.AudioBroadcastReceiver;
 import com.zlm.hp.ui.MainActivity;
 import com.zlm.hp.ui.R;
@@ -100,6 +101,33 @@ public class FloatService extends Service {
      */
     private AudioBroadcastReceiver mAudioBroadcastReceiver;
 
+    /**
+     * 播放时钟
+     */
+    private PlaybackClock.OnPlaybackClockListener mOnPlaybackClockListener = new PlaybackClock.OnPlaybackClockListener() {
+        @Override
+        public void onPlaybackStateChanged(String hash, long position, boolean isPlaying) {
+            if (!isPlaying || hash == null) {
+                return;
+            }
+            //开始播放或者跳转后，歌词以播放时钟的进度为准
+            if (mFloatLyricsView.getLyricsReader() != null && mFloatLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC && mFloatLyricsView.getLyricsReader().getHash().equals(hash)) {
+                if (mFloatLyricsView.getLrcPlayerStatus() != AbstractLrcView.LRCPLAYERSTATUS_PLAY) {
+                    mFloatLyricsView.play((int) position);
+                } else {
+                    mFloatLyricsView.seekto((int) position);
+                }
+            }
+        }
+
+        @Override
+        public void onPlaybackProgress(String hash, long position) {
+            if (mFloatLyricsView.getLyricsReader() != null && mFloatLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC && mFloatLyricsView.getLrcPlayerStatus() != AbstractLrcView.LRCPLAYERSTATUS_PLAY && mFloatLyricsView.getLyricsReader().getHash().equals(hash)) {
+                mFloatLyricsView.play((int) position);
+            }
+        }
+    };
+
     /**
      * 处理ui任务
      */
@@ -224,6 +252,8 @@ public class FloatService extends Service {
         mAudioBroadcastReceiver.setReceiverListener(mAudioReceiverListener);
         mAudioBroadcastReceiver.registerReceiver(getApplicationContext());
 
+        PlaybackClock.getInstance().addOnPlaybackClockListener(mOnPlaybackClockListener);
+
     }
 
     /**
@@ -752,6 +782,7 @@ public class FloatService extends Service {
         }
         //注销广播
         mAudioBroadcastReceiver.unregisterReceiver(getApplicationContext());
+        PlaybackClock.getInstance().removeOnPlaybackClockListener(mOnPlaybackClockListener);
 
         super.onDestroy();
     }
@@ -814,17 +845,6 @@ public class FloatService extends Service {
 
                 mPauseBtn.setVisibility(View.INVISIBLE);
                 mPlayBtn.setVisibility(View.VISIBLE);
-                break;
-            case AudioBroadcastReceiver.ACTION_CODE_PLAYING:
-
-                Bundle playingBundle = intent.getBundleExtra(AudioBroadcastReceiver.ACTION_BUNDLEKEY);
-                AudioInfo playingAudioInfo = playingBundle.getParcelable(AudioBroadcastReceiver.ACTION_DATA_KEY);
-                if (playingAudioInfo != null) {
-                    if (mFloatLyricsView.getLyricsReader() != null && mFloatLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC && mFloatLyricsView.getLrcPlayerStatus() != AbstractLrcView.LRCPLAYERSTATUS_PLAY && mFloatLyricsView.getLyricsReader().getHash().equals(playingAudioInfo.getHash())) {
-                        mFloatLyricsView.play((int) playingAudioInfo.getPlayProgress());
-                    }
-                }
-
                 break;
             case AudioBroadcastReceiver.ACTION_CODE_SEEKTO:
                 Bundle seektoBundle = intent.getBundleExtra(AudioBroadcastReceiver.ACTION_BUNDLEKEY);
@@ -853,7 +873,7 @@ public class FloatService extends Service {
 
                     if (oldLyricsReader != null || newLyricsReader != null) {
                         if (mFloatLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC) {
-                            mFloatLyricsView.seekto((int) curAudioInfo.getPlayProgress());
+                            mFloatLyricsView.seekto(PlaybackClock.getInstance().getPlayProgress(curAudioInfo));
                         }
                     }
                 }
@@ -7,7 +7,12 @@ import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.dou361.dialogui.DialogUIUtils;
+import com.dou361.dialogui.listener.DialogUIListener;
+import com.zlm.hp.db.DBWriteQueue;
+import com.zlm.hp.manager.PlaybackTracer;
 import com.zlm.hp.util.ApkUtil;
+import com.zlm.hp.util.ToastUtil;
 import com.zlm.libs.widget.SwipeBackLayout;
 
 import java.util.Calendar;
@@ -22,6 +27,10 @@ public class AboutActivity extends BaseActivity {
      * 加载版本号
      */
     private final int LOAD_VERSION = 1;
+    /**
+     * 导出播放耗时
+     */
+    private final int EXPORT_PLAYBACK_TRACE = 2;
 
     /**
      *
@@ -69,6 +78,14 @@ public class AboutActivity extends BaseActivity {
         //版本号文本控件
         mVersionTV = findViewById(R.id.app_name_version_name);
         mCopyrightTV = findViewById(R.id.copyright);
+        //长按版本号查看播放耗时
+        mVersionTV.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                showPlaybackTrace();
+                return true;
+            }
+        });
 
         Calendar cal = Calendar.getInstance();
         int year = cal.get(Calendar.YEAR);
@@ -88,6 +105,14 @@ public class AboutActivity extends BaseActivity {
                 String versionInfo = (String) msg.obj;
                 mVersionTV.setText(versionInfo);
 
+                break;
+            case EXPORT_PLAYBACK_TRACE:
+
+                String filePath = (String) msg.obj;
+                if (filePath != null) {
+                    ToastUtil.showTextToast(getApplicationContext(), String.format(getString(R.string.playback_trace_exported), filePath));
+                }
+
                 break;
         }
     }
@@ -99,10 +124,41 @@ public class AboutActivity extends BaseActivity {
 
                 loadVersionData();
 
+                break;
+            case EXPORT_PLAYBACK_TRACE:
+
+                Message exportMsg = Message.obtain();
+                exportMsg.what = EXPORT_PLAYBACK_TRACE;
+                exportMsg.obj = PlaybackTracer.getInstance().export(getApplicationContext());
+                mUIHandler.sendMessage(exportMsg);
+
                 break;
         }
     }
 
+    /**
+     * 显示各阶段的播放耗时，确定后导出到文件
+     */
+    private void showPlaybackTrace() {
+        String tipMsg = PlaybackTracer.getInstance().getReport() + "\n" + DBWriteQueue.getInstance(getApplicationContext()).getReport() + "\n" + getString(R.string.playback_trace_export_tip);
+        DialogUIUtils.showMdAlert(AboutActivity.this, getString(R.string.playback_trace_title), tipMsg, new DialogUIListener() {
+            @Override
+            public void onPositive() {
+                mWorkerHandler.sendEmptyMessage(EXPORT_PLAYBACK_TRACE);
+            }
+
+            @Override
+            public void onNegative() {
+
+            }
+
+            @Override
+            public void onCancle() {
+
+            }
+        }).setCancelable(true, false).show();
+    }
+
     /**
      * 加载版本号数据
      */
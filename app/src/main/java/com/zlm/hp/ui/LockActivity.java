@@ -23,6 +23,7 @@ import com.zlm.hp.lyrics.widget.AbstractLrcView;
 import com.zlm.hp.lyrics.widget.ManyLyricsView;
 import com.zlm.hp.manager.AudioPlayerManager;
 import com.zlm.hp.manager.LyricsManager;
+import com.zlm.hp.manager.PlaybackClock;
 import com.zlm.hp.receiver.AudioBroadcastReceiver;
 import com.zlm.hp.util.AniUtil;
 import com.zlm.hp.util.ColorUtil;
@@ -119,6 +120,36 @@ public class LockActivity extends BaseActivity {
      */
     private AudioBroadcastReceiver mAudioBroadcastReceiver;
 
+    /**
+     * 播放时钟
+     */
+    private PlaybackClock.OnPlaybackClockListener mOnPlaybackClockListener = new PlaybackClock.OnPlaybackClockListener() {
+        @Override
+        public void onPlaybackStateChanged(String hash, long position, boolean isPlaying) {
+            if (!isPlaying || hash == null) {
+                return;
+            }
+            //开始播放或者跳转后，歌词以播放时钟的进度为准
+            if (mManyLineLyricsView.getLyricsReader() != null && mManyLineLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC && mManyLineLyricsView.getLyricsReader().getHash().equals(hash)) {
+                if (mManyLineLyricsView.getLrcPlayerStatus() != AbstractLrcView.LRCPLAYERSTATUS_PLAY) {
+                    mManyLineLyricsView.play((int) position);
+                } else {
+                    mManyLineLyricsView.seekto((int) position);
+                }
+            }
+        }
+
+        @Override
+        public void onPlaybackProgress(String hash, long position) {
+            mPlayOrPauseButton.setPlayingProgress((int) position);
+            mPlayOrPauseButton.invalidate();
+
+            if (mManyLineLyricsView.getLyricsReader() != null && mManyLineLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC && mManyLineLyricsView.getLrcPlayerStatus() != AbstractLrcView.LRCPLAYERSTATUS_PLAY && mManyLineLyricsView.getLyricsReader().getHash().equals(hash)) {
+                mManyLineLyricsView.play((int) position);
+            }
+        }
+    };
+
     /**
      * 多行歌词视图
      */
@@ -547,6 +578,8 @@ public class LockActivity extends BaseActivity {
         });
         mAudioBroadcastReceiver.registerReceiver(mContext);
 
+        PlaybackClock.getInstance().addOnPlaybackClockListener(mOnPlaybackClockListener);
+
         //注册分钟变化广播
         IntentFilter mTimeFilter = new IntentFilter();
         mTimeFilter.addAction(Intent.ACTION_TIME_TICK);
@@ -671,22 +704,6 @@ public class LockActivity extends BaseActivity {
                     }
                 }
 
-                break;
-            case AudioBroadcastReceiver.ACTION_CODE_PLAYING:
-
-                Bundle playingBundle = intent.getBundleExtra(AudioBroadcastReceiver.ACTION_BUNDLEKEY);
-                AudioInfo playingAudioInfo = playingBundle.getParcelable(AudioBroadcastReceiver.ACTION_DATA_KEY);
-                if (playingAudioInfo != null) {
-
-                    mPlayOrPauseButton.setPlayingProgress((int) playingAudioInfo.getPlayProgress());
-                    mPlayOrPauseButton.invalidate();
-
-                    if (mManyLineLyricsView.getLyricsReader() != null && mManyLineLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC && mManyLineLyricsView.getLrcPlayerStatus() != AbstractLrcView.LRCPLAYERSTATUS_PLAY && mManyLineLyricsView.getLyricsReader().getHash().equals(playingAudioInfo.getHash())) {
-                        mManyLineLyricsView.play((int) playingAudioInfo.getPlayProgress());
-                    }
-
-                }
-
                 break;
             case AudioBroadcastReceiver.ACTION_CODE_STOP:
                 //暂停完成
@@ -715,7 +732,7 @@ public class LockActivity extends BaseActivity {
 
                     if (oldLyricsReader != null || newLyricsReader != null) {
                         if (mManyLineLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC) {
-                            mManyLineLyricsView.seekto((int) curAudioInfo.getPlayProgress());
+                            mManyLineLyricsView.seekto(PlaybackClock.getInstance().getPlayProgress(curAudioInfo));
                         }
                     }
                 }
@@ -775,6 +792,8 @@ public class LockActivity extends BaseActivity {
         if (mAudioBroadcastReceiver != null) {
             mAudioBroadcastReceiver.unregisterReceiver(mContext);
         }
+
+        PlaybackClock.getInstance().removeOnPlaybackClockListener(mOnPlaybackClockListener);
         super.finish();
     }
 
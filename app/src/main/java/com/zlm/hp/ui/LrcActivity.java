@@ -26,6 +26,7 @@ import com.zlm.hp.async.AsyncHandlerTask;
 import com.zlm.hp.audio.utils.MediaUtil;
 import com.zlm.hp.constants.ConfigInfo;
 import com.zlm.hp.constants.ResourceConstants;
+import com.zlm.hp.db.DBWriteQueue;
 import com.zlm.hp.db.util.AudioInfoDB;
 import com.zlm.hp.db.util.DownloadThreadInfoDB;
 import com.zlm.hp.entity.AudioInfo;
@@ -42,6 +43,7 @@ import com.zlm.hp.manager.AudioPlayerManager;
 import com.zlm.hp.manager.DownloadAudioManager;
 import com.zlm.hp.manager.LyricsManager;
 import com.zlm.hp.manager.OnLineAudioManager;
+import com.zlm.hp.manager.PlaybackClock;
 import com.zlm.hp.receiver.AudioBroadcastReceiver;
 import com.zlm.hp.util.ColorUtil;
 import com.zlm.hp.util.ImageUtil;
@@ -327,6 +329,37 @@ public class LrcActivity extends BaseActivity {
      */
     private AudioBroadcastReceiver mAudioBroadcastReceiver;
 
+    /**
+     * 播放时钟
+     */
+    private PlaybackClock.OnPlaybackClockListener mOnPlaybackClockListener = new PlaybackClock.OnPlaybackClockListener() {
+        @Override
+        public void onPlaybackStateChanged(String hash, long position, boolean isPlaying) {
+            if (!isPlaying || hash == null) {
+                return;
+            }
+            //开始播放或者跳转后，歌词以播放时钟的进度为准
+            if (mManyLineLyricsView.getLyricsReader() != null && mManyLineLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC && mManyLineLyricsView.getLyricsReader().getHash().equals(hash)) {
+                if (mManyLineLyricsView.getLrcPlayerStatus() != AbstractLrcView.LRCPLAYERSTATUS_PLAY) {
+                    mManyLineLyricsView.play((int) position);
+                } else {
+                    mManyLineLyricsView.seekto((int) position);
+                }
+            }
+        }
+
+        @Override
+        public void onPlaybackProgress(String hash, long position) {
+            mMusicSeekBar.setProgress((int) position);
+
+            //
+            mSongProgressTv.setText(MediaUtil.formatTime((int) position));
+            if (mManyLineLyricsView.getLyricsReader() != null && mManyLineLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC && mManyLineLyricsView.getLrcPlayerStatus() != AbstractLrcView.LRCPLAYERSTATUS_PLAY && mManyLineLyricsView.getLyricsReader().getHash().equals(hash)) {
+                mManyLineLyricsView.play((int) position);
+            }
+        }
+    };
+
     //
     private ConfigInfo mConfigInfo;
 
@@ -775,14 +808,20 @@ public class LrcActivity extends BaseActivity {
             public void onClick(View v) {
                 AudioInfo audioInfo = AudioPlayerManager.getInstance(mContext).getCurSong(mConfigInfo.getPlayHash());
                 if (audioInfo != null) {
-                    if (AudioInfoDB.isLikeAudioExists(mContext, audioInfo.getHash())) {
-                        boolean result = AudioInfoDB.deleteLikeAudio(mContext, audioInfo.getHash(), true);
-                        if (result) {
-                            mUnLikeMenuBtn.setVisibility(View.VISIBLE);
-                            mLikeMenuBtn.setVisibility(View.GONE);
-                            ToastUtil.showTextToast(mContext, getString(R.string.unlike_tip_text));
+                    //在写入队列中修改，界面直接更新，失败时恢复
+                    AudioInfoDB.deleteLikeAudioAsync(mContext, audioInfo.getHash(), true, new DBWriteQueue.OnWriteResultListener() {
+                        @Override
+                        public void onResult(boolean result) {
+                            if (!result) {
+                                ToastUtil.showTextToast(mContext, getString(R.string.like_error_text));
+                                mUnLikeMenuBtn.setVisibility(View.GONE);
+                                mLikeMenuBtn.setVisibility(View.VISIBLE);
+                            }
                         }
-                    }
+                    });
+                    mUnLikeMenuBtn.setVisibility(View.VISIBLE);
+                    mLikeMenuBtn.setVisibility(View.GONE);
+                    ToastUtil.showTextToast(mContext, getString(R.string.unlike_tip_text));
                 }
             }
         });
@@ -795,14 +834,20 @@ public class LrcActivity extends BaseActivity {
             public void onClick(View v) {
                 AudioInfo audioInfo = AudioPlayerManager.getInstance(mContext).getCurSong(mConfigInfo.getPlayHash());
                 if (audioInfo != null) {
-                    if (!AudioInfoDB.isLikeAudioExists(mContext, audioInfo.getHash())) {
-                        boolean result = AudioInfoDB.addLikeAudio(mContext, audioInfo, true);
-                        if (result) {
-                            mUnLikeMenuBtn.setVisibility(View.GONE);
-                            mLikeMenuBtn.setVisibility(View.VISIBLE);
-                            ToastUtil.showTextToast(mContext, getString(R.string.like_tip_text));
+                    //在写入队列中修改，界面直接更新，失败时恢复
+                    AudioInfoDB.addLikeAudioAsync(mContext, audioInfo, true, new DBWriteQueue.OnWriteResultListener() {
+                        @Override
+                        public void onResult(boolean result) {
+                            if (!result) {
+                                ToastUtil.showTextToast(mContext, getString(R.string.like_error_text));
+                                mUnLikeMenuBtn.setVisibility(View.VISIBLE);
+                                mLikeMenuBtn.setVisibility(View.GONE);
+                            }
                         }
-                    }
+                    });
+                    mUnLikeMenuBtn.setVisibility(View.GONE);
+                    mLikeMenuBtn.setVisibility(View.VISIBLE);
+                    ToastUtil.showTextToast(mContext, getString(R.string.like_tip_text));
                 }
             }
         });
@@ -1832,6 +1877,8 @@ public class LrcActivity extends BaseActivity {
             }
         });
         mAudioBroadcastReceiver.registerReceiver(mContext);
+
+        PlaybackClock.getInstance().addOnPlaybackClockListener(mOnPlaybackClockListener);
     }
 
     /**
@@ -1954,21 +2001,6 @@ public class LrcActivity extends BaseActivity {
                     }
                 }
 
-                break;
-            case AudioBroadcastReceiver.ACTION_CODE_PLAYING:
-
-                Bundle playingBundle = intent.getBundleExtra(AudioBroadcastReceiver.ACTION_BUNDLEKEY);
-                AudioInfo playingAudioInfo = playingBundle.getParcelable(AudioBroadcastReceiver.ACTION_DATA_KEY);
-                if (playingAudioInfo != null) {
-                    mMusicSeekBar.setProgress((int) playingAudioInfo.getPlayProgress());
-
-                    //
-                    mSongProgressTv.setText(MediaUtil.formatTime((int) playingAudioInfo.getPlayProgress()));
-                    if (mManyLineLyricsView.getLyricsReader() != null && mManyLineLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC && mManyLineLyricsView.getLrcPlayerStatus() != AbstractLrcView.LRCPLAYERSTATUS_PLAY && mManyLineLyricsView.getLyricsReader().getHash().equals(playingAudioInfo.getHash())) {
-                        mManyLineLyricsView.play((int) playingAudioInfo.getPlayProgress());
-                    }
-                }
-
                 break;
             case AudioBroadcastReceiver.ACTION_CODE_STOP:
                 //暂停完成
@@ -2037,7 +2069,7 @@ public class LrcActivity extends BaseActivity {
                 String hash = mConfigInfo.getPlayHash();
                 AudioInfo audioInfo = AudioPlayerManager.getInstance(mContext).getCurSong(hash);
                 if (audioInfo != null && downloadingTask != null && !TextUtils.isEmpty(hash) && hash.equals(downloadingTask.getTaskId())) {
-                    int downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, downloadingTask.getTaskId(), OnLineAudioManager.mThreadNum);
+                    long downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, downloadingTask.getTaskId(), OnLineAudioManager.mThreadNum);
                     double pre = downloadedSize * 1.0 / audioInfo.getFileSize();
                     int downloadProgress = (int) (mMusicSeekBar.getMax() * pre);
                     mMusicSeekBar.setSecondaryProgress(downloadProgress);
@@ -2061,7 +2093,7 @@ public class LrcActivity extends BaseActivity {
 
                     if (oldLyricsReader != null || newLyricsReader != null) {
                         if (mManyLineLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC) {
-                            mManyLineLyricsView.seekto((int) curAudioInfo.getPlayProgress());
+                            mManyLineLyricsView.seekto(PlaybackClock.getInstance().getPlayProgress(curAudioInfo));
                         }
                     }
                 }
@@ -2090,7 +2122,7 @@ public class LrcActivity extends BaseActivity {
                     }
                     if (newLyricsReader != null) {
                         if (mManyLineLyricsView.getLrcStatus() == AbstractLrcView.LRCSTATUS_LRC) {
-                            mManyLineLyricsView.seekto((int) curAudioInfoTemp.getPlayProgress());
+                            mManyLineLyricsView.seekto(PlaybackClock.getInstance().getPlayProgress(curAudioInfoTemp));
                         }
                     }
                 }
@@ -2226,6 +2258,8 @@ public class LrcActivity extends BaseActivity {
             mAudioBroadcastReceiver.unregisterReceiver(mContext);
         }
 
+        PlaybackClock.getInstance().removeOnPlaybackClockListener(mOnPlaybackClockListener);
+
     }
 
     public interface PopSingerListener {
@@ -57,6 +57,7 @@ import com.zlm.hp.manager.AudioPlayerManager;
 import com.zlm.hp.manager.DownloadAudioManager;
 import com.zlm.hp.manager.LyricsManager;
 import com.zlm.hp.manager.OnLineAudioManager;
+import com.zlm.hp.manager.PlaybackClock;
 import com.zlm.hp.receiver.AppSystemReceiver;
 import com.zlm.hp.receiver.AudioBroadcastReceiver;
 import com.zlm.hp.receiver.FragmentReceiver;
@@ -251,6 +252,23 @@ public class MainActivity extends BaseActivity {
      * 音频广播
      */
     private AudioBroadcastReceiver mAudioBroadcastReceiver;
+
+    /**
+     * 播放时钟
+     */
+    private PlaybackClock.OnPlaybackClockListener mOnPlaybackClockListener = new PlaybackClock.OnPlaybackClockListener() {
+        @Override
+        public void onPlaybackStateChanged(String hash, long position, boolean isPlaying) {
+            if (hash != null) {
+                mMusicSeekBar.setProgress((int) position);
+            }
+        }
+
+        @Override
+        public void onPlaybackProgress(String hash, long position) {
+            mMusicSeekBar.setProgress((int) position);
+        }
+    };
     /**
      * app系统广播
      */
@@ -453,15 +471,6 @@ public class MainActivity extends BaseActivity {
                         if (mPlayImageView.getVisibility() != View.INVISIBLE)
                             mPlayImageView.setVisibility(View.INVISIBLE);
 
-                        break;
-                    case AudioBroadcastReceiver.ACTION_CODE_PLAYING:
-
-                        Bundle playingBundle = intent.getBundleExtra(AudioBroadcastReceiver.ACTION_BUNDLEKEY);
-                        AudioInfo playingAudioInfo = playingBundle.getParcelable(AudioBroadcastReceiver.ACTION_DATA_KEY);
-                        if (playingAudioInfo != null) {
-                            mMusicSeekBar.setProgress((int) playingAudioInfo.getPlayProgress());
-                        }
-
                         break;
                     case AudioBroadcastReceiver.ACTION_CODE_STOP:
                         //暂停完成
@@ -516,7 +525,7 @@ public class MainActivity extends BaseActivity {
                         String hash = mConfigInfo.getPlayHash();
                         AudioInfo audioInfo = AudioPlayerManager.getInstance(mContext).getCurSong(hash);
                         if (audioInfo != null && downloadingTask != null && !TextUtils.isEmpty(hash) && hash.equals(downloadingTask.getTaskId())) {
-                            int downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, downloadingTask.getTaskId(), OnLineAudioManager.mThreadNum);
+                            long downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, downloadingTask.getTaskId(), OnLineAudioManager.mThreadNum);
                             double pre = downloadedSize * 1.0 / audioInfo.getFileSize();
                             int downloadProgress = (int) (mMusicSeekBar.getMax() * pre);
                             mMusicSeekBar.setSecondaryProgress(downloadProgress);
@@ -553,6 +562,8 @@ public class MainActivity extends BaseActivity {
         });
         mAudioBroadcastReceiver.registerReceiver(mContext);
 
+        PlaybackClock.getInstance().addOnPlaybackClockListener(mOnPlaybackClockListener);
+
         //系统
         mAppSystemReceiver = new AppSystemReceiver();
         mAppSystemReceiver.setReceiverListener(new AppSystemReceiver.AppSystemReceiverListener() {
@@ -1431,6 +1442,8 @@ public class MainActivity extends BaseActivity {
             mAudioBroadcastReceiver.unregisterReceiver(mContext);
         }
 
+        PlaybackClock.getInstance().removeOnPlaybackClockListener(mOnPlaybackClockListener);
+
         if (mAppSystemReceiver != null) {
             mAppSystemReceiver.unregisterReceiver(mContext);
         }
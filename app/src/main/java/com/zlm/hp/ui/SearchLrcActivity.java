@@ -25,6 +25,7 @@ import com.zlm.hp.entity.LrcInfo;
 import com.zlm.hp.fragment.LrcFragment;
 import com.zlm.hp.http.APIHttpClient;
 import com.zlm.hp.http.HttpReturnResult;
+import com.zlm.hp.manager.PlaybackClock;
 import com.zlm.hp.receiver.AudioBroadcastReceiver;
 import com.zlm.hp.util.HttpUtil;
 import com.zlm.hp.util.ToastUtil;
@@ -107,6 +108,32 @@ public class SearchLrcActivity extends BaseActivity {
      */
     private AudioBroadcastReceiver mAudioBroadcastReceiver;
 
+    /**
+     * 播放时钟
+     */
+    private PlaybackClock.OnPlaybackClockListener mOnPlaybackClockListener = new PlaybackClock.OnPlaybackClockListener() {
+        @Override
+        public void onPlaybackStateChanged(String hash, long position, boolean isPlaying) {
+
+        }
+
+        @Override
+        public void onPlaybackProgress(String hash, long position) {
+            int playProgress = (int) mAudioInfo.getDuration();
+            if (mAudioInfo.getHash().equals(hash)) {
+                playProgress = (int) position;
+            }
+
+            if (mAdapter != null && mSearchLrcDatas != null && mSearchLrcDatas.size() > 0) {
+
+                LrcFragment lrcFragment = (LrcFragment) mAdapter.getCurrentFragment();
+                if (lrcFragment != null)
+                    lrcFragment.refreshView(playProgress);
+
+            }
+        }
+    };
+
     @Override
     protected int setContentLayoutResID() {
         return R.layout.activity_search_lrc;
@@ -300,25 +327,6 @@ public class SearchLrcActivity extends BaseActivity {
 
             private void handleAudioBroadcastReceiver(Intent intent, int code) {
                 switch (code) {
-                    case AudioBroadcastReceiver.ACTION_CODE_PLAYING:
-
-                        int playProgress = (int) mAudioInfo.getDuration();
-                        Bundle playingBundle = intent.getBundleExtra(AudioBroadcastReceiver.ACTION_BUNDLEKEY);
-                        AudioInfo playingAudioInfo = playingBundle.getParcelable(AudioBroadcastReceiver.ACTION_DATA_KEY);
-                        if (playingAudioInfo != null && mAudioInfo.getHash().equals(playingAudioInfo.getHash())) {
-                            playProgress = playingAudioInfo.getPlayProgress();
-                        }
-
-                        if (mAdapter != null && mSearchLrcDatas != null && mSearchLrcDatas.size() > 0) {
-
-                            LrcFragment lrcFragment = (LrcFragment) mAdapter.getCurrentFragment();
-                            if (lrcFragment != null)
-                                lrcFragment.refreshView(playProgress);
-
-                        }
-
-                        break;
-
                     case AudioBroadcastReceiver.ACTION_CODE_LRCRELOADED:
                         //歌词重新加载
                         finish();
@@ -327,6 +335,8 @@ public class SearchLrcActivity extends BaseActivity {
             }
         });
         mAudioBroadcastReceiver.registerReceiver(mContext);
+
+        PlaybackClock.getInstance().addOnPlaybackClockListener(mOnPlaybackClockListener);
     }
 
     @Override
@@ -469,5 +479,7 @@ public class SearchLrcActivity extends BaseActivity {
             mAudioBroadcastReceiver.unregisterReceiver(mContext);
         }
 
+        PlaybackClock.getInstance().removeOnPlaybackClockListener(mOnPlaybackClockListener);
+
     }
 }
@@ -13,8 +13,7 @@ import com.dou361.dialogui.listener.DialogUIListener;
 import com.suke.widget.SwitchButton;
 import com.zlm.hp.constants.ConfigInfo;
 import com.zlm.hp.constants.ResourceConstants;
-import com.zlm.hp.db.util.DownloadThreadInfoDB;
-import com.zlm.hp.manager.OnLineAudioManager;
+import com.zlm.hp.manager.AudioCacheManager;
 import com.zlm.hp.util.FileUtil;
 import com.zlm.hp.util.ResourceUtil;
 import com.zlm.hp.widget.ListItemRelativeLayout;
@@ -196,9 +195,6 @@ public class SettingActivity extends BaseActivity {
      */
     private void clearAllCache() {
 
-        //删除在线缓存
-        DownloadThreadInfoDB.deleteAll(mContext, OnLineAudioManager.mThreadNum);
-
         mWorkerHandler.sendEmptyMessage(UPDATE_CACHESIZE);
         /**
          * 加载框
@@ -238,21 +234,65 @@ public class SettingActivity extends BaseActivity {
                 mConfigInfo = ConfigInfo.obtain();
 
 
-                mCacheSize = FileUtil.getFolderSize(new File(cachePath));
+                mCacheSize = getCacheSize(cachePath);
 
                 mUIHandler.sendEmptyMessage(LOAD_DATA);
 
                 break;
             case UPDATE_CACHESIZE:
 
-                FileUtil.deleteFolderFile(cachePath, false);
-                mCacheSize = FileUtil.getFolderSize(new File(cachePath));
+                clearCache(cachePath);
+                mCacheSize = getCacheSize(cachePath);
                 mUIHandler.sendEmptyMessageDelayed(UPDATE_CACHESIZE, 500);
 
                 break;
         }
     }
 
+    /**
+     * 获取缓存大小，歌曲缓存大小从缓存记录中获取，不再遍历歌曲缓存目录
+     *
+     * @param cachePath
+     * @return
+     */
+    private long getCacheSize(String cachePath) {
+        long size = AudioCacheManager.getInstance(mContext).getCacheSize();
+        File audioCacheDir = new File(ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_CACHE_AUDIO, null));
+        File[] files = new File(cachePath).listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].equals(audioCacheDir)) {
+                    continue;
+                }
+                if (files[i].isDirectory()) {
+                    size += FileUtil.getFolderSize(files[i]);
+                } else {
+                    size += files[i].length();
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 清空缓存，歌曲缓存由缓存管理删除，保留正在播放和预加载的歌曲
+     *
+     * @param cachePath
+     */
+    private void clearCache(String cachePath) {
+        AudioCacheManager.getInstance(mContext).clear();
+        File audioCacheDir = new File(ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_CACHE_AUDIO, null));
+        File[] files = new File(cachePath).listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].equals(audioCacheDir) || files[i].getName().equals(AudioCacheManager.INDEX_FILE_NAME)) {
+                    continue;
+                }
+                FileUtil.deleteFolderFile(files[i].getPath(), true);
+            }
+        }
+    }
+
     @Override
     public void onBackPressed() {
         mSwipeBackLayout.closeView();
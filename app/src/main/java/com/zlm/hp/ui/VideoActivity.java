@@ -26,6 +26,7 @@ import android.widget.Toast;
 
 import com.suke.widget.SwitchButton;
 import com.zlm.down.entity.DownloadTask;
+import com.zlm.down.manager.DownloadStreamServer;
 import com.zlm.hp.adapter.SubtitleAdapter;
 import com.zlm.hp.async.AsyncHandlerTask;
 import com.zlm.hp.audio.utils.MediaUtil;
@@ -635,7 +636,7 @@ public class VideoActivity extends BaseActivity {
                 Bundle downloadOnlineSongBundle = intent.getBundleExtra(AudioBroadcastReceiver.ACTION_BUNDLEKEY);
                 DownloadTask downloadingTask = downloadOnlineSongBundle.getParcelable(AudioBroadcastReceiver.ACTION_DATA_KEY);
                 if (mVideoInfo != null && downloadingTask != null && !TextUtils.isEmpty(mVideoInfo.getHash()) && mVideoInfo.getHash().equals(downloadingTask.getTaskId())) {
-                    int downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, downloadingTask.getTaskId(), OnLineVideoManager.mThreadNum);
+                    long downloadedSize = DownloadThreadInfoDB.getDownloadedSize(mContext, downloadingTask.getTaskId(), OnLineVideoManager.mThreadNum);
                     double pre = downloadedSize * 1.0 / mVideoInfo.getFileSize();
                     int downloadProgress = (int) (mMusicSeekBar.getMax() * pre);
                     mMusicSeekBar.setSecondaryProgress(downloadProgress);
@@ -671,6 +672,13 @@ public class VideoActivity extends BaseActivity {
         mOnLineVideoManager.setPlayStatus(OnLineVideoManager.PLAYING);
         String fileName = videoInfo.getTitle();
         String filePath = ResourceUtil.getFilePath(mContext, ResourceConstants.PATH_VIDEO, fileName + "." + videoInfo.getFileExt());
+        if (DownloadStreamServer.getInstance().isRegistered(videoInfo.getHash())) {
+            //下载中的视频通过本地服务读取，拖动到未下载的位置时从该位置开始下载
+            String streamUrl = DownloadStreamServer.getInstance().getUrl(videoInfo.getHash());
+            if (streamUrl != null) {
+                filePath = streamUrl;
+            }
+        }
         if (mMediaPlayer != null) {
             releasePlayer();
         }
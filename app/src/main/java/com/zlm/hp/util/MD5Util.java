@@ -1,6 +1,9 @@
 package com.zlm.hp.util;
 
 
+import android.content.Context;
+import android.text.TextUtils;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.math.BigInteger;
@@ -13,6 +16,11 @@ import java.security.MessageDigest;
  */
 public class MD5Util {
 
+    /**
+     * 下载时计算的文件md5的key前缀
+     */
+    private static final String KEY_FILE_MD5 = "file_md5_";
+
     /**
      * 获取文件的md5
      *
@@ -28,8 +36,7 @@ public class MD5Util {
             MappedByteBuffer byteBuffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
             MessageDigest md5 = MessageDigest.getInstance("MD5");
             md5.update(byteBuffer);
-            BigInteger bi = new BigInteger(1, md5.digest());
-            value = bi.toString(16);
+            value = toMd5String(md5.digest());
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -45,4 +52,47 @@ public class MD5Util {
 
     }
 
+    /**
+     * 获取文件的md5，文件下载时已计算过且文件没有修改时直接返回
+     *
+     * @param context
+     * @param file
+     * @return
+     */
+    public static String getFileMd5(Context context, File file) {
+        String value = PreferencesUtil.getString(context, KEY_FILE_MD5 + file.getPath());
+        if (!TextUtils.isEmpty(value)) {
+            String[] temps = value.split("_");
+            if (temps.length == 3 && temps[0].equals(file.length() + "") && temps[1].equals(file.lastModified() + "")) {
+                return temps[2];
+            }
+        }
+        return getFileMd5(file);
+    }
+
+    /**
+     * 保存下载时计算的文件md5
+     *
+     * @param context
+     * @param file
+     * @param md5
+     */
+    public static void saveFileMd5(Context context, File file, String md5) {
+        if (TextUtils.isEmpty(md5) || !file.exists()) {
+            return;
+        }
+        PreferencesUtil.putString(context, KEY_FILE_MD5 + file.getPath(), file.length() + "_" + file.lastModified() + "_" + md5);
+    }
+
+    /**
+     * md5转换成字符串
+     *
+     * @param digest
+     * @return
+     */
+    public static String toMd5String(byte[] digest) {
+        BigInteger bi = new BigInteger(1, digest);
+        return bi.toString(16);
+    }
+
 }
@@ -92,7 +92,7 @@ public class MediaUtil {
     private static void handleAudioFile(Context context, List<AudioInfo> result, File audioFile, OperateListener operateListener) {
 
         //歌曲文件hash值
-        String hash = MD5Util.getFileMd5(audioFile).toLowerCase();
+        String hash = MD5Util.getFileMd5(context, audioFile).toLowerCase();
 
         if (operateListener != null) {
             if (operateListener.filter(hash)) {
@@ -1,5 +1,6 @@
 package com.zlm.hp.util;
 
+import java.util.LinkedList;
 import java.util.Random;
 
 /**
@@ -20,13 +21,27 @@ public class RandomUtil {
      * 随机个数
      */
     private static int mSize = -1;
+    /**
+     * 预先生成的随机数，用于预加载接下来播放的歌曲
+     */
+    private static LinkedList<Integer> mNextNums = new LinkedList<Integer>();
 
     /**
      * 设置随机机
      *
      * @param size
      */
-    public static void setNums(int size) {
+    public static synchronized void setNums(int size) {
+        mNextNums.clear();
+        resetNums(size);
+    }
+
+    /**
+     * 重新开始一轮随机
+     *
+     * @param size
+     */
+    private static void resetNums(int size) {
         mNums = new int[size];
         mSize = size;
         for (int i = 0; i < size; i++) {
@@ -36,12 +51,42 @@ public class RandomUtil {
     }
 
     /**
-     * 生成随机数
+     * 生成随机数，优先使用预先生成的随机数
+     * @return
+     */
+    public static synchronized int createRandomNum() {
+        if (!mNextNums.isEmpty()) {
+            return mNextNums.poll();
+        }
+        return nextRandomNum();
+    }
+
+    /**
+     * 获取接下来的随机数，不会改变随机顺序
+     *
+     * @param num 个数
+     * @return
+     */
+    public static synchronized int[] peekRandomNums(int num) {
+        if (mSize <= 0) {
+            return new int[0];
+        }
+        while (mNextNums.size() < num) {
+            mNextNums.add(nextRandomNum());
+        }
+        int[] nums = new int[num];
+        for (int i = 0; i < num; i++) {
+            nums[i] = mNextNums.get(i);
+        }
+        return nums;
+    }
+
+    /**
      * @return
      */
-    public static int createRandomNum() {
+    private static int nextRandomNum() {
         if (mLastNum == -1) {
-            setNums(mSize);
+            resetNums(mSize);
         }
 
         int index = new Random().nextInt(mLastNum + 1);
@@ -0,0 +1,317 @@
+package com.zlm.hp;
+
+import com.zlm.down.entity.DownloadChunk;
+import com.zlm.down.entity.DownloadTask;
+import com.zlm.down.entity.DownloadThreadInfo;
+import com.zlm.down.thread.DownloadChunkScheduler;
+import com.zlm.down.thread.DownloadMp4Probe;
+import com.zlm.down.thread.DownloadRangeMap;
+import com.zlm.hp.util.MD5Util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: 下载分块调度测试
+ * @author: zhangliangming
+ * @date: 2019-04-20 11:20
+ **/
+public class DownloadChunkSchedulerTest {
+
+    private DownloadTask createTask(int threadNum) {
+        DownloadTask downloadTask = new DownloadTask();
+        downloadTask.setTaskId("5F8393A55D5762A63F1A5E92B46E575E");
+        downloadTask.setThreadNum(threadNum);
+        return downloadTask;
+    }
+
+    @Test
+    public void testSplitSlowChunk() {
+        int fileLength = 8 * 1024 * 1024;
+        DownloadChunkScheduler scheduler = new DownloadChunkScheduler(createTask(2), fileLength, null, null);
+
+        //领取所有分块，只下载第一个分块的一部分
+        List<DownloadChunk> chunks = new ArrayList<DownloadChunk>();
+        DownloadChunk chunk;
+        while (chunks.size() < 8 && (chunk = scheduler.nextChunk()) != null) {
+            chunks.add(chunk);
+        }
+        assertEquals(8, chunks.size());
+        for (int i = 1; i < chunks.size(); i++) {
+            scheduler.finishChunk(chunks.get(i));
+        }
+        DownloadChunk slowChunk = chunks.get(0);
+        slowChunk.addDownloadedSize(1024);
+
+        //空闲线程拆分慢分块的后半部分
+        DownloadChunk stealChunk = scheduler.nextChunk();
+        assertNotNull(stealChunk);
+        assertEquals(slowChunk.getEndPos(), stealChunk.getStartPos());
+        assertEquals(1024 * 1024, stealChunk.getEndPos());
+        assertFalse(scheduler.isFinish());
+
+        scheduler.finishChunk(slowChunk);
+        scheduler.finishChunk(stealChunk);
+        assertTrue(scheduler.isFinish());
+        assertEquals(fileLength, scheduler.getDownloadedSize());
+    }
+
+    @Test
+    public void testSplitAfterReservedWrite() {
+        int fileLength = 2 * 1024 * 1024;
+        DownloadChunkScheduler scheduler = new DownloadChunkScheduler(createTask(1), fileLength, null, null);
+        DownloadChunk chunk = scheduler.nextChunk();
+
+        //正在写入的数据还没有计入进度时被拆分，拆分位置不能小于写入的结束位置
+        int reserveLength = 1536 * 1024;
+        assertEquals(reserveLength, scheduler.reserveWrite(chunk, reserveLength));
+        DownloadChunk stealChunk = scheduler.nextChunk();
+        assertNotNull(stealChunk);
+        assertTrue(stealChunk.getStartPos() >= reserveLength);
+        assertEquals(stealChunk.getStartPos(), chunk.getEndPos());
+
+        //拆分后再领取，只能写入到新的结束位置
+        chunk.addDownloadedSize(reserveLength);
+        assertEquals(chunk.getRemainSize(), scheduler.reserveWrite(chunk, 1024 * 1024));
+    }
+
+    @Test
+    public void testRestoreLegacyThreadInfo() {
+        int fileLength = 1000;
+        List<DownloadThreadInfo> threadInfos = new ArrayList<DownloadThreadInfo>();
+        //旧版本只保存了线程的下载进度
+        DownloadThreadInfo first = new DownloadThreadInfo();
+        first.setThreadId(1);
+        first.setDownloadedSize(500);
+        threadInfos.add(first);
+        DownloadThreadInfo second = new DownloadThreadInfo();
+        second.setThreadId(2);
+        second.setDownloadedSize(100);
+        threadInfos.add(second);
+
+        DownloadChunkScheduler scheduler = new DownloadChunkScheduler(createTask(2), fileLength, threadInfos, null);
+        assertEquals(600, scheduler.getDownloadedSize());
+
+        DownloadChunk chunk = scheduler.nextChunk();
+        assertEquals(2, chunk.getChunkId());
+        assertEquals(600, chunk.getCurPos());
+        assertEquals(fileLength, chunk.getEndPos());
+        assertNull(scheduler.nextChunk());
+    }
+
+    @Test
+    public void testVerifyChunks() throws Exception {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        File file = File.createTempFile("download", ".temp");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(data);
+        out.close();
+
+        List<DownloadThreadInfo> threadInfos = new ArrayList<DownloadThreadInfo>();
+        threadInfos.add(createFinishThreadInfo(1, data, 0, 500, null));
+        //第二个分块保存的md5不一致
+        threadInfos.add(createFinishThreadInfo(2, data, 500, 1000, "0"));
+
+        DownloadTask downloadTask = createTask(2);
+        downloadTask.setTaskTempPath(file.getPath());
+        DownloadChunkScheduler scheduler = new DownloadChunkScheduler(downloadTask, data.length, threadInfos, null);
+        assertTrue(scheduler.isFinish());
+        assertEquals(1, scheduler.verifyChunks(file.getPath()));
+        assertEquals(500, scheduler.getDownloadedSize());
+
+        //只重新下载第二个分块
+        DownloadChunk chunk = scheduler.nextChunk();
+        assertEquals(2, chunk.getChunkId());
+        assertEquals(500, chunk.getCurPos());
+        scheduler.finishChunk(chunk);
+        assertNull(scheduler.nextChunk());
+
+        //文件md5与整个文件的md5一致
+        scheduler.updateFileDigest();
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+        digest.update(data);
+        assertEquals(MD5Util.toMd5String(digest.digest()), scheduler.getDownloadFileDigest().getMd5());
+    }
+
+    private DownloadThreadInfo createFinishThreadInfo(int threadId, byte[] data, int startPos, int endPos, String checksum) throws Exception {
+        if (checksum == null) {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(data, startPos, endPos - startPos);
+            checksum = MD5Util.toMd5String(digest.digest());
+        }
+        DownloadThreadInfo threadInfo = new DownloadThreadInfo();
+        threadInfo.setThreadId(threadId);
+        threadInfo.setStartPos(startPos);
+        threadInfo.setEndPos(endPos);
+        threadInfo.setDownloadedSize(endPos - startPos);
+        threadInfo.setChecksum(checksum);
+        return threadInfo;
+    }
+
+    @Test
+    public void testWaitForDataAtReadPos() throws Exception {
+        int fileLength = 8 * 1024 * 1024;
+        DownloadChunkScheduler scheduler = new DownloadChunkScheduler(createTask(2), fileLength, null, null);
+
+        //读取位置之后的分块优先下载
+        long readPos = 5 * 1024 * 1024;
+        assertEquals(0, scheduler.waitForData(readPos, 0));
+        DownloadChunk chunk = scheduler.nextChunk();
+        assertTrue(chunk.getStartPos() <= readPos && readPos < chunk.getEndPos());
+
+        chunk.addDownloadedSize((int) (readPos - chunk.getStartPos()) + 1024);
+        assertEquals(1024, scheduler.waitForData(readPos, 100));
+    }
+
+    @Test
+    public void testSeekSplitsRunningChunk() throws Exception {
+        int fileLength = 10 * 1024 * 1024;
+        DownloadChunkScheduler scheduler = new DownloadChunkScheduler(createTask(1), fileLength, null, null);
+        DownloadChunk chunk = scheduler.nextChunk();
+        chunk.addDownloadedSize(1024 * 1024);
+
+        //跳转到下载位置附近，不需要拆分
+        assertFalse(scheduler.seekTo(1024 * 1024 + 1024));
+
+        //跳转到未下载的位置，从该位置开始新分块，原分块只下载中间部分
+        long seekPos = 6 * 1024 * 1024;
+        assertTrue(scheduler.seekTo(seekPos));
+        assertEquals(seekPos, chunk.getEndPos());
+        DownloadChunk seekChunk = scheduler.nextChunk();
+        assertEquals(seekPos, seekChunk.getStartPos());
+        assertEquals(fileLength, seekChunk.getEndPos());
+
+        seekChunk.addDownloadedSize(1024);
+        assertEquals(1024, scheduler.waitForData(seekPos, 0));
+    }
+
+    @Test
+    public void testPrefetchHeadOnly() {
+        int fileLength = 8 * 1024 * 1024;
+        DownloadTask downloadTask = createTask(2);
+        downloadTask.setPrefetchSize(1024 * 1024);
+        DownloadChunkScheduler scheduler = new DownloadChunkScheduler(downloadTask, fileLength, null, null);
+
+        //只领取到文件头部的分块，空闲线程拆分的也是头部的分块
+        List<DownloadChunk> chunks = new ArrayList<DownloadChunk>();
+        DownloadChunk chunk;
+        while ((chunk = scheduler.nextChunk()) != null) {
+            assertTrue(chunk.getEndPos() <= 1024 * 1024);
+            chunks.add(chunk);
+        }
+        assertFalse(scheduler.isPrefetchFinish());
+        for (int i = 0; i < chunks.size(); i++) {
+            scheduler.finishChunk(chunks.get(i));
+        }
+        assertTrue(scheduler.isPrefetchFinish());
+        assertFalse(scheduler.isFinish());
+    }
+
+    @Test
+    public void testRestoreFromRangeMap() throws Exception {
+        int blockSize = DownloadRangeMap.DEFAULT_BLOCK_SIZE;
+        int fileLength = 16 * blockSize + 100;
+        File file = File.createTempFile("range", ".temp");
+        file.deleteOnExit();
+        new File(DownloadRangeMap.getMapPath(file.getPath())).deleteOnExit();
+
+        //上次播放下载了文件头部和跳转位置之后的一部分
+        DownloadRangeMap rangeMap = new DownloadRangeMap(fileLength, blockSize);
+        rangeMap.addRange(0, 2 * blockSize + 10);
+        rangeMap.addRange(8 * blockSize - 10, 10 * blockSize);
+        rangeMap.addRange(15 * blockSize, fileLength);
+        rangeMap.save(file.getPath());
+        rangeMap = DownloadRangeMap.load(file.getPath(), fileLength);
+        assertEquals(2 * blockSize, rangeMap.getContiguousEnd(0));
+        assertEquals(8 * blockSize, rangeMap.getNextPresent(2 * blockSize));
+        assertEquals(5 * blockSize + 100, rangeMap.getPresentSize());
+        assertNull(DownloadRangeMap.load(file.getPath() + ".none", 0));
+
+        //数据库中没有区间时，只下载位图中缺少的部分
+        DownloadTask downloadTask = createTask(1);
+        downloadTask.setTaskTempPath(file.getPath());
+        DownloadChunkScheduler scheduler = new DownloadChunkScheduler(downloadTask, fileLength, null, rangeMap, null);
+        assertEquals(5 * blockSize + 100, scheduler.getDownloadedSize());
+        DownloadChunk first = scheduler.nextChunk();
+        assertEquals(2 * blockSize, first.getCurPos());
+        assertEquals(8 * blockSize, first.getEndPos());
+        DownloadChunk second = scheduler.nextChunk();
+        assertEquals(10 * blockSize, second.getCurPos());
+        assertEquals(15 * blockSize, second.getEndPos());
+        assertNull(scheduler.nextChunk());
+
+        scheduler.finishChunk(first);
+        scheduler.finishChunk(second);
+        assertTrue(scheduler.isFinish());
+        assertTrue(rangeMap.isComplete());
+    }
+
+    @Test
+    public void testPrioritizeTrailingMoov() {
+        int fileLength = 8 * 1024 * 1024;
+        int moovSize = 1000;
+        //ftyp + mdat + moov，moov在文件末尾
+        final byte[] data = new byte[fileLength];
+        writeBox(data, 0, 24, "ftyp");
+        writeBox(data, 24, fileLength - 24 - moovSize, "mdat");
+        writeBox(data, fileLength - moovSize, moovSize, "moov");
+        List<long[]> ranges = new DownloadMp4Probe(new DownloadMp4Probe.RangeReader() {
+            @Override
+            public int read(long pos, byte[] buff, int offset, int length) {
+                int readLength = (int) Math.min(length, data.length - pos);
+                System.arraycopy(data, (int) pos, buff, offset, readLength);
+                return readLength;
+            }
+        }).probe(fileLength);
+        assertNotNull(ranges);
+        assertEquals(2, ranges.size());
+        assertEquals(fileLength - moovSize, ranges.get(1)[0]);
+        assertEquals(fileLength, ranges.get(1)[1]);
+
+        DownloadChunkScheduler scheduler = new DownloadChunkScheduler(createTask(2), fileLength, null, null);
+        for (int i = 0; i < ranges.size(); i++) {
+            scheduler.prioritize(ranges.get(i)[0], ranges.get(i)[1]);
+        }
+        assertFalse(scheduler.isHeaderReady());
+
+        //先领取ftyp和moov所在的分块
+        DownloadChunk ftypChunk = scheduler.nextChunk();
+        assertEquals(0, ftypChunk.getStartPos());
+        assertEquals(24, ftypChunk.getEndPos());
+        DownloadChunk moovChunk = scheduler.nextChunk();
+        assertEquals(fileLength - moovSize, moovChunk.getStartPos());
+        assertEquals(fileLength, moovChunk.getEndPos());
+        scheduler.finishChunk(ftypChunk);
+        scheduler.finishChunk(moovChunk);
+        assertTrue(scheduler.isHeaderReady());
+
+        //其它分块按原来的顺序下载
+        DownloadChunk chunk = scheduler.nextChunk();
+        assertEquals(24, chunk.getStartPos());
+    }
+
+    private void writeBox(byte[] data, int pos, int size, String type) {
+        data[pos] = (byte) (size >>> 24);
+        data[pos + 1] = (byte) (size >>> 16);
+        data[pos + 2] = (byte) (size >>> 8);
+        data[pos + 3] = (byte) size;
+        for (int i = 0; i < 4; i++) {
+            data[pos + 4 + i] = (byte) type.charAt(i);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.zlm.hp;
+
+import com.zlm.down.thread.DownloadConnectionController;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: 下载连接数调节测试
+ * @author: zhangliangming
+ * @date: 2019-04-26 22:10
+ **/
+public class DownloadConnectionControllerTest {
+
+    private static final int INTERVAL = DownloadConnectionController.ADJUST_INTERVAL;
+
+    @Test
+    public void testGrowUntilSaturated() {
+        DownloadConnectionController controller = new DownloadConnectionController(1, 8);
+        long time = 0;
+        long size = 0;
+        controller.update(time, size);
+
+        //每个连接100KB/s，最多300KB/s
+        int[] expectNums = {2, 3, 4, 3};
+        for (int i = 0; i < expectNums.length; i++) {
+            int speed = Math.min(3, controller.getConnectionNum()) * 100 * 1024;
+            time += INTERVAL;
+            size += (long) speed * INTERVAL / 1000;
+            controller.update(time, size);
+            assertEquals(expectNums[i], controller.getConnectionNum());
+        }
+        assertTrue(controller.isStable());
+    }
+
+    @Test
+    public void testShrinkWhenSlow() {
+        DownloadConnectionController controller = new DownloadConnectionController(2, 2);
+        long time = 0;
+        long size = 0;
+        controller.update(time, size);
+        //已是最大连接数
+        time += INTERVAL;
+        size += 1024 * 1024;
+        assertEquals(0, controller.update(time, size));
+        assertTrue(controller.isStable());
+
+        //速度下降一半以上
+        time += INTERVAL;
+        size += 100 * 1024;
+        assertEquals(-1, controller.update(time, size));
+        assertEquals(1, controller.getConnectionNum());
+    }
+}
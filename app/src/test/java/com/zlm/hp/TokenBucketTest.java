@@ -0,0 +1,40 @@
+package com.zlm.hp;
+
+import com.zlm.down.manager.TokenBucket;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Description: 令牌桶限速测试
+ * @author: zhangliangming
+ * @date: 2019-04-23 22:00
+ **/
+public class TokenBucketTest {
+
+    @Test
+    public void testRateLimit() throws InterruptedException {
+        //1MB/秒，令牌桶初始为空，读取512KB约需0.5秒
+        TokenBucket tokenBucket = new TokenBucket(1024 * 1024);
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 64; i++) {
+            tokenBucket.acquire(8 * 1024);
+        }
+        long useTime = System.currentTimeMillis() - startTime;
+        assertTrue("useTime=" + useTime, useTime >= 400);
+    }
+
+    @Test
+    public void testChangeRate() throws InterruptedException {
+        TokenBucket tokenBucket = new TokenBucket(1024);
+        //取消限速后不再等待
+        tokenBucket.setRate(0);
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 1024; i++) {
+            tokenBucket.acquire(8 * 1024);
+        }
+        long useTime = System.currentTimeMillis() - startTime;
+        assertTrue("useTime=" + useTime, useTime < 100);
+    }
+}